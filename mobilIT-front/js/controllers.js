@@ -67,9 +67,7 @@ function FormCtrl($scope, Nominatim, Neo4j) {
                         $scope.map.setView([locationResp[0].lat, locationResp[0].lon], 15);
 
 
-                        for (var x in modeOfTransportList) {
-                            $scope.searchForMode(modeOfTransportList[x]);
-                        }
+                        $scope.searchAllModes();
                         $scope.displayResultToolBar = true;
                     }
                     else {
@@ -90,22 +88,42 @@ function FormCtrl($scope, Nominatim, Neo4j) {
                 $scope.toMarker.getLatLng().lat,
                 $scope.toMarker.getLatLng().lng
             ).then(function (response) {
-                $scope.gesjsonDatas[mode] = response;
-                $scope.undisplayLayer(mode);
-                $scope.displayLayer(mode);
-
-                if(!$scope.distance)
-                    $scope.distance = [];
-                var map = _.map(response.features, function (feature) { return  feature.properties.length });
-                $scope.distance[mode] = Math.round10((_.reduce(map, function(memo, num){ return memo + num; }, 0) / 1000), -1);
-
-                if(!$scope.time)
-                    $scope.time = [];
-                var mapTime = _.map(response.features, function (feature) { return  feature.properties.time });
-                $scope.time[mode] = mapTime[0];
+                $scope.displayResult(mode, response);
             });
     };
 
+    $scope.searchAllModes = function () {
+        Neo4j.searchAll(
+                $scope.fromMarker.getLatLng().lat,
+                $scope.fromMarker.getLatLng().lng,
+                $scope.toMarker.getLatLng().lat,
+                $scope.toMarker.getLatLng().lng
+            ).then(function (response) {
+                for (var x in modeOfTransportList) {
+                    var mode = modeOfTransportList[x];
+                    if (response && response[mode]) {
+                        $scope.displayResult(mode, response[mode]);
+                    }
+                }
+            });
+    };
+
+    $scope.displayResult = function (mode, response) {
+        $scope.gesjsonDatas[mode] = response;
+        $scope.undisplayLayer(mode);
+        $scope.displayLayer(mode);
+
+        if(!$scope.distance)
+            $scope.distance = [];
+        var map = _.map(response.features, function (feature) { return  feature.properties.length });
+        $scope.distance[mode] = Math.round10((_.reduce(map, function(memo, num){ return memo + num; }, 0) / 1000), -1);
+
+        if(!$scope.time)
+            $scope.time = [];
+        var mapTime = _.map(response.features, function (feature) { return  feature.properties.time });
+        $scope.time[mode] = mapTime[0];
+    };
+
 
     $scope.undisplayLayer = function (aModeOfTransport) {
         console.log("action undisplay 2");
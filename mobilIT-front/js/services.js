@@ -39,6 +39,11 @@ angular.module('Services', [])
                             $location.path('/error');
                         }
                     });
+            },
+
+            /* all modes of transport in one call, response is an object by mode */
+            searchAll: function (lat1, long1, lat2, long2) {
+                return this.search('all', lat1, long1, lat2, long2);
             }
         }
     });
\ No newline at end of file
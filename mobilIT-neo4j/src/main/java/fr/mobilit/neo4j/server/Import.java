@@ -35,8 +35,16 @@ import org.neo4j.gis.spatial.SpatialDatabaseService;
 import org.neo4j.gis.spatial.osm.OSMImporter;
 import org.neo4j.graphdb.GraphDatabaseService;
 
+import fr.mobilit.neo4j.server.exception.MobilITException;
 import fr.mobilit.neo4j.server.service.CycleRentService;
+import fr.mobilit.neo4j.server.service.GeocodingService;
+import fr.mobilit.neo4j.server.service.POINodeIndex;
 import fr.mobilit.neo4j.server.service.ParkingService;
+import fr.mobilit.neo4j.server.service.PublicTransport;
+import fr.mobilit.neo4j.server.service.RoutingService;
+import fr.mobilit.neo4j.server.service.StationCatchment;
+import fr.mobilit.neo4j.server.service.StationRouteTable;
+import fr.mobilit.neo4j.server.service.TileService;
 import fr.mobilit.neo4j.server.utils.Constant;
 
 /**
@@ -79,6 +87,12 @@ public class Import {
     @Path("/osm")
     public Response osm(@FormParam("files") String files) {
         String[] osmFiles = files.split("@");
+        RoutingService routing = RoutingService.getInstance(db);
+        try {
+            routing.beginImport(true);
+        } catch (MobilITException e) {
+            return Response.status(Status.CONFLICT).entity(e.getMessage()).build();
+        }
         try {
             OSMImporter importer = new OSMImporter(Constant.LAYER_OSM);
             // import osm files
@@ -117,9 +131,106 @@ public class Import {
                 ParkingService service = new ParkingService(spatial);
                 service.getGeoService(geocode).importParking();
             }
+            // POI are snapped again on the new graph at first use
+            POINodeIndex.invalidateAll();
+            StationRouteTable.getInstance().refresh(spatial, true);
+            StationCatchment.getInstance().refresh(spatial);
+            GeocodingService.getInstance().refresh(spatial);
+            // routing shards in use are built on the new graph, then swapped at once
+            long version = routing.publishImport();
+            TileService.getInstance().invalidate();
+            return Response.status(Status.OK).entity("Routing version " + version).build();
+        } catch (Exception e) {
+            routing.abortImport();
+            return Response.status(Status.INTERNAL_SERVER_ERROR).entity(e.getMessage() + " :" + e.getCause()).build();
+        }
+    }
+
+    /**
+     * Action to import again the cycle rent stations, without touching the OSM data. Only routes of the new stations
+     * are added to the station route table.
+     * 
+     * @return OK or the error.
+     */
+    @POST
+    @Produces(MediaType.TEXT_PLAIN)
+    @Path("/station")
+    public Response station() {
+        RoutingService routing = RoutingService.getInstance(db);
+        try {
+            routing.beginImport(false);
+        } catch (MobilITException e) {
+            return Response.status(Status.CONFLICT).entity(e.getMessage()).build();
+        }
+        try {
+            Iterator cycleIter = Constant.CYCLE_SERVICE.keySet().iterator();
+            while (cycleIter.hasNext()) {
+                String geocode = (String) cycleIter.next();
+                CycleRentService service = new CycleRentService(spatial);
+                service.getGeoService(geocode).importStation();
+            }
+            POINodeIndex.invalidate(Constant.CYCLE_LAYER);
+            StationRouteTable.getInstance().refresh(spatial, false);
+            StationCatchment.getInstance().refresh(spatial);
+            routing.publishImport();
+            TileService.getInstance().invalidate();
+            return Response.status(Status.OK).build();
+        } catch (Exception e) {
+            routing.abortImport();
+            return Response.status(Status.INTERNAL_SERVER_ERROR).entity(e.getMessage() + " :" + e.getCause()).build();
+        }
+    }
+
+    /**
+     * Action to load GTFS public transport timetables. Stops are snapped on the OSM graph, so OSM data must be
+     * imported first.
+     * 
+     * @param files list of GTFS zip file on the FS separate by '@' character.
+     * @return OK or the error.
+     */
+    @POST
+    @Produces(MediaType.TEXT_PLAIN)
+    @Path("/gtfs")
+    public Response gtfs(@FormParam("files") String files) {
+        RoutingService routing = RoutingService.getInstance(db);
+        try {
+            routing.beginImport(false);
+        } catch (MobilITException e) {
+            return Response.status(Status.CONFLICT).entity(e.getMessage()).build();
+        }
+        try {
+            String[] gtfsFiles = files.split("@");
+            for (int i = 0; i < gtfsFiles.length; i++) {
+                if (!new File(gtfsFiles[i]).exists()) {
+                    throw new Exception("GTFS file " + gtfsFiles[i] + " doesn't found");
+                }
+            }
+            PublicTransport.getService().load(spatial, gtfsFiles);
+            routing.publishImport();
             return Response.status(Status.OK).build();
         } catch (Exception e) {
+            routing.abortImport();
             return Response.status(Status.INTERNAL_SERVER_ERROR).entity(e.getMessage() + " :" + e.getCause()).build();
         }
     }
+
+    /**
+     * Action to export the routing data of all regions into a directory, to be served by the standalone routing
+     * server.
+     * 
+     * @param directory directory on the FS
+     * @return OK or the error.
+     */
+    @POST
+    @Produces(MediaType.TEXT_PLAIN)
+    @Path("/export")
+    public Response export(@FormParam("directory") String directory) {
+        try {
+            int count = RoutingService.getInstance(db).export(new File(directory));
+            return Response.status(Status.OK).entity(count + " regions exported").build();
+        } catch (Exception e) {
+            return Response.status(Status.INTERNAL_SERVER_ERROR).entity(e.getMessage() + " :" + e.getCause()).build();
+        }
+    }
+
 }
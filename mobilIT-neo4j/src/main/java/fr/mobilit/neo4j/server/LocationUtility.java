@@ -1,39 +1,60 @@
 package fr.mobilit.neo4j.server;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
-import javax.xml.bind.JAXBContext;
+import javax.ws.rs.core.StreamingOutput;
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
-import javax.xml.bind.Marshaller;
 
 import net.opengis.gml.v_3_1_1.CoordType;
 import net.opengis.gml.v_3_1_1.PointType;
 import net.opengis.xls.v_1_2_0.AddressType;
+import net.opengis.xls.v_1_2_0.BuildingLocatorType;
+import net.opengis.xls.v_1_2_0.DistanceType;
+import net.opengis.xls.v_1_2_0.DistanceUnitType;
 import net.opengis.xls.v_1_2_0.GeocodeRequestType;
 import net.opengis.xls.v_1_2_0.GeocodeResponseListType;
 import net.opengis.xls.v_1_2_0.GeocodeResponseType;
 import net.opengis.xls.v_1_2_0.GeocodedAddressType;
 import net.opengis.xls.v_1_2_0.ObjectFactory;
+import net.opengis.xls.v_1_2_0.PositionType;
+import net.opengis.xls.v_1_2_0.ReverseGeocodeRequestType;
+import net.opengis.xls.v_1_2_0.ReverseGeocodeResponseType;
+import net.opengis.xls.v_1_2_0.ReverseGeocodedLocationType;
 import net.opengis.xls.v_1_2_0.StreetAddressType;
 import net.opengis.xls.v_1_2_0.StreetNameType;
 
+import org.json.simple.JSONArray;
+import org.json.simple.parser.JSONParser;
 import org.neo4j.gis.spatial.SpatialDatabaseService;
-import org.neo4j.gis.spatial.osm.OSMImporter;
-import org.neo4j.gis.spatial.osm.OSMRelation;
-import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.GraphDatabaseService;
-import org.neo4j.graphdb.Node;
-import org.neo4j.graphdb.index.IndexHits;
+
+import fr.mobilit.neo4j.server.exception.MobilITException;
+import fr.mobilit.neo4j.server.format.AddressWriter;
+import fr.mobilit.neo4j.server.geocoding.Address;
+import fr.mobilit.neo4j.server.service.GeocodingService;
+import fr.mobilit.neo4j.server.utils.Constant;
 
 /**
  * User: noootsab Date: 6/2/12 Time: 2:48 PM
@@ -41,8 +62,6 @@ import org.neo4j.graphdb.index.IndexHits;
 @Path("/location")
 public class LocationUtility {
 
-    public JAXBContext             context;
-    public Marshaller              marshaller;
     public ObjectFactory           factory;
     private GraphDatabaseService   db;
     private SpatialDatabaseService spatial;
@@ -50,12 +69,14 @@ public class LocationUtility {
     public LocationUtility(@Context GraphDatabaseService db) throws Exception {
         this.db = db;
         this.spatial = new SpatialDatabaseService(db);
-
-        this.context = JAXBContext.newInstance(ObjectFactory.class);
-        this.marshaller = context.createMarshaller();
         this.factory = new ObjectFactory();
     }
 
+    /**
+     * OpenLS geocoding of all the addresses of the request, by street name and building number : a response list by
+     * address, in the order of the request, with one result by street (at the door of the number when it's known).
+     * Addresses are geocoded in parallel.
+     */
     @POST
     @Consumes({ MediaType.APPLICATION_XML })
     @Produces(MediaType.APPLICATION_XML)
@@ -64,61 +85,258 @@ public class LocationUtility {
         GeocodeRequestType geocodeRequest = request.getValue();
 
         if (geocodeRequest == null) {
-            Response.status(Response.Status.BAD_REQUEST).entity("Geocode Request is missing !");
+            return Response.status(Response.Status.BAD_REQUEST).entity("Geocode Request is missing !").build();
+        }
+        if (geocodeRequest.getAddress().size() > Constant.GEOCODING_MAX_QUERIES) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("Too many addresses, " + Constant.GEOCODING_MAX_QUERIES + " at most").build();
         }
 
-        // minimal response
+        List<String> queries = new ArrayList<String>(geocodeRequest.getAddress().size());
+        for (AddressType addressType : geocodeRequest.getAddress()) {
+            queries.add(query(addressType));
+        }
+        List<List<Address>> results;
+        try {
+            GeocodingService service = GeocodingService.getInstance();
+            results = service.search(service.getIndex(spatial), queries, Constant.GEOCODING_MAX_RESULTS);
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR).entity(e.getMessage() + " :" + e.getCause())
+                    .build();
+        }
+
+        // fill response with result
         GeocodeResponseType response = new GeocodeResponseType();
-        GeocodeResponseListType geocodeResponseListType = new GeocodeResponseListType();
-        geocodeResponseListType.setNumberOfGeocodedAddresses(new BigInteger("0"));
-        response.setGeocodeResponseList(Arrays.asList(geocodeResponseListType));
-
-        if (geocodeRequest.getAddress().size() > 0) {
-            AddressType addressType = geocodeRequest.getAddress().get(0);
-            if (addressType != null && addressType.getStreetAddress() != null
-                    && addressType.getStreetAddress().getStreet().size() > 0) {
-
-                StreetNameType streetNameType1 = addressType.getStreetAddress().getStreet().get(0);
-
-                // quick and dirty implementation based on
-                // one single address
-                // the name only => EXACT MATCH ONLY
-                IndexHits<Node> ways = db.index().forNodes(OSMImporter.INDEX_NAME_WAY)
-                        .query("name:\"" + streetNameType1.getValue() + "\"");
-
-                // fill response with result
-                for (Node way : ways) {
-                    double[] bbox = (double[]) way.getRelationships(Direction.OUTGOING, OSMRelation.GEOM).iterator()
-                            .next().getEndNode().getProperty("bbox");
-
-                    GeocodedAddressType geocodedAddressType = new GeocodedAddressType();
-
-                    PointType value = new PointType();
-                    CoordType value1 = new CoordType();
-                    value1.setX(new BigDecimal(bbox[0] + (bbox[1] - bbox[0]) / 2));
-                    value1.setY(new BigDecimal(bbox[2] + (bbox[3] - bbox[2]) / 2));
-                    value1.setZ(new BigDecimal(0));
-                    value.setCoord(value1);
-                    geocodedAddressType.setPoint(value);
-
-                    AddressType value2 = new AddressType();
-                    StreetAddressType value3 = new StreetAddressType();
-                    StreetNameType streetNameType = new StreetNameType();
-                    streetNameType.setValue((String) way.getProperty("name"));
-                    value3.setStreet(Arrays.asList(streetNameType));
-                    value2.setStreetAddress(value3);
-                    geocodedAddressType.setAddress(value2);
-
-                    geocodeResponseListType.setGeocodedAddress(Arrays.asList(geocodedAddressType));
-
-                    // I hate the BigInteger API !
-                    geocodeResponseListType.setNumberOfGeocodedAddresses(geocodeResponseListType
-                            .getNumberOfGeocodedAddresses().add(new BigInteger("1")));
+        List<GeocodeResponseListType> responseLists = new ArrayList<GeocodeResponseListType>(results.size());
+        for (List<Address> streets : results) {
+            List<GeocodedAddressType> geocodedAddresses = new ArrayList<GeocodedAddressType>(streets.size());
+            for (Address street : streets) {
+                GeocodedAddressType geocodedAddressType = new GeocodedAddressType();
+                geocodedAddressType.setPoint(point(street));
+                geocodedAddressType.setAddress(address(street));
+                geocodedAddresses.add(geocodedAddressType);
+            }
+            GeocodeResponseListType geocodeResponseListType = new GeocodeResponseListType();
+            geocodeResponseListType.setGeocodedAddress(geocodedAddresses);
+            geocodeResponseListType.setNumberOfGeocodedAddresses(BigInteger.valueOf(geocodedAddresses.size()));
+            responseLists.add(geocodeResponseListType);
+        }
+        response.setGeocodeResponseList(responseLists);
+
+        return Response.status(Response.Status.OK).entity(response).build();
+    }
+
+    /**
+     * JSON batch geocoding : the body is an array of queries (street names, with or without a house number, ie.
+     * "12 rue Racine"), the response is an array with the streets of each query (see <code>AddressWriter</code>), in
+     * the order of the request.
+     */
+    @POST
+    @Path("/geocode")
+    @Consumes({ MediaType.APPLICATION_JSON })
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response geocode(InputStream body) {
+        final List<String> queries;
+        try {
+            queries = readQueries(body);
+        } catch (Exception e) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("Invalid queries : " + e.getMessage()).build();
+        }
+        if (queries.size() > Constant.GEOCODING_MAX_QUERIES) {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .entity("Too many queries, " + Constant.GEOCODING_MAX_QUERIES + " at most").build();
+        }
+        try {
+            GeocodingService service = GeocodingService.getInstance();
+            final List<List<Address>> results = service.search(service.getIndex(spatial), queries,
+                    Constant.GEOCODING_MAX_RESULTS);
+            StreamingOutput stream = new StreamingOutput() {
+
+                @Override
+                public void write(OutputStream out) throws IOException {
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+                    AddressWriter.writeBatch(results, writer);
+                    writer.flush();
                 }
+            };
+            return Response.status(Response.Status.OK).entity(stream).build();
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR).entity(e.getMessage() + " :" + e.getCause())
+                    .build();
+        }
+    }
 
+    /**
+     * Read a JSON array of queries.
+     */
+    static List<String> readQueries(InputStream body) throws Exception {
+        Object json = new JSONParser().parse(new InputStreamReader(body, "UTF-8"));
+        if (!(json instanceof JSONArray)) {
+            throw new IllegalArgumentException("an array of queries is expected");
+        }
+        JSONArray array = (JSONArray) json;
+        List<String> queries = new ArrayList<String>(array.size());
+        for (int i = 0; i < array.size(); i++) {
+            Object query = array.get(i);
+            if (query != null && !(query instanceof String)) {
+                throw new IllegalArgumentException("query " + i + " is not a string");
             }
+            queries.add((String) query);
         }
+        return queries;
+    }
 
-        return Response.status(Response.Status.OK).entity(response).build();
+    /**
+     * @param addressType
+     * @return the query of an OpenLS address : its building number and its street name, or <code>null</code> if
+     *         there is no street.
+     */
+    static String query(AddressType addressType) {
+        if (addressType == null || addressType.getStreetAddress() == null
+                || addressType.getStreetAddress().getStreet().size() == 0) {
+            return null;
+        }
+        StreetAddressType streetAddress = addressType.getStreetAddress();
+        String street = streetAddress.getStreet().get(0).getValue();
+        if (streetAddress.getStreetLocation() != null
+                && streetAddress.getStreetLocation().getValue() instanceof BuildingLocatorType) {
+            String number = ((BuildingLocatorType) streetAddress.getStreetLocation().getValue()).getNumber();
+            if (number != null) {
+                return number + " " + street;
+            }
+        }
+        return street;
+    }
+
+    /**
+     * OpenLS reverse geocoding : the nearest street of the position, with its nearest house number if there is one.
+     * The position is a gml point, with a coord or a pos in the x (longitude) y (latitude) order of the geocode
+     * responses.
+     */
+    @POST
+    @Path("/reverse")
+    @Consumes({ MediaType.APPLICATION_XML })
+    @Produces(MediaType.APPLICATION_XML)
+    public Response reverse(JAXBElement<ReverseGeocodeRequestType> request) {
+        ReverseGeocodeRequestType reverseRequest = request.getValue();
+        double[] position = (reverseRequest == null) ? null : position(reverseRequest.getPosition());
+        if (position == null) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("Reverse geocode position is missing !")
+                    .build();
+        }
+        try {
+            Address address = findAddress(position[0], position[1]);
+            ReverseGeocodeResponseType response = new ReverseGeocodeResponseType();
+            List<ReverseGeocodedLocationType> locations = new ArrayList<ReverseGeocodedLocationType>();
+            if (address != null) {
+                ReverseGeocodedLocationType location = new ReverseGeocodedLocationType();
+                location.setPoint(point(address));
+                location.setAddress(address(address));
+                DistanceType distance = new DistanceType();
+                distance.setValue(new BigDecimal(address.getDistance()).setScale(1, RoundingMode.HALF_UP));
+                distance.setUom(DistanceUnitType.M);
+                location.setSearchCentreDistance(distance);
+                locations.add(location);
+            }
+            response.setReverseGeocodedLocation(locations);
+            return Response.status(Response.Status.OK).entity(factory.createReverseGeocodeResponse(response)).build();
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR).entity(e.getMessage() + " :" + e.getCause())
+                    .build();
+        }
+    }
+
+    /**
+     * JSON reverse geocoding (see <code>AddressWriter</code>).
+     */
+    @GET
+    @Path("/reverse")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response reverse(@QueryParam("lat") Double lat, @QueryParam("lon") Double lon) {
+        if (lat == null || lon == null) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("lat and lon are required").build();
+        }
+        try {
+            Address address = findAddress(lon, lat);
+            if (address == null) {
+                return Response.status(Response.Status.NOT_FOUND)
+                        .entity("No street in " + Constant.GEOCODING_MAX_DISTANCE + "m").build();
+            }
+            return Response.status(Response.Status.OK).entity(AddressWriter.toString(address)).build();
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR).entity(e.getMessage() + " :" + e.getCause())
+                    .build();
+        }
+    }
+
+    /**
+     * JSON street name autocomplete : the streets whose name starts with the query, as an array of addresses (see
+     * <code>AddressWriter</code>). The optional limit, at least 1, is capped to <code>GEOCODING_MAX_RESULTS</code>.
+     */
+    @GET
+    @Path("/autocomplete")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response autocomplete(@QueryParam("q") String query, @QueryParam("limit") Integer limit) {
+        if (query == null || query.trim().length() == 0) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("q is required").build();
+        }
+        if (limit != null && limit < 1) {
+            return Response.status(Response.Status.BAD_REQUEST).entity("limit must be at least 1").build();
+        }
+        try {
+            int max = Constant.GEOCODING_MAX_RESULTS;
+            if (limit != null) {
+                max = Math.min(limit, max);
+            }
+            List<Address> streets = GeocodingService.getInstance().getIndex(spatial).search(query, max);
+            return Response.status(Response.Status.OK).entity(AddressWriter.toString(streets)).build();
+        } catch (Exception e) {
+            return Response.status(Response.Status.INTERNAL_SERVER_ERROR).entity(e.getMessage() + " :" + e.getCause())
+                    .build();
+        }
+    }
+
+    private Address findAddress(double lon, double lat) throws MobilITException {
+        return GeocodingService.getInstance().getIndex(spatial)
+                .reverse(lon, lat, Constant.GEOCODING_MAX_DISTANCE, Constant.GEOCODING_HOUSE_DISTANCE);
+    }
+
+    private static double[] position(PositionType position) {
+        if (position == null || position.getPoint() == null) {
+            return null;
+        }
+        PointType point = position.getPoint();
+        if (point.getCoord() != null && point.getCoord().getX() != null && point.getCoord().getY() != null) {
+            return new double[] { point.getCoord().getX().doubleValue(), point.getCoord().getY().doubleValue() };
+        }
+        if (point.getPos() != null && point.getPos().getValue().size() >= 2) {
+            return new double[] { point.getPos().getValue().get(0), point.getPos().getValue().get(1) };
+        }
+        return null;
+    }
+
+    private static PointType point(Address address) {
+        PointType point = new PointType();
+        CoordType coord = new CoordType();
+        coord.setX(new BigDecimal(address.getLongitude()));
+        coord.setY(new BigDecimal(address.getLatitude()));
+        coord.setZ(new BigDecimal(0));
+        point.setCoord(coord);
+        return point;
+    }
+
+    private AddressType address(Address address) {
+        StreetAddressType streetAddress = new StreetAddressType();
+        StreetNameType streetName = new StreetNameType();
+        streetName.setValue(address.getStreet());
+        streetAddress.setStreet(Arrays.asList(streetName));
+        if (address.getNumber() != null) {
+            BuildingLocatorType building = new BuildingLocatorType();
+            building.setNumber(address.getNumber());
+            streetAddress.setStreetLocation(factory.createBuilding(building));
+        }
+        AddressType addressType = new AddressType();
+        addressType.setStreetAddress(streetAddress);
+        return addressType;
     }
 }
@@ -0,0 +1,87 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server;
+
+import java.io.InputStream;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+
+import fr.mobilit.neo4j.server.exception.MobilITException;
+import fr.mobilit.neo4j.server.pojo.Route;
+import fr.mobilit.neo4j.server.routing.Profile;
+import fr.mobilit.neo4j.server.service.RoutingService;
+import fr.mobilit.neo4j.server.shortestpath.ShortestPathAlgorithm;
+
+/**
+ * Neo4j REST interface to match GPS traces on the road network.
+ * 
+ * @author bsimard
+ * 
+ */
+@Path("/match")
+public class Match {
+
+    private final GraphDatabaseService db;
+
+    /**
+     * Constructor.
+     * 
+     * @param db
+     */
+    public Match(@Context GraphDatabaseService db) {
+        this.db = db;
+    }
+
+    /**
+     * Match a GPS trace (a GPX file in the body) with a profile (car, cycle or pedestrian), and return the matched
+     * path as the searches do. An empty or invalid trace is a 400, a trace out of the routing regions a 404.
+     */
+    @POST
+    @Consumes({ "application/gpx+xml", MediaType.APPLICATION_XML, MediaType.TEXT_XML })
+    @Produces({ MediaType.APPLICATION_JSON })
+    @Path("/{profile}")
+    public Response match(@PathParam("profile") String name, InputStream gpx) {
+        Profile profile = Profile.fromName(name);
+        if (profile == null) {
+            return Response.status(Status.NOT_FOUND).entity("Unknown profile " + name).build();
+        }
+        try {
+            Route path = RoutingService.getInstance(db).match(gpx, profile);
+            return Response.status(Status.OK).entity(ShortestPathAlgorithm.generateResponse(path)).build();
+        } catch (MobilITException e) {
+            if (e.getCode() != null) {
+                return Response.status(e.getCode()).entity(e.getMessage()).build();
+            }
+            return Response.status(Status.INTERNAL_SERVER_ERROR).entity(e.getMessage() + " :" + e.getCause()).build();
+        } catch (Exception e) {
+            return Response.status(Status.INTERNAL_SERVER_ERROR).entity(e.getMessage() + " :" + e.getCause()).build();
+        }
+    }
+
+}
@@ -25,19 +25,25 @@ import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.server.plugins.Injectable;
 import org.neo4j.server.plugins.PluginLifecycle;
 
+import fr.mobilit.neo4j.server.service.RoutingService;
 import fr.mobilit.neo4j.server.utils.Cache;
+import fr.mobilit.neo4j.server.utils.SearchExecutor;
 
 public class Neo4jPlugin implements PluginLifecycle {
 
     @Override
     public Collection<Injectable<?>> start(GraphDatabaseService graphDatabaseService, Configuration config) {
         Cache.newInstance();
+        SearchExecutor.newInstance();
+        // routing shards saved before the restart
+        RoutingService.getInstance(graphDatabaseService).warmUp();
         return null;
     }
 
     @Override
     public void stop() {
         Cache.getInstance().stop();
+        SearchExecutor.getInstance().stop();
     }
 
 }
@@ -18,15 +18,30 @@
  */
 package fr.mobilit.neo4j.server;
 
-import fr.mobilit.neo4j.server.pojo.Itinerary;
+import fr.mobilit.neo4j.server.exception.MobilITException;
+import fr.mobilit.neo4j.server.format.RouteFormat;
 import fr.mobilit.neo4j.server.pojo.POI;
-import fr.mobilit.neo4j.server.service.CycleRentService;
+import fr.mobilit.neo4j.server.pojo.Route;
+import fr.mobilit.neo4j.server.routing.Endpoints;
+import fr.mobilit.neo4j.server.routing.Profile;
+import fr.mobilit.neo4j.server.routing.RoutingVersion;
+import fr.mobilit.neo4j.server.service.PublicTransport;
+import fr.mobilit.neo4j.server.service.RoutingService;
+import fr.mobilit.neo4j.server.shortestpath.CarParkAlgorithm;
+import fr.mobilit.neo4j.server.shortestpath.MultiModalAlgorithm;
+import fr.mobilit.neo4j.server.shortestpath.RouteSimplifier;
 import fr.mobilit.neo4j.server.shortestpath.ShortestPathAlgorithm;
 import fr.mobilit.neo4j.server.shortestpath.costEvaluator.CarCostEvaluation;
 import fr.mobilit.neo4j.server.shortestpath.costEvaluator.CycleCostEvaluation;
 import fr.mobilit.neo4j.server.shortestpath.costEvaluator.PedestrianCostEvaluation;
+import fr.mobilit.neo4j.server.utils.Constant;
+import fr.mobilit.neo4j.server.utils.RoutingConstant;
+import fr.mobilit.neo4j.server.utils.SearchExecutor;
+import fr.mobilit.neo4j.server.utils.SpatialUtils;
 import org.neo4j.gis.spatial.SpatialDatabaseService;
+import org.neo4j.graphalgo.CostEvaluator;
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
 import org.neo4j.server.logging.Logger;
 
 import javax.ws.rs.GET;
@@ -34,117 +49,409 @@ import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 @Path("/search")
 public class SearchPath {
 
     private final GraphDatabaseService db;
     private final SpatialDatabaseService spatial;
+    private final String accept;
     private final Logger logger = Logger.getLogger(SearchPath.class);
 
+    /**
+     * Constructor, for responses in the default format (GeoJSON).
+     *
+     * @param db
+     */
+    public SearchPath(GraphDatabaseService db) {
+        this(db, null);
+    }
+
     /**
      * Constructor.
      *
      * @param db
+     * @param headers headers of the request, the format of the response is chosen with its <code>Accept</code> header
+     *            (GeoJSON if there is none)
      */
-    public SearchPath(@Context GraphDatabaseService db) {
+    public SearchPath(@Context GraphDatabaseService db, @Context HttpHeaders headers) {
         this.db = db;
+        this.accept = (headers == null) ? null : headers.getRequestHeaders().getFirst(HttpHeaders.ACCEPT);
         this.spatial = new SpatialDatabaseService(db);
     }
 
     @GET
-    @Produces({MediaType.APPLICATION_JSON})
+    @Produces({MediaType.APPLICATION_JSON, RoutingConstant.SEARCH_POLYLINE_TYPE, RoutingConstant.SEARCH_BINARY_TYPE})
     @Path("/car")
     public Response car(@QueryParam("lat1") Double lat1,
                         @QueryParam("long1") Double long1,
                         @QueryParam("lat2") Double lat2,
-                        @QueryParam("long2") Double long2) {
+                        @QueryParam("long2") Double long2,
+                        @QueryParam("simplify") Double simplify,
+                        @QueryParam("precision") Integer precision) {
         logger.info("lat1 : " + lat1 + " | long1 : " + long1);
         try {
             CarCostEvaluation eval = new CarCostEvaluation();
-            List<Itinerary> path = ShortestPathAlgorithm.search(spatial, lat1, long1, lat2, long2, eval);
-            logger.info("Path size is : " + path.size());
-            return Response.status(Status.OK).entity(ShortestPathAlgorithm.generateResponse(path)).build();
+            // region shard first, the whole graph if the points are not in the same region
+            Route path = RoutingService.getInstance(db).search(lat1, long1, lat2, long2, Profile.CAR);
+            if (path == null) {
+                if (isImporting()) {
+                    return unavailable();
+                }
+                path = ShortestPathAlgorithm.search(spatial, lat1, long1, lat2, long2, eval);
+            }
+            logger.info("Path size is : " + path.getSegmentCount());
+            return render(RouteSimplifier.simplify(path, simplify, precision), null, precision);
         } catch (Exception e) {
-            return Response.status(Status.INTERNAL_SERVER_ERROR).entity(e.getMessage() + " :" + e.getCause()).build();
+            return error(e);
         }
     }
 
     @GET
-    @Produces({MediaType.APPLICATION_JSON})
+    @Produces({MediaType.APPLICATION_JSON, RoutingConstant.SEARCH_POLYLINE_TYPE, RoutingConstant.SEARCH_BINARY_TYPE})
     @Path("/cycle")
     public Response cycle(@QueryParam("lat1") Double lat1,
                           @QueryParam("long1") Double long1,
                           @QueryParam("lat2") Double lat2,
-                          @QueryParam("long2") Double long2) {
+                          @QueryParam("long2") Double long2,
+                          @QueryParam("simplify") Double simplify,
+                          @QueryParam("precision") Integer precision) {
         try {
             CycleCostEvaluation eval = new CycleCostEvaluation();
-            List<Itinerary> path = ShortestPathAlgorithm.search(spatial, lat1, long1, lat2, long2, eval);
-            return Response.status(Status.OK).entity(ShortestPathAlgorithm.generateResponse(path)).build();
+            // region shard first, the whole graph if the points are not in the same region
+            Route path = RoutingService.getInstance(db).search(lat1, long1, lat2, long2, Profile.CYCLE);
+            if (path == null) {
+                if (isImporting()) {
+                    return unavailable();
+                }
+                path = ShortestPathAlgorithm.search(spatial, lat1, long1, lat2, long2, eval);
+            }
+            return render(RouteSimplifier.simplify(path, simplify, precision), null, precision);
         } catch (Exception e) {
-            return Response.status(Status.INTERNAL_SERVER_ERROR).entity(e.getMessage() + " :" + e.getCause()).build();
+            return error(e);
         }
     }
 
     @GET
-    @Produces({MediaType.APPLICATION_JSON})
+    @Produces({MediaType.APPLICATION_JSON, RoutingConstant.SEARCH_POLYLINE_TYPE, RoutingConstant.SEARCH_BINARY_TYPE})
     @Path("/pedestrian")
     public Response pedestrian(@QueryParam("lat1") Double lat1,
                                @QueryParam("long1") Double long1,
                                @QueryParam("lat2") Double lat2,
-                               @QueryParam("long2") Double long2) {
+                               @QueryParam("long2") Double long2,
+                               @QueryParam("simplify") Double simplify,
+                               @QueryParam("precision") Integer precision) {
         try {
             PedestrianCostEvaluation eval = new PedestrianCostEvaluation();
-            List<Itinerary> path = ShortestPathAlgorithm.search(spatial, lat1, long1, lat2, long2, eval);
-            return Response.status(Status.OK).entity(ShortestPathAlgorithm.generateResponse(path)).build();
+            // region shard first, the whole graph if the points are not in the same region
+            Route path = RoutingService.getInstance(db).search(lat1, long1, lat2, long2, Profile.PEDESTRIAN);
+            if (path == null) {
+                if (isImporting()) {
+                    return unavailable();
+                }
+                path = ShortestPathAlgorithm.search(spatial, lat1, long1, lat2, long2, eval);
+            }
+            return render(RouteSimplifier.simplify(path, simplify, precision), null, precision);
         } catch (Exception e) {
-            return Response.status(Status.INTERNAL_SERVER_ERROR).entity(e.getMessage() + " :" + e.getCause()).build();
+            return error(e);
         }
     }
 
     @GET
-    @Produces({MediaType.APPLICATION_JSON})
+    @Produces({MediaType.APPLICATION_JSON, RoutingConstant.SEARCH_POLYLINE_TYPE, RoutingConstant.SEARCH_BINARY_TYPE})
     @Path("/cyclerent")
     public Response cycleRent(@QueryParam("lat1") Double lat1,
                               @QueryParam("long1") Double long1,
                               @QueryParam("lat2") Double lat2,
-                              @QueryParam("long2") Double long2) {
+                              @QueryParam("long2") Double long2,
+                              @QueryParam("simplify") Double simplify,
+                              @QueryParam("precision") Integer precision) {
+        if (isImporting()) {
+            return unavailable();
+        }
+        try {
+            SpatialUtils utils = new SpatialUtils(spatial);
+            Node start = utils.findNearestWay(lat1, long1);
+            Node end = utils.findNearestWay(lat2, long2);
+
+            // walk => cycle station => cycle station => walk, in one search (404 without a usable pair of stations)
+            MultiModalAlgorithm algo = new MultiModalAlgorithm(spatial, start, end);
+            algo.calculate();
+            return render(RouteSimplifier.simplify(algo.getPathAsRoute(), simplify, precision), algo.getStations(),
+                    precision);
+        } catch (Exception e) {
+            return error(e);
+        }
+    }
+
+    /**
+     * Search a path by car to a car park with free places near the destination, then on foot.
+     */
+    @GET
+    @Produces({MediaType.APPLICATION_JSON, RoutingConstant.SEARCH_POLYLINE_TYPE, RoutingConstant.SEARCH_BINARY_TYPE})
+    @Path("/carpark")
+    public Response carPark(@QueryParam("lat1") Double lat1,
+                            @QueryParam("long1") Double long1,
+                            @QueryParam("lat2") Double lat2,
+                            @QueryParam("long2") Double long2,
+                            @QueryParam("simplify") Double simplify,
+                            @QueryParam("precision") Integer precision) {
+        if (isImporting()) {
+            return unavailable();
+        }
+        try {
+            SpatialUtils utils = new SpatialUtils(spatial);
+            Node start = utils.findNearestWay(lat1, long1);
+            Node end = utils.findNearestWay(lat2, long2);
+
+            // car => car park => walk
+            CarParkAlgorithm algo = new CarParkAlgorithm(spatial, start, end);
+            algo.calculate();
+            List<POI> parkings = new ArrayList<POI>();
+            parkings.add(algo.getParking());
+            return render(RouteSimplifier.simplify(algo.getPathAsRoute(), simplify, precision), parkings, precision);
+        } catch (Exception e) {
+            return error(e);
+        }
+    }
+
+    /**
+     * Search a public transport path (walk, rides and walking transfers) with the loaded GTFS timetable.
+     * 
+     * @param time departure time in milliseconds since epoch, now by default.
+     */
+    @GET
+    @Produces({MediaType.APPLICATION_JSON, RoutingConstant.SEARCH_POLYLINE_TYPE, RoutingConstant.SEARCH_BINARY_TYPE})
+    @Path("/transit")
+    public Response transit(@QueryParam("lat1") Double lat1,
+                            @QueryParam("long1") Double long1,
+                            @QueryParam("lat2") Double lat2,
+                            @QueryParam("long2") Double long2,
+                            @QueryParam("time") Long time,
+                            @QueryParam("simplify") Double simplify,
+                            @QueryParam("precision") Integer precision) {
+        if (isImporting()) {
+            return unavailable();
+        }
+        try {
+            SpatialUtils utils = new SpatialUtils(spatial);
+            Node start = utils.findNearestWay(lat1, long1);
+            Node end = utils.findNearestWay(lat2, long2);
+
+            Date departure = time == null ? new Date() : new Date(time);
+            PublicTransport.Result result = PublicTransport.getService().search(start, end, departure);
+            return render(RouteSimplifier.simplify(result.getRoute(), simplify, precision), result.getStops(),
+                    precision);
+        } catch (Exception e) {
+            return error(e);
+        }
+    }
+
+    /**
+     * Search all modes of transport at once : both points are snapped only one time, on the shard of their region (on
+     * the whole graph out of the regions), and each path is computed in parallel on the shared search executor. Car,
+     * cycle and pedestrian paths are searched on the region shard, from the same snapped points. The response is a
+     * JSON object with one GeoJSON FeatureCollection per mode (<code>null</code> if the mode has no result).
+     */
+    @GET
+    @Produces({MediaType.APPLICATION_JSON, RoutingConstant.SEARCH_POLYLINE_TYPE})
+    @Path("/all")
+    public Response all(@QueryParam("lat1") Double lat1,
+                        @QueryParam("long1") Double long1,
+                        @QueryParam("lat2") Double lat2,
+                        @QueryParam("long2") Double long2,
+                        @QueryParam("simplify") Double simplify,
+                        @QueryParam("precision") final Integer precision) {
+        RoutingService routing = RoutingService.getInstance(db);
+        RoutingVersion version = routing.acquire();
+        try {
+            // snapping start & end point, one time
+            Endpoints endpoints = routing.snap(version, lat1, long1, lat2, long2);
+            Node start;
+            Node end;
+            if (endpoints != null) {
+                start = db.getNodeById(endpoints.getStartId());
+                end = db.getNodeById(endpoints.getEndId());
+            }
+            else if (isImporting()) {
+                return unavailable();
+            }
+            else {
+                SpatialUtils utils = new SpatialUtils(spatial);
+                start = utils.findNearestWay(lat1, long1);
+                end = utils.findNearestWay(lat2, long2);
+            }
+
+            final RouteFormat format = RouteFormat.negotiate(accept, RouteFormat.GEOJSON, RouteFormat.POLYLINE);
+
+            // launch all searches
+            SearchExecutor executor = SearchExecutor.getInstance();
+            Future<Route> car = executor.submit(searchTask(version, endpoints, Profile.CAR, start, end,
+                    new CarCostEvaluation()));
+            Future<Route> cycle = executor.submit(searchTask(version, endpoints, Profile.CYCLE, start, end,
+                    new CycleCostEvaluation()));
+            Future<Route> pedestrian = executor.submit(searchTask(version, endpoints, Profile.PEDESTRIAN, start, end,
+                    new PedestrianCostEvaluation()));
+            // cycle rent is searched on the whole graph : not while an import writes into it
+            Future<MultiModalAlgorithm> cycleRent = isImporting() ? null : executor.submit(cycleRentTask(start, end));
+
+            // collect results
+            long deadline = System.currentTimeMillis() + Constant.SEARCH_TIMEOUT;
+            final Map<String, Route> paths = new LinkedHashMap<String, Route>();
+            final Map<String, List<POI>> pois = new HashMap<String, List<POI>>();
+            paths.put("car", RouteSimplifier.simplify(await(car, deadline), simplify, precision));
+            paths.put("cycle", RouteSimplifier.simplify(await(cycle, deadline), simplify, precision));
+            paths.put("pedestrian", RouteSimplifier.simplify(await(pedestrian, deadline), simplify, precision));
+            Route cycleRentPath = null;
+            if (cycleRent != null) {
+                try {
+                    MultiModalAlgorithm algo = cycleRent.get(Math.max(0, deadline - System.currentTimeMillis()),
+                            TimeUnit.MILLISECONDS);
+                    cycleRentPath = RouteSimplifier.simplify(algo.getPathAsRoute(), simplify, precision);
+                    pois.put("cyclerent", algo.getStations());
+                } catch (Exception e) {
+                    cycleRent.cancel(true);
+                    logger.warn("Cycle rent search failed : " + e.getMessage());
+                }
+            }
+            paths.put("cyclerent", cycleRentPath);
+
+            // one JSON object, with the result of each mode written in place
+            StreamingOutput stream = new StreamingOutput() {
+
+                @Override
+                public void write(OutputStream out) throws IOException {
+                    out.write('{');
+                    boolean first = true;
+                    for (Map.Entry<String, Route> result : paths.entrySet()) {
+                        if (!first) {
+                            out.write(',');
+                        }
+                        first = false;
+                        out.write(("\"" + result.getKey() + "\":").getBytes("UTF-8"));
+                        if (result.getValue() == null) {
+                            out.write("null".getBytes("UTF-8"));
+                        }
+                        else {
+                            format.write(result.getValue(), pois.get(result.getKey()), precision, out);
+                        }
+                    }
+                    out.write('}');
+                }
+            };
+            return Response.status(Status.OK).type(format.getMediaType()).entity(stream).build();
+        } catch (Exception e) {
+            return error(e);
+        } finally {
+            version.release();
+        }
+    }
+
+    /**
+     * Render a search result in the format asked by the <code>Accept</code> header : GeoJSON by default, or one of the
+     * compact formats of the mobile applications. The result is written straight to the response stream.
+     */
+    private Response render(final Route path, final List<POI> pois, final Integer precision) {
+        final RouteFormat format = RouteFormat.negotiate(accept, RouteFormat.values());
+        StreamingOutput stream = new StreamingOutput() {
+
+            @Override
+            public void write(OutputStream out) throws IOException {
+                format.write(path, pois, precision, out);
+            }
+        };
+        return Response.status(Status.OK).type(format.getMediaType()).entity(stream).build();
+    }
+
+    /**
+     * While an import writes into the OSM graph, searches on the whole graph would see it half-imported. Only the
+     * published routing shards are used meanwhile : car, cycle and pedestrian paths in a loaded region are still
+     * served, the other searches answer 503. Station and timetable imports don't block any search.
+     */
+    private boolean isImporting() {
+        return RoutingService.getInstance(db).isImporting();
+    }
+
+    /**
+     * Error response of a search : the status of the exception if it has one, 500 otherwise.
+     */
+    private static Response error(Exception e) {
+        if (e instanceof MobilITException && ((MobilITException) e).getCode() != null) {
+            return Response.status(((MobilITException) e).getCode()).entity(e.getMessage()).build();
+        }
+        return Response.status(Status.INTERNAL_SERVER_ERROR).entity(e.getMessage() + " :" + e.getCause()).build();
+    }
+
+    private Response unavailable() {
+        return Response.status(Status.SERVICE_UNAVAILABLE).entity("Import in progress, try again later").build();
+    }
+
+    /**
+     * Wrap a search into a task for the search executor : between the points snapped on the region shard, between the
+     * two snapped nodes of the whole graph if the points are not in the same region. The task holds the version of
+     * the snapped points until it ends, even after a timeout of the query.
+     */
+    private Callable<Route> searchTask(final RoutingVersion version, final Endpoints endpoints, final Profile profile,
+            final Node start, final Node end, final CostEvaluator<Double> eval) {
+        version.retain();
+        return new Callable<Route>() {
+
+            @Override
+            public Route call() throws Exception {
+                try {
+                    Route path = (endpoints == null) ? null : RoutingService.getInstance(db).search(endpoints, profile);
+                    if (path == null) {
+                        path = ShortestPathAlgorithm.search(start, end, eval);
+                    }
+                    return path;
+                } finally {
+                    version.release();
+                }
+            }
+        };
+    }
+
+    /**
+     * Wrap a cycle rent search between two snapped nodes into a task for the search executor.
+     */
+    private Callable<MultiModalAlgorithm> cycleRentTask(final Node start, final Node end) {
+        return new Callable<MultiModalAlgorithm>() {
+
+            @Override
+            public MultiModalAlgorithm call() throws Exception {
+                MultiModalAlgorithm algo = new MultiModalAlgorithm(spatial, start, end);
+                algo.calculate();
+                return algo;
+            }
+        };
+    }
+
+    /**
+     * Wait for a search, or return <code>null</code> if the search failed. A search out of time is not cancelled : it
+     * releases its version when it ends (see <code>searchTask</code>).
+     */
+    private Route await(Future<Route> search, long deadline) {
         try {
-            // Final var (path & POI)
-            List<Itinerary> path = new ArrayList<Itinerary>();
-            List<POI> pois = new ArrayList<POI>();
-
-            // searching cycle station
-            CycleRentService service = new CycleRentService(spatial);
-            POI cycleStation1 = service.getNearest(long1, lat1, null);
-            POI cycleStation2 = service.getNearest(long2, lat2, null);
-            pois.add(cycleStation1);
-            pois.add(cycleStation2);
-
-            // Cost evalutor
-            PedestrianCostEvaluation evalPedestrian = new PedestrianCostEvaluation();
-            CycleCostEvaluation evalCycle = new CycleCostEvaluation();
-
-            // pedestrian => cycle station
-            List<Itinerary> path1 = ShortestPathAlgorithm.search(spatial, lat1, long1, cycleStation1.getGeoPoint().getLatitude(), cycleStation1.getGeoPoint().getLongitude(), evalPedestrian);
-            path.addAll(path1);
-
-            // cycle station 1=> cycle station 2
-            List<Itinerary> path2 = ShortestPathAlgorithm.search(spatial, cycleStation1.getGeoPoint().getLatitude(), cycleStation1.getGeoPoint().getLongitude(), cycleStation2.getGeoPoint().getLatitude(), cycleStation2.getGeoPoint().getLongitude(), evalCycle);
-            path.addAll(path2);
-
-            // cycle station 2 => ending point
-            List<Itinerary> path3 = ShortestPathAlgorithm.search(spatial, cycleStation2.getGeoPoint().getLatitude(), cycleStation2.getGeoPoint().getLongitude(), lat2, long2, evalPedestrian);
-            path.addAll(path3);
-
-            return Response.status(Status.OK).entity(ShortestPathAlgorithm.generateResponse(path, pois)).build();
+            return search.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
         } catch (Exception e) {
-            return Response.status(Status.INTERNAL_SERVER_ERROR).entity(e.getMessage() + " :" + e.getCause()).build();
+            logger.warn("Search failed : " + e.getMessage());
+            return null;
         }
     }
 }
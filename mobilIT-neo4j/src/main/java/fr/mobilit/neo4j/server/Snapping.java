@@ -0,0 +1,168 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.TimeoutException;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import fr.mobilit.neo4j.server.exception.MobilITException;
+import fr.mobilit.neo4j.server.format.SnapWriter;
+import fr.mobilit.neo4j.server.routing.Profile;
+import fr.mobilit.neo4j.server.routing.SnapBatch;
+import fr.mobilit.neo4j.server.service.RoutingService;
+import fr.mobilit.neo4j.server.utils.Constant;
+
+/**
+ * Neo4j REST interface to snap many points on the road network at once (ie. trip logs or station catalogues).
+ * 
+ * @author bsimard
+ * 
+ */
+@Path("/snap")
+public class Snapping {
+
+    private final GraphDatabaseService db;
+
+    /**
+     * Constructor.
+     * 
+     * @param db
+     */
+    public Snapping(@Context GraphDatabaseService db) {
+        this.db = db;
+    }
+
+    /**
+     * Snap the points of the body, a JSON array of [lon, lat] positions, on the streets open to a profile (car, cycle
+     * or pedestrian). The response is an array with the snap of each point (see <code>SnapWriter</code>), a 400 if
+     * there are more than <code>SNAP_MAX_POINTS</code> points (the body is read no further), or a 503 if the batch is
+     * not snapped in time or if a region can't be loaded during an import.
+     */
+    @POST
+    @Consumes({ MediaType.APPLICATION_JSON })
+    @Produces({ MediaType.APPLICATION_JSON })
+    @Path("/{profile}")
+    public Response snap(@PathParam("profile") String name, InputStream body) {
+        Profile profile = Profile.fromName(name);
+        if (profile == null) {
+            return Response.status(Status.NOT_FOUND).entity("Unknown profile " + name).build();
+        }
+        final SnapBatch batch;
+        try {
+            batch = read(body, Constant.SNAP_MAX_POINTS);
+        } catch (Exception e) {
+            return Response.status(Status.BAD_REQUEST).entity("Invalid points : " + e.getMessage()).build();
+        }
+        try {
+            RoutingService.getInstance(db).snap(batch, profile);
+            StreamingOutput stream = new StreamingOutput() {
+
+                @Override
+                public void write(OutputStream out) throws IOException {
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+                    SnapWriter.write(batch, writer);
+                    writer.flush();
+                }
+            };
+            return Response.status(Status.OK).entity(stream).build();
+        } catch (TimeoutException e) {
+            return Response.status(Status.SERVICE_UNAVAILABLE)
+                    .entity("Snap timeout, " + Constant.SEARCH_TIMEOUT + "ms at most").build();
+        } catch (MobilITException e) {
+            if (e.getCode() != null) {
+                return Response.status(e.getCode()).entity(e.getMessage()).build();
+            }
+            return Response.status(Status.INTERNAL_SERVER_ERROR).entity(e.getMessage() + " :" + e.getCause()).build();
+        } catch (Exception e) {
+            return Response.status(Status.INTERNAL_SERVER_ERROR).entity(e.getMessage() + " :" + e.getCause()).build();
+        }
+    }
+
+    /**
+     * Read a JSON array of [lon, lat] positions, as a stream : reading stops at the first point over the limit.
+     * 
+     * @param body
+     * @param max maximum number of points
+     */
+    static SnapBatch read(InputStream body, int max) throws Exception {
+        JsonReader reader = new JsonReader(new InputStreamReader(body, "UTF-8"));
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            throw new IllegalArgumentException("an array of [lon, lat] is expected");
+        }
+        reader.beginArray();
+        double[] lons = new double[64];
+        double[] lats = new double[64];
+        int size = 0;
+        while (reader.hasNext()) {
+            if (size == max) {
+                throw new IllegalArgumentException("too many points, " + max + " at most");
+            }
+            if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+                throw new IllegalArgumentException("point " + size + " is not a [lon, lat] position");
+            }
+            reader.beginArray();
+            if (!reader.hasNext() || reader.peek() != JsonToken.NUMBER) {
+                throw new IllegalArgumentException("point " + size + " is not a [lon, lat] position");
+            }
+            double lon = reader.nextDouble();
+            if (!reader.hasNext() || reader.peek() != JsonToken.NUMBER) {
+                throw new IllegalArgumentException("point " + size + " is not a [lon, lat] position");
+            }
+            double lat = reader.nextDouble();
+            // an altitude is ignored
+            while (reader.hasNext()) {
+                reader.skipValue();
+            }
+            reader.endArray();
+            if (size == lons.length) {
+                lons = Arrays.copyOf(lons, Math.min(max, 2 * size));
+                lats = Arrays.copyOf(lats, lons.length);
+            }
+            lons[size] = lon;
+            lats[size] = lat;
+            size++;
+        }
+        reader.endArray();
+        return new SnapBatch(Arrays.copyOf(lons, size), Arrays.copyOf(lats, size));
+    }
+
+}
@@ -0,0 +1,105 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server;
+
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.neo4j.gis.spatial.SpatialDatabaseService;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+
+import fr.mobilit.neo4j.server.pojo.POI;
+import fr.mobilit.neo4j.server.service.StationCatchment;
+import fr.mobilit.neo4j.server.utils.SpatialUtils;
+
+/**
+ * Neo4j REST interface on cycle stations.
+ * 
+ * @author bsimard
+ * 
+ */
+@Path("/station")
+public class Station {
+
+    /**
+     * Spatial database.
+     */
+    private final SpatialDatabaseService spatial;
+
+    /**
+     * Constructor.
+     * 
+     * @param db
+     */
+    public Station(@Context GraphDatabaseService db) {
+        this.spatial = new SpatialDatabaseService(db);
+    }
+
+    /**
+     * Nearest cycle station on foot, as a GeoJSON Feature with the walking time (in hour).
+     */
+    @GET
+    @Produces({ MediaType.APPLICATION_JSON })
+    @Path("/nearest")
+    public Response nearest(@QueryParam("lat") Double lat, @QueryParam("long") Double lon) {
+        try {
+            StationCatchment.Catchment catchment = StationCatchment.getInstance().getCatchment();
+            if (catchment == null) {
+                return Response.status(Status.SERVICE_UNAVAILABLE).entity("Station catchment is not computed yet")
+                        .build();
+            }
+            Node node = new SpatialUtils(spatial).findNearestWay(lat, lon);
+            POI station = catchment.getStation(node.getId());
+            if (station == null) {
+                return Response.status(Status.NOT_FOUND).entity("No station in walking distance").build();
+            }
+            //@formatter:off
+            String json = "{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":["
+                    + station.getGeoPoint().getLongitude() + "," + station.getGeoPoint().getLatitude() + "]},"
+                    + "\"properties\":{\"id\":\"" + station.getId() + "\",\"geocode\":\"" + station.getGeocode() + "\","
+                    + "\"time\":" + catchment.getWalkingTime(node.getId()) + "}}";
+            //@formatter:on
+            return Response.status(Status.OK).entity(json).build();
+        } catch (Exception e) {
+            return Response.status(Status.INTERNAL_SERVER_ERROR).entity(e.getMessage() + " :" + e.getCause()).build();
+        }
+    }
+
+    /**
+     * Walking time coverage of the cycle stations, aggregated in cells of <code>cell</code> degree.
+     */
+    @GET
+    @Produces({ MediaType.APPLICATION_JSON })
+    @Path("/coverage")
+    public Response coverage(@QueryParam("cell") @DefaultValue("0.002") Double cell) {
+        StationCatchment.Catchment catchment = StationCatchment.getInstance().getCatchment();
+        if (catchment == null) {
+            return Response.status(Status.SERVICE_UNAVAILABLE).entity("Station catchment is not computed yet").build();
+        }
+        return Response.status(Status.OK).entity(catchment.toCoverageGeoJSON(cell)).build();
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+
+import fr.mobilit.neo4j.server.service.RoutingService;
+import fr.mobilit.neo4j.server.service.TileService;
+
+/**
+ * Neo4j REST interface on the counters of the routing caches, to follow them without reading the logs.
+ * 
+ * @author bsimard
+ * 
+ */
+@Path("/stats")
+public class Stats {
+
+    private final GraphDatabaseService db;
+
+    /**
+     * Constructor.
+     * 
+     * @param db
+     */
+    public Stats(@Context GraphDatabaseService db) {
+        this.db = db;
+    }
+
+    /**
+     * Counters of the loaded routing shards (snap cache, or tiles of a tiled shard) and of the vector tile cache.
+     */
+    @GET
+    @Produces({ MediaType.APPLICATION_JSON })
+    public Response stats() {
+        try {
+            String json = "{\"routing\":" + RoutingService.getInstance(db).getStats() + ",\"tiles\":"
+                    + TileService.getInstance().getStats() + "}";
+            return Response.status(Status.OK).entity(json).build();
+        } catch (Exception e) {
+            return Response.status(Status.INTERNAL_SERVER_ERROR).entity(e.getMessage() + " :" + e.getCause()).build();
+        }
+    }
+
+}
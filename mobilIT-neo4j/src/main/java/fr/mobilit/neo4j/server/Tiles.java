@@ -0,0 +1,77 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+
+import fr.mobilit.neo4j.server.service.TileService;
+import fr.mobilit.neo4j.server.utils.Constant;
+
+/**
+ * Neo4j REST interface for the vector tiles of the road network and of the stations.
+ * 
+ * @author bsimard
+ * 
+ */
+@Path("/tiles")
+public class Tiles {
+
+    public static final String         MVT_TYPE = "application/vnd.mapbox-vector-tile";
+
+    private final GraphDatabaseService db;
+
+    /**
+     * Constructor.
+     * 
+     * @param db
+     */
+    public Tiles(@Context GraphDatabaseService db) {
+        this.db = db;
+    }
+
+    /**
+     * Mapbox vector tile, with the layers <code>roads</code> and <code>stations</code> (see <code>TileService</code>).
+     */
+    @GET
+    @Produces({ MVT_TYPE })
+    @Path("/{z}/{x}/{y}.mvt")
+    public Response tile(@PathParam("z") int z, @PathParam("x") int x, @PathParam("y") int y) {
+        if (z < 0 || z > 22 || x < 0 || y < 0 || x >= (1 << z) || y >= (1 << z)) {
+            return Response.status(Status.NOT_FOUND).entity("No tile " + z + "/" + x + "/" + y).build();
+        }
+        try {
+            CacheControl cache = new CacheControl();
+            cache.setMaxAge(Constant.TILE_MAX_AGE);
+            return Response.status(Status.OK).entity(TileService.getInstance().getTile(db, z, x, y))
+                    .cacheControl(cache).build();
+        } catch (Exception e) {
+            return Response.status(Status.INTERNAL_SERVER_ERROR).entity(e.getMessage() + " :" + e.getCause()).build();
+        }
+    }
+
+}
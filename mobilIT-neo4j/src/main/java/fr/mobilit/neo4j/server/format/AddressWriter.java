@@ -0,0 +1,134 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.format;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.List;
+
+import fr.mobilit.neo4j.server.geocoding.Address;
+
+/**
+ * JSON response of the geocoder : an object by address, or <code>null</code> if there is none, and an array of them
+ * for a search.
+ * 
+ * <pre>
+ * {"street":"Rue Racine","number":"12","lon":-1.5555,"lat":47.2102,"distance":3.1}
+ * </pre>
+ * 
+ * The distance is from the searched position to the address, in meters.
+ * 
+ * @author bsimard
+ * 
+ */
+public class AddressWriter {
+
+    /**
+     * Write an address.
+     * 
+     * @param address
+     * @param out
+     * @throws IOException
+     */
+    public static void write(Address address, Writer out) throws IOException {
+        if (address == null) {
+            out.write("null");
+            return;
+        }
+        out.write("{\"street\":");
+        Json.quote(out, address.getStreet());
+        out.write(",\"number\":");
+        Json.quote(out, address.getNumber());
+        out.write(",\"lon\":");
+        Json.number(out, address.getLongitude());
+        out.write(",\"lat\":");
+        Json.number(out, address.getLatitude());
+        out.write(",\"distance\":");
+        Json.number(out, address.getDistance());
+        out.write('}');
+    }
+
+    /**
+     * Write a list of addresses.
+     * 
+     * @param addresses
+     * @param out
+     * @throws IOException
+     */
+    public static void write(List<Address> addresses, Writer out) throws IOException {
+        out.write('[');
+        for (int i = 0; i < addresses.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            write(addresses.get(i), out);
+        }
+        out.write(']');
+    }
+
+    /**
+     * Write the results of a batch : an array with the list of addresses of each query.
+     * 
+     * @param results
+     * @param out
+     * @throws IOException
+     */
+    public static void writeBatch(List<List<Address>> results, Writer out) throws IOException {
+        out.write('[');
+        for (int i = 0; i < results.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            write(results.get(i), out);
+        }
+        out.write(']');
+    }
+
+    /**
+     * @param address
+     * @return the JSON of an address.
+     */
+    public static String toString(Address address) {
+        StringWriter out = new StringWriter();
+        try {
+            write(address, out);
+        } catch (IOException e) {
+            // not with a StringWriter
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * @param addresses
+     * @return the JSON of a list of addresses.
+     */
+    public static String toString(List<Address> addresses) {
+        StringWriter out = new StringWriter();
+        try {
+            write(addresses, out);
+        } catch (IOException e) {
+            // not with a StringWriter
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+}
@@ -0,0 +1,184 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.format;
+
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.mobilit.neo4j.server.pojo.POI;
+
+/**
+ * Compact binary response for the mobile applications. All integers are unsigned varints (7 bits by byte, low bits
+ * first), signed ones are zigzag encoded, strings are their UTF-8 length then bytes, and floats are IEEE 754 on 4
+ * bytes (big endian) :
+ * 
+ * <pre>
+ * 'M' 'R' version(1 byte)
+ * precision
+ * name count, names            (the leg names, each one only once)
+ * leg count, legs :
+ *     name index + 1           (0 if the leg has no name)
+ *     distance (float), cost (float)
+ *     point count, points :
+ *         zigzag longitude delta, zigzag latitude delta
+ * poi count, pois :
+ *     name, zigzag longitude, zigzag latitude
+ * </pre>
+ * 
+ * Coordinates are rounded to <code>10^-precision</code> degree, and each point is the delta from the previous point of
+ * the route (the first one from 0,0), through the legs.
+ * 
+ * @author bsimard
+ * 
+ */
+public class BinaryRouteEncoder {
+
+    public static final byte VERSION = 1;
+
+    private byte[]           buffer;
+    private int              size    = 0;
+
+    private BinaryRouteEncoder(int capacity) {
+        this.buffer = new byte[capacity];
+    }
+
+    /**
+     * Encode a route.
+     * 
+     * @param route
+     * @param pois points of interest of the route, or <code>null</code>
+     * @param precision number of decimals of the coordinates
+     * @return
+     */
+    public static byte[] encode(RouteSource route, List<POI> pois, int precision) {
+        int legs = route.getLegCount();
+        BinaryRouteEncoder out = new BinaryRouteEncoder(64 + legs * 16);
+        out.write('M');
+        out.write('R');
+        out.write(VERSION);
+        out.writeVarint(precision);
+
+        // names table
+        Map<String, Integer> names = new HashMap<String, Integer>();
+        int[] nameIndex = new int[legs];
+        BinaryRouteEncoder table = new BinaryRouteEncoder(256);
+        for (int leg = 0; leg < legs; leg++) {
+            String name = route.getName(leg);
+            if (name != null) {
+                Integer index = names.get(name);
+                if (index == null) {
+                    index = names.size();
+                    names.put(name, index);
+                    table.writeString(name);
+                }
+                nameIndex[leg] = index + 1;
+            }
+        }
+        out.writeVarint(names.size());
+        out.write(table.buffer, table.size);
+
+        // legs
+        double scale = Math.pow(10, precision);
+        long lastLon = 0;
+        long lastLat = 0;
+        out.writeVarint(legs);
+        for (int leg = 0; leg < legs; leg++) {
+            out.writeVarint(nameIndex[leg]);
+            out.writeFloat((float) route.getDistance(leg));
+            out.writeFloat((float) route.getCost(leg));
+            int points = route.getPointCount(leg);
+            out.writeVarint(points);
+            for (int point = 0; point < points; point++) {
+                long lon = Math.round(route.getLongitude(leg, point) * scale);
+                long lat = Math.round(route.getLatitude(leg, point) * scale);
+                out.writeZigzag(lon - lastLon);
+                out.writeZigzag(lat - lastLat);
+                lastLon = lon;
+                lastLat = lat;
+            }
+        }
+
+        // pois
+        out.writeVarint(pois == null ? 0 : pois.size());
+        if (pois != null) {
+            for (POI poi : pois) {
+                out.writeString(poi.getName() == null ? "" : poi.getName());
+                out.writeZigzag(Math.round(poi.getGeoPoint().getLongitude() * scale));
+                out.writeZigzag(Math.round(poi.getGeoPoint().getLatitude() * scale));
+            }
+        }
+        byte[] bytes = new byte[out.size];
+        System.arraycopy(out.buffer, 0, bytes, 0, out.size);
+        return bytes;
+    }
+
+    private void ensure(int length) {
+        if (size + length > buffer.length) {
+            byte[] grown = new byte[Math.max(buffer.length * 2, size + length)];
+            System.arraycopy(buffer, 0, grown, 0, size);
+            buffer = grown;
+        }
+    }
+
+    private void write(int b) {
+        ensure(1);
+        buffer[size++] = (byte) b;
+    }
+
+    private void write(byte[] bytes, int length) {
+        ensure(length);
+        System.arraycopy(bytes, 0, buffer, size, length);
+        size += length;
+    }
+
+    private void writeVarint(long value) {
+        ensure(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+    }
+
+    private void writeZigzag(long value) {
+        writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    private void writeFloat(float value) {
+        int bits = Float.floatToIntBits(value);
+        ensure(4);
+        buffer[size++] = (byte) (bits >>> 24);
+        buffer[size++] = (byte) (bits >>> 16);
+        buffer[size++] = (byte) (bits >>> 8);
+        buffer[size++] = (byte) bits;
+    }
+
+    private void writeString(String value) {
+        try {
+            byte[] bytes = value.getBytes("UTF-8");
+            writeVarint(bytes.length);
+            write(bytes, bytes.length);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.format;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.List;
+
+import fr.mobilit.neo4j.server.pojo.POI;
+
+/**
+ * GeoJSON response, written in one pass : a FeatureCollection with a Point feature by point of interest, then a
+ * LineString feature by leg.
+ * 
+ * <pre>
+ * {"type":"FeatureCollection","features":[
+ *  {"type":"Feature","geometry":{"type":"Point","coordinates":[-1.556,47.213]},
+ *   "properties":{"name":"Commerce","length":0,"time":0}},
+ *  {"type":"Feature","geometry":{"type":"LineString","coordinates":[[-1.55,47.2],[-1.549,47.2]]},
+ *   "properties":{"name":"Rue Racine","length":0.12,"time":0.01}}, ...]}
+ * </pre>
+ * 
+ * @author bsimard
+ * 
+ */
+public class GeoJsonWriter {
+
+    /**
+     * Write a route.
+     * 
+     * @param route
+     * @param pois points of interest of the route, or <code>null</code>
+     * @param out
+     * @throws IOException
+     */
+    public static void write(RouteSource route, List<POI> pois, Writer out) throws IOException {
+        out.write("{\"type\":\"FeatureCollection\",\"features\":[");
+        boolean first = true;
+        if (pois != null) {
+            for (POI poi : pois) {
+                if (!first) {
+                    out.write(',');
+                }
+                first = false;
+                out.write("{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[");
+                Json.number(out, poi.getGeoPoint().getLongitude());
+                out.write(',');
+                Json.number(out, poi.getGeoPoint().getLatitude());
+                out.write("]},\"properties\":{\"name\":");
+                Json.quote(out, poi.getName());
+                out.write(",\"length\":0,\"time\":0}}");
+            }
+        }
+        for (int leg = 0; leg < route.getLegCount(); leg++) {
+            if (!first) {
+                out.write(',');
+            }
+            first = false;
+            out.write("{\"type\":\"Feature\",\"geometry\":{\"type\":\"LineString\",\"coordinates\":[");
+            for (int point = 0; point < route.getPointCount(leg); point++) {
+                if (point > 0) {
+                    out.write(',');
+                }
+                out.write('[');
+                Json.number(out, route.getLongitude(leg, point));
+                out.write(',');
+                Json.number(out, route.getLatitude(leg, point));
+                out.write(']');
+            }
+            out.write("]},\"properties\":{\"name\":");
+            Json.quote(out, route.getName(leg));
+            out.write(",\"length\":");
+            Json.number(out, route.getDistance(leg));
+            out.write(",\"time\":");
+            Json.number(out, route.getCost(leg));
+            out.write("}}");
+        }
+        out.write("]}");
+    }
+
+    /**
+     * @param route
+     * @param pois points of interest of the route, or <code>null</code>
+     * @return the GeoJSON of a route.
+     */
+    public static String toString(RouteSource route, List<POI> pois) {
+        StringWriter out = new StringWriter();
+        try {
+            write(route, pois, out);
+        } catch (IOException e) {
+            // not with a StringWriter
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+}
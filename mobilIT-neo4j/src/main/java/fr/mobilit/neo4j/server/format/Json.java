@@ -0,0 +1,94 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.format;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * JSON values for the response writers.
+ * 
+ * @author bsimard
+ * 
+ */
+class Json {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Write a JSON number, <code>null</code> if it's not a finite one.
+     */
+    static void number(Writer out, double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            out.write("null");
+        }
+        else {
+            out.write(Double.toString(value));
+        }
+    }
+
+    /**
+     * Write a JSON number, <code>null</code> if there is none.
+     */
+    static void number(Writer out, Double value) throws IOException {
+        number(out, value == null ? Double.NaN : value.doubleValue());
+    }
+
+    /**
+     * Write a JSON string, <code>null</code> if there is none.
+     */
+    static void quote(Writer out, String value) throws IOException {
+        if (value == null) {
+            out.write("null");
+            return;
+        }
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.write("\\u00");
+                        out.write(HEX[c >> 4]);
+                        out.write(HEX[c & 0xF]);
+                    }
+                    else {
+                        out.write(c);
+                    }
+            }
+        }
+        out.write('"');
+    }
+
+}
@@ -0,0 +1,141 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.format;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.List;
+
+import fr.mobilit.neo4j.server.pojo.POI;
+
+/**
+ * JSON response with the line of each leg as an encoded polyline (the Google algorithm : zigzag deltas of the rounded
+ * coordinates, by chunks of 5 bits). Latitude comes first in each pair, as in the original format.
+ * 
+ * <pre>
+ * {"precision":5,
+ *  "legs":[{"name":"Rue Racine","length":0.12,"time":0.01,"polyline":"_p~iF~ps|U_ulLnnqC"}, ...],
+ *  "pois":[{"name":"Commerce","coordinates":[-1.556,47.213]}, ...]}
+ * </pre>
+ * 
+ * The <code>pois</code> member is only there for the searches that return some.
+ * 
+ * @author bsimard
+ * 
+ */
+public class PolylineEncoder {
+
+    public static final int DEFAULT_PRECISION = 5;
+
+    /**
+     * Encode a route.
+     * 
+     * @param route
+     * @param pois points of interest of the route, or <code>null</code>
+     * @param precision number of decimals of the coordinates
+     * @param out
+     * @throws IOException
+     */
+    public static void write(RouteSource route, List<POI> pois, int precision, Writer out) throws IOException {
+        double scale = Math.pow(10, precision);
+        out.write("{\"precision\":");
+        out.write(Integer.toString(precision));
+        out.write(",\"legs\":[");
+        for (int leg = 0; leg < route.getLegCount(); leg++) {
+            if (leg > 0) {
+                out.write(',');
+            }
+            out.write("{\"name\":");
+            Json.quote(out, route.getName(leg));
+            out.write(",\"length\":");
+            Json.number(out, route.getDistance(leg));
+            out.write(",\"time\":");
+            Json.number(out, route.getCost(leg));
+            out.write(",\"polyline\":\"");
+            long lastLat = 0;
+            long lastLon = 0;
+            for (int point = 0; point < route.getPointCount(leg); point++) {
+                long lat = Math.round(route.getLatitude(leg, point) * scale);
+                long lon = Math.round(route.getLongitude(leg, point) * scale);
+                polyline(out, lat - lastLat);
+                polyline(out, lon - lastLon);
+                lastLat = lat;
+                lastLon = lon;
+            }
+            out.write("\"}");
+        }
+        out.write(']');
+        if (pois != null) {
+            out.write(",\"pois\":[");
+            for (int i = 0; i < pois.size(); i++) {
+                POI poi = pois.get(i);
+                if (i > 0) {
+                    out.write(',');
+                }
+                out.write("{\"name\":");
+                Json.quote(out, poi.getName());
+                out.write(",\"coordinates\":[");
+                Json.number(out, poi.getGeoPoint().getLongitude());
+                out.write(',');
+                Json.number(out, poi.getGeoPoint().getLatitude());
+                out.write("]}");
+            }
+            out.write(']');
+        }
+        out.write('}');
+    }
+
+    /**
+     * @param route
+     * @param pois points of interest of the route, or <code>null</code>
+     * @param precision number of decimals of the coordinates
+     * @return the encoded route.
+     */
+    public static String encode(RouteSource route, List<POI> pois, int precision) {
+        StringWriter out = new StringWriter(64 + route.getLegCount() * 64);
+        try {
+            write(route, pois, precision, out);
+        } catch (IOException e) {
+            // not with a StringWriter
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Write an encoded value. The characters are all between '?' and '~', only the backslash must be escaped in JSON.
+     */
+    static void polyline(Writer out, long value) throws IOException {
+        long zigzag = value < 0 ? ~(value << 1) : (value << 1);
+        while (zigzag >= 0x20) {
+            write(out, (char) ((0x20 | (zigzag & 0x1F)) + 63));
+            zigzag >>>= 5;
+        }
+        write(out, (char) (zigzag + 63));
+    }
+
+    private static void write(Writer out, char c) throws IOException {
+        if (c == '\\') {
+            out.write('\\');
+        }
+        out.write(c);
+    }
+
+}
@@ -0,0 +1,159 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.format;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+import fr.mobilit.neo4j.server.pojo.POI;
+import fr.mobilit.neo4j.server.utils.RoutingConstant;
+
+/**
+ * Formats of the search responses, chosen with the <code>Accept</code> header of the request.
+ * 
+ * @author bsimard
+ * 
+ */
+public enum RouteFormat {
+
+    /**
+     * GeoJSON FeatureCollection, one feature by leg (the default one).
+     */
+    GEOJSON("application/json") {
+
+        @Override
+        public void write(RouteSource route, List<POI> pois, Integer precision, OutputStream out)
+                throws IOException {
+            Writer writer = writer(out);
+            GeoJsonWriter.write(route, pois, writer);
+            writer.flush();
+        }
+    },
+
+    /**
+     * JSON with encoded polylines, see <code>PolylineEncoder</code>.
+     */
+    POLYLINE(RoutingConstant.SEARCH_POLYLINE_TYPE) {
+
+        @Override
+        public void write(RouteSource route, List<POI> pois, Integer precision, OutputStream out)
+                throws IOException {
+            Writer writer = writer(out);
+            PolylineEncoder.write(route, pois,
+                    precision == null ? PolylineEncoder.DEFAULT_PRECISION : precision, writer);
+            writer.flush();
+        }
+    },
+
+    /**
+     * Binary route, see <code>BinaryRouteEncoder</code>.
+     */
+    BINARY(RoutingConstant.SEARCH_BINARY_TYPE) {
+
+        @Override
+        public void write(RouteSource route, List<POI> pois, Integer precision, OutputStream out)
+                throws IOException {
+            out.write(BinaryRouteEncoder.encode(route, pois,
+                    precision == null ? RoutingConstant.ROUTING_COORDINATE_PRECISION : precision));
+        }
+    };
+
+    private final String mediaType;
+
+    private RouteFormat(String mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    /**
+     * @return the content type of the format.
+     */
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * Write a search result. The stream is flushed but not closed, so a response can hold several results.
+     * 
+     * @param route
+     * @param pois points of interest of the search, or <code>null</code>
+     * @param precision number of decimals of the coordinates, <code>null</code> for the default one of the format
+     * @param out
+     * @throws IOException
+     */
+    public abstract void write(RouteSource route, List<POI> pois, Integer precision, OutputStream out)
+            throws IOException;
+
+    private static Writer writer(OutputStream out) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(out, "UTF-8"), 8192);
+    }
+
+    /**
+     * Choose the format of a response : the allowed format with the best quality in the <code>Accept</code> header, the
+     * first allowed one if there is no header or no format in it.
+     * 
+     * @param accept value of the <code>Accept</code> header, or <code>null</code>
+     * @param allowed formats of the resource, by preference
+     * @return
+     */
+    public static RouteFormat negotiate(String accept, RouteFormat... allowed) {
+        RouteFormat best = allowed[0];
+        if (accept == null) {
+            return best;
+        }
+        double bestQuality = -1;
+        for (String range : accept.split(",")) {
+            String[] params = range.split(";");
+            String type = params[0].trim().toLowerCase();
+            double quality = 1;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (quality <= bestQuality || quality <= 0) {
+                continue;
+            }
+            for (RouteFormat format : allowed) {
+                if (format.accepts(type)) {
+                    best = format;
+                    bestQuality = quality;
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    private boolean accepts(String range) {
+        if (range.equals("*/*") || range.equals(mediaType)) {
+            return true;
+        }
+        return range.endsWith("/*") && mediaType.startsWith(range.substring(0, range.length() - 1));
+    }
+
+}
@@ -0,0 +1,73 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.format;
+
+/**
+ * Read-only view of a route result, leg by leg, so the response encoders read the coordinates without building any
+ * intermediate object.
+ * 
+ * @author bsimard
+ * 
+ */
+public interface RouteSource {
+
+    /**
+     * @return number of legs (ie. fragments) of the route.
+     */
+    int getLegCount();
+
+    /**
+     * @param leg
+     * @return name of the leg, or <code>null</code>.
+     */
+    String getName(int leg);
+
+    /**
+     * @param leg
+     * @return distance of the leg, <code>NaN</code> if unknown.
+     */
+    double getDistance(int leg);
+
+    /**
+     * @param leg
+     * @return cost of the leg, <code>NaN</code> if unknown.
+     */
+    double getCost(int leg);
+
+    /**
+     * @param leg
+     * @return number of points of the leg line.
+     */
+    int getPointCount(int leg);
+
+    /**
+     * @param leg
+     * @param point
+     * @return longitude of a point of the leg line.
+     */
+    double getLongitude(int leg, int point);
+
+    /**
+     * @param leg
+     * @param point
+     * @return latitude of a point of the leg line.
+     */
+    double getLatitude(int leg, int point);
+
+}
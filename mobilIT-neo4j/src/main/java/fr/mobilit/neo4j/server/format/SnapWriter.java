@@ -0,0 +1,76 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.format;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import fr.mobilit.neo4j.server.routing.SnapBatch;
+
+/**
+ * JSON response of a batch of snaps : an array with an object by point, in the order of the request, or
+ * <code>null</code> for a point that can't be snapped.
+ * 
+ * <pre>
+ * [{"node":4242,"lon":-1.5555,"lat":47.2102,"name":"Rue Racine","offset":12.5,"distance":3.1},null, ...]
+ * </pre>
+ * 
+ * The node is the nearest end of the street, the offset is the distance from it to the projection along the street,
+ * and the distance is from the point to the street (both in meters).
+ * 
+ * @author bsimard
+ * 
+ */
+public class SnapWriter {
+
+    /**
+     * Write a batch of snaps.
+     * 
+     * @param batch
+     * @param out
+     * @throws IOException
+     */
+    public static void write(SnapBatch batch, Writer out) throws IOException {
+        out.write('[');
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            if (!batch.isSnapped(i)) {
+                out.write("null");
+                continue;
+            }
+            out.write("{\"node\":");
+            out.write(Long.toString(batch.getNodeId(i)));
+            out.write(",\"lon\":");
+            Json.number(out, batch.getSnappedLongitude(i));
+            out.write(",\"lat\":");
+            Json.number(out, batch.getSnappedLatitude(i));
+            out.write(",\"name\":");
+            Json.quote(out, batch.getName(i));
+            out.write(",\"offset\":");
+            Json.number(out, batch.getOffset(i));
+            out.write(",\"distance\":");
+            Json.number(out, batch.getDistance(i));
+            out.write('}');
+        }
+        out.write(']');
+    }
+
+}
@@ -0,0 +1,136 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.format;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.namespace.QName;
+import javax.xml.transform.stream.StreamSource;
+
+import fr.mobilit.neo4j.server.exception.MobilITException;
+import fr.mobilit.neo4j.server.utils.JaxbPool;
+
+/**
+ * JAX-RS reader and writer of the OpenLS documents, with the shared context and the pooled (un)marshallers of the
+ * <code>JaxbPool</code>, instead of a JAXB context by resource. A response type that isn't a root element (ie.
+ * <code>GeocodeResponseType</code>) is written as the element of its name.
+ * 
+ * @author bsimard
+ * 
+ */
+@Provider
+@Consumes({ MediaType.APPLICATION_XML, MediaType.TEXT_XML })
+@Produces({ MediaType.APPLICATION_XML, MediaType.TEXT_XML })
+public class XlsProvider implements MessageBodyReader<Object>, MessageBodyWriter<Object> {
+
+    private static final String XLS_NAMESPACE = "http://www.opengis.net/xls";
+    private static final String XLS_PACKAGE   = "net.opengis.";
+
+    private static boolean isXls(Class<?> type, Type genericType) {
+        if (JAXBElement.class.equals(type)) {
+            // a raw element : its content type is unknown, left to the default JAXB provider
+            if (!(genericType instanceof ParameterizedType)) {
+                return false;
+            }
+            Type value = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+            return value instanceof Class && ((Class<?>) value).getName().startsWith(XLS_PACKAGE);
+        }
+        return type.getName().startsWith(XLS_PACKAGE);
+    }
+
+    @Override
+    public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return isXls(type, genericType);
+    }
+
+    @Override
+    public Object readFrom(Class<Object> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+            MultivaluedMap<String, String> httpHeaders, InputStream entityStream) throws IOException {
+        try {
+            JaxbPool pool = JaxbPool.getInstance();
+            Unmarshaller unmarshaller = pool.borrowUnmarshaller();
+            try {
+                if (JAXBElement.class.equals(type) && genericType instanceof ParameterizedType) {
+                    Class<?> declared = (Class<?>) ((ParameterizedType) genericType).getActualTypeArguments()[0];
+                    return unmarshaller.unmarshal(new StreamSource(entityStream), declared);
+                }
+                return unmarshaller.unmarshal(new StreamSource(entityStream));
+            } finally {
+                pool.release(unmarshaller);
+            }
+        } catch (JAXBException e) {
+            throw new WebApplicationException(e, Status.BAD_REQUEST);
+        } catch (MobilITException e) {
+            throw new WebApplicationException(e, Status.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return isXls(type, genericType);
+    }
+
+    @Override
+    public long getSize(Object value, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void writeTo(Object value, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+            MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException {
+        try {
+            JaxbPool pool = JaxbPool.getInstance();
+            Object element = value;
+            if (!pool.getContext().createJAXBIntrospector().isElement(value)) {
+                String name = value.getClass().getSimpleName().replaceFirst("Type$", "");
+                element = new JAXBElement(new QName(XLS_NAMESPACE, name), value.getClass(), value);
+            }
+            Marshaller marshaller = pool.borrowMarshaller();
+            try {
+                marshaller.marshal(element, entityStream);
+            } finally {
+                pool.release(marshaller);
+            }
+        } catch (JAXBException e) {
+            throw new WebApplicationException(e, Status.INTERNAL_SERVER_ERROR);
+        } catch (MobilITException e) {
+            throw new WebApplicationException(e, Status.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+}
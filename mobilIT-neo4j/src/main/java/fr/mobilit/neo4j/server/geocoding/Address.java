@@ -0,0 +1,72 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.geocoding;
+
+/**
+ * A geocoded address : a street, a house number if one is known, and its position.
+ * 
+ * @author bsimard
+ * 
+ */
+public class Address {
+
+    private final String street;
+    private final String number;
+    private final double longitude;
+    private final double latitude;
+    private final double distance;
+
+    /**
+     * Constructor.
+     * 
+     * @param street name of the street, or <code>null</code>
+     * @param number house number, or <code>null</code>
+     * @param longitude
+     * @param latitude
+     * @param distance distance from the searched position, in meters (0 if there is none)
+     */
+    public Address(String street, String number, double longitude, double latitude, double distance) {
+        this.street = street;
+        this.number = number;
+        this.longitude = longitude;
+        this.latitude = latitude;
+        this.distance = distance;
+    }
+
+    public String getStreet() {
+        return street;
+    }
+
+    public String getNumber() {
+        return number;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+}
@@ -0,0 +1,356 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.geocoding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.mobilit.neo4j.server.routing.EdgeGrid;
+import fr.mobilit.neo4j.server.utils.LongIntHashMap;
+
+/**
+ * Collect the named streets and the addresses of the OSM data, then build the <code>AddressIndex</code>. Streets are
+ * kept by name, with the segments of all their ways. For the name search, the ways of a name are also grouped in
+ * streets : the connected ways, and the ones closer than a gap (a street cut by a square, or a dual carriageway), so
+ * the same name in two towns gives two streets.
+ * 
+ * @author bsimard
+ * 
+ */
+public class AddressBuilder {
+
+    /**
+     * Maximum number of addresses of an interpolation way : more is a tagging error.
+     */
+    public static final int            MAX_INTERPOLATION = 500;
+
+    private final double               streetGap;
+    private final Map<String, Integer> streetIds      = new HashMap<String, Integer>();
+    private final List<String>         streets        = new ArrayList<String>();
+    private double[]                   segments       = new double[1024];
+    private int[]                      segmentStreets = new int[256];
+    private int                        segmentCount   = 0;
+    private double[]                   points         = new double[512];
+    private String[]                   numbers        = new String[256];
+    private int[]                      pointStreets   = new int[256];
+    private int                        pointCount     = 0;
+
+    /**
+     * Constructor.
+     * 
+     * @param streetGap maximum distance between two ways of the same street, in meters
+     */
+    public AddressBuilder(double streetGap) {
+        this.streetGap = streetGap;
+    }
+
+    /**
+     * @param name
+     * @return the id of the street of this name, added if it's a new one.
+     */
+    public int addStreet(String name) {
+        Integer id = streetIds.get(name);
+        if (id == null) {
+            id = streets.size();
+            streetIds.put(name, id);
+            streets.add(name);
+        }
+        return id;
+    }
+
+    /**
+     * Add a segment of a street.
+     * 
+     * @param street name of the street
+     * @param lon1
+     * @param lat1
+     * @param lon2
+     * @param lat2
+     */
+    public void addSegment(String street, double lon1, double lat1, double lon2, double lat2) {
+        if (segmentCount == segmentStreets.length) {
+            segments = Arrays.copyOf(segments, segments.length * 2);
+            segmentStreets = Arrays.copyOf(segmentStreets, segmentStreets.length * 2);
+        }
+        segments[segmentCount * 4] = lon1;
+        segments[segmentCount * 4 + 1] = lat1;
+        segments[segmentCount * 4 + 2] = lon2;
+        segments[segmentCount * 4 + 3] = lat2;
+        segmentStreets[segmentCount++] = addStreet(street);
+    }
+
+    /**
+     * Add an address point.
+     * 
+     * @param number house number
+     * @param street name of the street (<code>addr:street</code>), or <code>null</code> if it isn't tagged
+     * @param lon
+     * @param lat
+     */
+    public void addAddress(String number, String street, double lon, double lat) {
+        if (pointCount == numbers.length) {
+            points = Arrays.copyOf(points, points.length * 2);
+            numbers = Arrays.copyOf(numbers, numbers.length * 2);
+            pointStreets = Arrays.copyOf(pointStreets, pointStreets.length * 2);
+        }
+        points[pointCount * 2] = lon;
+        points[pointCount * 2 + 1] = lat;
+        numbers[pointCount] = number;
+        pointStreets[pointCount++] = (street == null) ? -1 : addStreet(street);
+    }
+
+    /**
+     * Add the addresses of an interpolation way (<code>addr:interpolation</code>) : the numbers between the ones of
+     * its ends, spread along the way. The ends are address nodes, added on their own.
+     * 
+     * @param from number of the first node of the way
+     * @param to number of the last node of the way
+     * @param street name of the street, or <code>null</code>
+     * @param type <code>odd</code>, <code>even</code> or <code>all</code> (other types, ie. alphabetic, are ignored)
+     * @param coordinates of the way, lon and lat of each node
+     * @return number of added addresses
+     */
+    public int addInterpolation(String from, String to, String street, String type, double[] coordinates) {
+        int first = AddressIndex.numberValue(from);
+        int last = AddressIndex.numberValue(to);
+        int step = "all".equals(type) ? 1 : ("odd".equals(type) || "even".equals(type)) ? 2 : 0;
+        if (first < 0 || last < 0 || step == 0 || first == last || coordinates.length < 4
+                || Math.abs(last - first) / step > MAX_INTERPOLATION) {
+            return 0;
+        }
+        int nodes = coordinates.length / 2;
+        double[] lengths = new double[nodes];
+        for (int i = 1; i < nodes; i++) {
+            lengths[i] = lengths[i - 1]
+                    + PackedTree.distance(coordinates[i * 2 - 2], coordinates[i * 2 - 1], coordinates[i * 2],
+                            coordinates[i * 2 + 1], coordinates[i * 2], coordinates[i * 2 + 1]);
+        }
+        if (lengths[nodes - 1] == 0) {
+            return 0;
+        }
+        int direction = (last > first) ? step : -step;
+        int count = 0;
+        int node = 1;
+        for (int number = first + direction; direction > 0 ? number < last : number > last; number += direction) {
+            double length = lengths[nodes - 1] * (number - first) / (last - first);
+            while (node < nodes - 1 && lengths[node] < length) {
+                node++;
+            }
+            double part = lengths[node] - lengths[node - 1];
+            double fraction = (part == 0) ? 0 : (length - lengths[node - 1]) / part;
+            addAddress(Integer.toString(number), street, coordinates[node * 2 - 2] + fraction
+                    * (coordinates[node * 2] - coordinates[node * 2 - 2]), coordinates[node * 2 - 1] + fraction
+                    * (coordinates[node * 2 + 1] - coordinates[node * 2 - 1]));
+            count++;
+        }
+        return count;
+    }
+
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    public int getAddressCount() {
+        return pointCount;
+    }
+
+    /**
+     * @return the index.
+     */
+    public AddressIndex build() {
+        int[] parents = new int[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            parents[i] = i;
+        }
+
+        // segments by name
+        int[] nameStart = new int[streets.size() + 1];
+        for (int i = 0; i < segmentCount; i++) {
+            nameStart[segmentStreets[i] + 1]++;
+        }
+        for (int name = 0; name < streets.size(); name++) {
+            nameStart[name + 1] += nameStart[name];
+        }
+        int[] byName = new int[segmentCount];
+        int[] next = Arrays.copyOf(nameStart, streets.size());
+        for (int i = 0; i < segmentCount; i++) {
+            byName[next[segmentStreets[i]]++] = i;
+        }
+
+        for (int name = 0; name < streets.size(); name++) {
+            int from = nameStart[name];
+            int to = nameStart[name + 1];
+            // connected ways : segments sharing an end
+            LongIntHashMap ends = new LongIntHashMap(2 * (to - from));
+            for (int i = from; i < to; i++) {
+                int segment = byName[i];
+                for (int end = 0; end < 2; end++) {
+                    long key = key(segments[segment * 4 + end * 2], segments[segment * 4 + end * 2 + 1]);
+                    int other = ends.get(key);
+                    if (other == LongIntHashMap.NO_VALUE) {
+                        ends.put(key, segment);
+                    }
+                    else {
+                        union(parents, segment, other);
+                    }
+                }
+            }
+            // close parts
+            LongIntHashMap partByRoot = new LongIntHashMap(to - from);
+            int[] roots = new int[to - from];
+            double[] boxes = new double[(to - from) * 4];
+            int parts = 0;
+            for (int i = from; i < to; i++) {
+                int root = find(parents, byName[i]);
+                int part = partByRoot.get(root);
+                if (part == LongIntHashMap.NO_VALUE) {
+                    part = parts++;
+                    partByRoot.put(root, part);
+                    roots[part] = root;
+                    boxes[part * 4] = boxes[part * 4 + 1] = Double.POSITIVE_INFINITY;
+                    boxes[part * 4 + 2] = boxes[part * 4 + 3] = Double.NEGATIVE_INFINITY;
+                }
+                extend(boxes, part, byName[i]);
+            }
+            for (int a = 0; a < parts; a++) {
+                for (int b = a + 1; b < parts; b++) {
+                    if (gap(boxes, a, b) <= streetGap) {
+                        union(parents, roots[a], roots[b]);
+                    }
+                }
+            }
+        }
+
+        // streets of the name search
+        LongIntHashMap groupByRoot = new LongIntHashMap(streets.size());
+        int[] segmentGroups = new int[segmentCount];
+        int groupCount = 0;
+        for (int i = 0; i < segmentCount; i++) {
+            int root = find(parents, i);
+            int group = groupByRoot.get(root);
+            if (group == LongIntHashMap.NO_VALUE) {
+                group = groupCount++;
+                groupByRoot.put(root, group);
+            }
+            segmentGroups[i] = group;
+        }
+        int[] groupStreets = new int[groupCount];
+        float[] groupLengths = new float[groupCount];
+        double[] groupBoxes = new double[groupCount * 4];
+        for (int group = 0; group < groupCount; group++) {
+            groupBoxes[group * 4] = groupBoxes[group * 4 + 1] = Double.POSITIVE_INFINITY;
+            groupBoxes[group * 4 + 2] = groupBoxes[group * 4 + 3] = Double.NEGATIVE_INFINITY;
+        }
+        for (int i = 0; i < segmentCount; i++) {
+            int group = segmentGroups[i];
+            groupStreets[group] = segmentStreets[i];
+            groupLengths[group] += length(i);
+            extend(groupBoxes, group, i);
+        }
+        // position of a street : the middle of its segment nearest to the center of its box
+        double[] groupPoints = new double[groupCount * 2];
+        double[] nearest = new double[groupCount];
+        Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+        for (int i = 0; i < segmentCount; i++) {
+            int group = segmentGroups[i];
+            double lon = (segments[i * 4] + segments[i * 4 + 2]) / 2;
+            double lat = (segments[i * 4 + 1] + segments[i * 4 + 3]) / 2;
+            double centerLon = (groupBoxes[group * 4] + groupBoxes[group * 4 + 2]) / 2;
+            double centerLat = (groupBoxes[group * 4 + 1] + groupBoxes[group * 4 + 3]) / 2;
+            double distance = PackedTree.distance(lon, lat, centerLon, centerLat, centerLon, centerLat);
+            if (distance < nearest[group]) {
+                nearest[group] = distance;
+                groupPoints[group * 2] = lon;
+                groupPoints[group * 2 + 1] = lat;
+            }
+        }
+
+        // name keys of the streets
+        List<String> keys = new ArrayList<String>();
+        List<Integer> keyGroups = new ArrayList<Integer>();
+        for (int group = 0; group < groupCount; group++) {
+            String folded = NameTrie.fold(streets.get(groupStreets[group]));
+            if (folded.length() > 0) {
+                for (String key : NameTrie.suffixes(folded)) {
+                    keys.add(key);
+                    keyGroups.add(group);
+                }
+            }
+        }
+        int[] keyStreets = new int[keyGroups.size()];
+        for (int i = 0; i < keyStreets.length; i++) {
+            keyStreets[i] = keyGroups.get(i);
+        }
+        NameTrie names = new NameTrie(keys.toArray(new String[keys.size()]), keyStreets, groupLengths);
+
+        return new AddressIndex(streets.toArray(new String[streets.size()]), Arrays.copyOf(segments,
+                segmentCount * 4), Arrays.copyOf(segmentStreets, segmentCount), Arrays.copyOf(points, pointCount * 2),
+                Arrays.copyOf(numbers, pointCount), Arrays.copyOf(pointStreets, pointCount), groupStreets,
+                groupPoints, groupLengths, names);
+    }
+
+    private static long key(double lon, double lat) {
+        return (Math.round((lon + 180) * 1e6) << 29) | Math.round((lat + 90) * 1e6);
+    }
+
+    private static int find(int[] parents, int i) {
+        while (parents[i] != i) {
+            parents[i] = parents[parents[i]];
+            i = parents[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parents, int a, int b) {
+        int rootA = find(parents, a);
+        int rootB = find(parents, b);
+        if (rootA != rootB) {
+            parents[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+        }
+    }
+
+    private void extend(double[] boxes, int box, int segment) {
+        int s = segment * 4;
+        boxes[box * 4] = Math.min(boxes[box * 4], Math.min(segments[s], segments[s + 2]));
+        boxes[box * 4 + 1] = Math.min(boxes[box * 4 + 1], Math.min(segments[s + 1], segments[s + 3]));
+        boxes[box * 4 + 2] = Math.max(boxes[box * 4 + 2], Math.max(segments[s], segments[s + 2]));
+        boxes[box * 4 + 3] = Math.max(boxes[box * 4 + 3], Math.max(segments[s + 1], segments[s + 3]));
+    }
+
+    /**
+     * Distance between two boxes, in meters.
+     */
+    private static double gap(double[] boxes, int a, int b) {
+        double scale = Math.cos(Math.toRadians(boxes[a * 4 + 1])) * EdgeGrid.METERS_BY_DEGREE;
+        double dx = Math.max(0, Math.max(boxes[a * 4] - boxes[b * 4 + 2], boxes[b * 4] - boxes[a * 4 + 2])) * scale;
+        double dy = Math.max(0, Math.max(boxes[a * 4 + 1] - boxes[b * 4 + 3], boxes[b * 4 + 1] - boxes[a * 4 + 3]))
+                * EdgeGrid.METERS_BY_DEGREE;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private double length(int segment) {
+        int s = segment * 4;
+        return PackedTree.distance(segments[s], segments[s + 1], segments[s + 2], segments[s + 3], segments[s + 2],
+                segments[s + 3]);
+    }
+
+}
@@ -0,0 +1,376 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.geocoding;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable in-memory index of the streets and addresses of the OSM data, built at import time by the
+ * <code>GeocodingService</code>. Street segments and address points are in two <code>PackedTree</code>, so a reverse
+ * geocoding is two nearest searches that only visit a few leaves. Street names are in a <code>NameTrie</code>, for
+ * the prefix and fuzzy search of the geocoder.
+ * 
+ * House numbers are sorted by street and number in a compact array, so the door of a number is a binary search in the
+ * range of its street.
+ * 
+ * @author bsimard
+ * 
+ */
+public class AddressIndex {
+
+    /**
+     * Maximum distance of an address without <code>addr:street</code> to the street it's put on, in meters.
+     */
+    public static final double UNTAGGED_DISTANCE = 50;
+
+    /**
+     * Margin around a street, in meters, for its house numbers (the same name can be a street of another town).
+     */
+    public static final double STREET_MARGIN     = 100;
+
+    private static final String[] NUMBER_SUFFIXES = { "bis", "ter", "quater" };
+
+    private final String[]   streets;
+    private final double[]   segments;
+    private final int[]      segmentStreets;
+    private final PackedTree segmentTree;
+    private final double[]   points;
+    private final String[]   numbers;
+    private final int[]      pointStreets;
+    private final PackedTree pointTree;
+    private final int[]      groupStreets;
+    private final double[]   groupPoints;
+    private final float[]    groupLengths;
+    private final NameTrie   names;
+    private final int[]      numberStart;
+    private final int[]      numberPoints;
+    private final int[]      numberValues;
+
+    AddressIndex(String[] streets, double[] segments, int[] segmentStreets, double[] points, String[] numbers,
+            final int[] pointStreets, int[] groupStreets, double[] groupPoints, float[] groupLengths, NameTrie names) {
+        this.streets = streets;
+        this.segments = segments;
+        this.segmentStreets = segmentStreets;
+        this.segmentTree = new PackedTree(segments, segmentStreets.length);
+        this.points = points;
+        this.numbers = numbers;
+        this.pointStreets = pointStreets;
+        double[] boxes = new double[numbers.length * 4];
+        for (int i = 0; i < numbers.length; i++) {
+            boxes[i * 4] = boxes[i * 4 + 2] = points[i * 2];
+            boxes[i * 4 + 1] = boxes[i * 4 + 3] = points[i * 2 + 1];
+        }
+        this.pointTree = new PackedTree(boxes, numbers.length);
+
+        // addresses without street : on the nearest one
+        for (int i = 0; i < numbers.length; i++) {
+            if (pointStreets[i] < 0) {
+                int segment = segmentTree.nearest(points[i * 2], points[i * 2 + 1], UNTAGGED_DISTANCE, null);
+                if (segment >= 0) {
+                    pointStreets[i] = segmentStreets[segment];
+                }
+            }
+        }
+
+        // house numbers by street and number
+        List<Integer> numbered = new ArrayList<Integer>();
+        for (int i = 0; i < numbers.length; i++) {
+            if (pointStreets[i] >= 0 && numberValue(numbers[i]) >= 0) {
+                numbered.add(i);
+            }
+        }
+        final int[] values = new int[numbers.length];
+        for (int i : numbered) {
+            values[i] = numberValue(numbers[i]);
+        }
+        Collections.sort(numbered, new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer a, Integer b) {
+                if (pointStreets[a] != pointStreets[b]) {
+                    return pointStreets[a] < pointStreets[b] ? -1 : 1;
+                }
+                if (values[a] != values[b]) {
+                    return values[a] < values[b] ? -1 : 1;
+                }
+                return a.compareTo(b);
+            }
+        });
+        this.numberStart = new int[streets.length + 1];
+        this.numberPoints = new int[numbered.size()];
+        this.numberValues = new int[numbered.size()];
+        for (int i = 0; i < numberPoints.length; i++) {
+            numberPoints[i] = numbered.get(i);
+            numberValues[i] = values[numberPoints[i]];
+            numberStart[pointStreets[numberPoints[i]] + 1]++;
+        }
+        for (int street = 0; street < streets.length; street++) {
+            numberStart[street + 1] += numberStart[street];
+        }
+
+        this.groupStreets = groupStreets;
+        this.groupPoints = groupPoints;
+        this.groupLengths = groupLengths;
+        this.names = names;
+    }
+
+    /**
+     * @return number of streets (distinct names).
+     */
+    public int getStreetCount() {
+        return streets.length;
+    }
+
+    /**
+     * @return number of streets of the name search (ways of a name grouped by place).
+     */
+    public int getGroupCount() {
+        return groupStreets.length;
+    }
+
+    /**
+     * @return number of street segments.
+     */
+    public int getSegmentCount() {
+        return segmentStreets.length;
+    }
+
+    /**
+     * @return number of address points.
+     */
+    public int getAddressCount() {
+        return numbers.length;
+    }
+
+    /**
+     * Reverse geocoding of a position : the nearest street, with the nearest house number of this street if there is
+     * one close enough. An address that isn't tagged with its street is taken as on the nearest one.
+     * 
+     * @param lon
+     * @param lat
+     * @param maxDistance maximum distance to the street, in meters
+     * @param addressDistance maximum distance to the address point, in meters
+     * @return the address, or <code>null</code> if there is no street nor address in the distance.
+     */
+    public Address reverse(double lon, double lat, double maxDistance, double addressDistance) {
+        int segment = segmentTree.nearest(lon, lat, maxDistance, null);
+        final int street = (segment < 0) ? -1 : segmentStreets[segment];
+        int point = pointTree.nearest(lon, lat, addressDistance, new PackedTree.Filter() {
+
+            @Override
+            public boolean accept(int item) {
+                return street < 0 || pointStreets[item] < 0 || pointStreets[item] == street;
+            }
+        });
+        if (point >= 0) {
+            int pointStreet = (pointStreets[point] < 0) ? street : pointStreets[point];
+            double pointLon = points[point * 2];
+            double pointLat = points[point * 2 + 1];
+            return new Address(pointStreet < 0 ? null : streets[pointStreet], numbers[point], pointLon, pointLat,
+                    PackedTree.distance(lon, lat, pointLon, pointLat, pointLon, pointLat));
+        }
+        if (segment < 0) {
+            return null;
+        }
+        double lon1 = segments[segment * 4];
+        double lat1 = segments[segment * 4 + 1];
+        double lon2 = segments[segment * 4 + 2];
+        double lat2 = segments[segment * 4 + 3];
+        double fraction = PackedTree.fraction(lon, lat, lon1, lat1, lon2, lat2);
+        return new Address(streets[street], null, lon1 + fraction * (lon2 - lon1), lat1 + fraction * (lat2 - lat1),
+                PackedTree.distance(lon, lat, lon1, lat1, lon2, lat2));
+    }
+
+    /**
+     * Search the streets by name : the streets whose name, from one of its words, starts with the query (folded, and
+     * with an edit or two for the long ones). Streets are ranked by edit distance, then by length.
+     * 
+     * If the query starts (or ends) with a house number, the streets with this number come first, at the position of
+     * its door : the address point of the number, or a position between the nearest numbers of the same side.
+     * 
+     * @param query
+     * @param limit maximum number of streets (at most <code>NameTrie.TOP_SIZE</code> are found by prefix)
+     * @return the streets, at their door or at the middle of their ways.
+     */
+    public List<Address> search(String query, int limit) {
+        String folded = NameTrie.fold(query);
+        String number = null;
+        int space = folded.indexOf(' ');
+        int last = folded.lastIndexOf(' ');
+        if (space > 0 && Character.isDigit(folded.charAt(0))) {
+            number = folded.substring(0, space);
+            folded = folded.substring(space + 1);
+            for (String suffix : NUMBER_SUFFIXES) {
+                if (folded.startsWith(suffix + " ")) {
+                    number += suffix;
+                    folded = folded.substring(suffix.length() + 1);
+                }
+            }
+        }
+
+        final int[] distances = new int[groupStreets.length];
+        Arrays.fill(distances, Integer.MAX_VALUE);
+        int[] found = new int[groupStreets.length];
+        int count = 0;
+        if (number == null && last > 0 && Character.isDigit(folded.charAt(last + 1))) {
+            // a trailing number is a house number, unless it is part of a street name (ie. "route 66")
+            count = names.search(folded, 0, distances, found);
+            if (count == 0) {
+                number = folded.substring(last + 1);
+                folded = folded.substring(0, last);
+            }
+        }
+        if (count == 0) {
+            count = names.search(folded, NameTrie.maxEdits(folded.length()), distances, found);
+        }
+        Integer[] ranked = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            ranked[i] = found[i];
+        }
+        Arrays.sort(ranked, new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer a, Integer b) {
+                if (distances[a] != distances[b]) {
+                    return distances[a] < distances[b] ? -1 : 1;
+                }
+                return Float.compare(groupLengths[b], groupLengths[a]);
+            }
+        });
+        List<Address> doors = new ArrayList<Address>();
+        List<Address> results = new ArrayList<Address>(Math.min(limit, count));
+        for (int i = 0; i < count && doors.size() < limit; i++) {
+            int group = ranked[i];
+            Address door = (number == null) ? null : locate(group, number);
+            if (door != null) {
+                doors.add(door);
+            }
+            else if (results.size() < limit) {
+                results.add(new Address(streets[groupStreets[group]], null, groupPoints[group * 2],
+                        groupPoints[group * 2 + 1], 0));
+            }
+        }
+        doors.addAll(results);
+        return doors.subList(0, Math.min(limit, doors.size()));
+    }
+
+    /**
+     * Find the door of a house number on a street, with a binary search in the numbers of the street.
+     * 
+     * @param group a street of the name search
+     * @param number a folded house number
+     * @return the address, or <code>null</code> if the number isn't found nor between two numbers of its side.
+     */
+    private Address locate(int group, String number) {
+        int value = numberValue(number);
+        int street = groupStreets[group];
+        int from = numberStart[street];
+        int to = numberStart[street + 1];
+        if (value < 0 || from == to) {
+            return null;
+        }
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (numberValues[middle] < value) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+
+        // the number itself : the exact one (with its suffix) first, then the nearest of the street
+        int best = -1;
+        boolean bestExact = false;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for (int i = low; i < to && numberValues[i] == value; i++) {
+            int point = numberPoints[i];
+            double distance = distance(group, point);
+            boolean exact = foldNumber(numbers[point]).equals(number);
+            if (near(group, point) && ((exact && !bestExact) || (exact == bestExact && distance < bestDistance))) {
+                best = point;
+                bestExact = exact;
+                bestDistance = distance;
+            }
+        }
+        if (best >= 0) {
+            return new Address(streets[street], numbers[best], points[best * 2], points[best * 2 + 1], 0);
+        }
+
+        // between the nearest numbers of the same side
+        int before = low - 1;
+        while (before >= from && ((value - numberValues[before]) % 2 != 0 || !near(group, numberPoints[before]))) {
+            before--;
+        }
+        int after = low;
+        while (after < to && ((numberValues[after] - value) % 2 != 0 || !near(group, numberPoints[after]))) {
+            after++;
+        }
+        if (before < from || after == to) {
+            return null;
+        }
+        double fraction = (double) (value - numberValues[before]) / (numberValues[after] - numberValues[before]);
+        int a = numberPoints[before];
+        int b = numberPoints[after];
+        return new Address(streets[street], number, points[a * 2] + fraction * (points[b * 2] - points[a * 2]),
+                points[a * 2 + 1] + fraction * (points[b * 2 + 1] - points[a * 2 + 1]), 0);
+    }
+
+    /**
+     * An address is on a street if it's in the length of the street (plus a margin) from its middle.
+     */
+    private boolean near(int group, int point) {
+        return distance(group, point) <= groupLengths[group] + STREET_MARGIN;
+    }
+
+    private double distance(int group, int point) {
+        return PackedTree.distance(points[point * 2], points[point * 2 + 1], groupPoints[group * 2],
+                groupPoints[group * 2 + 1], groupPoints[group * 2], groupPoints[group * 2 + 1]);
+    }
+
+    /**
+     * @param number a house number
+     * @return the value of its leading digits (12 for "12 bis"), or <code>-1</code> if it doesn't start with a digit.
+     */
+    public static int numberValue(String number) {
+        if (number == null) {
+            return -1;
+        }
+        int value = -1;
+        for (int i = 0; i < Math.min(number.length(), 9) && Character.isDigit(number.charAt(i)); i++) {
+            value = Math.max(value, 0) * 10 + Character.digit(number.charAt(i), 10);
+        }
+        return value;
+    }
+
+    /**
+     * @param number
+     * @return a house number folded as the queries : lower case, without space ("12bis").
+     */
+    static String foldNumber(String number) {
+        return NameTrie.fold(number).replace(" ", "");
+    }
+
+}
@@ -0,0 +1,298 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.geocoding;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Trie of the street names, for the autocomplete of the geocoder. Names are folded (lower case, without accents nor
+ * punctuation), and each name is indexed from each of its words, so "stanis" finds "Rue Saint Stanislas".
+ * 
+ * The trie is kept in arrays : nodes are numbered in breadth-first order, so the children of a node are contiguous,
+ * and each node keeps the ids of the <code>TOP_SIZE</code> most important streets of its subtree. A prefix search
+ * walks the trie with a row of the edit distance of the query, and takes the top streets of the nodes where the whole
+ * query is matched : it never walks a subtree.
+ * 
+ * @author bsimard
+ * 
+ */
+public class NameTrie {
+
+    public static final int TOP_SIZE   = 10;
+    public static final int MAX_LENGTH = 64;
+
+    private final char[]    labels;
+    private final int[]     childStart;
+    private final int[]     topStart;
+    private final int[]     tops;
+
+    /**
+     * Constructor.
+     * 
+     * @param keys folded names (see <code>fold</code>)
+     * @param keyStreets the street of each key
+     * @param importance of each street, the top streets of a node are the most important ones
+     */
+    public NameTrie(final String[] keys, int[] keyStreets, final float[] importance) {
+        Integer[] order = new Integer[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer a, Integer b) {
+                return keys[a].compareTo(keys[b]);
+            }
+        });
+
+        // breadth-first build : each node is a range of the sorted keys, at a depth
+        int capacity = 1024;
+        char[] label = new char[capacity];
+        int[] from = new int[capacity];
+        int[] to = new int[capacity];
+        int[] depth = new int[capacity];
+        int[] children = new int[capacity + 1];
+        to[0] = keys.length;
+        int count = 1;
+        for (int node = 0; node < count; node++) {
+            children[node] = count;
+            int i = from[node];
+            while (i < to[node] && keys[order[i]].length() == depth[node]) {
+                i++;
+            }
+            while (i < to[node]) {
+                char c = keys[order[i]].charAt(depth[node]);
+                int end = i;
+                while (end < to[node] && keys[order[end]].charAt(depth[node]) == c) {
+                    end++;
+                }
+                if (count == capacity) {
+                    capacity *= 2;
+                    label = Arrays.copyOf(label, capacity);
+                    from = Arrays.copyOf(from, capacity);
+                    to = Arrays.copyOf(to, capacity);
+                    depth = Arrays.copyOf(depth, capacity);
+                    children = Arrays.copyOf(children, capacity + 1);
+                }
+                label[count] = c;
+                from[count] = i;
+                to[count] = end;
+                depth[count] = depth[node] + 1;
+                count++;
+                i = end;
+            }
+        }
+        children[count] = count;
+        this.labels = Arrays.copyOf(label, count);
+        this.childStart = Arrays.copyOf(children, count + 1);
+
+        // top streets, from the leaves : the streets of the node keys and the tops of its children
+        int[][] nodeTops = new int[count][];
+        int size = 0;
+        int[] candidates = new int[TOP_SIZE * 64];
+        for (int node = count - 1; node >= 0; node--) {
+            int n = 0;
+            for (int i = from[node]; i < to[node] && keys[order[i]].length() == depth[node]; i++) {
+                if (n == candidates.length) {
+                    candidates = Arrays.copyOf(candidates, n * 2);
+                }
+                n = add(candidates, n, keyStreets[order[i]]);
+            }
+            for (int child = childStart[node]; child < childStart[node + 1]; child++) {
+                for (int street : nodeTops[child]) {
+                    if (n == candidates.length) {
+                        candidates = Arrays.copyOf(candidates, n * 2);
+                    }
+                    n = add(candidates, n, street);
+                }
+            }
+            nodeTops[node] = top(candidates, n, importance);
+            size += nodeTops[node].length;
+        }
+        this.topStart = new int[count + 1];
+        this.tops = new int[size];
+        for (int node = 0; node < count; node++) {
+            topStart[node + 1] = topStart[node] + nodeTops[node].length;
+            System.arraycopy(nodeTops[node], 0, tops, topStart[node], nodeTops[node].length);
+        }
+    }
+
+    private static int add(int[] candidates, int n, int street) {
+        for (int i = 0; i < n; i++) {
+            if (candidates[i] == street) {
+                return n;
+            }
+        }
+        candidates[n] = street;
+        return n + 1;
+    }
+
+    private static int[] top(int[] candidates, int n, final float[] importance) {
+        Integer[] sorted = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            sorted[i] = candidates[i];
+        }
+        Arrays.sort(sorted, new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Float.compare(importance[b], importance[a]);
+            }
+        });
+        int[] top = new int[Math.min(n, TOP_SIZE)];
+        for (int i = 0; i < top.length; i++) {
+            top[i] = sorted[i];
+        }
+        return top;
+    }
+
+    /**
+     * @return number of nodes of the trie.
+     */
+    public int size() {
+        return labels.length;
+    }
+
+    /**
+     * Find the streets whose name (from one of its words) starts with the query, with at most some edits (insertion,
+     * deletion or substitution of a character).
+     * 
+     * @param query a folded query (see <code>fold</code>)
+     * @param maxEdits
+     * @param distances the best distance found for each street, must be filled with <code>Integer.MAX_VALUE</code>
+     *            and is updated by the search
+     * @param found the streets found, in the order they are found
+     * @return number of streets found
+     */
+    public int search(String query, int maxEdits, int[] distances, int[] found) {
+        if (query.length() == 0 || labels.length == 0) {
+            return 0;
+        }
+        String q = query.length() > MAX_LENGTH ? query.substring(0, MAX_LENGTH) : query;
+        int length = q.length();
+        int[][] rows = new int[length + maxEdits + 1][length + 1];
+        for (int j = 0; j <= length; j++) {
+            rows[0][j] = j;
+        }
+        return walk(0, 0, q, maxEdits, rows, distances, found, 0);
+    }
+
+    private int walk(int node, int level, String q, int maxEdits, int[][] rows, int[] distances, int[] found, int n) {
+        int length = q.length();
+        int[] row = rows[level];
+        if (row[length] <= maxEdits) {
+            for (int i = topStart[node]; i < topStart[node + 1]; i++) {
+                int street = tops[i];
+                if (distances[street] == Integer.MAX_VALUE) {
+                    found[n++] = street;
+                }
+                distances[street] = Math.min(distances[street], row[length]);
+            }
+        }
+        if (level + 1 == rows.length) {
+            return n;
+        }
+        for (int child = childStart[node]; child < childStart[node + 1]; child++) {
+            char c = labels[child];
+            int[] next = rows[level + 1];
+            next[0] = row[0] + 1;
+            int min = next[0];
+            for (int j = 1; j <= length; j++) {
+                next[j] = Math.min(Math.min(row[j], next[j - 1]) + 1, row[j - 1] + (q.charAt(j - 1) == c ? 0 : 1));
+                min = Math.min(min, next[j]);
+            }
+            if (min <= maxEdits) {
+                n = walk(child, level + 1, q, maxEdits, rows, distances, found, n);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Fold a name : lower case, without accents, and with single spaces between its words.
+     * 
+     * @param name
+     * @return
+     */
+    public static String fold(String name) {
+        String decomposed = Normalizer.normalize(name, Normalizer.Form.NFD);
+        StringBuilder folded = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (c == '\u0153' || c == '\u0152') {
+                folded.append("oe");
+            }
+            else if (c == '\u00e6' || c == '\u00c6') {
+                folded.append("ae");
+            }
+            else if (c == '\u00df') {
+                folded.append("ss");
+            }
+            else if (Character.isLetterOrDigit(c)) {
+                folded.append(c);
+            }
+            else if (folded.length() > 0 && folded.charAt(folded.length() - 1) != ' ') {
+                folded.append(' ');
+            }
+        }
+        int end = folded.length();
+        if (end > 0 && folded.charAt(end - 1) == ' ') {
+            folded.setLength(end - 1);
+        }
+        return folded.toString().toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * @param folded a folded name
+     * @return the keys of the name : the name from each of its words.
+     */
+    public static String[] suffixes(String folded) {
+        int words = 1;
+        for (int i = 0; i < folded.length(); i++) {
+            if (folded.charAt(i) == ' ') {
+                words++;
+            }
+        }
+        String[] suffixes = new String[words];
+        suffixes[0] = folded;
+        int word = 1;
+        for (int i = 0; i < folded.length(); i++) {
+            if (folded.charAt(i) == ' ') {
+                suffixes[word++] = folded.substring(i + 1);
+            }
+        }
+        return suffixes;
+    }
+
+    /**
+     * @param length length of the query
+     * @return the number of edits allowed for a query : none for short ones, then one, then two.
+     */
+    public static int maxEdits(int length) {
+        return (length <= 3) ? 0 : (length <= 7) ? 1 : 2;
+    }
+
+}
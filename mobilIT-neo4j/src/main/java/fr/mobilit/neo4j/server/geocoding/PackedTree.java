@@ -0,0 +1,274 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.geocoding;
+
+import java.util.Arrays;
+
+import fr.mobilit.neo4j.server.routing.EdgeGrid;
+
+/**
+ * Packed R-tree over segments given by their coordinates (a point is a segment of zero length). Items are sorted by
+ * Sort-Tile-Recursive and packed by <code>NODE_SIZE</code>, like the <code>SegmentTree</code> of the routing graph,
+ * but the tree doesn't depend on a graph : it indexes the streets and the addresses of the geocoder.
+ * 
+ * Distances are in meters, on a local equirectangular projection.
+ * 
+ * @author bsimard
+ * 
+ */
+public class PackedTree {
+
+    public static final int    NODE_SIZE      = 16;
+    public static final double INITIAL_RADIUS = 25;
+
+    /**
+     * Filter of the items of a search.
+     */
+    public interface Filter {
+
+        boolean accept(int item);
+    }
+
+    private final int      count;
+    private final int[]    items;
+    private final double[] coordinates;
+    private final int[]    levelStart;
+    private final double[] boxes;
+
+    /**
+     * Constructor.
+     * 
+     * @param segments coordinates of the items, 4 by item : lon1, lat1, lon2, lat2
+     * @param size number of items
+     */
+    public PackedTree(double[] segments, int size) {
+        this.count = size;
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            minX = Math.min(minX, centerLon(segments, i));
+            minY = Math.min(minY, centerLat(segments, i));
+            maxX = Math.max(maxX, centerLon(segments, i));
+            maxY = Math.max(maxY, centerLat(segments, i));
+        }
+
+        // Sort-Tile-Recursive order
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = ((long) quantize(centerLon(segments, i), minX, maxX) << 32) | i;
+        }
+        Arrays.sort(keys);
+        int leaves = (count + NODE_SIZE - 1) / NODE_SIZE;
+        int slice = (int) Math.ceil(Math.sqrt(leaves)) * NODE_SIZE;
+        for (int from = 0; from < count; from += slice) {
+            int to = Math.min(count, from + slice);
+            for (int i = from; i < to; i++) {
+                int item = (int) keys[i];
+                keys[i] = ((long) quantize(centerLat(segments, item), minY, maxY) << 32) | item;
+            }
+            Arrays.sort(keys, from, to);
+        }
+        this.items = new int[count];
+        this.coordinates = new double[count * 4];
+        for (int i = 0; i < count; i++) {
+            items[i] = (int) keys[i];
+            System.arraycopy(segments, items[i] * 4, coordinates, i * 4, 4);
+        }
+
+        // levels, from the leaves to the root
+        int levels = 0;
+        int nodes = 0;
+        for (int n = leaves; n > 0; n = (n == 1) ? 0 : (n + NODE_SIZE - 1) / NODE_SIZE) {
+            levels++;
+            nodes += n;
+        }
+        this.levelStart = new int[levels + 1];
+        this.boxes = new double[nodes * 4];
+        int n = leaves;
+        for (int level = 0; level < levels; level++) {
+            levelStart[level + 1] = levelStart[level] + n;
+            for (int node = 0; node < n; node++) {
+                int box = (levelStart[level] + node) * 4;
+                boxes[box] = boxes[box + 1] = Double.POSITIVE_INFINITY;
+                boxes[box + 2] = boxes[box + 3] = Double.NEGATIVE_INFINITY;
+                if (level == 0) {
+                    for (int i = node * NODE_SIZE; i < Math.min(count, (node + 1) * NODE_SIZE); i++) {
+                        extend(box, coordinates[i * 4], coordinates[i * 4 + 1], coordinates[i * 4 + 2],
+                                coordinates[i * 4 + 3]);
+                    }
+                }
+                else {
+                    int children = levelStart[level] - levelStart[level - 1];
+                    for (int child = node * NODE_SIZE; child < Math.min(children, (node + 1) * NODE_SIZE); child++) {
+                        int childBox = (levelStart[level - 1] + child) * 4;
+                        extend(box, boxes[childBox], boxes[childBox + 1], boxes[childBox + 2], boxes[childBox + 3]);
+                    }
+                }
+            }
+            n = (n + NODE_SIZE - 1) / NODE_SIZE;
+        }
+    }
+
+    private static double centerLon(double[] segments, int item) {
+        return (segments[item * 4] + segments[item * 4 + 2]) / 2;
+    }
+
+    private static double centerLat(double[] segments, int item) {
+        return (segments[item * 4 + 1] + segments[item * 4 + 3]) / 2;
+    }
+
+    private static int quantize(double value, double min, double max) {
+        return (max > min) ? (int) ((value - min) / (max - min) * Integer.MAX_VALUE) : 0;
+    }
+
+    private void extend(int box, double lon1, double lat1, double lon2, double lat2) {
+        boxes[box] = Math.min(boxes[box], Math.min(lon1, lon2));
+        boxes[box + 1] = Math.min(boxes[box + 1], Math.min(lat1, lat2));
+        boxes[box + 2] = Math.max(boxes[box + 2], Math.max(lon1, lon2));
+        boxes[box + 3] = Math.max(boxes[box + 3], Math.max(lat1, lat2));
+    }
+
+    /**
+     * @return number of indexed items.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Find the nearest item, expanding the search radius from <code>INITIAL_RADIUS</code>.
+     * 
+     * @param lon
+     * @param lat
+     * @param maxDistance maximum distance, in meters
+     * @param filter the items to consider, or <code>null</code> for all
+     * @return the nearest item, or <code>-1</code> if there is none in the distance.
+     */
+    public int nearest(double lon, double lat, double maxDistance, Filter filter) {
+        double radius = Math.min(INITIAL_RADIUS, maxDistance);
+        while (true) {
+            int item = search(lon, lat, radius, filter);
+            if (item >= 0 || radius >= maxDistance) {
+                return item;
+            }
+            radius = Math.min(radius * 2, maxDistance);
+        }
+    }
+
+    /**
+     * Find the nearest item in a radius : a depth-first walk of the tree, skipping the nodes farther than the best
+     * item found so far.
+     * 
+     * @param lon
+     * @param lat
+     * @param radius in meters
+     * @param filter the items to consider, or <code>null</code> for all
+     * @return the nearest item, or <code>-1</code> if there is none in the radius.
+     */
+    public int search(double lon, double lat, double radius, Filter filter) {
+        int levels = levelStart.length - 1;
+        if (levels == 0) {
+            return -1;
+        }
+        double scale = Math.cos(Math.toRadians(lat)) * EdgeGrid.METERS_BY_DEGREE;
+        double best = radius * radius;
+        int bestItem = -1;
+        int[] stack = new int[2 * (NODE_SIZE * levels + 1)];
+        int top = 0;
+        stack[top++] = levels - 1;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            int level = stack[--top];
+            int box = (levelStart[level] + node) * 4;
+            double dx = Math.max(0, Math.max(boxes[box] - lon, lon - boxes[box + 2])) * scale;
+            double dy = Math.max(0, Math.max(boxes[box + 1] - lat, lat - boxes[box + 3])) * EdgeGrid.METERS_BY_DEGREE;
+            if (dx * dx + dy * dy > best) {
+                continue;
+            }
+            if (level > 0) {
+                int children = levelStart[level] - levelStart[level - 1];
+                for (int child = node * NODE_SIZE; child < Math.min(children, (node + 1) * NODE_SIZE); child++) {
+                    stack[top++] = level - 1;
+                    stack[top++] = child;
+                }
+                continue;
+            }
+            for (int i = node * NODE_SIZE; i < Math.min(count, (node + 1) * NODE_SIZE); i++) {
+                if (filter != null && !filter.accept(items[i])) {
+                    continue;
+                }
+                double distance = squareDistance(lon, lat, scale, coordinates[i * 4], coordinates[i * 4 + 1],
+                        coordinates[i * 4 + 2], coordinates[i * 4 + 3]);
+                if (distance <= best && (bestItem < 0 || distance < best)) {
+                    best = distance;
+                    bestItem = items[i];
+                }
+            }
+        }
+        return bestItem;
+    }
+
+    /**
+     * @param lon
+     * @param lat
+     * @param lon1
+     * @param lat1
+     * @param lon2
+     * @param lat2
+     * @return position of the projection of the coordinate on the segment, from 0 (first point) to 1 (second one).
+     */
+    public static double fraction(double lon, double lat, double lon1, double lat1, double lon2, double lat2) {
+        double scale = Math.cos(Math.toRadians(lat)) * EdgeGrid.METERS_BY_DEGREE;
+        double x1 = (lon1 - lon) * scale;
+        double y1 = (lat1 - lat) * EdgeGrid.METERS_BY_DEGREE;
+        double sx = (lon2 - lon) * scale - x1;
+        double sy = (lat2 - lat) * EdgeGrid.METERS_BY_DEGREE - y1;
+        double norm = sx * sx + sy * sy;
+        return norm == 0 ? 0 : Math.max(0, Math.min(1, -(x1 * sx + y1 * sy) / norm));
+    }
+
+    /**
+     * @param lon
+     * @param lat
+     * @param lon1
+     * @param lat1
+     * @param lon2
+     * @param lat2
+     * @return distance of the coordinate to the segment, in meters.
+     */
+    public static double distance(double lon, double lat, double lon1, double lat1, double lon2, double lat2) {
+        return Math.sqrt(squareDistance(lon, lat, Math.cos(Math.toRadians(lat)) * EdgeGrid.METERS_BY_DEGREE, lon1,
+                lat1, lon2, lat2));
+    }
+
+    private static double squareDistance(double lon, double lat, double scale, double lon1, double lat1, double lon2,
+            double lat2) {
+        double x1 = (lon1 - lon) * scale;
+        double y1 = (lat1 - lat) * EdgeGrid.METERS_BY_DEGREE;
+        double sx = (lon2 - lon) * scale - x1;
+        double sy = (lat2 - lat) * EdgeGrid.METERS_BY_DEGREE - y1;
+        double norm = sx * sx + sy * sy;
+        double fraction = norm == 0 ? 0 : Math.max(0, Math.min(1, -(x1 * sx + y1 * sy) / norm));
+        double x = x1 + fraction * sx;
+        double y = y1 + fraction * sy;
+        return x * x + y * y;
+    }
+
+}
@@ -105,4 +105,26 @@ public class POI {
         this.geoPoint = geoPoint;
     }
 
+    @Override
+    public int hashCode() {
+        int result = (id == null) ? 0 : id.hashCode();
+        return 31 * result + ((geocode == null) ? 0 : geocode.hashCode());
+    }
+
+    /**
+     * Two POI are equals if they have the same id in the same geocode.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof POI)) {
+            return false;
+        }
+        POI other = (POI) obj;
+        return (id == null ? other.id == null : id.equals(other.id))
+                && (geocode == null ? other.geocode == null : geocode.equals(other.geocode));
+    }
+
 }
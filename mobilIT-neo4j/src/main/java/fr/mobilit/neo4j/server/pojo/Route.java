@@ -0,0 +1,244 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.pojo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import fr.mobilit.neo4j.server.format.RouteSource;
+
+/**
+ * Result of a search, in primitive arrays : the line of each segment is a range of an array of interleaved
+ * coordinates, and the name, distance and cost of the segments are parallel arrays. The engines fill it while they walk
+ * their predecessors, and the response formats read it as a <code>RouteSource</code>.
+ * 
+ * <pre>
+ * Route route = new Route(edges.length);
+ * route.addSegment(&quot;Rue Racine&quot;, 0.12, 0.01);
+ * route.addPoint(-1.56, 47.21);
+ * route.addPoint(-1.559, 47.211);
+ * </pre>
+ * 
+ * @author bsimard
+ * 
+ */
+public class Route implements RouteSource {
+
+    private String[] names;
+    private double[] distances;
+    private double[] costs;
+    private int[]    offsets;
+    private double[] coordinates;
+    private int      segments = 0;
+    private int      points   = 0;
+
+    /**
+     * Constructor.
+     */
+    public Route() {
+        this(16);
+    }
+
+    /**
+     * Constructor, for a route of about <code>capacity</code> segments of two points.
+     * 
+     * @param capacity
+     */
+    public Route(int capacity) {
+        capacity = Math.max(capacity, 1);
+        this.names = new String[capacity];
+        this.distances = new double[capacity];
+        this.costs = new double[capacity];
+        this.offsets = new int[capacity + 1];
+        this.coordinates = new double[capacity * 4];
+    }
+
+    /**
+     * Start a new segment : the next points are its line.
+     * 
+     * @param name
+     * @param distance <code>NaN</code> if unknown
+     * @param cost <code>NaN</code> if unknown
+     */
+    public void addSegment(String name, double distance, double cost) {
+        if (segments == names.length) {
+            int capacity = names.length * 2;
+            names = Arrays.copyOf(names, capacity);
+            distances = Arrays.copyOf(distances, capacity);
+            costs = Arrays.copyOf(costs, capacity);
+            offsets = Arrays.copyOf(offsets, capacity + 1);
+        }
+        names[segments] = name;
+        distances[segments] = distance;
+        costs[segments] = cost;
+        offsets[segments] = points;
+        segments++;
+        offsets[segments] = points;
+    }
+
+    /**
+     * Add a point to the line of the last segment.
+     * 
+     * @param longitude
+     * @param latitude
+     */
+    public void addPoint(double longitude, double latitude) {
+        if (segments == 0) {
+            throw new IllegalStateException("No segment to add the point to");
+        }
+        if (points * 2 == coordinates.length) {
+            coordinates = Arrays.copyOf(coordinates, coordinates.length * 2);
+        }
+        coordinates[points * 2] = longitude;
+        coordinates[points * 2 + 1] = latitude;
+        points++;
+        offsets[segments] = points;
+    }
+
+    /**
+     * Add a segment of two points.
+     */
+    public void addSegment(String name, double distance, double cost, double lon1, double lat1, double lon2,
+            double lat2) {
+        addSegment(name, distance, cost);
+        addPoint(lon1, lat1);
+        addPoint(lon2, lat2);
+    }
+
+    /**
+     * Append all the segments of a route.
+     * 
+     * @param route
+     */
+    public void append(Route route) {
+        for (int s = 0; s < route.segments; s++) {
+            addSegment(route.names[s], route.distances[s], route.costs[s]);
+            for (int p = route.offsets[s]; p < route.offsets[s + 1]; p++) {
+                addPoint(route.coordinates[p * 2], route.coordinates[p * 2 + 1]);
+            }
+        }
+    }
+
+    /**
+     * Set the cost of a range of segments (ie. a leg of a multi-modal path).
+     * 
+     * @param from first segment
+     * @param to segment after the last one
+     * @param cost
+     */
+    public void setCost(int from, int to, double cost) {
+        Arrays.fill(costs, from, to, cost);
+    }
+
+    /**
+     * @return number of segments.
+     */
+    public int getSegmentCount() {
+        return segments;
+    }
+
+    /**
+     * @return number of points of all the segments.
+     */
+    public int getPointCount() {
+        return points;
+    }
+
+    /**
+     * @return <code>true</code> if the route has no segment.
+     */
+    public boolean isEmpty() {
+        return segments == 0;
+    }
+
+    @Override
+    public int getLegCount() {
+        return segments;
+    }
+
+    @Override
+    public String getName(int segment) {
+        return names[segment];
+    }
+
+    @Override
+    public double getDistance(int segment) {
+        return distances[segment];
+    }
+
+    @Override
+    public double getCost(int segment) {
+        return costs[segment];
+    }
+
+    @Override
+    public int getPointCount(int segment) {
+        return offsets[segment + 1] - offsets[segment];
+    }
+
+    @Override
+    public double getLongitude(int segment, int point) {
+        return coordinates[(offsets[segment] + point) * 2];
+    }
+
+    @Override
+    public double getLatitude(int segment, int point) {
+        return coordinates[(offsets[segment] + point) * 2 + 1];
+    }
+
+    /**
+     * Compatibility with the consumers of <code>Itinerary</code> : one itinerary by segment.
+     * 
+     * @return
+     */
+    public List<Itinerary> toItineraries() {
+        List<Itinerary> itineraries = new ArrayList<Itinerary>(segments);
+        for (int s = 0; s < segments; s++) {
+            Itinerary itinerary = new Itinerary();
+            itinerary.setName(names[s]);
+            itinerary.setDistance(Double.isNaN(distances[s]) ? null : distances[s]);
+            itinerary.setCost(Double.isNaN(costs[s]) ? null : costs[s]);
+            for (int p = offsets[s]; p < offsets[s + 1]; p++) {
+                itinerary.getLine().add(new GeoPoint(coordinates[p * 2], coordinates[p * 2 + 1]));
+            }
+            itineraries.add(itinerary);
+        }
+        return itineraries;
+    }
+
+    /**
+     * Compatibility with the producers of <code>Itinerary</code> : one segment by itinerary.
+     * 
+     * @param itineraries
+     * @return
+     */
+    public static Route fromItineraries(List<Itinerary> itineraries) {
+        Route route = new Route(itineraries.size());
+        for (Itinerary itinerary : itineraries) {
+            route.addSegment(itinerary.getName(), itinerary.getDistance() == null ? Double.NaN : itinerary
+                    .getDistance(), itinerary.getCost() == null ? Double.NaN : itinerary.getCost());
+            for (GeoPoint point : itinerary.getLine()) {
+                route.addPoint(point.getLongitude(), point.getLatitude());
+            }
+        }
+        return route;
+    }
+
+}
@@ -0,0 +1,178 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.routing;
+
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+import fr.mobilit.neo4j.server.utils.LongIntHashMap;
+
+/**
+ * <code>RoutingGraph</code> stored in flat buffers (compressed sparse rows) : heap arrays when it is built, or a
+ * memory-mapped file when it is loaded.
+ * 
+ * @author bsimard
+ * 
+ */
+public class ArrayGraph implements RoutingGraph {
+
+    final LongBuffer             nodeIds;
+    final DoubleBuffer           lon;
+    final DoubleBuffer           lat;
+    final IntBuffer              firstOut;
+    final IntBuffer              firstIn;
+    final IntBuffer              inEdges;
+    final IntBuffer              edgeSource;
+    final IntBuffer              edgeTarget;
+    final IntBuffer              edgeName;
+    final FloatBuffer            edgeLength;
+    final FloatBuffer[]          costs;
+    final String[]               names;
+    private LongIntHashMap       index;
+
+    /**
+     * Constructor.
+     * 
+     * @param nodeIds source id by node
+     * @param lon longitude by node
+     * @param lat latitude by node
+     * @param firstOut first outgoing edge by node, plus the edge count
+     * @param firstIn first incoming edge index by node, plus the edge count
+     * @param inEdges incoming edges, grouped by target node
+     * @param edgeSource source node by edge
+     * @param edgeTarget target node by edge
+     * @param edgeName index of the name by edge, <code>-1</code> for none
+     * @param edgeLength length by edge
+     * @param costs cost by edge, one buffer by profile (in <code>Profile</code> order)
+     * @param names street names
+     */
+    public ArrayGraph(LongBuffer nodeIds, DoubleBuffer lon, DoubleBuffer lat, IntBuffer firstOut, IntBuffer firstIn,
+            IntBuffer inEdges, IntBuffer edgeSource, IntBuffer edgeTarget, IntBuffer edgeName, FloatBuffer edgeLength,
+            FloatBuffer[] costs, String[] names) {
+        this.nodeIds = nodeIds;
+        this.lon = lon;
+        this.lat = lat;
+        this.firstOut = firstOut;
+        this.firstIn = firstIn;
+        this.inEdges = inEdges;
+        this.edgeSource = edgeSource;
+        this.edgeTarget = edgeTarget;
+        this.edgeName = edgeName;
+        this.edgeLength = edgeLength;
+        this.costs = costs;
+        this.names = names;
+    }
+
+    @Override
+    public int getNodeCount() {
+        return nodeIds.limit();
+    }
+
+    @Override
+    public int getEdgeCount() {
+        return edgeTarget.limit();
+    }
+
+    @Override
+    public long getNodeId(int node) {
+        return nodeIds.get(node);
+    }
+
+    @Override
+    public int findNode(long nodeId) {
+        return getIndex().get(nodeId);
+    }
+
+    /**
+     * The index by source id is only built if needed : a mapped graph is ready without reading its nodes.
+     */
+    private synchronized LongIntHashMap getIndex() {
+        if (index == null) {
+            index = new LongIntHashMap(nodeIds.limit());
+            for (int node = 0; node < nodeIds.limit(); node++) {
+                index.put(nodeIds.get(node), node);
+            }
+        }
+        return index;
+    }
+
+    @Override
+    public double getLongitude(int node) {
+        return lon.get(node);
+    }
+
+    @Override
+    public double getLatitude(int node) {
+        return lat.get(node);
+    }
+
+    @Override
+    public int getFirstOutEdge(int node) {
+        return firstOut.get(node);
+    }
+
+    @Override
+    public int getLastOutEdge(int node) {
+        return firstOut.get(node + 1);
+    }
+
+    @Override
+    public int getFirstInEdge(int node) {
+        return firstIn.get(node);
+    }
+
+    @Override
+    public int getLastInEdge(int node) {
+        return firstIn.get(node + 1);
+    }
+
+    @Override
+    public int getInEdge(int index) {
+        return inEdges.get(index);
+    }
+
+    @Override
+    public int getEdgeSource(int edge) {
+        return edgeSource.get(edge);
+    }
+
+    @Override
+    public int getEdgeTarget(int edge) {
+        return edgeTarget.get(edge);
+    }
+
+    @Override
+    public float getEdgeLength(int edge) {
+        return edgeLength.get(edge);
+    }
+
+    @Override
+    public float getEdgeCost(Profile profile, int edge) {
+        return costs[profile.ordinal()].get(edge);
+    }
+
+    @Override
+    public String getEdgeName(int edge) {
+        int name = edgeName.get(edge);
+        return name < 0 ? null : names[name];
+    }
+
+}
@@ -0,0 +1,235 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.routing;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid over the edges of a <code>RoutingGraph</code>, to find the edges near a coordinate (ie. the candidates
+ * of a GPS point). An edge is a straight segment from its source to its target, registered in every cell of its
+ * bounding box. Cells are stored as compressed rows, as in <code>NodeGrid</code>.
+ * 
+ * Distances are in meters, on a local equirectangular projection : that's precise enough at the scale of a GPS error.
+ * 
+ * @author bsimard
+ * 
+ */
+public class EdgeGrid {
+
+    public static final double METERS_BY_DEGREE  = 111320;
+    public static final double DEFAULT_CELL_SIZE = 0.001;
+
+    private final RoutingGraph graph;
+    private final double       minLon;
+    private final double       minLat;
+    private final double       cellSize;
+    private final int          columns;
+    private final int          rows;
+    private final int[]        cellStart;
+    private final int[]        cellEdges;
+
+    /**
+     * Constructor.
+     * 
+     * @param graph
+     * @param cellSize size of a cell, in degrees
+     */
+    public EdgeGrid(RoutingGraph graph, double cellSize) {
+        this.graph = graph;
+        this.cellSize = cellSize;
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int node = 0; node < graph.getNodeCount(); node++) {
+            minX = Math.min(minX, graph.getLongitude(node));
+            minY = Math.min(minY, graph.getLatitude(node));
+            maxX = Math.max(maxX, graph.getLongitude(node));
+            maxY = Math.max(maxY, graph.getLatitude(node));
+        }
+        if (graph.getNodeCount() == 0) {
+            minX = minY = maxX = maxY = 0;
+        }
+        this.minLon = minX;
+        this.minLat = minY;
+        this.columns = (int) ((maxX - minX) / cellSize) + 1;
+        this.rows = (int) ((maxY - minY) / cellSize) + 1;
+
+        // two passes : count, then fill
+        cellStart = new int[columns * rows + 1];
+        for (int edge = 0; edge < graph.getEdgeCount(); edge++) {
+            int[] box = box(edge);
+            for (int r = box[1]; r <= box[3]; r++) {
+                for (int c = box[0]; c <= box[2]; c++) {
+                    cellStart[r * columns + c + 1]++;
+                }
+            }
+        }
+        for (int c = 0; c < columns * rows; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        cellEdges = new int[cellStart[columns * rows]];
+        int[] fill = new int[columns * rows];
+        for (int edge = 0; edge < graph.getEdgeCount(); edge++) {
+            int[] box = box(edge);
+            for (int r = box[1]; r <= box[3]; r++) {
+                for (int c = box[0]; c <= box[2]; c++) {
+                    int cell = r * columns + c;
+                    cellEdges[cellStart[cell] + fill[cell]++] = edge;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return cells of the bounding box of the edge, as minColumn, minRow, maxColumn, maxRow.
+     */
+    private int[] box(int edge) {
+        int source = graph.getEdgeSource(edge);
+        int target = graph.getEdgeTarget(edge);
+        int c1 = column(graph.getLongitude(source));
+        int c2 = column(graph.getLongitude(target));
+        int r1 = row(graph.getLatitude(source));
+        int r2 = row(graph.getLatitude(target));
+        return new int[] { Math.min(c1, c2), Math.min(r1, r2), Math.max(c1, c2), Math.max(r1, r2) };
+    }
+
+    private int column(double lon) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor((lon - minLon) / cellSize)));
+    }
+
+    private int row(double lat) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((lat - minLat) / cellSize)));
+    }
+
+    public RoutingGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Find the edges in a bounding box (and some around it, in the same cells).
+     * 
+     * @param minLon
+     * @param minLat
+     * @param maxLon
+     * @param maxLat
+     * @return the edges, sorted.
+     */
+    public int[] findEdges(double minLon, double minLat, double maxLon, double maxLat) {
+        int c1 = column(minLon), c2 = column(maxLon);
+        int r1 = row(minLat), r2 = row(maxLat);
+        if (maxLon < this.minLon || maxLat < this.minLat || minLon > this.minLon + columns * cellSize
+                || minLat > this.minLat + rows * cellSize) {
+            return new int[0];
+        }
+        int count = 0;
+        for (int r = r1; r <= r2; r++) {
+            count += cellStart[r * columns + c2 + 1] - cellStart[r * columns + c1];
+        }
+        int[] found = new int[count];
+        count = 0;
+        for (int r = r1; r <= r2; r++) {
+            int from = cellStart[r * columns + c1];
+            int length = cellStart[r * columns + c2 + 1] - from;
+            System.arraycopy(cellEdges, from, found, count, length);
+            count += length;
+        }
+        // an edge is in all the cells of its box
+        Arrays.sort(found);
+        int unique = 0;
+        for (int i = 0; i < found.length; i++) {
+            if (i == 0 || found[i] != found[i - 1]) {
+                found[unique++] = found[i];
+            }
+        }
+        return Arrays.copyOf(found, unique);
+    }
+
+    /**
+     * Find the nearest edges of a coordinate, closest first.
+     * 
+     * @param lon
+     * @param lat
+     * @param radius maximum distance, in meters
+     * @param profile only the edges open to this profile, or <code>null</code> for all edges
+     * @param edges found edges (its length is the maximum number of edges)
+     * @param fractions position of the projection of the coordinate on each edge, from 0 (source) to 1 (target)
+     * @param distances distance of the coordinate to each edge, in meters
+     * @return number of found edges.
+     */
+    public int findEdges(double lon, double lat, double radius, Profile profile, int[] edges, double[] fractions,
+            double[] distances) {
+        double scale = Math.cos(Math.toRadians(lat));
+        double radiusLon = radius / (METERS_BY_DEGREE * scale);
+        double radiusLat = radius / METERS_BY_DEGREE;
+        int c1 = (int) Math.floor((lon - radiusLon - minLon) / cellSize);
+        int c2 = (int) Math.floor((lon + radiusLon - minLon) / cellSize);
+        int r1 = (int) Math.floor((lat - radiusLat - minLat) / cellSize);
+        int r2 = (int) Math.floor((lat + radiusLat - minLat) / cellSize);
+        if (c2 < 0 || r2 < 0 || c1 >= columns || r1 >= rows) {
+            return 0;
+        }
+        int count = 0;
+        for (int r = Math.max(0, r1); r <= Math.min(rows - 1, r2); r++) {
+            for (int c = Math.max(0, c1); c <= Math.min(columns - 1, c2); c++) {
+                int cell = r * columns + c;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    int edge = cellEdges[i];
+                    if (profile != null && graph.getEdgeCost(profile, edge) == Float.POSITIVE_INFINITY) {
+                        continue;
+                    }
+                    // projection on the segment, in meters around the coordinate
+                    int source = graph.getEdgeSource(edge);
+                    int target = graph.getEdgeTarget(edge);
+                    double x1 = (graph.getLongitude(source) - lon) * scale * METERS_BY_DEGREE;
+                    double y1 = (graph.getLatitude(source) - lat) * METERS_BY_DEGREE;
+                    double dx = (graph.getLongitude(target) - lon) * scale * METERS_BY_DEGREE - x1;
+                    double dy = (graph.getLatitude(target) - lat) * METERS_BY_DEGREE - y1;
+                    double norm = dx * dx + dy * dy;
+                    double fraction = norm == 0 ? 0 : Math.max(0, Math.min(1, -(x1 * dx + y1 * dy) / norm));
+                    double x = x1 + fraction * dx;
+                    double y = y1 + fraction * dy;
+                    double distance = Math.sqrt(x * x + y * y);
+                    if (distance > radius || (count == edges.length && distance >= distances[count - 1])) {
+                        continue;
+                    }
+                    // an edge is in all the cells of its box
+                    boolean known = false;
+                    for (int k = 0; k < count && !known; k++) {
+                        known = (edges[k] == edge);
+                    }
+                    if (known) {
+                        continue;
+                    }
+                    // insertion in the sorted candidates
+                    int k = (count < edges.length) ? count++ : count - 1;
+                    while (k > 0 && distances[k - 1] > distance) {
+                        edges[k] = edges[k - 1];
+                        fractions[k] = fractions[k - 1];
+                        distances[k] = distances[k - 1];
+                        k--;
+                    }
+                    edges[k] = edge;
+                    fractions[k] = fraction;
+                    distances[k] = distance;
+                }
+            }
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,102 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.routing;
+
+/**
+ * Both points of a search, snapped one time on a shard for the searches of all profiles (see
+ * <code>RoutingShard.snap</code>). They are snapped on the nearest street whatever its profile : a profile that can't
+ * use this street snaps its point again.
+ * 
+ * @author bsimard
+ * 
+ */
+public class Endpoints {
+
+    private final RoutingShard shard;
+    private final double[]     coordinates;
+    private final double       snapDistance;
+    private final Snap         from;
+    private final Snap         to;
+    private final int          start;
+    private final int          end;
+
+    /**
+     * Constructor.
+     * 
+     * @param shard
+     * @param coordinates lon1, lat1, lon2, lat2
+     * @param snapDistance maximum distance of a point to its street, in degrees
+     * @param from snap of the first point, or <code>null</code> on a tiled graph
+     * @param to snap of the second point, or <code>null</code> on a tiled graph
+     * @param start nearest node of the first point
+     * @param end nearest node of the second point
+     */
+    Endpoints(RoutingShard shard, double[] coordinates, double snapDistance, Snap from, Snap to, int start, int end) {
+        this.shard = shard;
+        this.coordinates = coordinates;
+        this.snapDistance = snapDistance;
+        this.from = from;
+        this.to = to;
+        this.start = start;
+        this.end = end;
+    }
+
+    public RoutingShard getShard() {
+        return shard;
+    }
+
+    double getCoordinate(int i) {
+        return coordinates[i];
+    }
+
+    double getSnapDistance() {
+        return snapDistance;
+    }
+
+    Snap getFrom() {
+        return from;
+    }
+
+    Snap getTo() {
+        return to;
+    }
+
+    int getStart() {
+        return start;
+    }
+
+    int getEnd() {
+        return end;
+    }
+
+    /**
+     * @return the id of the nearest end of the street of the first point (ie. Neo4j node id).
+     */
+    public long getStartId() {
+        return shard.getGraph().getNodeId(start);
+    }
+
+    /**
+     * @return the id of the nearest end of the street of the second point (ie. Neo4j node id).
+     */
+    public long getEndId() {
+        return shard.getGraph().getNodeId(end);
+    }
+
+}
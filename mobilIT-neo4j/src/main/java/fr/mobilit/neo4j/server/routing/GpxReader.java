@@ -0,0 +1,91 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.routing;
+
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Streaming reader of the points of a GPX file (track, route and way points, in the order of the file), so that a
+ * long trace is never loaded at once.
+ * 
+ * <pre>
+ * while (reader.next()) {
+ *     ... reader.getLongitude(), reader.getLatitude() ...
+ * }
+ * </pre>
+ * 
+ * @author bsimard
+ * 
+ */
+public class GpxReader {
+
+    private final XMLStreamReader xml;
+    private double                lon;
+    private double                lat;
+
+    /**
+     * Constructor.
+     * 
+     * @param in
+     * @throws XMLStreamException
+     */
+    public GpxReader(InputStream in) throws XMLStreamException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        this.xml = factory.createXMLStreamReader(in);
+    }
+
+    /**
+     * Read the next point.
+     * 
+     * @return false at the end of the file.
+     * @throws XMLStreamException
+     */
+    public boolean next() throws XMLStreamException {
+        while (xml.hasNext()) {
+            if (xml.next() == XMLStreamConstants.START_ELEMENT) {
+                String name = xml.getLocalName();
+                if ("trkpt".equals(name) || "rtept".equals(name) || "wpt".equals(name)) {
+                    lon = Double.parseDouble(xml.getAttributeValue(null, "lon"));
+                    lat = Double.parseDouble(xml.getAttributeValue(null, "lat"));
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public double getLongitude() {
+        return lon;
+    }
+
+    public double getLatitude() {
+        return lat;
+    }
+
+    public void close() throws XMLStreamException {
+        xml.close();
+    }
+
+}
@@ -0,0 +1,189 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.routing;
+
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.mobilit.neo4j.server.utils.LongIntHashMap;
+
+/**
+ * Build an <code>ArrayGraph</code> from nodes and edges given in any order.
+ * 
+ * @author bsimard
+ * 
+ */
+public class GraphBuilder {
+
+    private final LongIntHashMap       index   = new LongIntHashMap(1024);
+    private long[]                     nodeIds = new long[1024];
+    private double[]                   lon     = new double[1024];
+    private double[]                   lat     = new double[1024];
+    private int                        nbNodes = 0;
+
+    private int[]                      source  = new int[1024];
+    private int[]                      target  = new int[1024];
+    private int[]                      name    = new int[1024];
+    private float[]                    length  = new float[1024];
+    private float[][]                  costs   = new float[Profile.values().length][1024];
+    private int                        nbEdges = 0;
+
+    private final Map<String, Integer> nameIndex = new HashMap<String, Integer>();
+    private final List<String>         names   = new ArrayList<String>();
+
+    /**
+     * Add a node, if it's not already in the graph.
+     * 
+     * @param nodeId id in the source graph
+     * @param longitude
+     * @param latitude
+     * @return the node
+     */
+    public int addNode(long nodeId, double longitude, double latitude) {
+        int node = index.get(nodeId);
+        if (node != LongIntHashMap.NO_VALUE) {
+            return node;
+        }
+        if (nbNodes == nodeIds.length) {
+            nodeIds = Arrays.copyOf(nodeIds, nbNodes * 2);
+            lon = Arrays.copyOf(lon, nbNodes * 2);
+            lat = Arrays.copyOf(lat, nbNodes * 2);
+        }
+        nodeIds[nbNodes] = nodeId;
+        lon[nbNodes] = longitude;
+        lat[nbNodes] = latitude;
+        index.put(nodeId, nbNodes);
+        return nbNodes++;
+    }
+
+    /**
+     * Add a directed edge.
+     * 
+     * @param from
+     * @param to
+     * @param edgeLength in meters
+     * @param edgeName street name, or <code>null</code>
+     * @param edgeCosts cost in hours by profile (in <code>Profile</code> order)
+     */
+    public void addEdge(int from, int to, float edgeLength, String edgeName, float[] edgeCosts) {
+        if (nbEdges == source.length) {
+            source = Arrays.copyOf(source, nbEdges * 2);
+            target = Arrays.copyOf(target, nbEdges * 2);
+            name = Arrays.copyOf(name, nbEdges * 2);
+            length = Arrays.copyOf(length, nbEdges * 2);
+            for (int p = 0; p < costs.length; p++) {
+                costs[p] = Arrays.copyOf(costs[p], nbEdges * 2);
+            }
+        }
+        source[nbEdges] = from;
+        target[nbEdges] = to;
+        name[nbEdges] = nameIndex(edgeName);
+        length[nbEdges] = edgeLength;
+        for (int p = 0; p < costs.length; p++) {
+            costs[p][nbEdges] = edgeCosts[p];
+        }
+        nbEdges++;
+    }
+
+    private int nameIndex(String edgeName) {
+        if (edgeName == null) {
+            return -1;
+        }
+        Integer i = nameIndex.get(edgeName);
+        if (i == null) {
+            i = names.size();
+            nameIndex.put(edgeName, i);
+            names.add(edgeName);
+        }
+        return i;
+    }
+
+    public int getNodeCount() {
+        return nbNodes;
+    }
+
+    public int getEdgeCount() {
+        return nbEdges;
+    }
+
+    /**
+     * @return the graph, with edges sorted by source node.
+     */
+    public ArrayGraph build() {
+        // counting sort of edges by source
+        int[] firstOut = new int[nbNodes + 1];
+        for (int e = 0; e < nbEdges; e++) {
+            firstOut[source[e] + 1]++;
+        }
+        for (int n = 0; n < nbNodes; n++) {
+            firstOut[n + 1] += firstOut[n];
+        }
+        int[] fill = new int[nbNodes];
+        int[] order = new int[nbEdges];
+        for (int e = 0; e < nbEdges; e++) {
+            order[firstOut[source[e]] + fill[source[e]]++] = e;
+        }
+        int[] edgeSource = new int[nbEdges];
+        int[] edgeTarget = new int[nbEdges];
+        int[] edgeName = new int[nbEdges];
+        float[] edgeLength = new float[nbEdges];
+        FloatBuffer[] edgeCosts = new FloatBuffer[costs.length];
+        for (int p = 0; p < costs.length; p++) {
+            float[] cost = new float[nbEdges];
+            for (int e = 0; e < nbEdges; e++) {
+                cost[e] = costs[p][order[e]];
+            }
+            edgeCosts[p] = FloatBuffer.wrap(cost);
+        }
+        for (int e = 0; e < nbEdges; e++) {
+            edgeSource[e] = source[order[e]];
+            edgeTarget[e] = target[order[e]];
+            edgeName[e] = name[order[e]];
+            edgeLength[e] = length[order[e]];
+        }
+
+        // incoming edges by target
+        int[] firstIn = new int[nbNodes + 1];
+        for (int e = 0; e < nbEdges; e++) {
+            firstIn[edgeTarget[e] + 1]++;
+        }
+        for (int n = 0; n < nbNodes; n++) {
+            firstIn[n + 1] += firstIn[n];
+        }
+        Arrays.fill(fill, 0);
+        int[] inEdges = new int[nbEdges];
+        for (int e = 0; e < nbEdges; e++) {
+            inEdges[firstIn[edgeTarget[e]] + fill[edgeTarget[e]]++] = e;
+        }
+
+        return new ArrayGraph(LongBuffer.wrap(Arrays.copyOf(nodeIds, nbNodes)), DoubleBuffer.wrap(Arrays.copyOf(lon,
+                nbNodes)), DoubleBuffer.wrap(Arrays.copyOf(lat, nbNodes)), IntBuffer.wrap(firstOut),
+                IntBuffer.wrap(firstIn), IntBuffer.wrap(inEdges), IntBuffer.wrap(edgeSource),
+                IntBuffer.wrap(edgeTarget), IntBuffer.wrap(edgeName), FloatBuffer.wrap(edgeLength), edgeCosts,
+                names.toArray(new String[names.size()]));
+    }
+
+}
@@ -0,0 +1,215 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.routing;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Binary file of an <code>ArrayGraph</code>, laid out so that it can be memory-mapped and used in place : a header,
+ * then each buffer of the graph one after the other, then the street names.
+ * 
+ * <pre>
+ * int magic, version, nodes, edges, inEdges, names, profiles, 0
+ * long nodeIds[nodes]
+ * double lon[nodes], lat[nodes]
+ * int firstOut[nodes + 1], firstIn[nodes + 1], inEdges[inEdges]
+ * int edgeSource[edges], edgeTarget[edges], edgeName[edges]
+ * float edgeLength[edges], costs[profiles][edges]
+ * (int length, byte utf8[length])[names]
+ * </pre>
+ * 
+ * @author bsimard
+ * 
+ */
+public class GraphFile {
+
+    private static final int MAGIC       = 0x4D42474D;
+    private static final int VERSION     = 1;
+    private static final int HEADER_SIZE = 32;
+
+    private GraphFile() {
+    }
+
+    /**
+     * Write a graph.
+     * 
+     * @param graph
+     * @param file
+     * @return the size of the file.
+     * @throws IOException
+     */
+    public static long write(ArrayGraph graph, File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        try {
+            int nodes = graph.nodeIds.limit();
+            int edges = graph.edgeTarget.limit();
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(nodes);
+            out.writeInt(edges);
+            out.writeInt(graph.inEdges.limit());
+            out.writeInt(graph.names.length);
+            out.writeInt(graph.costs.length);
+            out.writeInt(0);
+            for (int i = 0; i < nodes; i++) {
+                out.writeLong(graph.nodeIds.get(i));
+            }
+            write(out, graph.lon);
+            write(out, graph.lat);
+            write(out, graph.firstOut);
+            write(out, graph.firstIn);
+            write(out, graph.inEdges);
+            write(out, graph.edgeSource);
+            write(out, graph.edgeTarget);
+            write(out, graph.edgeName);
+            write(out, graph.edgeLength);
+            for (FloatBuffer cost : graph.costs) {
+                write(out, cost);
+            }
+            for (String name : graph.names) {
+                byte[] bytes = name.getBytes("UTF-8");
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        } finally {
+            out.close();
+        }
+        return file.length();
+    }
+
+    private static void write(DataOutputStream out, DoubleBuffer buffer) throws IOException {
+        for (int i = 0; i < buffer.limit(); i++) {
+            out.writeDouble(buffer.get(i));
+        }
+    }
+
+    private static void write(DataOutputStream out, IntBuffer buffer) throws IOException {
+        for (int i = 0; i < buffer.limit(); i++) {
+            out.writeInt(buffer.get(i));
+        }
+    }
+
+    private static void write(DataOutputStream out, FloatBuffer buffer) throws IOException {
+        for (int i = 0; i < buffer.limit(); i++) {
+            out.writeFloat(buffer.get(i));
+        }
+    }
+
+    /**
+     * Map a graph file read-only. Only the names are read, the buffers are views on the mapped file.
+     * 
+     * @param file
+     * @return the graph
+     * @throws IOException if the file is not a graph file.
+     */
+    public static ArrayGraph map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        MappedByteBuffer buffer;
+        try {
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            // the mapping stays valid after the channel is closed
+            raf.close();
+        }
+        return read(buffer, file.getName());
+    }
+
+    /**
+     * Read a graph from a buffer laid out as a graph file.
+     * 
+     * @param buffer
+     * @param name name of the source, for errors
+     * @return the graph
+     * @throws IOException
+     */
+    static ArrayGraph read(ByteBuffer buffer, String name) throws IOException {
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException(name + " is not a routing graph file");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException(name + " has an unknown version " + buffer.getInt(4));
+        }
+        int nodes = buffer.getInt(8);
+        int edges = buffer.getInt(12);
+        int inCount = buffer.getInt(16);
+        int nameCount = buffer.getInt(20);
+        int profiles = buffer.getInt(24);
+
+        int position = HEADER_SIZE;
+        LongBuffer nodeIds = slice(buffer, position, nodes * 8).asLongBuffer();
+        position += nodes * 8;
+        DoubleBuffer lon = slice(buffer, position, nodes * 8).asDoubleBuffer();
+        position += nodes * 8;
+        DoubleBuffer lat = slice(buffer, position, nodes * 8).asDoubleBuffer();
+        position += nodes * 8;
+        IntBuffer firstOut = slice(buffer, position, (nodes + 1) * 4).asIntBuffer();
+        position += (nodes + 1) * 4;
+        IntBuffer firstIn = slice(buffer, position, (nodes + 1) * 4).asIntBuffer();
+        position += (nodes + 1) * 4;
+        IntBuffer inEdges = slice(buffer, position, inCount * 4).asIntBuffer();
+        position += inCount * 4;
+        IntBuffer edgeSource = slice(buffer, position, edges * 4).asIntBuffer();
+        position += edges * 4;
+        IntBuffer edgeTarget = slice(buffer, position, edges * 4).asIntBuffer();
+        position += edges * 4;
+        IntBuffer edgeName = slice(buffer, position, edges * 4).asIntBuffer();
+        position += edges * 4;
+        FloatBuffer edgeLength = slice(buffer, position, edges * 4).asFloatBuffer();
+        position += edges * 4;
+        FloatBuffer[] costs = new FloatBuffer[profiles];
+        for (int p = 0; p < profiles; p++) {
+            costs[p] = slice(buffer, position, edges * 4).asFloatBuffer();
+            position += edges * 4;
+        }
+        String[] names = new String[nameCount];
+        for (int i = 0; i < nameCount; i++) {
+            int length = buffer.getInt(position);
+            byte[] bytes = new byte[length];
+            ByteBuffer view = slice(buffer, position + 4, length);
+            view.get(bytes);
+            names[i] = new String(bytes, "UTF-8");
+            position += 4 + length;
+        }
+        return new ArrayGraph(nodeIds, lon, lat, firstOut, firstIn, inEdges, edgeSource, edgeTarget, edgeName,
+                edgeLength, costs, names);
+    }
+
+    /**
+     * @return a view on <code>length</code> bytes of the buffer from <code>position</code>.
+     */
+    static ByteBuffer slice(ByteBuffer buffer, int position, int length) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.limit(position + length);
+        duplicate.position(position);
+        return duplicate.slice();
+    }
+
+}
@@ -0,0 +1,372 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.routing;
+
+import java.util.Arrays;
+
+import fr.mobilit.neo4j.server.pojo.Route;
+
+/**
+ * Bounded, multi-source Dijkstra on a <code>RoutingGraph</code>, like <code>NetworkDijkstra</code> on the Neo4j graph
+ * but without any object by node : the labels are kept in an open addressing table and the queue is a binary heap of
+ * primitives. Only the reached nodes are allocated, so a short search on a large graph stays cheap.
+ * 
+ * A backward search follows the incoming edges : the cost of a node is then the cost from the node to the sources.
+ * 
+ * This class is not thread safe : create one by search.
+ * 
+ * @author bsimard
+ * 
+ */
+public class GraphSearch {
+
+    private static final int   EMPTY     = -1;
+
+    private final RoutingGraph graph;
+    private final Profile      profile;
+    private final boolean      backward;
+
+    // labels, by slot
+    private int[]              nodes;
+    private double[]           costs;
+    private int[]              edges;
+    private boolean[]          settled;
+    private int                size      = 0;
+
+    // heap of (cost, slot), with lazy deletion
+    private double[]           heapCosts = new double[64];
+    private int[]              heapSlots = new int[64];
+    private int                heapSize  = 0;
+
+    private int[]              targets;
+    private double             maxCost   = Double.POSITIVE_INFINITY;
+    private boolean            byLength  = false;
+    private int                settledCount = 0;
+
+    /**
+     * Constructor.
+     * 
+     * @param graph
+     * @param profile
+     * @param backward <code>true</code> to search from the destinations
+     */
+    public GraphSearch(RoutingGraph graph, Profile profile, boolean backward) {
+        this.graph = graph;
+        this.profile = profile;
+        this.backward = backward;
+        allocate(256);
+    }
+
+    private void allocate(int capacity) {
+        nodes = new int[capacity];
+        costs = new double[capacity];
+        edges = new int[capacity];
+        settled = new boolean[capacity];
+        Arrays.fill(nodes, EMPTY);
+    }
+
+    /**
+     * Add a source of the search.
+     * 
+     * @param node
+     * @param cost initial cost of the source
+     */
+    public void addSource(int node, double cost) {
+        int slot = slot(node);
+        if (cost < costs[slot]) {
+            costs[slot] = cost;
+            edges[slot] = -1;
+            push(cost, slot);
+        }
+    }
+
+    /**
+     * Stop the search when all these nodes are settled.
+     * 
+     * @param targets
+     */
+    public void setTargets(int[] targets) {
+        this.targets = targets;
+    }
+
+    /**
+     * Stop the search when the cost is greater than this one.
+     * 
+     * @param maxCost
+     */
+    public void setMaxCost(double maxCost) {
+        this.maxCost = maxCost;
+    }
+
+    /**
+     * Weight the edges open to the profile by their length (in meters) instead of their cost : the search then gives
+     * the shortest distance, ie. for map matching.
+     * 
+     * @param byLength
+     */
+    public void setWeightByLength(boolean byLength) {
+        this.byLength = byLength;
+    }
+
+    /**
+     * Run the search.
+     */
+    public void calculate() {
+        int remaining = -1;
+        if (targets != null) {
+            remaining = 0;
+            for (int target : targets) {
+                if (!isSettled(target)) {
+                    remaining++;
+                }
+            }
+        }
+        while (heapSize > 0 && remaining != 0) {
+            double cost = heapCosts[0];
+            int slot = pop();
+            if (settled[slot] || cost > costs[slot]) {
+                continue;
+            }
+            if (cost > maxCost) {
+                break;
+            }
+            settled[slot] = true;
+            settledCount++;
+            int node = nodes[slot];
+            if (targets != null && isTarget(node)) {
+                remaining--;
+            }
+            if (backward) {
+                for (int i = graph.getFirstInEdge(node); i < graph.getLastInEdge(node); i++) {
+                    int edge = graph.getInEdge(i);
+                    relax(cost, edge, graph.getEdgeSource(edge));
+                }
+            }
+            else {
+                for (int edge = graph.getFirstOutEdge(node); edge < graph.getLastOutEdge(node); edge++) {
+                    relax(cost, edge, graph.getEdgeTarget(edge));
+                }
+            }
+        }
+    }
+
+    private boolean isTarget(int node) {
+        for (int target : targets) {
+            if (target == node) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void relax(double cost, int edge, int other) {
+        float edgeCost = graph.getEdgeCost(profile, edge);
+        if (edgeCost == Float.POSITIVE_INFINITY) {
+            return;
+        }
+        double newCost = cost + (byLength ? graph.getEdgeLength(edge) : edgeCost);
+        int slot = slot(other);
+        if (!settled[slot] && newCost < costs[slot]) {
+            costs[slot] = newCost;
+            edges[slot] = edge;
+            push(newCost, slot);
+        }
+    }
+
+    /**
+     * @return the slot of the node, created if needed.
+     */
+    private int slot(int node) {
+        if (size * 2 >= nodes.length) {
+            int[] oldNodes = nodes;
+            double[] oldCosts = costs;
+            int[] oldEdges = edges;
+            boolean[] oldSettled = settled;
+            allocate(nodes.length * 2);
+            int[] moved = new int[oldNodes.length];
+            for (int i = 0; i < oldNodes.length; i++) {
+                if (oldNodes[i] != EMPTY) {
+                    int slot = find(oldNodes[i]);
+                    nodes[slot] = oldNodes[i];
+                    costs[slot] = oldCosts[i];
+                    edges[slot] = oldEdges[i];
+                    settled[slot] = oldSettled[i];
+                    moved[i] = slot;
+                }
+            }
+            for (int i = 0; i < heapSize; i++) {
+                heapSlots[i] = moved[heapSlots[i]];
+            }
+        }
+        int slot = find(node);
+        if (nodes[slot] == EMPTY) {
+            nodes[slot] = node;
+            costs[slot] = Double.POSITIVE_INFINITY;
+            edges[slot] = -1;
+            size++;
+        }
+        return slot;
+    }
+
+    private int find(int node) {
+        int mask = nodes.length - 1;
+        int hash = node * 0x9E3779B9;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (nodes[slot] != EMPTY && nodes[slot] != node) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void push(double cost, int slot) {
+        if (heapSize == heapCosts.length) {
+            heapCosts = Arrays.copyOf(heapCosts, heapSize * 2);
+            heapSlots = Arrays.copyOf(heapSlots, heapSize * 2);
+        }
+        int i = heapSize++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heapCosts[parent] <= cost) {
+                break;
+            }
+            heapCosts[i] = heapCosts[parent];
+            heapSlots[i] = heapSlots[parent];
+            i = parent;
+        }
+        heapCosts[i] = cost;
+        heapSlots[i] = slot;
+    }
+
+    private int pop() {
+        int top = heapSlots[0];
+        heapSize--;
+        double cost = heapCosts[heapSize];
+        int slot = heapSlots[heapSize];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && heapCosts[child + 1] < heapCosts[child]) {
+                child++;
+            }
+            if (heapCosts[child] >= cost) {
+                break;
+            }
+            heapCosts[i] = heapCosts[child];
+            heapSlots[i] = heapSlots[child];
+            i = child;
+        }
+        heapCosts[i] = cost;
+        heapSlots[i] = slot;
+        return top;
+    }
+
+    /**
+     * @param node
+     * @return true if the node has been settled.
+     */
+    public boolean isSettled(int node) {
+        int slot = find(node);
+        return nodes[slot] == node && settled[slot];
+    }
+
+    /**
+     * @param node
+     * @return the cost of a settled node, <code>Double.POSITIVE_INFINITY</code> otherwise.
+     */
+    public double getCost(int node) {
+        int slot = find(node);
+        return (nodes[slot] == node && settled[slot]) ? costs[slot] : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @return number of settled nodes.
+     */
+    public int getSettledCount() {
+        return settledCount;
+    }
+
+    /**
+     * @param node a settled node
+     * @return the source from which the node has been reached.
+     */
+    public int getOrigin(int node) {
+        int current = node;
+        int edge = edges[find(current)];
+        while (edge >= 0) {
+            current = backward ? graph.getEdgeTarget(edge) : graph.getEdgeSource(edge);
+            edge = edges[find(current)];
+        }
+        return current;
+    }
+
+    /**
+     * @param node a settled node
+     * @return edges of the path, in travel order (from the source for a forward search, to the source for a backward
+     *         one).
+     */
+    public int[] getPathAsEdges(int node) {
+        int count = 0;
+        int current = node;
+        for (int edge = edges[find(current)]; edge >= 0; edge = edges[find(current)]) {
+            current = backward ? graph.getEdgeTarget(edge) : graph.getEdgeSource(edge);
+            count++;
+        }
+        int[] path = new int[count];
+        current = node;
+        int i = backward ? 0 : count - 1;
+        for (int edge = edges[find(current)]; edge >= 0; edge = edges[find(current)]) {
+            path[i] = edge;
+            i += backward ? 1 : -1;
+            current = backward ? graph.getEdgeTarget(edge) : graph.getEdgeSource(edge);
+        }
+        return path;
+    }
+
+    /**
+     * @param node a settled node
+     * @return one segment by edge, each with the cost of the whole path (as <code>ShortestPathAlgorithm</code>).
+     */
+    public Route getPathAsRoute(int node) {
+        return toRoute(graph, getPathAsEdges(node), getCost(node));
+    }
+
+    /**
+     * Build the route of a path.
+     * 
+     * @param graph
+     * @param path edges in travel order
+     * @param cost cost set on each segment
+     * @return
+     */
+    public static Route toRoute(RoutingGraph graph, int[] path, double cost) {
+        Route route = new Route(path.length);
+        for (int edge : path) {
+            int from = graph.getEdgeSource(edge);
+            int to = graph.getEdgeTarget(edge);
+            String name = graph.getEdgeName(edge);
+            route.addSegment(name == null ? "undefined" : name, graph.getEdgeLength(edge), cost,
+                    graph.getLongitude(from), graph.getLatitude(from), graph.getLongitude(to), graph.getLatitude(to));
+        }
+        return route;
+    }
+
+}
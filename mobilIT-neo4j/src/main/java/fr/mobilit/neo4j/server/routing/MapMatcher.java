@@ -0,0 +1,351 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.routing;
+
+import java.util.Arrays;
+
+/**
+ * Hidden Markov model map matching of a GPS trace on a <code>RoutingGraph</code> (Newson & Krumm) :
+ * <ul>
+ * <li>the states of a point are the edges near it (see <code>EdgeGrid</code>), scored by a gaussian of the GPS error</li>
+ * <li>a transition between two candidates is scored by the difference between the shortest path between them (a
+ * search bounded by the straight distance) and the straight distance</li>
+ * </ul>
+ * Points are added one by one and the Viterbi lattice is kept on a sliding window : when the window is full, its
+ * oldest point is committed with the best candidate of the current path. The memory doesn't depend on the length of
+ * the trace, only the matched edges are kept.
+ * 
+ * This class is not thread safe : create one by trace.
+ * 
+ * @author bsimard
+ * 
+ */
+public class MapMatcher {
+
+    private static final int[] NO_EDGE    = new int[0];
+
+    private final RoutingGraph graph;
+    private final EdgeGrid     index;
+    private final Profile      profile;
+
+    private double             radius     = 50;
+    private double             sigma      = 10;
+    private double             beta       = 10;
+    private double             maxDetour  = 3;
+
+    // window of the lattice, as a ring of steps
+    private final Step[]       steps;
+    private int                first      = 0;
+    private int                size       = 0;
+
+    // last committed candidate, -1 at the start of a chain
+    private int                committed  = -1;
+    private int                committedEdge;
+    private double             committedFraction;
+
+    // matched edges
+    private int[]              edges      = new int[256];
+    private int                edgeCount  = 0;
+
+    private int                pointCount = 0;
+    private int                matchCount = 0;
+    private int                breakCount = 0;
+
+    /**
+     * Constructor.
+     * 
+     * @param index edges of the graph
+     * @param profile only the edges open to this profile are matched
+     * @param candidates maximum number of candidates by point
+     * @param window number of points kept in the lattice
+     */
+    public MapMatcher(EdgeGrid index, Profile profile, int candidates, int window) {
+        this.graph = index.getGraph();
+        this.index = index;
+        this.profile = profile;
+        this.steps = new Step[window];
+        for (int i = 0; i < window; i++) {
+            steps[i] = new Step(candidates);
+        }
+    }
+
+    /**
+     * @param radius maximum distance of a point to its candidates, in meters
+     * @param sigma standard deviation of the GPS error, in meters
+     * @param beta scale of the difference between the path and the straight distance, in meters
+     * @param maxDetour maximum ratio of the path length to the straight distance
+     */
+    public void setParameters(double radius, double sigma, double beta, double maxDetour) {
+        this.radius = radius;
+        this.sigma = sigma;
+        this.beta = beta;
+        this.maxDetour = maxDetour;
+    }
+
+    /**
+     * Add the next point of the trace.
+     * 
+     * @param lon
+     * @param lat
+     */
+    public void add(double lon, double lat) {
+        pointCount++;
+        match(lon, lat);
+    }
+
+    private void match(double lon, double lat) {
+        Step previous = (size > 0) ? steps[(first + size - 1) % steps.length] : null;
+        // closer points don't give any information, only noise
+        double straight = (previous != null) ? distance(previous.lon, previous.lat, lon, lat) : 0;
+        if (previous != null && straight < 2 * sigma) {
+            return;
+        }
+        if (size == steps.length) {
+            commitOldest();
+        }
+        Step step = steps[(first + size) % steps.length];
+        step.lon = lon;
+        step.lat = lat;
+        step.count = index.findEdges(lon, lat, radius, profile, step.edges, step.fractions, step.distances);
+        if (step.count == 0) {
+            // off the network
+            return;
+        }
+        if (previous == null) {
+            for (int j = 0; j < step.count; j++) {
+                step.scores[j] = emission(step.distances[j]);
+                step.back[j] = -1;
+                step.routes[j] = null;
+            }
+            size++;
+            return;
+        }
+        if (!transition(previous, step, straight)) {
+            // no path from the previous candidates : the trace is matched again from this point
+            breakCount++;
+            commitAll();
+            committed = -1;
+            match(lon, lat);
+            return;
+        }
+        size++;
+    }
+
+    /**
+     * Viterbi step : best score of each candidate of the step, from the candidates of the previous step.
+     * 
+     * @return false if no candidate can be reached.
+     */
+    private boolean transition(Step previous, Step step, double straight) {
+        double maxRoute = straight * maxDetour + 2 * radius;
+        int[] sources = new int[step.count];
+        for (int j = 0; j < step.count; j++) {
+            sources[j] = graph.getEdgeSource(step.edges[j]);
+            step.scores[j] = Double.NEGATIVE_INFINITY;
+            step.back[j] = -1;
+            step.routes[j] = null;
+        }
+        GraphSearch[] searches = new GraphSearch[previous.count];
+        for (int i = 0; i < previous.count; i++) {
+            if (previous.scores[i] == Double.NEGATIVE_INFINITY) {
+                continue;
+            }
+            int from = previous.edges[i];
+            double fromLength = graph.getEdgeLength(from);
+            for (int j = 0; j < step.count; j++) {
+                int to = step.edges[j];
+                double route;
+                if (from == to && (previous.fractions[i] - step.fractions[j]) * fromLength < sigma) {
+                    // same edge, a backward move is GPS noise
+                    route = Math.max(0, step.fractions[j] - previous.fractions[i]) * fromLength;
+                }
+                else {
+                    if (searches[i] == null) {
+                        searches[i] = new GraphSearch(graph, profile, false);
+                        searches[i].setWeightByLength(true);
+                        searches[i].addSource(graph.getEdgeTarget(from), 0);
+                        searches[i].setTargets(sources);
+                        searches[i].setMaxCost(maxRoute);
+                        searches[i].calculate();
+                    }
+                    route = (1 - previous.fractions[i]) * fromLength + searches[i].getCost(sources[j])
+                            + step.fractions[j] * graph.getEdgeLength(to);
+                }
+                if (route > maxRoute) {
+                    continue;
+                }
+                double score = previous.scores[i] - Math.abs(route - straight) / beta;
+                if (score > step.scores[j]) {
+                    step.scores[j] = score;
+                    step.back[j] = i;
+                }
+            }
+        }
+        double best = Double.NEGATIVE_INFINITY;
+        for (int j = 0; j < step.count; j++) {
+            if (step.back[j] >= 0) {
+                int i = step.back[j];
+                step.routes[j] = (previous.edges[i] == step.edges[j]) ? NO_EDGE : searches[i]
+                        .getPathAsEdges(sources[j]);
+                step.scores[j] += emission(step.distances[j]);
+                best = Math.max(best, step.scores[j]);
+            }
+        }
+        if (best == Double.NEGATIVE_INFINITY) {
+            return false;
+        }
+        // keep the scores around 0
+        for (int j = 0; j < step.count; j++) {
+            step.scores[j] -= best;
+        }
+        return true;
+    }
+
+    private double emission(double distance) {
+        return -0.5 * (distance / sigma) * (distance / sigma);
+    }
+
+    /**
+     * Commit the oldest step of the window with the candidate on the best path.
+     */
+    private void commitOldest() {
+        Step last = steps[(first + size - 1) % steps.length];
+        int candidate = 0;
+        for (int j = 1; j < last.count; j++) {
+            if (last.scores[j] > last.scores[candidate]) {
+                candidate = j;
+            }
+        }
+        for (int s = size - 1; s > 0; s--) {
+            candidate = steps[(first + s) % steps.length].back[candidate];
+        }
+        Step step = steps[first];
+        int edge = step.edges[candidate];
+        if (committed >= 0) {
+            int[] route = step.routes[candidate];
+            if (step.back[candidate] != committed) {
+                // the best path has changed behind the commit : join the committed edge
+                route = join(committedEdge, committedFraction, edge, step.fractions[candidate]);
+            }
+            for (int e : route) {
+                append(e);
+            }
+        }
+        if (edgeCount == 0 || edges[edgeCount - 1] != edge) {
+            append(edge);
+        }
+        committed = candidate;
+        committedEdge = edge;
+        committedFraction = step.fractions[candidate];
+        matchCount++;
+        first = (first + 1) % steps.length;
+        size--;
+    }
+
+    private void commitAll() {
+        while (size > 0) {
+            commitOldest();
+        }
+    }
+
+    private int[] join(int from, double fromFraction, int to, double toFraction) {
+        if (from == to) {
+            return NO_EDGE;
+        }
+        GraphSearch search = new GraphSearch(graph, profile, false);
+        search.setWeightByLength(true);
+        search.addSource(graph.getEdgeTarget(from), 0);
+        search.setTargets(new int[] { graph.getEdgeSource(to) });
+        search.calculate();
+        return search.isSettled(graph.getEdgeSource(to)) ? search.getPathAsEdges(graph.getEdgeSource(to)) : NO_EDGE;
+    }
+
+    private void append(int edge) {
+        if (edgeCount == edges.length) {
+            edges = Arrays.copyOf(edges, edgeCount * 2);
+        }
+        edges[edgeCount++] = edge;
+    }
+
+    /**
+     * Commit the remaining points.
+     * 
+     * @return the matched edges, in travel order.
+     */
+    public int[] finish() {
+        commitAll();
+        return Arrays.copyOf(edges, edgeCount);
+    }
+
+    /**
+     * @return number of added points.
+     */
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    /**
+     * @return number of points matched on an edge.
+     */
+    public int getMatchCount() {
+        return matchCount;
+    }
+
+    /**
+     * @return number of times the trace couldn't be followed on the network.
+     */
+    public int getBreakCount() {
+        return breakCount;
+    }
+
+    /**
+     * @return distance between two coordinates, in meters.
+     */
+    static double distance(double lon1, double lat1, double lon2, double lat2) {
+        double x = (lon2 - lon1) * Math.cos(Math.toRadians((lat1 + lat2) / 2)) * EdgeGrid.METERS_BY_DEGREE;
+        double y = (lat2 - lat1) * EdgeGrid.METERS_BY_DEGREE;
+        return Math.sqrt(x * x + y * y);
+    }
+
+    /**
+     * A point of the trace and its candidates.
+     */
+    private static class Step {
+
+        private double        lon;
+        private double        lat;
+        private int           count;
+        private final int[]    edges;
+        private final double[] fractions;
+        private final double[] distances;
+        private final double[] scores;
+        private final int[]    back;
+        private final int[][]  routes;
+
+        private Step(int candidates) {
+            edges = new int[candidates];
+            fractions = new double[candidates];
+            distances = new double[candidates];
+            scores = new double[candidates];
+            back = new int[candidates];
+            routes = new int[candidates][];
+        }
+    }
+
+}
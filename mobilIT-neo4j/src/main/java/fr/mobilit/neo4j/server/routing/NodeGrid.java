@@ -0,0 +1,211 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.routing;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Uniform grid over the nodes of a <code>RoutingGraph</code> having edges, to snap a coordinate on the nearest node.
+ * Cells are stored as compressed rows : nodes of the cell <code>c</code> are from <code>cellStart[c]</code> to
+ * <code>cellStart[c + 1]</code> (exclusive). The grid can be saved with its graph in a routing snapshot (see
+ * <code>ShardSnapshot</code>), and used in place from the mapped file.
+ * 
+ * @author bsimard
+ * 
+ */
+public class NodeGrid implements NodeLocator {
+
+    private final RoutingGraph graph;
+    private final double       minLon;
+    private final double       minLat;
+    private final double       cellSize;
+    private final int          columns;
+    private final int          rows;
+    private final IntBuffer    cellStart;
+    private final IntBuffer    cellNodes;
+
+    /**
+     * Constructor.
+     * 
+     * @param graph
+     * @param cellSize size of a cell, in degrees
+     */
+    public NodeGrid(RoutingGraph graph, double cellSize) {
+        this.graph = graph;
+        this.cellSize = cellSize;
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        int count = 0;
+        for (int node = 0; node < graph.getNodeCount(); node++) {
+            if (isRoutable(node)) {
+                minX = Math.min(minX, graph.getLongitude(node));
+                minY = Math.min(minY, graph.getLatitude(node));
+                maxX = Math.max(maxX, graph.getLongitude(node));
+                maxY = Math.max(maxY, graph.getLatitude(node));
+                count++;
+            }
+        }
+        if (count == 0) {
+            minX = minY = maxX = maxY = 0;
+        }
+        this.minLon = minX;
+        this.minLat = minY;
+        this.columns = (int) ((maxX - minX) / cellSize) + 1;
+        this.rows = (int) ((maxY - minY) / cellSize) + 1;
+
+        int[] cellStart = new int[columns * rows + 1];
+        int[] nodeCell = new int[graph.getNodeCount()];
+        for (int node = 0; node < graph.getNodeCount(); node++) {
+            if (isRoutable(node)) {
+                nodeCell[node] = cell(column(graph.getLongitude(node)), row(graph.getLatitude(node)));
+                cellStart[nodeCell[node] + 1]++;
+            }
+        }
+        for (int c = 0; c < columns * rows; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] cellNodes = new int[count];
+        int[] fill = new int[columns * rows];
+        for (int node = 0; node < graph.getNodeCount(); node++) {
+            if (isRoutable(node)) {
+                cellNodes[cellStart[nodeCell[node]] + fill[nodeCell[node]]++] = node;
+            }
+        }
+        this.cellStart = IntBuffer.wrap(cellStart);
+        this.cellNodes = IntBuffer.wrap(cellNodes);
+    }
+
+    private NodeGrid(RoutingGraph graph, double minLon, double minLat, double cellSize, int columns, int rows,
+            IntBuffer cellStart, IntBuffer cellNodes) {
+        this.graph = graph;
+        this.minLon = minLon;
+        this.minLat = minLat;
+        this.cellSize = cellSize;
+        this.columns = columns;
+        this.rows = rows;
+        this.cellStart = cellStart;
+        this.cellNodes = cellNodes;
+    }
+
+    /**
+     * Write the grid : <code>double cellSize, minLon, minLat; int columns, rows, nodes; int cellStart[columns * rows +
+     * 1], cellNodes[nodes]</code>.
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeDouble(cellSize);
+        out.writeDouble(minLon);
+        out.writeDouble(minLat);
+        out.writeInt(columns);
+        out.writeInt(rows);
+        out.writeInt(cellNodes.limit());
+        for (int i = 0; i < cellStart.limit(); i++) {
+            out.writeInt(cellStart.get(i));
+        }
+        for (int i = 0; i < cellNodes.limit(); i++) {
+            out.writeInt(cellNodes.get(i));
+        }
+    }
+
+    /**
+     * Read a grid written by <code>write</code>, the cells are views on the buffer.
+     * 
+     * @param buffer
+     * @param graph the graph of the grid
+     * @return the grid
+     */
+    static NodeGrid read(ByteBuffer buffer, RoutingGraph graph) throws IOException {
+        double cellSize = buffer.getDouble(0);
+        double minLon = buffer.getDouble(8);
+        double minLat = buffer.getDouble(16);
+        int columns = buffer.getInt(24);
+        int rows = buffer.getInt(28);
+        int nodes = buffer.getInt(32);
+        int cells = columns * rows + 1;
+        if (buffer.limit() != 36 + (cells + nodes) * 4) {
+            throw new IOException("Truncated node grid");
+        }
+        IntBuffer cellStart = GraphFile.slice(buffer, 36, cells * 4).asIntBuffer();
+        IntBuffer cellNodes = GraphFile.slice(buffer, 36 + cells * 4, nodes * 4).asIntBuffer();
+        return new NodeGrid(graph, minLon, minLat, cellSize, columns, rows, cellStart, cellNodes);
+    }
+
+    private boolean isRoutable(int node) {
+        return graph.getFirstOutEdge(node) < graph.getLastOutEdge(node)
+                || graph.getFirstInEdge(node) < graph.getLastInEdge(node);
+    }
+
+    private int column(double lon) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor((lon - minLon) / cellSize)));
+    }
+
+    private int row(double lat) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((lat - minLat) / cellSize)));
+    }
+
+    private int cell(int column, int row) {
+        return row * columns + column;
+    }
+
+    /**
+     * Find the nearest node, looking at rings of cells around the coordinate until no closer node can be found.
+     */
+    @Override
+    public int findNearest(double lon, double lat, double maxDistance) {
+        int column = (int) Math.floor((lon - minLon) / cellSize);
+        int row = (int) Math.floor((lat - minLat) / cellSize);
+        double scale = Math.cos(Math.toRadians(lat));
+        int best = -1;
+        double bestDistance = maxDistance * maxDistance;
+        int maxRing = (int) Math.ceil(maxDistance / (cellSize * scale)) + 1;
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // nodes of this ring are at least (ring - 1) cells away
+            double ringDistance = (ring - 1) * cellSize * scale;
+            if (ring > 0 && ringDistance * ringDistance > bestDistance) {
+                break;
+            }
+            for (int r = row - ring; r <= row + ring; r++) {
+                if (r < 0 || r >= rows) {
+                    continue;
+                }
+                boolean edge = (r == row - ring || r == row + ring);
+                for (int c = column - ring; c <= column + ring; c += (edge || ring == 0) ? 1 : 2 * ring) {
+                    if (c < 0 || c >= columns) {
+                        continue;
+                    }
+                    int cell = cell(c, r);
+                    for (int i = cellStart.get(cell); i < cellStart.get(cell + 1); i++) {
+                        int node = cellNodes.get(i);
+                        double x = (graph.getLongitude(node) - lon) * scale;
+                        double y = graph.getLatitude(node) - lat;
+                        double distance = x * x + y * y;
+                        if (distance < bestDistance) {
+                            bestDistance = distance;
+                            best = node;
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+}
@@ -0,0 +1,37 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.routing;
+
+/**
+ * Snap a coordinate on the nearest routable node of a <code>RoutingGraph</code>.
+ * 
+ * @author bsimard
+ * 
+ */
+public interface NodeLocator {
+
+    /**
+     * @param lon
+     * @param lat
+     * @param maxDistance maximum distance, in degrees
+     * @return the nearest node, or <code>-1</code> if there is none in the distance.
+     */
+    int findNearest(double lon, double lat, double maxDistance);
+
+}
@@ -0,0 +1,44 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.routing;
+
+/**
+ * Routing profiles : each one has its own cost array in a <code>RoutingGraph</code>.
+ * 
+ * @author bsimard
+ * 
+ */
+public enum Profile {
+
+    CAR, CYCLE, PEDESTRIAN;
+
+    /**
+     * @param name profile name, as in the search URLs (ie. <code>car</code>)
+     * @return the profile, or <code>null</code> if it doesn't exist.
+     */
+    public static Profile fromName(String name) {
+        for (Profile profile : values()) {
+            if (profile.name().equalsIgnoreCase(name)) {
+                return profile;
+            }
+        }
+        return null;
+    }
+
+}
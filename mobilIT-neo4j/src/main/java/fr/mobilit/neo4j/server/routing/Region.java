@@ -0,0 +1,97 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.routing;
+
+/**
+ * A routing region (ie. a city), identified by its geocode and delimited by a polygon.
+ * 
+ * @author bsimard
+ * 
+ */
+public class Region {
+
+    private final String   geocode;
+    private final double[] polygon;
+    private final double   minLon, minLat, maxLon, maxLat;
+
+    /**
+     * Constructor.
+     * 
+     * @param geocode
+     * @param polygon vertices as lon1, lat1, lon2, lat2 ... (closing vertex not repeated)
+     */
+    public Region(String geocode, double[] polygon) {
+        this.geocode = geocode;
+        this.polygon = polygon;
+        double x1 = Double.POSITIVE_INFINITY, y1 = Double.POSITIVE_INFINITY;
+        double x2 = Double.NEGATIVE_INFINITY, y2 = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < polygon.length; i += 2) {
+            x1 = Math.min(x1, polygon[i]);
+            y1 = Math.min(y1, polygon[i + 1]);
+            x2 = Math.max(x2, polygon[i]);
+            y2 = Math.max(y2, polygon[i + 1]);
+        }
+        this.minLon = x1;
+        this.minLat = y1;
+        this.maxLon = x2;
+        this.maxLat = y2;
+    }
+
+    public String getGeocode() {
+        return geocode;
+    }
+
+    /**
+     * @return vertices as lon1, lat1, lon2, lat2 ...
+     */
+    public double[] getPolygon() {
+        return polygon.clone();
+    }
+
+    /**
+     * @return bounding box as minLon, minLat, maxLon, maxLat.
+     */
+    public double[] getBounds() {
+        return new double[] { minLon, minLat, maxLon, maxLat };
+    }
+
+    /**
+     * Point in polygon test (ray casting).
+     * 
+     * @param lon
+     * @param lat
+     * @return true if the point is in the region.
+     */
+    public boolean contains(double lon, double lat) {
+        if (lon < minLon || lon > maxLon || lat < minLat || lat > maxLat) {
+            return false;
+        }
+        boolean inside = false;
+        int n = polygon.length / 2;
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            double xi = polygon[2 * i], yi = polygon[2 * i + 1];
+            double xj = polygon[2 * j], yj = polygon[2 * j + 1];
+            if ((yi > lat) != (yj > lat) && lon < (xj - xi) * (lat - yi) / (yj - yi) + xi) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+}
@@ -0,0 +1,212 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.routing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Routing shards by region. A shard is loaded the first time its region receives a request, so memory only grows
+ * with the regions in use. Each region has its own loading task : loading or reloading a region never blocks the
+ * queries of another one.
+ * 
+ * @author bsimard
+ * 
+ */
+public class RegionRegistry {
+
+    private final List<Region>                              regions;
+    private final ShardLoader                               loader;
+    private final ConcurrentHashMap<String, Future<RoutingShard>> shards = new ConcurrentHashMap<String, Future<RoutingShard>>();
+
+    /**
+     * Constructor.
+     * 
+     * @param regions
+     * @param loader
+     */
+    public RegionRegistry(List<Region> regions, ShardLoader loader) {
+        this.regions = regions;
+        this.loader = loader;
+    }
+
+    public List<Region> getRegions() {
+        return regions;
+    }
+
+    /**
+     * @param geocode
+     * @return the region, or <code>null</code>.
+     */
+    public Region getRegion(String geocode) {
+        for (Region region : regions) {
+            if (region.getGeocode().equals(geocode)) {
+                return region;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param lon
+     * @param lat
+     * @return the region containing the point, or <code>null</code>.
+     */
+    public Region findRegion(double lon, double lat) {
+        for (Region region : regions) {
+            if (region.contains(lon, lat)) {
+                return region;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param lon
+     * @param lat
+     * @return the shard of the region containing the point, or <code>null</code> if no region contains it.
+     * @throws Exception if the shard can't be loaded
+     */
+    public RoutingShard getShard(double lon, double lat) throws Exception {
+        Region region = findRegion(lon, lat);
+        return region == null ? null : getShard(region);
+    }
+
+    /**
+     * @param lon
+     * @param lat
+     * @return the shard of the region containing the point if it's already loaded, <code>null</code> otherwise. It
+     *         never triggers the loading of a shard.
+     * @throws Exception if the shard failed to load
+     */
+    public RoutingShard getLoadedShard(double lon, double lat) throws Exception {
+        Region region = findRegion(lon, lat);
+        return region == null ? null : getLoadedShard(region);
+    }
+
+    /**
+     * @param region
+     * @return the shard of the region if it's already loaded, <code>null</code> otherwise. It never triggers the
+     *         loading of a shard.
+     * @throws Exception if the shard failed to load
+     */
+    public RoutingShard getLoadedShard(Region region) throws Exception {
+        Future<RoutingShard> future = shards.get(region.getGeocode());
+        if (future == null || !future.isDone()) {
+            return null;
+        }
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+        }
+    }
+
+    /**
+     * Get the shard of a region, loading it in the calling thread if it's the first request. Concurrent requests on
+     * the same region wait for the same loading.
+     * 
+     * @param region
+     * @return the shard
+     * @throws Exception if the shard can't be loaded
+     */
+    public RoutingShard getShard(final Region region) throws Exception {
+        Future<RoutingShard> future = shards.get(region.getGeocode());
+        if (future == null) {
+            FutureTask<RoutingShard> task = new FutureTask<RoutingShard>(new Callable<RoutingShard>() {
+
+                @Override
+                public RoutingShard call() throws Exception {
+                    return loader.load(region);
+                }
+            });
+            future = shards.putIfAbsent(region.getGeocode(), task);
+            if (future == null) {
+                future = task;
+                task.run();
+            }
+        }
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            // next request will try again
+            shards.remove(region.getGeocode(), future);
+            throw (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+        }
+    }
+
+    /**
+     * Load again the shard of a region, if it's loaded. Queries keep using the previous shard until the new one is
+     * ready.
+     * 
+     * @param geocode
+     * @throws Exception
+     */
+    public void reload(String geocode) throws Exception {
+        Future<RoutingShard> previous = shards.get(geocode);
+        if (previous == null) {
+            return;
+        }
+        for (Region region : regions) {
+            if (region.getGeocode().equals(geocode)) {
+                RoutingShard shard = loader.load(region);
+                shards.replace(geocode, previous, done(shard));
+            }
+        }
+    }
+
+    /**
+     * Unload all shards : they are loaded again at their next request.
+     */
+    public void clear() {
+        shards.clear();
+    }
+
+    /**
+     * @return geocodes of the loaded regions.
+     */
+    public List<String> getLoadedRegions() {
+        List<String> loaded = new ArrayList<String>();
+        for (Map.Entry<String, Future<RoutingShard>> entry : shards.entrySet()) {
+            if (entry.getValue().isDone()) {
+                loaded.add(entry.getKey());
+            }
+        }
+        return loaded;
+    }
+
+    private static Future<RoutingShard> done(final RoutingShard shard) {
+        FutureTask<RoutingShard> task = new FutureTask<RoutingShard>(new Callable<RoutingShard>() {
+
+            @Override
+            public RoutingShard call() {
+                return shard;
+            }
+        });
+        task.run();
+        return task;
+    }
+
+}
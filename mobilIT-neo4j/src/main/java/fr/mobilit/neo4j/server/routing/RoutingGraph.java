@@ -0,0 +1,78 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.routing;
+
+/**
+ * Read-only routing graph, detached from Neo4j : nodes and directed edges are numbered from 0, each edge has a length
+ * (meters), a street name and a cost (hours) by profile. A forbidden edge costs <code>Float.POSITIVE_INFINITY</code>.
+ * 
+ * Outgoing edges of a node are numbered from <code>getFirstOutEdge(node)</code> to
+ * <code>getLastOutEdge(node)</code> (exclusive). Incoming edges are listed through <code>getInEdge(index)</code>
+ * for index from <code>getFirstInEdge(node)</code> to <code>getLastInEdge(node)</code> (exclusive).
+ * 
+ * @author bsimard
+ * 
+ */
+public interface RoutingGraph {
+
+    int getNodeCount();
+
+    int getEdgeCount();
+
+    /**
+     * @param node
+     * @return the id of the node in the source graph (ie. Neo4j node id).
+     */
+    long getNodeId(int node);
+
+    /**
+     * @param nodeId id of a node in the source graph
+     * @return the node, or <code>-1</code> if it's not in the graph.
+     */
+    int findNode(long nodeId);
+
+    double getLongitude(int node);
+
+    double getLatitude(int node);
+
+    int getFirstOutEdge(int node);
+
+    int getLastOutEdge(int node);
+
+    int getFirstInEdge(int node);
+
+    int getLastInEdge(int node);
+
+    int getInEdge(int index);
+
+    int getEdgeSource(int edge);
+
+    int getEdgeTarget(int edge);
+
+    float getEdgeLength(int edge);
+
+    float getEdgeCost(Profile profile, int edge);
+
+    /**
+     * @param edge
+     * @return the street name, or <code>null</code>.
+     */
+    String getEdgeName(int edge);
+
+}
@@ -0,0 +1,357 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.routing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import fr.mobilit.neo4j.server.exception.MobilITException;
+import fr.mobilit.neo4j.server.pojo.Route;
+
+/**
+ * Routing data of one region : its graph, the spatial index to snap on it, and its caches.
+ * 
+ * A graph held on the heap gets a <code>SegmentTree</code> : points are snapped on the nearest street, and searched
+ * from there. A tiled graph is snapped on its nearest node by its <code>NodeLocator</code>, without loading all its
+ * tiles.
+ * 
+ * @author bsimard
+ * 
+ */
+public class RoutingShard {
+
+    private final Region                          region;
+    private final RoutingGraph                    graph;
+    private final NodeLocator                     locator;
+    private final SegmentTree                     segments;
+    private final SnapCache                       snaps;
+    private final Map<String, int[]>              routes;
+    private EdgeGrid                              edgeIndex;
+
+    /**
+     * Constructor.
+     * 
+     * @param region
+     * @param graph
+     * @param locator
+     * @param routeCacheSize number of paths kept in the route cache
+     */
+    public RoutingShard(Region region, RoutingGraph graph, NodeLocator locator, final int routeCacheSize) {
+        this.region = region;
+        this.graph = graph;
+        this.locator = locator;
+        this.segments = (graph instanceof TiledGraph) ? null : new SegmentTree(graph);
+        this.snaps = new SnapCache(SnapCache.DEFAULT_SIZE, SnapCache.DEFAULT_CELL);
+        this.routes = new LinkedHashMap<String, int[]>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+                return size() > routeCacheSize;
+            }
+        };
+    }
+
+    public Region getRegion() {
+        return region;
+    }
+
+    public RoutingGraph getGraph() {
+        return graph;
+    }
+
+    public NodeLocator getLocator() {
+        return locator;
+    }
+
+    /**
+     * @return the index of the segments, or <code>null</code> for a tiled graph.
+     */
+    public SegmentTree getSegmentIndex() {
+        return segments;
+    }
+
+    /**
+     * @return the cache of the snaps on the segment index.
+     */
+    public SnapCache getSnapCache() {
+        return snaps;
+    }
+
+    /**
+     * Snap a coordinate on the nearest street, through the snap cache.
+     * 
+     * @param lon
+     * @param lat
+     * @param profile only the streets open to this profile, or <code>null</code> for all
+     * @param snapDistance maximum distance of the point to the street, in degrees
+     * @return the snap, or <code>null</code> if the point can't be snapped (or if the graph is tiled).
+     */
+    public Snap snap(double lon, double lat, Profile profile, double snapDistance) {
+        if (segments == null) {
+            return null;
+        }
+        long key = snaps.key(profile, lon, lat);
+        Snap snap = snaps.get(key);
+        if (snap == null) {
+            snap = segments.snap(lon, lat, profile, snapDistance * EdgeGrid.METERS_BY_DEGREE);
+            if (snap != null) {
+                snaps.put(key, snap);
+            }
+        }
+        return snap;
+    }
+
+    /**
+     * @return the index of the edges, built at first use (it's only needed by map matching).
+     */
+    public synchronized EdgeGrid getEdgeIndex() {
+        if (edgeIndex == null) {
+            edgeIndex = new EdgeGrid(graph, EdgeGrid.DEFAULT_CELL_SIZE);
+        }
+        return edgeIndex;
+    }
+
+    /**
+     * Snap a coordinate on the nearest routable node.
+     * 
+     * @param lon
+     * @param lat
+     * @param snapDistance maximum distance of the point to the street, in degrees
+     * @return the node, or <code>-1</code> if the point can't be snapped.
+     */
+    public int findNearestNode(double lon, double lat, double snapDistance) {
+        if (segments == null) {
+            return locator.findNearest(lon, lat, snapDistance);
+        }
+        Snap snap = snap(lon, lat, null, snapDistance);
+        return (snap == null) ? -1 : snap.getNearestNode(graph);
+    }
+
+    /**
+     * Snap both points on the shard, then search the shortest path between them.
+     * 
+     * @param lon1
+     * @param lat1
+     * @param lon2
+     * @param lat2
+     * @param profile
+     * @param snapDistance maximum distance of a point to its street, in degrees
+     * @return the itinerary, or <code>null</code> if a point can't be snapped.
+     * @throws MobilITException if there is no path.
+     */
+    public Route search(double lon1, double lat1, double lon2, double lat2, Profile profile,
+            double snapDistance) throws MobilITException {
+        Endpoints endpoints = snap(lon1, lat1, lon2, lat2, snapDistance);
+        return (endpoints == null) ? null : search(endpoints, profile);
+    }
+
+    /**
+     * Snap both points one time, for the searches of several profiles (see <code>search(Endpoints, Profile)</code>).
+     * 
+     * @param lon1
+     * @param lat1
+     * @param lon2
+     * @param lat2
+     * @param snapDistance maximum distance of a point to its street, in degrees
+     * @return both points, or <code>null</code> if a point can't be snapped.
+     */
+    public Endpoints snap(double lon1, double lat1, double lon2, double lat2, double snapDistance) {
+        double[] coordinates = new double[] { lon1, lat1, lon2, lat2 };
+        if (segments != null) {
+            Snap from = snap(lon1, lat1, null, snapDistance);
+            Snap to = snap(lon2, lat2, null, snapDistance);
+            if (from == null || to == null) {
+                return null;
+            }
+            return new Endpoints(this, coordinates, snapDistance, from, to, from.getNearestNode(graph),
+                    to.getNearestNode(graph));
+        }
+        int start = locator.findNearest(lon1, lat1, snapDistance);
+        int end = locator.findNearest(lon2, lat2, snapDistance);
+        if (start < 0 || end < 0) {
+            return null;
+        }
+        return new Endpoints(this, coordinates, snapDistance, null, null, start, end);
+    }
+
+    /**
+     * Search the shortest path of a profile between two points snapped on this shard. A point snapped on a street
+     * closed to the profile is snapped again on the nearest street open to it.
+     * 
+     * @param endpoints
+     * @param profile
+     * @return the itinerary, or <code>null</code> if a point can't be snapped for the profile.
+     * @throws MobilITException if there is no path.
+     */
+    public Route search(Endpoints endpoints, Profile profile) throws MobilITException {
+        if (endpoints.getFrom() != null) {
+            Snap from = endpoints.getFrom();
+            if (!isOpen(from, profile)) {
+                from = snap(endpoints.getCoordinate(0), endpoints.getCoordinate(1), profile,
+                        endpoints.getSnapDistance());
+            }
+            Snap to = endpoints.getTo();
+            if (!isOpen(to, profile)) {
+                to = snap(endpoints.getCoordinate(2), endpoints.getCoordinate(3), profile, endpoints.getSnapDistance());
+            }
+            if (from == null || to == null) {
+                return null;
+            }
+            return search(from, to, profile);
+        }
+        int[] path = route(profile, endpoints.getStart(), endpoints.getEnd());
+        if (path == null) {
+            throw new MobilITException("No path found");
+        }
+        return GraphSearch.toRoute(graph, path, getCost(path, profile));
+    }
+
+    /**
+     * @return true if the street of the snap is open to the profile, in a direction at least.
+     */
+    private boolean isOpen(Snap snap, Profile profile) {
+        return cost(profile, snap.getEdge()) != Double.POSITIVE_INFINITY
+                || cost(profile, snap.getReverse()) != Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Search the shortest path between two snapped points. The search starts from both ends of the first edge, each
+     * with the cost of the part of the edge to reach it, and stops when both ends of the last edge are settled. The
+     * route begins and ends with the parts of the snapped edges.
+     * 
+     * @param from
+     * @param to
+     * @param profile
+     * @return the itinerary.
+     * @throws MobilITException if there is no path.
+     */
+    public Route search(Snap from, Snap to, Profile profile) throws MobilITException {
+        double fromForward = cost(profile, from.getEdge());
+        double fromBackward = cost(profile, from.getReverse());
+        double toForward = cost(profile, to.getEdge());
+        double toBackward = cost(profile, to.getReverse());
+        int fromSource = graph.getEdgeSource(from.getEdge());
+        int fromTarget = graph.getEdgeTarget(from.getEdge());
+        int toSource = graph.getEdgeSource(to.getEdge());
+        int toTarget = graph.getEdgeTarget(to.getEdge());
+
+        // both on the same street
+        double direct = Double.POSITIVE_INFINITY;
+        if (from.getEdge() == to.getEdge()) {
+            direct = (from.getFraction() <= to.getFraction()) ? part(to.getFraction() - from.getFraction(),
+                    fromForward) : part(from.getFraction() - to.getFraction(), fromBackward);
+        }
+
+        GraphSearch search = new GraphSearch(graph, profile, false);
+        search.addSource(fromTarget, part(1 - from.getFraction(), fromForward));
+        search.addSource(fromSource, part(from.getFraction(), fromBackward));
+        search.setTargets(new int[] { toSource, toTarget });
+        search.setMaxCost(direct);
+        search.calculate();
+        double viaSource = search.getCost(toSource) + part(to.getFraction(), toForward);
+        double viaTarget = search.getCost(toTarget) + part(1 - to.getFraction(), toBackward);
+        double cost = Math.min(direct, Math.min(viaSource, viaTarget));
+        if (cost == Double.POSITIVE_INFINITY) {
+            throw new MobilITException("No path found");
+        }
+
+        Route route;
+        if (cost == direct) {
+            route = new Route(1);
+            addPart(route, from.getEdge(), Math.abs(to.getFraction() - from.getFraction()), cost,
+                    from.getLongitude(), from.getLatitude(), to.getLongitude(), to.getLatitude());
+            return route;
+        }
+        int end = (cost == viaSource) ? toSource : toTarget;
+        int[] path = search.getPathAsEdges(end);
+        int start = search.getOrigin(end);
+        route = new Route(path.length + 2);
+        addPart(route, from.getEdge(), (start == fromTarget) ? 1 - from.getFraction() : from.getFraction(), cost,
+                from.getLongitude(), from.getLatitude(), graph.getLongitude(start), graph.getLatitude(start));
+        route.append(GraphSearch.toRoute(graph, path, cost));
+        addPart(route, to.getEdge(), (end == toSource) ? to.getFraction() : 1 - to.getFraction(), cost,
+                graph.getLongitude(end), graph.getLatitude(end), to.getLongitude(), to.getLatitude());
+        return route;
+    }
+
+    private double cost(Profile profile, int edge) {
+        return (edge < 0) ? Double.POSITIVE_INFINITY : graph.getEdgeCost(profile, edge);
+    }
+
+    /**
+     * @return the cost of a part of an edge, infinite if the edge is forbidden.
+     */
+    private static double part(double fraction, double cost) {
+        return (cost == Double.POSITIVE_INFINITY) ? cost : fraction * cost;
+    }
+
+    /**
+     * Add the part of a snapped edge to the route, if it's not empty.
+     */
+    private void addPart(Route route, int edge, double fraction, double cost, double lon1, double lat1, double lon2,
+            double lat2) {
+        if (fraction > 0) {
+            String name = graph.getEdgeName(edge);
+            route.addSegment(name == null ? "undefined" : name, fraction * graph.getEdgeLength(edge), cost, lon1,
+                    lat1, lon2, lat2);
+        }
+    }
+
+    /**
+     * Search the shortest path between two nodes of the shard, using the route cache.
+     * 
+     * @param profile
+     * @param start
+     * @param end
+     * @return edges of the path, or <code>null</code> if there is none.
+     */
+    public int[] route(Profile profile, int start, int end) {
+        String key = profile.ordinal() + ":" + start + ":" + end;
+        synchronized (routes) {
+            if (routes.containsKey(key)) {
+                return routes.get(key);
+            }
+        }
+        GraphSearch search = new GraphSearch(graph, profile, false);
+        search.addSource(start, 0);
+        search.setTargets(new int[] { end });
+        search.calculate();
+        int[] path = search.isSettled(end) ? search.getPathAsEdges(end) : null;
+        synchronized (routes) {
+            routes.put(key, path);
+        }
+        return path;
+    }
+
+    /**
+     * @param path edges of a path
+     * @param profile
+     * @return the cost of the path.
+     */
+    public double getCost(int[] path, Profile profile) {
+        double cost = 0;
+        for (int edge : path) {
+            cost += graph.getEdgeCost(profile, edge);
+        }
+        return cost;
+    }
+
+}
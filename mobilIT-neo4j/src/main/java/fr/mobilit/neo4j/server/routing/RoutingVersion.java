@@ -0,0 +1,118 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.routing;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A published version of the routing data. Queries acquire the current version, and release it when they are done :
+ * a version replaced by a newer one is freed when its last query releases it.
+ * 
+ * @author bsimard
+ * 
+ */
+public class RoutingVersion {
+
+    private final long           version;
+    private final RegionRegistry registry;
+    private final AtomicInteger  users   = new AtomicInteger();
+    private volatile boolean     retired = false;
+    private volatile boolean     freed   = false;
+
+    /**
+     * Constructor.
+     * 
+     * @param version
+     * @param registry shards of this version
+     */
+    public RoutingVersion(long version, RegionRegistry registry) {
+        this.version = version;
+        this.registry = registry;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public RegionRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * @return true if the version has been freed.
+     */
+    public boolean isFreed() {
+        return freed;
+    }
+
+    /**
+     * @return number of queries using this version.
+     */
+    public int getUserCount() {
+        return users.get();
+    }
+
+    void acquire() {
+        users.incrementAndGet();
+    }
+
+    /**
+     * Acquire again a version held by the caller, ie. for a task of its query that may end after it. Each retain is
+     * followed by a release.
+     */
+    public void retain() {
+        users.incrementAndGet();
+    }
+
+    /**
+     * Release the version, at the end of a query.
+     */
+    public void release() {
+        if (users.decrementAndGet() == 0 && retired) {
+            free();
+        }
+    }
+
+    void retire() {
+        retired = true;
+        if (users.get() == 0) {
+            free();
+        }
+    }
+
+    private synchronized void free() {
+        if (freed || users.get() > 0) {
+            return;
+        }
+        freed = true;
+        for (String geocode : registry.getLoadedRegions()) {
+            try {
+                RoutingGraph graph = registry.getShard(registry.getRegion(geocode)).getGraph();
+                if (graph instanceof TiledGraph) {
+                    // tiles still used by a newer version or by a snapshot are kept
+                    ((TiledGraph) graph).close();
+                }
+            } catch (Exception e) {
+                // a shard that failed to load has nothing to free
+            }
+        }
+        registry.clear();
+    }
+
+}
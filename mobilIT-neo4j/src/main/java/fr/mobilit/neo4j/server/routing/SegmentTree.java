@@ -0,0 +1,279 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.routing;
+
+import java.util.Arrays;
+
+/**
+ * Packed R-tree over the segments of a <code>RoutingGraph</code>, to snap a coordinate on the nearest routable street.
+ * A segment is a pair of opposite edges (or a lone edge), indexed once. Segments are sorted by Sort-Tile-Recursive
+ * (vertical slices of the centers by longitude, then by latitude in each slice) and packed by <code>NODE_SIZE</code>
+ * : the tree is only the bounding boxes of its nodes, level by level from the leaves, without any pointer.
+ * 
+ * A search looks for the nearest segment in a small radius first, and doubles it until a segment is found : in a city,
+ * it only visits a few leaves.
+ * 
+ * Distances are in meters, on a local equirectangular projection (as <code>EdgeGrid</code>).
+ * 
+ * @author bsimard
+ * 
+ */
+public class SegmentTree {
+
+    public static final int    NODE_SIZE      = 16;
+    public static final double INITIAL_RADIUS = 25;
+
+    private final RoutingGraph graph;
+    private final int          count;
+    private final int[]        segments;
+    private final int[]        reverses;
+    private final int[]        levelStart;
+    private final double[]     boxes;
+
+    /**
+     * Constructor.
+     * 
+     * @param graph
+     */
+    public SegmentTree(RoutingGraph graph) {
+        this.graph = graph;
+
+        // one segment by pair of opposite edges
+        int[] edges = new int[graph.getEdgeCount()];
+        int[] opposites = new int[graph.getEdgeCount()];
+        int size = 0;
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (int edge = 0; edge < graph.getEdgeCount(); edge++) {
+            int reverse = reverse(graph, edge);
+            if (reverse < 0 || edge < reverse) {
+                edges[size] = edge;
+                opposites[size] = reverse;
+                size++;
+                minX = Math.min(minX, centerLon(edge));
+                minY = Math.min(minY, centerLat(edge));
+                maxX = Math.max(maxX, centerLon(edge));
+                maxY = Math.max(maxY, centerLat(edge));
+            }
+        }
+        this.count = size;
+
+        // Sort-Tile-Recursive order
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = ((long) quantize(centerLon(edges[i]), minX, maxX) << 32) | i;
+        }
+        Arrays.sort(keys);
+        int leaves = (count + NODE_SIZE - 1) / NODE_SIZE;
+        int slice = (int) Math.ceil(Math.sqrt(leaves)) * NODE_SIZE;
+        for (int from = 0; from < count; from += slice) {
+            int to = Math.min(count, from + slice);
+            for (int i = from; i < to; i++) {
+                int item = (int) keys[i];
+                keys[i] = ((long) quantize(centerLat(edges[item]), minY, maxY) << 32) | item;
+            }
+            Arrays.sort(keys, from, to);
+        }
+        this.segments = new int[count];
+        this.reverses = new int[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = edges[(int) keys[i]];
+            reverses[i] = opposites[(int) keys[i]];
+        }
+
+        // levels, from the leaves to the root
+        int levels = 0;
+        int nodes = 0;
+        for (int n = leaves; n > 0; n = (n == 1) ? 0 : (n + NODE_SIZE - 1) / NODE_SIZE) {
+            levels++;
+            nodes += n;
+        }
+        this.levelStart = new int[levels + 1];
+        this.boxes = new double[nodes * 4];
+        int n = leaves;
+        for (int level = 0; level < levels; level++) {
+            levelStart[level + 1] = levelStart[level] + n;
+            for (int node = 0; node < n; node++) {
+                int box = (levelStart[level] + node) * 4;
+                boxes[box] = boxes[box + 1] = Double.POSITIVE_INFINITY;
+                boxes[box + 2] = boxes[box + 3] = Double.NEGATIVE_INFINITY;
+                if (level == 0) {
+                    for (int i = node * NODE_SIZE; i < Math.min(count, (node + 1) * NODE_SIZE); i++) {
+                        int source = graph.getEdgeSource(segments[i]);
+                        int target = graph.getEdgeTarget(segments[i]);
+                        extend(box, graph.getLongitude(source), graph.getLatitude(source), graph.getLongitude(target),
+                                graph.getLatitude(target));
+                    }
+                }
+                else {
+                    int children = levelStart[level] - levelStart[level - 1];
+                    for (int child = node * NODE_SIZE; child < Math.min(children, (node + 1) * NODE_SIZE); child++) {
+                        int childBox = (levelStart[level - 1] + child) * 4;
+                        extend(box, boxes[childBox], boxes[childBox + 1], boxes[childBox + 2], boxes[childBox + 3]);
+                    }
+                }
+            }
+            n = (n + NODE_SIZE - 1) / NODE_SIZE;
+        }
+    }
+
+    /**
+     * @param graph
+     * @param edge
+     * @return the edge from the target to the source of this one, or <code>-1</code>.
+     */
+    public static int reverse(RoutingGraph graph, int edge) {
+        int source = graph.getEdgeSource(edge);
+        int target = graph.getEdgeTarget(edge);
+        for (int other = graph.getFirstOutEdge(target); other < graph.getLastOutEdge(target); other++) {
+            if (graph.getEdgeTarget(other) == source && other != edge) {
+                return other;
+            }
+        }
+        return -1;
+    }
+
+    private double centerLon(int edge) {
+        return (graph.getLongitude(graph.getEdgeSource(edge)) + graph.getLongitude(graph.getEdgeTarget(edge))) / 2;
+    }
+
+    private double centerLat(int edge) {
+        return (graph.getLatitude(graph.getEdgeSource(edge)) + graph.getLatitude(graph.getEdgeTarget(edge))) / 2;
+    }
+
+    private static int quantize(double value, double min, double max) {
+        return (max > min) ? (int) ((value - min) / (max - min) * Integer.MAX_VALUE) : 0;
+    }
+
+    private void extend(int box, double lon1, double lat1, double lon2, double lat2) {
+        boxes[box] = Math.min(boxes[box], Math.min(lon1, lon2));
+        boxes[box + 1] = Math.min(boxes[box + 1], Math.min(lat1, lat2));
+        boxes[box + 2] = Math.max(boxes[box + 2], Math.max(lon1, lon2));
+        boxes[box + 3] = Math.max(boxes[box + 3], Math.max(lat1, lat2));
+    }
+
+    public RoutingGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return number of indexed segments.
+     */
+    public int getSegmentCount() {
+        return count;
+    }
+
+    /**
+     * Snap a coordinate on the nearest segment, expanding the search radius from <code>INITIAL_RADIUS</code>.
+     * 
+     * @param lon
+     * @param lat
+     * @param profile only the segments open to this profile (in a direction at least), or <code>null</code> for all
+     * @param maxDistance maximum distance, in meters
+     * @return the snap, or <code>null</code> if there is no segment in the distance.
+     */
+    public Snap snap(double lon, double lat, Profile profile, double maxDistance) {
+        double radius = Math.min(INITIAL_RADIUS, maxDistance);
+        while (true) {
+            Snap snap = nearest(lon, lat, profile, radius);
+            if (snap != null || radius >= maxDistance) {
+                return snap;
+            }
+            radius = Math.min(radius * 2, maxDistance);
+        }
+    }
+
+    /**
+     * Find the nearest segment in a radius : a depth-first walk of the tree, skipping the nodes farther than the best
+     * segment found so far.
+     * 
+     * @param lon
+     * @param lat
+     * @param profile
+     * @param radius in meters
+     * @return the snap, or <code>null</code> if there is no segment in the radius.
+     */
+    public Snap nearest(double lon, double lat, Profile profile, double radius) {
+        int levels = levelStart.length - 1;
+        if (levels == 0) {
+            return null;
+        }
+        double scale = Math.cos(Math.toRadians(lat)) * EdgeGrid.METERS_BY_DEGREE;
+        double best = radius * radius;
+        int bestItem = -1;
+        double bestFraction = 0;
+        int[] stack = new int[2 * (NODE_SIZE * levels + 1)];
+        int top = 0;
+        stack[top++] = levels - 1;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            int level = stack[--top];
+            int box = (levelStart[level] + node) * 4;
+            double dx = Math.max(0, Math.max(boxes[box] - lon, lon - boxes[box + 2])) * scale;
+            double dy = Math.max(0, Math.max(boxes[box + 1] - lat, lat - boxes[box + 3])) * EdgeGrid.METERS_BY_DEGREE;
+            if (dx * dx + dy * dy > best) {
+                continue;
+            }
+            if (level > 0) {
+                int children = levelStart[level] - levelStart[level - 1];
+                for (int child = node * NODE_SIZE; child < Math.min(children, (node + 1) * NODE_SIZE); child++) {
+                    stack[top++] = level - 1;
+                    stack[top++] = child;
+                }
+                continue;
+            }
+            for (int i = node * NODE_SIZE; i < Math.min(count, (node + 1) * NODE_SIZE); i++) {
+                if (profile != null && graph.getEdgeCost(profile, segments[i]) == Float.POSITIVE_INFINITY
+                        && (reverses[i] < 0 || graph.getEdgeCost(profile, reverses[i]) == Float.POSITIVE_INFINITY)) {
+                    continue;
+                }
+                // projection on the segment, in meters around the coordinate
+                int source = graph.getEdgeSource(segments[i]);
+                int target = graph.getEdgeTarget(segments[i]);
+                double x1 = (graph.getLongitude(source) - lon) * scale;
+                double y1 = (graph.getLatitude(source) - lat) * EdgeGrid.METERS_BY_DEGREE;
+                double sx = (graph.getLongitude(target) - lon) * scale - x1;
+                double sy = (graph.getLatitude(target) - lat) * EdgeGrid.METERS_BY_DEGREE - y1;
+                double norm = sx * sx + sy * sy;
+                double fraction = norm == 0 ? 0 : Math.max(0, Math.min(1, -(x1 * sx + y1 * sy) / norm));
+                double x = x1 + fraction * sx;
+                double y = y1 + fraction * sy;
+                double distance = x * x + y * y;
+                if (distance <= best && (bestItem < 0 || distance < best)) {
+                    best = distance;
+                    bestItem = i;
+                    bestFraction = fraction;
+                }
+            }
+        }
+        if (bestItem < 0) {
+            return null;
+        }
+        int source = graph.getEdgeSource(segments[bestItem]);
+        int target = graph.getEdgeTarget(segments[bestItem]);
+        double projectedLon = graph.getLongitude(source) + bestFraction
+                * (graph.getLongitude(target) - graph.getLongitude(source));
+        double projectedLat = graph.getLatitude(source) + bestFraction
+                * (graph.getLatitude(target) - graph.getLatitude(source));
+        return new Snap(segments[bestItem], reverses[bestItem], bestFraction, Math.sqrt(best), projectedLon,
+                projectedLat);
+    }
+
+}
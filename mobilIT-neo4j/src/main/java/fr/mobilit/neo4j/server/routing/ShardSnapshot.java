@@ -0,0 +1,327 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.routing;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+/**
+ * Routing shard saved on disk, to be used again after a restart without building it from the Neo4j graph. A snapshot
+ * of the region <code>geocode</code> is :
+ * <ul>
+ * <li><code>geocode.graph</code> : the graph with the costs of each profile (see <code>GraphFile</code>), or
+ * <code>geocode.tiles-created</code> : a copy of the tiles of a tiled graph (see <code>TileWriter</code>)</li>
+ * <li><code>geocode.grid</code> : the snapping grid (see <code>NodeGrid</code>)</li>
+ * <li><code>geocode.properties</code> : the region, the dataset id the shard was built from, and a CRC32 of each
+ * file. It's written last, so a snapshot without it is ignored.</li>
+ * </ul>
+ * Tiles are copied in the snapshot directory, so the directory can be copied to a standalone routing server (see
+ * <code>export</code>), and the tiles of a snapshot are never the ones of a shard being freed. The tiles of the
+ * previous snapshot of the region are deleted once no shard uses them anymore.
+ * Files are memory-mapped read-only. Checking the CRC reads them once sequentially, which is also the fastest way to
+ * bring their pages in the OS cache before the first search.
+ * 
+ * @author bsimard
+ * 
+ */
+public class ShardSnapshot {
+
+    private static final int    FORMAT     = 1;
+    private static final String MANIFEST   = ".properties";
+    private static final String GRAPH      = ".graph";
+    private static final String GRID       = ".grid";
+    private static final String TMP        = ".tmp";
+    private static final String TILES      = ".tiles";
+
+    private ShardSnapshot() {
+    }
+
+    /**
+     * @param directory
+     * @param geocode
+     * @return true if there is a snapshot of the region, whatever its dataset.
+     */
+    public static boolean exists(File directory, String geocode) {
+        return new File(directory, geocode + MANIFEST).isFile();
+    }
+
+    /**
+     * @param directory
+     * @return the geocodes of the regions having a snapshot.
+     */
+    public static List<String> list(File directory) {
+        List<String> geocodes = new ArrayList<String>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(MANIFEST)) {
+                    geocodes.add(file.getName().substring(0, file.getName().length() - MANIFEST.length()));
+                }
+            }
+        }
+        return geocodes;
+    }
+
+    /**
+     * @param directory
+     * @param geocode
+     * @return the region of a snapshot.
+     * @throws IOException
+     */
+    public static Region readRegion(File directory, String geocode) throws IOException {
+        String vertices = readManifest(new File(directory, geocode + MANIFEST)).getProperty("region");
+        if (vertices == null) {
+            throw new IOException("Snapshot of " + geocode + " has no region");
+        }
+        String[] values = vertices.split(",");
+        double[] polygon = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            polygon[i] = Double.parseDouble(values[i]);
+        }
+        return new Region(geocode, polygon);
+    }
+
+    /**
+     * Save a shard, replacing the previous snapshot of its region.
+     * 
+     * @param directory
+     * @param shard a shard on an <code>ArrayGraph</code> with a <code>NodeGrid</code>, or on a
+     *            <code>TiledGraph</code>
+     * @param dataset id of the data the shard was built from
+     * @throws IOException
+     */
+    public static void save(File directory, RoutingShard shard, String dataset) throws IOException {
+        write(directory, shard, dataset);
+    }
+
+    /**
+     * Save a shard in a directory to be copied to a standalone routing server.
+     * 
+     * @param directory
+     * @param shard
+     * @param dataset
+     * @throws IOException
+     */
+    public static void export(File directory, RoutingShard shard, String dataset) throws IOException {
+        write(directory, shard, dataset);
+    }
+
+    private static void write(File directory, RoutingShard shard, String dataset) throws IOException {
+        String geocode = shard.getRegion().getGeocode();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create snapshot directory " + directory);
+        }
+        long created = System.currentTimeMillis();
+        Properties manifest = new Properties();
+        manifest.setProperty("format", String.valueOf(FORMAT));
+        manifest.setProperty("dataset", dataset);
+        manifest.setProperty("created", String.valueOf(created));
+        StringBuilder vertices = new StringBuilder();
+        for (double value : shard.getRegion().getPolygon()) {
+            vertices.append(vertices.length() > 0 ? "," : "").append(value);
+        }
+        manifest.setProperty("region", vertices.toString());
+        String previousTiles = null;
+        if (exists(directory, geocode)) {
+            previousTiles = readManifest(new File(directory, geocode + MANIFEST)).getProperty("tiles");
+        }
+        if (shard.getGraph() instanceof TiledGraph) {
+            // the tiles of the shard are deleted with it : the snapshot has its own copy
+            File tiles = ((TiledGraph) shard.getGraph()).getDirectory();
+            File copy = new File(directory, geocode + TILES + "-" + created);
+            if (!copy.mkdirs()) {
+                throw new IOException("Can't create tiles directory " + copy);
+            }
+            try {
+                for (File file : tiles.listFiles()) {
+                    copy(file, new File(copy, file.getName()));
+                }
+            } catch (IOException e) {
+                TiledGraph.discard(copy);
+                throw e;
+            }
+            manifest.setProperty("tiles", copy.getName());
+            manifest.setProperty("tiles.crc", String.valueOf(checksum(new File(copy, TileWriter.INDEX_FILE))));
+        }
+        else if (shard.getGraph() instanceof ArrayGraph && shard.getLocator() instanceof NodeGrid) {
+            File graph = new File(directory, geocode + GRAPH + TMP);
+            GraphFile.write((ArrayGraph) shard.getGraph(), graph);
+            File grid = new File(directory, geocode + GRID + TMP);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(grid), 1 << 16));
+            try {
+                ((NodeGrid) shard.getLocator()).write(out);
+            } finally {
+                out.close();
+            }
+            manifest.setProperty("graph.crc", String.valueOf(checksum(graph)));
+            manifest.setProperty("grid.crc", String.valueOf(checksum(grid)));
+            rename(graph, new File(directory, geocode + GRAPH));
+            rename(grid, new File(directory, geocode + GRID));
+        }
+        else {
+            throw new IOException("Shard " + geocode + " can't be saved");
+        }
+        File file = new File(directory, geocode + MANIFEST + TMP);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            manifest.store(out, "Routing snapshot of " + geocode);
+        } finally {
+            out.close();
+        }
+        rename(file, new File(directory, geocode + MANIFEST));
+        if (previousTiles != null && !new File(previousTiles).isAbsolute()
+                && !previousTiles.equals(manifest.getProperty("tiles"))) {
+            // still mapped by the shards of older versions until they're freed
+            TiledGraph.discard(new File(directory, previousTiles));
+        }
+    }
+
+    /**
+     * Load the snapshot of a region.
+     * 
+     * @param directory
+     * @param region
+     * @param dataset id of the current data, or <code>null</code> to accept any dataset (ie. an exported snapshot)
+     * @param routeCacheSize
+     * @param tileCache maximum size of the loaded tiles, for a tiled graph
+     * @return the shard, or <code>null</code> if there is no snapshot of the region or if it was built from another
+     *         dataset.
+     * @throws IOException if the snapshot is corrupted
+     */
+    public static RoutingShard load(File directory, Region region, String dataset, int routeCacheSize,
+            long tileCache) throws IOException {
+        String geocode = region.getGeocode();
+        File file = new File(directory, geocode + MANIFEST);
+        if (!file.isFile()) {
+            return null;
+        }
+        Properties manifest = readManifest(file);
+        if (!String.valueOf(FORMAT).equals(manifest.getProperty("format"))
+                || (dataset != null && !dataset.equals(manifest.getProperty("dataset")))) {
+            return null;
+        }
+        if (manifest.getProperty("tiles") != null) {
+            File tiles = new File(manifest.getProperty("tiles"));
+            if (!tiles.isAbsolute()) {
+                tiles = new File(directory, tiles.getPath());
+            }
+            verify(new File(tiles, TileWriter.INDEX_FILE), manifest.getProperty("tiles.crc"));
+            TiledGraph graph = new TiledGraph(tiles, tileCache);
+            return new RoutingShard(region, graph, graph, routeCacheSize);
+        }
+        File graphFile = new File(directory, geocode + GRAPH);
+        File gridFile = new File(directory, geocode + GRID);
+        verify(graphFile, manifest.getProperty("graph.crc"));
+        verify(gridFile, manifest.getProperty("grid.crc"));
+        ArrayGraph graph = GraphFile.map(graphFile);
+        RandomAccessFile raf = new RandomAccessFile(gridFile, "r");
+        MappedByteBuffer grid;
+        try {
+            grid = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            raf.close();
+        }
+        return new RoutingShard(region, graph, NodeGrid.read(grid, graph), routeCacheSize);
+    }
+
+    private static Properties readManifest(File file) throws IOException {
+        Properties manifest = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            manifest.load(in);
+        } finally {
+            in.close();
+        }
+        return manifest;
+    }
+
+    private static void verify(File file, String expected) throws IOException {
+        if (!file.isFile()) {
+            throw new IOException("Snapshot file " + file + " is missing");
+        }
+        try {
+            if (Long.parseLong(expected) == checksum(file)) {
+                return;
+            }
+        } catch (NumberFormatException e) {
+            // no checksum
+        }
+        throw new IOException("Snapshot file " + file + " is corrupted");
+    }
+
+    /**
+     * @return the CRC32 of a file.
+     */
+    static long checksum(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[1 << 16];
+        InputStream in = new FileInputStream(file);
+        try {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return crc.getValue();
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        byte[] buffer = new byte[1 << 16];
+        InputStream in = new FileInputStream(from);
+        try {
+            OutputStream out = new FileOutputStream(to);
+            try {
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void rename(File from, File to) throws IOException {
+        // a mapped previous version stays valid while it's replaced
+        if (!from.renameTo(to)) {
+            to.delete();
+            if (!from.renameTo(to)) {
+                throw new IOException("Can't replace " + to);
+            }
+        }
+    }
+
+}
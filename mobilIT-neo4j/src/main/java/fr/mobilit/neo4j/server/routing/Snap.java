@@ -0,0 +1,89 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.routing;
+
+/**
+ * A coordinate snapped on a segment of a <code>RoutingGraph</code> (see <code>SegmentTree</code>) : it's a virtual
+ * node that splits the edge at the projection of the coordinate, so a search can start or end in the middle of a
+ * street instead of at its nearest crossing.
+ * 
+ * @author bsimard
+ * 
+ */
+public class Snap {
+
+    private final int    edge;
+    private final int    reverse;
+    private final double fraction;
+    private final double distance;
+    private final double longitude;
+    private final double latitude;
+
+    /**
+     * Constructor.
+     * 
+     * @param edge the snapped edge
+     * @param reverse the edge in the other direction, or <code>-1</code>
+     * @param fraction position of the projection on the edge, from 0 (source) to 1 (target)
+     * @param distance distance of the coordinate to the edge, in meters
+     * @param longitude of the projection
+     * @param latitude of the projection
+     */
+    public Snap(int edge, int reverse, double fraction, double distance, double longitude, double latitude) {
+        this.edge = edge;
+        this.reverse = reverse;
+        this.fraction = fraction;
+        this.distance = distance;
+        this.longitude = longitude;
+        this.latitude = latitude;
+    }
+
+    public int getEdge() {
+        return edge;
+    }
+
+    public int getReverse() {
+        return reverse;
+    }
+
+    public double getFraction() {
+        return fraction;
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * @param graph
+     * @return the end of the edge nearest to the projection.
+     */
+    public int getNearestNode(RoutingGraph graph) {
+        return fraction <= 0.5 ? graph.getEdgeSource(edge) : graph.getEdgeTarget(edge);
+    }
+
+}
@@ -0,0 +1,239 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.routing;
+
+import java.util.Arrays;
+
+/**
+ * A batch of coordinates to snap on the road network, with the result of each one in primitive arrays.
+ * 
+ * The points are snapped in Hilbert order (see <code>getOrder</code>) : consecutive points are close, so they walk the
+ * same nodes of the segment index and hit the same snap cache cells. Chunks of this order can be snapped in parallel,
+ * each point writes only its own results.
+ * 
+ * @author bsimard
+ * 
+ */
+public class SnapBatch {
+
+    private static final int HILBERT_BITS = 15;
+
+    private final double[]   lons;
+    private final double[]   lats;
+    private final long[]     nodes;
+    private final double[]   snappedLons;
+    private final double[]   snappedLats;
+    private final String[]   names;
+    private final double[]   offsets;
+    private final double[]   distances;
+
+    /**
+     * Constructor.
+     * 
+     * @param lons
+     * @param lats
+     */
+    public SnapBatch(double[] lons, double[] lats) {
+        this.lons = lons;
+        this.lats = lats;
+        this.nodes = new long[lons.length];
+        this.snappedLons = new double[lons.length];
+        this.snappedLats = new double[lons.length];
+        this.names = new String[lons.length];
+        this.offsets = new double[lons.length];
+        this.distances = new double[lons.length];
+        Arrays.fill(nodes, -1L);
+    }
+
+    /**
+     * @return number of points.
+     */
+    public int size() {
+        return lons.length;
+    }
+
+    /**
+     * @return the indexes of the points, sorted by their position on a Hilbert curve over the bounding box of the
+     *         batch.
+     */
+    public int[] getOrder() {
+        double minLon = Double.POSITIVE_INFINITY, minLat = Double.POSITIVE_INFINITY;
+        double maxLon = Double.NEGATIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < lons.length; i++) {
+            minLon = Math.min(minLon, lons[i]);
+            minLat = Math.min(minLat, lats[i]);
+            maxLon = Math.max(maxLon, lons[i]);
+            maxLat = Math.max(maxLat, lats[i]);
+        }
+        int side = (1 << HILBERT_BITS) - 1;
+        double width = Math.max(maxLon - minLon, 1e-9);
+        double height = Math.max(maxLat - minLat, 1e-9);
+        long[] keys = new long[lons.length];
+        for (int i = 0; i < lons.length; i++) {
+            int x = (int) ((lons[i] - minLon) / width * side);
+            int y = (int) ((lats[i] - minLat) / height * side);
+            keys[i] = (hilbert(x, y, HILBERT_BITS) << 32) | i;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    /**
+     * @param x
+     * @param y
+     * @param bits size of the grid, as a power of 2
+     * @return the distance of a cell along the Hilbert curve of the grid.
+     */
+    static long hilbert(int x, int y, int bits) {
+        int n = 1 << bits;
+        long d = 0;
+        for (int s = n >> 1; s > 0; s >>= 1) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            d += (long) s * s * ((3 * rx) ^ ry);
+            // rotate the quadrant
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = n - 1 - x;
+                    y = n - 1 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+
+    /**
+     * Snap a range of points.
+     * 
+     * @param order the order of the points (see <code>getOrder</code>)
+     * @param from first index in the order
+     * @param to index after the last one
+     * @param registry
+     * @param profile
+     * @param snapDistance maximum distance of a point to its street, in degrees
+     * @throws Exception if a shard can't be loaded
+     */
+    public void snap(int[] order, int from, int to, RegionRegistry registry, Profile profile, double snapDistance)
+            throws Exception {
+        for (int k = from; k < to; k++) {
+            int i = order[k];
+            RoutingShard shard = registry.getShard(lons[i], lats[i]);
+            if (shard == null) {
+                continue;
+            }
+            RoutingGraph graph = shard.getGraph();
+            Snap snap = shard.snap(lons[i], lats[i], profile, snapDistance);
+            if (snap != null) {
+                int node = snap.getNearestNode(graph);
+                double fraction = (node == graph.getEdgeSource(snap.getEdge())) ? snap.getFraction() : 1 - snap
+                        .getFraction();
+                nodes[i] = graph.getNodeId(node);
+                snappedLons[i] = snap.getLongitude();
+                snappedLats[i] = snap.getLatitude();
+                names[i] = graph.getEdgeName(snap.getEdge());
+                offsets[i] = fraction * graph.getEdgeLength(snap.getEdge());
+                distances[i] = snap.getDistance();
+            }
+            else if (shard.getSegmentIndex() == null) {
+                // tiled graph : its nearest node
+                int node = shard.findNearestNode(lons[i], lats[i], snapDistance);
+                if (node >= 0) {
+                    nodes[i] = graph.getNodeId(node);
+                    snappedLons[i] = graph.getLongitude(node);
+                    snappedLats[i] = graph.getLatitude(node);
+                    double x = (snappedLons[i] - lons[i]) * Math.cos(Math.toRadians(lats[i]));
+                    double y = snappedLats[i] - lats[i];
+                    distances[i] = Math.sqrt(x * x + y * y) * EdgeGrid.METERS_BY_DEGREE;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param i
+     * @return <code>true</code> if the point has been snapped.
+     */
+    public boolean isSnapped(int i) {
+        return nodes[i] >= 0;
+    }
+
+    /**
+     * @param i
+     * @return the id of the nearest end of the street (ie. Neo4j node id), or <code>-1</code>.
+     */
+    public long getNodeId(int i) {
+        return nodes[i];
+    }
+
+    public double getLongitude(int i) {
+        return lons[i];
+    }
+
+    public double getLatitude(int i) {
+        return lats[i];
+    }
+
+    /**
+     * @param i
+     * @return the longitude of the projection of the point on the street.
+     */
+    public double getSnappedLongitude(int i) {
+        return snappedLons[i];
+    }
+
+    /**
+     * @param i
+     * @return the latitude of the projection of the point on the street.
+     */
+    public double getSnappedLatitude(int i) {
+        return snappedLats[i];
+    }
+
+    /**
+     * @param i
+     * @return the name of the street, or <code>null</code>.
+     */
+    public String getName(int i) {
+        return names[i];
+    }
+
+    /**
+     * @param i
+     * @return the distance along the street from the snapped node to the projection, in meters.
+     */
+    public double getOffset(int i) {
+        return offsets[i];
+    }
+
+    /**
+     * @param i
+     * @return the distance from the point to the street, in meters.
+     */
+    public double getDistance(int i) {
+        return distances[i];
+    }
+
+}
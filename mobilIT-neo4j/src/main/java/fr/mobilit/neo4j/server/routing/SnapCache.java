@@ -0,0 +1,149 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.routing;
+
+import fr.mobilit.neo4j.server.utils.LongIntHashMap;
+
+/**
+ * Cache of the snaps of a <code>SegmentTree</code>, by profile and by coordinates rounded to a cell of about 5 meters :
+ * most requests come from the same few thousand points (home positions, stations, geocoded addresses). The key is a
+ * <code>long</code>, the entries are in fixed arrays and the cache is bounded : when it's full, an entry is evicted by
+ * the clock algorithm (the hand skips, and clears, the entries used since its last pass).
+ * 
+ * The cache belongs to its shard : an import builds new shards, and so new caches.
+ * 
+ * @author bsimard
+ * 
+ */
+public class SnapCache {
+
+    public static final int          DEFAULT_SIZE = 16384;
+    public static final double       DEFAULT_CELL = 0.00005;
+
+    private static final int         ANY_PROFILE  = Profile.values().length;
+
+    private final double             cell;
+    private final LongIntHashMap     index;
+    private final long[]             keys;
+    private final Snap[]             snaps;
+    private final boolean[]          referenced;
+    private int                      size         = 0;
+    private int                      hand         = 0;
+    private long                     hits         = 0;
+    private long                     misses       = 0;
+    private long                     evictions    = 0;
+
+    /**
+     * Constructor.
+     * 
+     * @param capacity maximum number of snaps
+     * @param cell size of a cell, in degrees
+     */
+    public SnapCache(int capacity, double cell) {
+        this.cell = cell;
+        this.index = new LongIntHashMap(capacity);
+        this.keys = new long[capacity];
+        this.snaps = new Snap[capacity];
+        this.referenced = new boolean[capacity];
+    }
+
+    /**
+     * @param profile the profile of the snap, or <code>null</code> for a snap on any street
+     * @param lon
+     * @param lat
+     * @return the key of the cell of the coordinate.
+     */
+    public long key(Profile profile, double lon, double lat) {
+        long x = (long) Math.floor((lon + 180) / cell) & 0xFFFFFFF;
+        long y = (long) Math.floor((lat + 90) / cell) & 0xFFFFFFF;
+        long p = (profile == null) ? ANY_PROFILE : profile.ordinal();
+        return (p << 56) | (x << 28) | y;
+    }
+
+    /**
+     * @param key
+     * @return the snap of the cell, or <code>null</code>.
+     */
+    public synchronized Snap get(long key) {
+        int slot = index.get(key);
+        if (slot == LongIntHashMap.NO_VALUE) {
+            misses++;
+            return null;
+        }
+        hits++;
+        referenced[slot] = true;
+        return snaps[slot];
+    }
+
+    /**
+     * Add the snap of a cell, evicting an entry if the cache is full.
+     * 
+     * @param key
+     * @param snap
+     */
+    public synchronized void put(long key, Snap snap) {
+        int slot = index.get(key);
+        if (slot == LongIntHashMap.NO_VALUE) {
+            if (size < keys.length) {
+                slot = size++;
+            }
+            else {
+                while (referenced[hand]) {
+                    referenced[hand] = false;
+                    hand = (hand + 1) % keys.length;
+                }
+                slot = hand;
+                hand = (hand + 1) % keys.length;
+                index.remove(keys[slot]);
+                evictions++;
+            }
+            keys[slot] = key;
+            index.put(key, slot);
+        }
+        snaps[slot] = snap;
+        referenced[slot] = false;
+    }
+
+    /**
+     * @return number of cached snaps.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * @return the part of the lookups found in the cache, from 0 to 1.
+     */
+    public synchronized double getHitRatio() {
+        return (hits + misses == 0) ? 0 : (double) hits / (hits + misses);
+    }
+
+}
@@ -0,0 +1,235 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.routing;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Partition a <code>RoutingGraph</code> into fixed geographic tiles, written as one <code>GraphFile</code> by tile
+ * plus an index file, to be served by a <code>TiledGraph</code>.
+ * 
+ * Nodes are numbered again so that the nodes of a tile are contiguous : node <code>n</code> of the tile
+ * <code>t</code> is the global node <code>nodeBase[t] + n</code>. An edge is stored in the tile of its source, and
+ * listed as incoming edge in the tile of its target. Sources, targets and incoming edges are stored with their global
+ * numbers, so an edge crossing a tile border is the same edge seen from both sides.
+ * 
+ * @author bsimard
+ * 
+ */
+public class TileWriter {
+
+    static final String INDEX_FILE    = "tiles.idx";
+    static final int    INDEX_MAGIC   = 0x4D42544C;
+    static final int    INDEX_VERSION = 1;
+
+    private TileWriter() {
+    }
+
+    /**
+     * @return file name of a tile.
+     */
+    static String tileFile(int tile) {
+        return "tile-" + tile + ".bin";
+    }
+
+    /**
+     * @return key of the tile of a coordinate : row in the high int, column in the low int.
+     */
+    static long key(double lon, double lat, double tileSize) {
+        long x = (long) Math.floor(lon / tileSize);
+        long y = (long) Math.floor(lat / tileSize);
+        return (y << 32) | (x & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Write the tiles of a graph.
+     * 
+     * @param graph
+     * @param tileSize size of a tile, in degrees
+     * @param directory target directory, created if needed
+     * @return the number of tiles
+     * @throws IOException
+     */
+    public static int write(RoutingGraph graph, double tileSize, File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create directory " + directory);
+        }
+        int nbNodes = graph.getNodeCount();
+        int nbEdges = graph.getEdgeCount();
+
+        // tiles, sorted by key
+        TreeMap<Long, Integer> sizes = new TreeMap<Long, Integer>();
+        long[] nodeKey = new long[nbNodes];
+        for (int node = 0; node < nbNodes; node++) {
+            nodeKey[node] = key(graph.getLongitude(node), graph.getLatitude(node), tileSize);
+            Integer count = sizes.get(nodeKey[node]);
+            sizes.put(nodeKey[node], count == null ? 1 : count + 1);
+        }
+        int nbTiles = sizes.size();
+        Map<Long, Integer> tileIndex = new HashMap<Long, Integer>();
+        long[] tileKeys = new long[nbTiles];
+        int[] nodeBase = new int[nbTiles + 1];
+        int t = 0;
+        for (Map.Entry<Long, Integer> entry : sizes.entrySet()) {
+            tileIndex.put(entry.getKey(), t);
+            tileKeys[t] = entry.getKey();
+            nodeBase[t + 1] = nodeBase[t] + entry.getValue();
+            t++;
+        }
+
+        // global numbers of nodes, then of edges (grouped by tile of their source)
+        int[] newNode = new int[nbNodes];
+        int[] oldNode = new int[nbNodes];
+        int[] fill = new int[nbTiles];
+        for (int node = 0; node < nbNodes; node++) {
+            int tile = tileIndex.get(nodeKey[node]);
+            newNode[node] = nodeBase[tile] + fill[tile]++;
+            oldNode[newNode[node]] = node;
+        }
+        int[] newEdge = new int[nbEdges];
+        int[] edgeBase = new int[nbTiles + 1];
+        int edge = 0;
+        for (int tile = 0; tile < nbTiles; tile++) {
+            edgeBase[tile] = edge;
+            for (int n = nodeBase[tile]; n < nodeBase[tile + 1]; n++) {
+                int node = oldNode[n];
+                for (int e = graph.getFirstOutEdge(node); e < graph.getLastOutEdge(node); e++) {
+                    newEdge[e] = edge++;
+                }
+            }
+        }
+        edgeBase[nbTiles] = edge;
+
+        DataOutputStream index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(
+                directory, INDEX_FILE))));
+        try {
+            index.writeInt(INDEX_MAGIC);
+            index.writeInt(INDEX_VERSION);
+            index.writeDouble(tileSize);
+            index.writeInt(nbTiles);
+            index.writeInt(nbNodes);
+            index.writeInt(nbEdges);
+            int inBase = 0;
+            for (int tile = 0; tile < nbTiles; tile++) {
+                ArrayGraph tileGraph = tile(graph, oldNode, newNode, newEdge, nodeBase[tile], nodeBase[tile + 1]);
+                GraphFile.write(tileGraph, new File(directory, tileFile(tile)));
+                int inCount = tileGraph.inEdges.limit();
+                index.writeInt((int) tileKeys[tile]);
+                index.writeInt((int) (tileKeys[tile] >> 32));
+                index.writeInt(nodeBase[tile]);
+                index.writeInt(nodeBase[tile + 1] - nodeBase[tile]);
+                index.writeInt(edgeBase[tile]);
+                index.writeInt(edgeBase[tile + 1] - edgeBase[tile]);
+                index.writeInt(inBase);
+                index.writeInt(inCount);
+                inBase += inCount;
+            }
+        } finally {
+            index.close();
+        }
+        return nbTiles;
+    }
+
+    /**
+     * Build the graph of a tile : nodes are local, sources, targets and incoming edges are global.
+     */
+    private static ArrayGraph tile(RoutingGraph graph, int[] oldNode, int[] newNode, int[] newEdge, int from, int to) {
+        int nodes = to - from;
+        int edges = 0;
+        int inCount = 0;
+        for (int n = from; n < to; n++) {
+            edges += graph.getLastOutEdge(oldNode[n]) - graph.getFirstOutEdge(oldNode[n]);
+            inCount += graph.getLastInEdge(oldNode[n]) - graph.getFirstInEdge(oldNode[n]);
+        }
+        long[] nodeIds = new long[nodes];
+        double[] lon = new double[nodes];
+        double[] lat = new double[nodes];
+        int[] firstOut = new int[nodes + 1];
+        int[] firstIn = new int[nodes + 1];
+        int[] inEdges = new int[inCount];
+        int[] edgeSource = new int[edges];
+        int[] edgeTarget = new int[edges];
+        int[] edgeName = new int[edges];
+        float[] edgeLength = new float[edges];
+        float[][] costs = new float[Profile.values().length][edges];
+        Map<String, Integer> nameIndex = new HashMap<String, Integer>();
+        List<String> names = new ArrayList<String>();
+
+        int e = 0;
+        int in = 0;
+        for (int n = 0; n < nodes; n++) {
+            int node = oldNode[from + n];
+            nodeIds[n] = graph.getNodeId(node);
+            lon[n] = graph.getLongitude(node);
+            lat[n] = graph.getLatitude(node);
+            for (int old = graph.getFirstOutEdge(node); old < graph.getLastOutEdge(node); old++) {
+                edgeSource[e] = newNode[node];
+                edgeTarget[e] = newNode[graph.getEdgeTarget(old)];
+                edgeLength[e] = graph.getEdgeLength(old);
+                String name = graph.getEdgeName(old);
+                if (name == null) {
+                    edgeName[e] = -1;
+                }
+                else {
+                    Integer i = nameIndex.get(name);
+                    if (i == null) {
+                        i = names.size();
+                        nameIndex.put(name, i);
+                        names.add(name);
+                    }
+                    edgeName[e] = i;
+                }
+                for (Profile profile : Profile.values()) {
+                    costs[profile.ordinal()][e] = graph.getEdgeCost(profile, old);
+                }
+                e++;
+            }
+            firstOut[n + 1] = e;
+            for (int i = graph.getFirstInEdge(node); i < graph.getLastInEdge(node); i++) {
+                inEdges[in++] = newEdge[graph.getInEdge(i)];
+            }
+            // keep incoming edges sorted, like the ones of an ArrayGraph
+            Arrays.sort(inEdges, firstIn[n], in);
+            firstIn[n + 1] = in;
+        }
+        FloatBuffer[] costBuffers = new FloatBuffer[costs.length];
+        for (int p = 0; p < costs.length; p++) {
+            costBuffers[p] = FloatBuffer.wrap(costs[p]);
+        }
+        return new ArrayGraph(LongBuffer.wrap(nodeIds), DoubleBuffer.wrap(lon), DoubleBuffer.wrap(lat),
+                IntBuffer.wrap(firstOut), IntBuffer.wrap(firstIn), IntBuffer.wrap(inEdges), IntBuffer.wrap(edgeSource),
+                IntBuffer.wrap(edgeTarget), IntBuffer.wrap(edgeName), FloatBuffer.wrap(edgeLength), costBuffers,
+                names.toArray(new String[names.size()]));
+    }
+
+}
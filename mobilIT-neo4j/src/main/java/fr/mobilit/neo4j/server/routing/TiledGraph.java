@@ -0,0 +1,445 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.routing;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <code>RoutingGraph</code> written by <code>TileWriter</code>, too large to be loaded at once : a tile is
+ * memory-mapped the first time a search reaches one of its nodes or edges (a tile fault), and the least recently used
+ * tiles are released when the mapped size goes over the limit.
+ * 
+ * Reading a loaded tile takes no lock. Fault counters are kept globally and by thread, so the faults of a query are
+ * the difference of <code>getThreadFaultCount()</code> before and after it.
+ * 
+ * Several graphs can be open on the same tiles directory (ie. a shard mapped from its snapshot by two routing
+ * versions). A directory is only deleted once it's discarded and its last graph is closed.
+ * 
+ * @author bsimard
+ * 
+ */
+public class TiledGraph implements RoutingGraph, NodeLocator {
+
+    /**
+     * A loaded tile.
+     */
+    private static class Tile {
+
+        private final ArrayGraph graph;
+        private final NodeGrid   grid;
+        private final long       bytes;
+
+        private Tile(ArrayGraph graph, long bytes) {
+            this.graph = graph;
+            this.grid = new NodeGrid(graph, GRID_CELL);
+            this.bytes = bytes;
+        }
+    }
+
+    private static final double              GRID_CELL    = 0.005;
+    private static final Map<File, Integer>  OPEN         = new HashMap<File, Integer>();
+    private static final Set<File>           DISCARDED    = new HashSet<File>();
+
+    private final File                       directory;
+    private final long                       maxBytes;
+    private final double                     tileSize;
+    private final int                        nodeCount;
+    private final int                        edgeCount;
+    private final int[]                      tileX;
+    private final int[]                      tileY;
+    private final int[]                      nodeBase;
+    private final int[]                      edgeBase;
+    private final int[]                      inBase;
+
+    private final AtomicReferenceArray<Tile> tiles;
+    private final long[]                     lastAccess;
+    private long                             clock        = 0;
+    private long                             loadedBytes  = 0;
+    private int                              loadedTiles  = 0;
+    private boolean                          closed       = false;
+    private final AtomicLong                 faults       = new AtomicLong();
+    private final AtomicLong                 evictions    = new AtomicLong();
+    private final ThreadLocal<long[]>        threadFaults = new ThreadLocal<long[]>() {
+
+                                                              @Override
+                                                              protected long[] initialValue() {
+                                                                  return new long[1];
+                                                              }
+                                                          };
+
+    /**
+     * Constructor : only the index of the tiles is read.
+     * 
+     * @param directory directory written by <code>TileWriter</code>
+     * @param maxBytes maximum size of the loaded tiles
+     * @throws IOException
+     */
+    public TiledGraph(File directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(new File(directory,
+                TileWriter.INDEX_FILE))));
+        try {
+            if (in.readInt() != TileWriter.INDEX_MAGIC || in.readInt() != TileWriter.INDEX_VERSION) {
+                throw new IOException(directory + " is not a tiled routing graph");
+            }
+            tileSize = in.readDouble();
+            int nbTiles = in.readInt();
+            nodeCount = in.readInt();
+            edgeCount = in.readInt();
+            tileX = new int[nbTiles];
+            tileY = new int[nbTiles];
+            nodeBase = new int[nbTiles + 1];
+            edgeBase = new int[nbTiles + 1];
+            inBase = new int[nbTiles + 1];
+            for (int t = 0; t < nbTiles; t++) {
+                tileX[t] = in.readInt();
+                tileY[t] = in.readInt();
+                nodeBase[t] = in.readInt();
+                in.readInt();
+                edgeBase[t] = in.readInt();
+                in.readInt();
+                inBase[t] = in.readInt();
+                inBase[t + 1] = inBase[t] + in.readInt();
+            }
+            nodeBase[nbTiles] = nodeCount;
+            edgeBase[nbTiles] = edgeCount;
+        } finally {
+            in.close();
+        }
+        tiles = new AtomicReferenceArray<Tile>(tileX.length);
+        lastAccess = new long[tileX.length];
+        open(directory);
+    }
+
+    private static void open(File directory) {
+        synchronized (OPEN) {
+            File key = directory.getAbsoluteFile();
+            Integer count = OPEN.get(key);
+            OPEN.put(key, count == null ? 1 : count + 1);
+        }
+    }
+
+    /**
+     * Delete a tiles directory when it's not used anymore : now if no graph is open on it, when its last graph is
+     * closed otherwise.
+     * 
+     * @param directory
+     */
+    public static void discard(File directory) {
+        synchronized (OPEN) {
+            File key = directory.getAbsoluteFile();
+            if (OPEN.containsKey(key)) {
+                DISCARDED.add(key);
+            }
+            else {
+                deleteFiles(key);
+            }
+        }
+    }
+
+    private static void deleteFiles(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /**
+     * @return the tile containing the index, in an array of tile bases.
+     */
+    private static int find(int[] base, int index) {
+        int low = 0;
+        int high = base.length - 2;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (base[middle] <= index) {
+                low = middle;
+            }
+            else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private ArrayGraph graph(int t) {
+        return tile(t).graph;
+    }
+
+    private Tile tile(int t) {
+        Tile tile = tiles.get(t);
+        if (tile == null) {
+            tile = fault(t);
+        }
+        // racy clock : an approximate recency is enough for the eviction
+        lastAccess[t] = ++clock;
+        return tile;
+    }
+
+    private synchronized Tile fault(int t) {
+        Tile tile = tiles.get(t);
+        if (tile != null) {
+            return tile;
+        }
+        File file = new File(directory, TileWriter.tileFile(t));
+        try {
+            tile = new Tile(GraphFile.map(file), file.length());
+        } catch (IOException e) {
+            throw new IllegalStateException("Tile " + file + " can't be loaded", e);
+        }
+        faults.incrementAndGet();
+        threadFaults.get()[0]++;
+        lastAccess[t] = ++clock;
+        tiles.set(t, tile);
+        loadedBytes += tile.bytes;
+        loadedTiles++;
+
+        // least recently used tiles are released, mapped buffers are freed by the GC
+        while (loadedBytes > maxBytes && loadedTiles > 1) {
+            int oldest = -1;
+            for (int i = 0; i < lastAccess.length; i++) {
+                if (i != t && tiles.get(i) != null && (oldest < 0 || lastAccess[i] < lastAccess[oldest])) {
+                    oldest = i;
+                }
+            }
+            loadedBytes -= tiles.get(oldest).bytes;
+            loadedTiles--;
+            tiles.set(oldest, null);
+            evictions.incrementAndGet();
+        }
+        return tile;
+    }
+
+    /**
+     * Release all the tiles : the graph can't be used anymore. The directory is deleted if it was discarded and no
+     * other graph is open on it.
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (int t = 0; t < tileX.length; t++) {
+            tiles.set(t, null);
+        }
+        loadedBytes = 0;
+        loadedTiles = 0;
+        synchronized (OPEN) {
+            File key = directory.getAbsoluteFile();
+            int count = OPEN.get(key) - 1;
+            if (count > 0) {
+                OPEN.put(key, count);
+            }
+            else {
+                OPEN.remove(key);
+                if (DISCARDED.remove(key)) {
+                    deleteFiles(key);
+                }
+            }
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return number of tile loads since the creation.
+     */
+    public long getFaultCount() {
+        return faults.get();
+    }
+
+    /**
+     * @return number of tile loads done by the current thread.
+     */
+    public long getThreadFaultCount() {
+        return threadFaults.get()[0];
+    }
+
+    /**
+     * @return number of released tiles since the creation.
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public synchronized int getLoadedTileCount() {
+        return loadedTiles;
+    }
+
+    public synchronized long getLoadedBytes() {
+        return loadedBytes;
+    }
+
+    public int getTileCount() {
+        return tileX.length;
+    }
+
+    @Override
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    @Override
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    @Override
+    public long getNodeId(int node) {
+        int t = find(nodeBase, node);
+        return graph(t).getNodeId(node - nodeBase[t]);
+    }
+
+    /**
+     * Only the loaded tiles are searched.
+     */
+    @Override
+    public int findNode(long nodeId) {
+        for (int t = 0; t < tileX.length; t++) {
+            Tile tile = tiles.get(t);
+            if (tile != null) {
+                int node = tile.graph.findNode(nodeId);
+                if (node >= 0) {
+                    return nodeBase[t] + node;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public double getLongitude(int node) {
+        int t = find(nodeBase, node);
+        return graph(t).getLongitude(node - nodeBase[t]);
+    }
+
+    @Override
+    public double getLatitude(int node) {
+        int t = find(nodeBase, node);
+        return graph(t).getLatitude(node - nodeBase[t]);
+    }
+
+    @Override
+    public int getFirstOutEdge(int node) {
+        int t = find(nodeBase, node);
+        return edgeBase[t] + graph(t).getFirstOutEdge(node - nodeBase[t]);
+    }
+
+    @Override
+    public int getLastOutEdge(int node) {
+        int t = find(nodeBase, node);
+        return edgeBase[t] + graph(t).getLastOutEdge(node - nodeBase[t]);
+    }
+
+    @Override
+    public int getFirstInEdge(int node) {
+        int t = find(nodeBase, node);
+        return inBase[t] + graph(t).getFirstInEdge(node - nodeBase[t]);
+    }
+
+    @Override
+    public int getLastInEdge(int node) {
+        int t = find(nodeBase, node);
+        return inBase[t] + graph(t).getLastInEdge(node - nodeBase[t]);
+    }
+
+    @Override
+    public int getInEdge(int index) {
+        int t = find(inBase, index);
+        return graph(t).getInEdge(index - inBase[t]);
+    }
+
+    @Override
+    public int getEdgeSource(int edge) {
+        int t = find(edgeBase, edge);
+        return graph(t).getEdgeSource(edge - edgeBase[t]);
+    }
+
+    @Override
+    public int getEdgeTarget(int edge) {
+        int t = find(edgeBase, edge);
+        return graph(t).getEdgeTarget(edge - edgeBase[t]);
+    }
+
+    @Override
+    public float getEdgeLength(int edge) {
+        int t = find(edgeBase, edge);
+        return graph(t).getEdgeLength(edge - edgeBase[t]);
+    }
+
+    @Override
+    public float getEdgeCost(Profile profile, int edge) {
+        int t = find(edgeBase, edge);
+        return graph(t).getEdgeCost(profile, edge - edgeBase[t]);
+    }
+
+    @Override
+    public String getEdgeName(int edge) {
+        int t = find(edgeBase, edge);
+        return graph(t).getEdgeName(edge - edgeBase[t]);
+    }
+
+    /**
+     * Snap on the tiles around the coordinate, loading them if needed.
+     */
+    @Override
+    public int findNearest(double lon, double lat, double maxDistance) {
+        double scale = Math.cos(Math.toRadians(lat));
+        int minX = (int) Math.floor((lon - maxDistance / scale) / tileSize);
+        int maxX = (int) Math.floor((lon + maxDistance / scale) / tileSize);
+        int minY = (int) Math.floor((lat - maxDistance) / tileSize);
+        int maxY = (int) Math.floor((lat + maxDistance) / tileSize);
+        int best = -1;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for (int t = 0; t < tileX.length; t++) {
+            if (tileX[t] < minX || tileX[t] > maxX || tileY[t] < minY || tileY[t] > maxY) {
+                continue;
+            }
+            Tile tile = tile(t);
+            int node = tile.grid.findNearest(lon, lat, maxDistance);
+            if (node >= 0) {
+                double x = (tile.graph.getLongitude(node) - lon) * scale;
+                double y = tile.graph.getLatitude(node) - lat;
+                double distance = x * x + y * y;
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = nodeBase[t] + node;
+                }
+            }
+        }
+        return best;
+    }
+
+}
@@ -0,0 +1,86 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.routing;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Reference on the current <code>RoutingVersion</code>. A new version is built aside, then published at once : the
+ * queries started before keep their version until they end, the next ones get the new version.
+ * 
+ * <pre>
+ * RoutingVersion version = routing.acquire();
+ * try {
+ *     ... version.getRegistry() ...
+ * } finally {
+ *     version.release();
+ * }
+ * </pre>
+ * 
+ * @author bsimard
+ * 
+ */
+public class VersionedRouting {
+
+    private final AtomicReference<RoutingVersion> current;
+
+    /**
+     * Constructor.
+     * 
+     * @param initial first version
+     */
+    public VersionedRouting(RoutingVersion initial) {
+        this.current = new AtomicReference<RoutingVersion>(initial);
+    }
+
+    /**
+     * @return the current version, to release at the end of the query.
+     */
+    public RoutingVersion acquire() {
+        while (true) {
+            RoutingVersion version = current.get();
+            version.acquire();
+            // the version may have been replaced (and freed) between the read and the acquire
+            if (version == current.get()) {
+                return version;
+            }
+            version.release();
+        }
+    }
+
+    /**
+     * @return the current version, without acquiring it.
+     */
+    public RoutingVersion getCurrent() {
+        return current.get();
+    }
+
+    /**
+     * Publish a new version. The previous one is freed when its last query releases it.
+     * 
+     * @param version
+     * @return the previous version
+     */
+    public RoutingVersion publish(RoutingVersion version) {
+        RoutingVersion previous = current.getAndSet(version);
+        previous.retire();
+        return previous;
+    }
+
+}
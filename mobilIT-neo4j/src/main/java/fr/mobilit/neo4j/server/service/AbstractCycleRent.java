@@ -1,5 +1,6 @@
 package fr.mobilit.neo4j.server.service;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -28,4 +29,14 @@ public abstract class AbstractCycleRent {
      */
     public abstract Map<String, Integer> getStation(String id) throws MobilITException;
 
+    /**
+     * Method to get the status of all stations of the service in one call. Services that have a bulk API should
+     * override it, by default there is no information (so all stations are considered as avaible).
+     * 
+     * @return the status of each station by its id.
+     */
+    public Map<String, Map<String, Integer>> getAllStation() throws MobilITException {
+        return new HashMap<String, Map<String, Integer>>();
+    }
+
 }
@@ -1,5 +1,6 @@
 package fr.mobilit.neo4j.server.service;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -28,4 +29,14 @@ public abstract class AbstractParking {
      */
     public abstract Map<String, Integer> getParking(String id) throws MobilITException;
 
+    /**
+     * Method to get the status of all parkings of the service in one call. Services that have a bulk API should
+     * override it, by default there is no information (so all parkings are considered as avaible).
+     * 
+     * @return the status of each parking by its id.
+     */
+    public Map<String, Map<String, Integer>> getAllParking() throws MobilITException {
+        return new HashMap<String, Map<String, Integer>>();
+    }
+
 }
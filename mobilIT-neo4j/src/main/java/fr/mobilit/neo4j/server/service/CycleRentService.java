@@ -19,21 +19,26 @@
 package fr.mobilit.neo4j.server.service;
 
 import java.lang.reflect.Constructor;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.neo4j.gis.spatial.EditableLayer;
 import org.neo4j.gis.spatial.SpatialDatabaseRecord;
 import org.neo4j.gis.spatial.SpatialDatabaseService;
 import org.neo4j.gis.spatial.pipes.GeoPipeFlow;
 import org.neo4j.gis.spatial.pipes.GeoPipeline;
+import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.Node;
 
 import com.vividsolutions.jts.geom.Coordinate;
 
 import fr.mobilit.neo4j.server.exception.MobilITException;
 import fr.mobilit.neo4j.server.pojo.POI;
+import fr.mobilit.neo4j.server.shortestpath.NetworkDijkstra;
+import fr.mobilit.neo4j.server.shortestpath.costEvaluator.PedestrianCostEvaluation;
+import fr.mobilit.neo4j.server.utils.Cache;
 import fr.mobilit.neo4j.server.utils.Constant;
+import fr.mobilit.neo4j.server.utils.SpatialUtils;
 
 public class CycleRentService {
 
@@ -107,8 +112,7 @@ public class CycleRentService {
             Double lng = (Double) node.getProperty("lon", null);
             Double lati = (Double) node.getProperty("lat", null);
             if (status != null && (status == 0 || status == 1)) {
-                AbstractCycleRent service = this.getGeoService(geocode);
-                HashMap<String, Integer> places = (HashMap<String, Integer>) service.getStation(id);
+                Map<String, Integer> places = this.getStatus(geocode, id);
                 switch (status) {
                     // check if there is free cycle (start point)
                     case 0:
@@ -140,6 +144,140 @@ public class CycleRentService {
         return nearest;
     }
 
+    /**
+     * Method to get the nearest rent cycle station by walking time. One pedestrian search from the point settles the
+     * OSM nodes by walking time, and stops on the first node with a station that matches the status (at most
+     * <code>Constant.CYCLE_STATION_MAX_WALK</code> hour away). A station without status information is kept.
+     * 
+     * @param lon the longitude
+     * @param lat the latitude
+     * @param status if 0 we search a station with free cycle, if 1 with free slot and if null whatever !
+     * @return the nearest station or <code>null</code> if there is none in walking distance.
+     * @throws MobilITException
+     */
+    public POI getNearestByWalk(Double lon, Double lat, Integer status) throws MobilITException {
+        return getNearestByWalk(new SpatialUtils(spatial).findNearestWay(lat, lon), status);
+    }
+
+    /**
+     * Method to get the nearest rent cycle station by walking time from an already snapped OSM way node.
+     * 
+     * @param start the snapped node
+     * @param status if 0 we search a station with free cycle, if 1 with free slot and if null whatever !
+     * @return the nearest station or <code>null</code> if there is none in walking distance.
+     * @throws MobilITException
+     */
+    public POI getNearestByWalk(Node start, final Integer status) throws MobilITException {
+        final POINodeIndex index = POINodeIndex.getInstance(spatial, Constant.CYCLE_LAYER);
+        if (index.size() == 0) {
+            return null;
+        }
+        final POI[] nearest = new POI[1];
+        NetworkDijkstra search = new NetworkDijkstra(new PedestrianCostEvaluation(), Direction.OUTGOING);
+        search.addSource(start, 0.0);
+        search.setMaxCost(Constant.CYCLE_STATION_MAX_WALK);
+        search.setGoal(new NetworkDijkstra.Goal() {
+
+            @Override
+            public boolean isReached(long nodeId) {
+                for (POI station : index.getPOIs(nodeId)) {
+                    if (hasPlace(station, status)) {
+                        nearest[0] = station;
+                        return true;
+                    }
+                }
+                return false;
+            }
+        });
+        search.calculate();
+        return nearest[0];
+    }
+
+    /**
+     * Check if a station has a free cycle (status 0) or a free slot (status 1).
+     */
+    private boolean hasPlace(POI station, Integer status) {
+        if (status == null || (status != 0 && status != 1)) {
+            return true;
+        }
+        try {
+            Map<String, Integer> places = this.getStatus(station.getGeocode(), station.getId());
+            Integer count = places.get(status == 0 ? Constant.CYCLE_AVAIBLE : Constant.CYCLE_FREE);
+            return count == null || count > 0;
+        } catch (MobilITException e) {
+            // no status : we keep the station
+            return true;
+        }
+    }
+
+    /**
+     * Method to get the nearest rent cycle station on foot from the station catchment : once the point is snapped, it's
+     * a lookup. Until the catchment is computed, it falls back to a pedestrian search.
+     * 
+     * @param lon the longitude
+     * @param lat the latitude
+     * @return the nearest station or <code>null</code> if there is none in walking distance.
+     * @throws MobilITException
+     */
+    public POI getNearestOnFoot(Double lon, Double lat) throws MobilITException {
+        StationCatchment.Catchment catchment = StationCatchment.getInstance().getCatchment();
+        if (catchment == null) {
+            return getNearestByWalk(lon, lat, null);
+        }
+        Node node = new SpatialUtils(spatial).findNearestWay(lat, lon);
+        return catchment.getStation(node.getId());
+    }
+
+    /**
+     * Method to get the status of a station (avaible & free slot). Status are kept in cache for
+     * <code>Constant.CYCLE_STATUS_TTL</code> seconds, so a search that checks many stations doesn't call the remote
+     * service for each of them.
+     * 
+     * @param geocode the geocode of the station.
+     * @param id the id of the station.
+     * @return
+     * @throws MobilITException
+     */
+    public Map<String, Integer> getStatus(String geocode, String id) throws MobilITException {
+        String key = "cycle_status_" + geocode + "_" + id;
+        Cache cache = Cache.getInstance();
+        Map<String, Integer> places = null;
+        if (cache != null) {
+            places = (Map<String, Integer>) cache.get(key);
+        }
+        if (places == null) {
+            places = this.getGeoService(geocode).getStation(id);
+            if (cache != null) {
+                cache.add(key, places, Constant.CYCLE_STATUS_TTL);
+            }
+        }
+        return places;
+    }
+
+    /**
+     * Method to get the status of all stations of a geocode. The snapshot is loaded with one bulk call to the service,
+     * and kept in cache for <code>Constant.CYCLE_STATUS_TTL</code> seconds.
+     * 
+     * @param geocode
+     * @return the status of each station by its id.
+     * @throws MobilITException
+     */
+    public Map<String, Map<String, Integer>> getSnapshot(String geocode) throws MobilITException {
+        String key = "cycle_status_" + geocode;
+        Cache cache = Cache.getInstance();
+        Map<String, Map<String, Integer>> snapshot = null;
+        if (cache != null) {
+            snapshot = (Map<String, Map<String, Integer>>) cache.get(key);
+        }
+        if (snapshot == null) {
+            snapshot = this.getGeoService(geocode).getAllStation();
+            if (cache != null) {
+                cache.add(key, snapshot, Constant.CYCLE_STATUS_TTL);
+            }
+        }
+        return snapshot;
+    }
+
     /**
      * Getter.
      * 
@@ -0,0 +1,231 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.neo4j.gis.spatial.SpatialDatabaseService;
+import org.neo4j.gis.spatial.osm.OSMRelation;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.server.logging.Logger;
+import org.neo4j.tooling.GlobalGraphOperations;
+
+import fr.mobilit.neo4j.server.exception.MobilITException;
+import fr.mobilit.neo4j.server.geocoding.Address;
+import fr.mobilit.neo4j.server.geocoding.AddressBuilder;
+import fr.mobilit.neo4j.server.geocoding.AddressIndex;
+import fr.mobilit.neo4j.server.utils.Constant;
+import fr.mobilit.neo4j.server.utils.MobilITRelation;
+import fr.mobilit.neo4j.server.utils.SearchExecutor;
+
+/**
+ * Geocoding service : it keeps the <code>AddressIndex</code> of the OSM data, built in background after each import
+ * (or at first use), from the named highways and the addresses : the nodes and the ways (buildings) tagged with an
+ * <code>addr:housenumber</code>, and the numbers of the interpolation ways. It serves the name search and the
+ * reverse geocoding of the <code>LocationUtility</code>.
+ * 
+ * @author bsimard
+ * 
+ */
+public class GeocodingService {
+
+    private static final Logger           LOGGER         = Logger.getLogger(GeocodingService.class);
+    private static final GeocodingService uniqueInstance = new GeocodingService();
+
+    private final ExecutorService         jobs;
+    private volatile AddressIndex         index;
+
+    private GeocodingService() {
+        this.jobs = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "mobilit-geocoding");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public static GeocodingService getInstance() {
+        return uniqueInstance;
+    }
+
+    /**
+     * Get the current index, waiting for its build if it's not done yet.
+     * 
+     * @param spatial
+     * @return
+     * @throws MobilITException
+     */
+    public AddressIndex getIndex(SpatialDatabaseService spatial) throws MobilITException {
+        AddressIndex current = index;
+        if (current == null) {
+            try {
+                current = refresh(spatial).get();
+            } catch (Exception e) {
+                throw new MobilITException("Address index can't be built", e);
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Schedule the build of the index.
+     * 
+     * @param spatial
+     * @return the job
+     */
+    public Future<AddressIndex> refresh(final SpatialDatabaseService spatial) {
+        return jobs.submit(new Callable<AddressIndex>() {
+
+            @Override
+            public AddressIndex call() throws Exception {
+                try {
+                    long start = System.currentTimeMillis();
+                    AddressIndex built = build(spatial);
+                    index = built;
+                    LOGGER.info("Address index of " + built.getStreetCount() + " streets and "
+                            + built.getAddressCount() + " addresses built in " + (System.currentTimeMillis() - start)
+                            + "ms");
+                    return built;
+                } catch (Exception e) {
+                    LOGGER.warn("Address index build failed : " + e.getMessage());
+                    throw e;
+                }
+            }
+        });
+    }
+
+    /**
+     * Search a batch of queries by name. The queries are split in chunks, searched in parallel by the search executor.
+     * 
+     * @param addresses the index (see <code>getIndex</code>)
+     * @param queries
+     * @param limit maximum number of streets by query
+     * @return the streets of each query, in the order of the queries (an empty list for a <code>null</code> query).
+     * @throws Exception
+     */
+    @SuppressWarnings("unchecked")
+    public List<List<Address>> search(final AddressIndex addresses, final List<String> queries, final int limit)
+            throws Exception {
+        long begin = System.currentTimeMillis();
+        final List<Address>[] results = new List[queries.size()];
+        List<Future<Void>> chunks = new ArrayList<Future<Void>>();
+        for (int from = 0; from < queries.size(); from += Constant.GEOCODING_CHUNK_SIZE) {
+            final int start = from;
+            final int end = Math.min(queries.size(), from + Constant.GEOCODING_CHUNK_SIZE);
+            chunks.add(SearchExecutor.getInstance().submit(new Callable<Void>() {
+
+                @Override
+                public Void call() throws Exception {
+                    for (int i = start; i < end; i++) {
+                        String query = queries.get(i);
+                        results[i] = (query == null) ? new ArrayList<Address>() : addresses.search(query, limit);
+                    }
+                    return null;
+                }
+            }));
+        }
+        long deadline = begin + Constant.SEARCH_TIMEOUT;
+        try {
+            for (Future<Void> chunk : chunks) {
+                chunk.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            }
+        } catch (ExecutionException e) {
+            throw (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+        } finally {
+            for (Future<Void> chunk : chunks) {
+                chunk.cancel(true);
+            }
+        }
+        LOGGER.debug(queries.size() + " addresses geocoded in " + chunks.size() + " chunks in "
+                + (System.currentTimeMillis() - begin) + "ms");
+        return Arrays.asList(results);
+    }
+
+    private AddressIndex build(SpatialDatabaseService spatial) {
+        AddressBuilder builder = new AddressBuilder(Constant.GEOCODING_STREET_GAP);
+        for (Relationship relation : GlobalGraphOperations.at(spatial.getDatabase()).getAllRelationships()) {
+            if (relation.isType(MobilITRelation.LINKED)) {
+                if (relation.hasProperty("highway") && relation.hasProperty("name")) {
+                    Node start = relation.getStartNode();
+                    Node end = relation.getEndNode();
+                    builder.addSegment((String) relation.getProperty("name"), (Double) start.getProperty("lon"),
+                            (Double) start.getProperty("lat"), (Double) end.getProperty("lon"),
+                            (Double) end.getProperty("lat"));
+                }
+            }
+            else if (relation.isType(OSMRelation.TAGS)) {
+                Node tags = relation.getEndNode();
+                Node node = relation.getStartNode();
+                if (tags.hasProperty("addr:housenumber") && node.hasProperty("lon")) {
+                    builder.addAddress((String) tags.getProperty("addr:housenumber"),
+                            (String) tags.getProperty("addr:street", null), (Double) node.getProperty("lon"),
+                            (Double) node.getProperty("lat"));
+                }
+            }
+            else if (relation.isType(OSMRelation.FIRST_NODE)) {
+                // address tags of the ways are copied on the way node by the importer
+                Node way = relation.getStartNode();
+                if (way.hasProperty("addr:interpolation") && way.hasProperty("addr:coordinates")) {
+                    Relationship last = way.getSingleRelationship(OSMRelation.LAST_NODE, Direction.OUTGOING);
+                    String street = (String) way.getProperty("addr:street", tag(relation.getEndNode(), "addr:street"));
+                    builder.addInterpolation(tag(relation.getEndNode(), "addr:housenumber"), (last == null) ? null
+                            : tag(last.getEndNode(), "addr:housenumber"), street,
+                            (String) way.getProperty("addr:interpolation"),
+                            (double[]) way.getProperty("addr:coordinates"));
+                }
+                else if (way.hasProperty("addr:housenumber")) {
+                    // a building : its number at the center of its box
+                    Relationship geom = way.getSingleRelationship(OSMRelation.GEOM, Direction.OUTGOING);
+                    if (geom != null) {
+                        double[] bbox = (double[]) geom.getEndNode().getProperty("bbox");
+                        builder.addAddress((String) way.getProperty("addr:housenumber"),
+                                (String) way.getProperty("addr:street", null), (bbox[0] + bbox[1]) / 2,
+                                (bbox[2] + bbox[3]) / 2);
+                    }
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param node an OSM node
+     * @param key
+     * @return the value of a tag of the node, or <code>null</code>.
+     */
+    private static String tag(Node node, String key) {
+        Relationship tags = node.getSingleRelationship(OSMRelation.TAGS, Direction.OUTGOING);
+        return (tags == null) ? null : (String) tags.getEndNode().getProperty(key, null);
+    }
+
+}
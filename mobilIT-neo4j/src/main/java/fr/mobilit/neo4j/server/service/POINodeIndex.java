@@ -0,0 +1,166 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.neo4j.gis.spatial.Layer;
+import org.neo4j.gis.spatial.SpatialDatabaseService;
+import org.neo4j.gis.spatial.pipes.GeoPipeFlow;
+import org.neo4j.gis.spatial.pipes.GeoPipeline;
+import org.neo4j.graphdb.Node;
+
+import fr.mobilit.neo4j.server.exception.MobilITException;
+import fr.mobilit.neo4j.server.pojo.POI;
+import fr.mobilit.neo4j.server.utils.SpatialUtils;
+
+/**
+ * Index of the POI of a layer (cycle station, parking, ...) by the OSM way node they are snapped to. The index is
+ * built lazily the first time a layer is requested, and must be invalidated when the layer or the OSM graph is
+ * re-imported.
+ * 
+ * @author bsimard
+ * 
+ */
+public class POINodeIndex {
+
+    private static final Map<String, POINodeIndex> instances = new HashMap<String, POINodeIndex>();
+
+    /**
+     * POI by the id of their nearest OSM way node.
+     */
+    private final Map<Long, List<POI>>             poiByNode;
+
+    /**
+     * OSM way node by POI (same order as the layer).
+     */
+    private final Map<POI, Node>                   nodeByPOI;
+
+    private POINodeIndex(Map<Long, List<POI>> poiByNode, Map<POI, Node> nodeByPOI) {
+        this.poiByNode = poiByNode;
+        this.nodeByPOI = nodeByPOI;
+    }
+
+    /**
+     * Get the index of a POI layer, building it if needed.
+     * 
+     * @param spatial
+     * @param layerName
+     * @return
+     * @throws MobilITException
+     */
+    public static POINodeIndex getInstance(SpatialDatabaseService spatial, String layerName) throws MobilITException {
+        synchronized (instances) {
+            POINodeIndex index = instances.get(layerName);
+            if (index == null) {
+                index = build(spatial, layerName);
+                instances.put(layerName, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Drop the index of a layer, it will be rebuilt on next access.
+     * 
+     * @param layerName
+     */
+    public static void invalidate(String layerName) {
+        synchronized (instances) {
+            instances.remove(layerName);
+        }
+    }
+
+    /**
+     * Drop all indexes.
+     */
+    public static void invalidateAll() {
+        synchronized (instances) {
+            instances.clear();
+        }
+    }
+
+    private static POINodeIndex build(SpatialDatabaseService spatial, String layerName) throws MobilITException {
+        Map<Long, List<POI>> poiByNode = new HashMap<Long, List<POI>>();
+        Map<POI, Node> nodeByPOI = new LinkedHashMap<POI, Node>();
+        if (spatial.containsLayer(layerName)) {
+            Layer layer = spatial.getLayer(layerName);
+            SpatialUtils utils = new SpatialUtils(spatial);
+            for (GeoPipeFlow flow : GeoPipeline.start(layer).toList()) {
+                Node node = flow.getRecord().getGeomNode();
+                POI poi = new POI((String) node.getProperty("id", null), (String) node.getProperty("name", null),
+                        (Double) node.getProperty("lon", null), (Double) node.getProperty("lat", null),
+                        (String) node.getProperty("geocode", null));
+                Node wayNode = utils.findNearestWay(poi.getGeoPoint().getLatitude(), poi.getGeoPoint().getLongitude());
+                List<POI> pois = poiByNode.get(wayNode.getId());
+                if (pois == null) {
+                    pois = new ArrayList<POI>();
+                    poiByNode.put(wayNode.getId(), pois);
+                }
+                pois.add(poi);
+                nodeByPOI.put(poi, wayNode);
+            }
+        }
+        return new POINodeIndex(poiByNode, nodeByPOI);
+    }
+
+    /**
+     * Get the POI snapped to an OSM way node.
+     * 
+     * @param nodeId
+     * @return the POI list, empty if there is none.
+     */
+    public List<POI> getPOIs(long nodeId) {
+        List<POI> pois = poiByNode.get(nodeId);
+        if (pois == null) {
+            return Collections.emptyList();
+        }
+        return pois;
+    }
+
+    /**
+     * Get the OSM way node of a POI of this index.
+     * 
+     * @param poi
+     * @return
+     */
+    public Node getNode(POI poi) {
+        return nodeByPOI.get(poi);
+    }
+
+    /**
+     * @return all the POI of the layer.
+     */
+    public List<POI> getAllPOIs() {
+        return new ArrayList<POI>(nodeByPOI.keySet());
+    }
+
+    /**
+     * @return number of indexed POI.
+     */
+    public int size() {
+        return nodeByPOI.size();
+    }
+
+}
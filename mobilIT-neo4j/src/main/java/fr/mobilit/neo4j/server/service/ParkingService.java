@@ -21,6 +21,7 @@ package fr.mobilit.neo4j.server.service;
 import java.lang.reflect.Constructor;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.neo4j.gis.spatial.EditableLayer;
 import org.neo4j.gis.spatial.SpatialDatabaseRecord;
@@ -33,6 +34,7 @@ import com.vividsolutions.jts.geom.Coordinate;
 
 import fr.mobilit.neo4j.server.exception.MobilITException;
 import fr.mobilit.neo4j.server.pojo.POI;
+import fr.mobilit.neo4j.server.utils.Cache;
 import fr.mobilit.neo4j.server.utils.Constant;
 
 public class ParkingService {
@@ -86,7 +88,7 @@ public class ParkingService {
      * @return
      */
     public POI getNearest(Double lon, Double lat, Double distance, Integer status) throws MobilITException {
-        Coordinate coord = new Coordinate(lat, lon);
+        Coordinate coord = new Coordinate(lon, lat);
         EditableLayer layer = spatial.getOrCreateEditableLayer(Constant.PARKING_LAYER);
         //@formatter:off
         List<GeoPipeFlow> results = GeoPipeline
@@ -106,8 +108,7 @@ public class ParkingService {
             Double lng = (Double) node.getProperty("lon", null);
             Double lati = (Double) node.getProperty("lat", null);
             if (status != null) {
-                AbstractParking service = this.getGeoService(geocode);
-                HashMap<String, Integer> places = (HashMap<String, Integer>) service.getParking(id);
+                Map<String, Integer> places = this.getStatus(geocode, id);
                 if (places.isEmpty()) {
                     // here there is no information
                     nearest = new POI(id, name, lng, lati, geocode);
@@ -131,6 +132,58 @@ public class ParkingService {
         return nearest;
     }
 
+    /**
+     * Method to get the status of all parkings of a geocode. The snapshot is loaded with one bulk call to the service,
+     * and kept in cache for <code>Constant.PARKING_STATUS_TTL</code> seconds.
+     * 
+     * @param geocode
+     * @return the status of each parking by its id.
+     * @throws MobilITException
+     */
+    public Map<String, Map<String, Integer>> getSnapshot(String geocode) throws MobilITException {
+        String key = "parking_status_" + geocode;
+        Cache cache = Cache.getInstance();
+        Map<String, Map<String, Integer>> snapshot = null;
+        if (cache != null) {
+            snapshot = (Map<String, Map<String, Integer>>) cache.get(key);
+        }
+        if (snapshot == null) {
+            snapshot = this.getGeoService(geocode).getAllParking();
+            if (cache != null) {
+                cache.add(key, snapshot, Constant.PARKING_STATUS_TTL);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Method to get the status of a parking from the snapshot of its geocode.
+     * 
+     * @param geocode
+     * @param id
+     * @return the status, empty if there is no information.
+     * @throws MobilITException
+     */
+    public Map<String, Integer> getStatus(String geocode, String id) throws MobilITException {
+        Map<String, Integer> places = getSnapshot(geocode).get(id);
+        if (places == null) {
+            return new HashMap<String, Integer>();
+        }
+        return places;
+    }
+
+    /**
+     * Method to check if a parking has free places. A parking without information is considered as avaible.
+     * 
+     * @param parking
+     * @return
+     * @throws MobilITException
+     */
+    public boolean isAvailable(POI parking) throws MobilITException {
+        Integer free = getStatus(parking.getGeocode(), parking.getId()).get(Constant.PARKING_FREE);
+        return free == null || free > 0;
+    }
+
     /**
      * Getter.
      * 
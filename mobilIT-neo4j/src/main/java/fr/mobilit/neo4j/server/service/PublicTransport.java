@@ -18,10 +18,322 @@
  */
 package fr.mobilit.neo4j.server.service;
 
-public abstract class PublicTransport {
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.neo4j.gis.spatial.SpatialDatabaseService;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.server.logging.Logger;
+
+import fr.mobilit.neo4j.server.exception.MobilITException;
+import fr.mobilit.neo4j.server.pojo.POI;
+import fr.mobilit.neo4j.server.pojo.Route;
+import fr.mobilit.neo4j.server.shortestpath.NetworkDijkstra;
+import fr.mobilit.neo4j.server.shortestpath.ShortestPathAlgorithm;
+import fr.mobilit.neo4j.server.shortestpath.costEvaluator.PedestrianCostEvaluation;
+import fr.mobilit.neo4j.server.transit.GtfsReader;
+import fr.mobilit.neo4j.server.transit.Journey;
+import fr.mobilit.neo4j.server.transit.Raptor;
+import fr.mobilit.neo4j.server.transit.Timetable;
+import fr.mobilit.neo4j.server.utils.Constant;
+import fr.mobilit.neo4j.server.utils.SpatialUtils;
+
+/**
+ * Public transport service : the GTFS timetable is kept in memory (see <code>Timetable</code>), only its stops are
+ * snapped on the OSM graph. Walking transfers, access and egress are computed with pedestrian searches on the graph,
+ * journeys with <code>Raptor</code>.
+ * 
+ * @author bsimard
+ * 
+ */
+public class PublicTransport {
+
+    private static final Logger          LOGGER         = Logger.getLogger(PublicTransport.class);
+    private static final PublicTransport uniqueInstance = new PublicTransport();
+
+    private volatile Network             network;
+
+    private PublicTransport() {
+    }
 
     public static PublicTransport getService() {
-        return null;
+        return uniqueInstance;
+    }
+
+    /**
+     * Timetable with its stops snapped on the graph.
+     */
+    private static class Network {
+
+        private final Timetable             timetable;
+        private final long[]                stopNodes;
+        private final Map<Long, List<Integer>> nodeStops;
+
+        private Network(Timetable timetable, long[] stopNodes, Map<Long, List<Integer>> nodeStops) {
+            this.timetable = timetable;
+            this.stopNodes = stopNodes;
+            this.nodeStops = nodeStops;
+        }
+    }
+
+    /**
+     * @return the loaded timetable, or <code>null</code>.
+     */
+    public Timetable getTimetable() {
+        Network current = network;
+        return current == null ? null : current.timetable;
+    }
+
+    /**
+     * Load GTFS files : read the timetable, snap the stops and compute walking transfers. The previous timetable is
+     * used until the new one is ready.
+     * 
+     * @param spatial
+     * @param files paths of the GTFS zip files
+     * @throws MobilITException
+     */
+    public synchronized void load(SpatialDatabaseService spatial, String[] files) throws MobilITException {
+        try {
+            long begin = System.currentTimeMillis();
+            Timetable timetable = new GtfsReader().read(files);
+
+            // snap stops
+            SpatialUtils utils = new SpatialUtils(spatial);
+            long[] stopNodes = new long[timetable.getStopCount()];
+            Map<Long, List<Integer>> nodeStops = new HashMap<Long, List<Integer>>();
+            Map<Long, Node> nodes = new HashMap<Long, Node>();
+            for (int stop = 0; stop < stopNodes.length; stop++) {
+                Node node = utils.findNearestWay(timetable.getStopLatitude(stop), timetable.getStopLongitude(stop));
+                stopNodes[stop] = node.getId();
+                if (!nodeStops.containsKey(node.getId())) {
+                    nodeStops.put(node.getId(), new ArrayList<Integer>());
+                    nodes.put(node.getId(), node);
+                }
+                nodeStops.get(node.getId()).add(stop);
+            }
+
+            // walking transfers : one bounded pedestrian search by snapped node
+            List<List<int[]>> transfers = new ArrayList<List<int[]>>(stopNodes.length);
+            for (int stop = 0; stop < stopNodes.length; stop++) {
+                transfers.add(new ArrayList<int[]>());
+            }
+            int count = 0;
+            for (Map.Entry<Long, Node> entry : nodes.entrySet()) {
+                NetworkDijkstra walk = new NetworkDijkstra(new PedestrianCostEvaluation(), Direction.OUTGOING);
+                walk.addSource(entry.getValue(), 0.0);
+                walk.setTargets(nodeStops.keySet());
+                walk.setMaxCost(Constant.TRANSIT_TRANSFER_WALK);
+                walk.calculate();
+                for (Long target : walk.getSettledNodes()) {
+                    List<Integer> targetStops = nodeStops.get(target);
+                    if (targetStops == null) {
+                        continue;
+                    }
+                    int time = (int) Math.ceil(walk.getCost(target) * 3600);
+                    for (Integer from : nodeStops.get(entry.getKey())) {
+                        for (Integer to : targetStops) {
+                            if (!from.equals(to)) {
+                                transfers.get(from).add(new int[] { to, time });
+                                count++;
+                            }
+                        }
+                    }
+                }
+            }
+            int[] offset = new int[stopNodes.length + 1];
+            int[] targets = new int[count];
+            int[] times = new int[count];
+            for (int stop = 0; stop < stopNodes.length; stop++) {
+                offset[stop + 1] = offset[stop];
+                for (int[] transfer : transfers.get(stop)) {
+                    targets[offset[stop + 1]] = transfer[0];
+                    times[offset[stop + 1]] = transfer[1];
+                    offset[stop + 1]++;
+                }
+            }
+            timetable.setTransfers(offset, targets, times);
+
+            network = new Network(timetable, stopNodes, nodeStops);
+            LOGGER.info("GTFS loaded in " + (System.currentTimeMillis() - begin) + "ms : " + timetable.getStopCount()
+                    + " stops, " + timetable.getPatternCount() + " patterns, " + timetable.getTripCount() + " trips, "
+                    + count + " transfers");
+        } catch (MobilITException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new MobilITException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Result of a public transport search.
+     */
+    public static class Result {
+
+        private final Route     route = new Route();
+        private final List<POI> stops = new ArrayList<POI>();
+        private Journey         journey;
+
+        /**
+         * @return the segments of the path, walk and rides, in travel order.
+         */
+        public Route getRoute() {
+            return route;
+        }
+
+        /**
+         * @return the boarding and alighting stops.
+         */
+        public List<POI> getStops() {
+            return stops;
+        }
+
+        /**
+         * @return the journey, or <code>null</code> if walking is faster.
+         */
+        public Journey getJourney() {
+            return journey;
+        }
+    }
+
+    /**
+     * Search the earliest arrival path between two snapped nodes, walking only if it's faster.
+     * 
+     * @param start
+     * @param end
+     * @param departure
+     * @return
+     * @throws MobilITException
+     */
+    public Result search(Node start, Node end, Date departure) throws MobilITException {
+        Network current = network;
+        if (current == null) {
+            throw new MobilITException("No public transport timetable loaded");
+        }
+        Timetable timetable = current.timetable;
+
+        // access & egress stops
+        NetworkDijkstra access = new NetworkDijkstra(new PedestrianCostEvaluation(), Direction.OUTGOING);
+        access.addSource(start, 0.0);
+        access.setMaxCost(Constant.TRANSIT_ACCESS_MAX_WALK);
+        access.calculate();
+        NetworkDijkstra egress = new NetworkDijkstra(new PedestrianCostEvaluation(), Direction.INCOMING);
+        egress.addSource(end, 0.0);
+        egress.setMaxCost(Constant.TRANSIT_ACCESS_MAX_WALK);
+        egress.calculate();
+        List<Integer> accessStops = new ArrayList<Integer>();
+        List<Integer> egressStops = new ArrayList<Integer>();
+        for (int stop = 0; stop < current.stopNodes.length; stop++) {
+            if (access.isSettled(current.stopNodes[stop])) {
+                accessStops.add(stop);
+            }
+            if (egress.isSettled(current.stopNodes[stop])) {
+                egressStops.add(stop);
+            }
+        }
+
+        Calendar calendar = Calendar.getInstance(timetable.getTimeZone());
+        calendar.setTime(departure);
+        int date = calendar.get(Calendar.YEAR) * 10000 + (calendar.get(Calendar.MONTH) + 1) * 100
+                + calendar.get(Calendar.DAY_OF_MONTH);
+        int time = calendar.get(Calendar.HOUR_OF_DAY) * 3600 + calendar.get(Calendar.MINUTE) * 60
+                + calendar.get(Calendar.SECOND);
+
+        Journey journey = new Raptor(timetable, Constant.TRANSIT_MAX_RIDES).search(
+                toStops(accessStops), toTimes(accessStops, access, current), toStops(egressStops),
+                toTimes(egressStops, egress, current), time, date);
+
+        Result result = new Result();
+        Double walk = access.isSettled(end.getId()) ? access.getCost(end.getId()) : null;
+        if (walk != null && (journey == null || time + walk * 3600 <= journey.getArrival())) {
+            ShortestPathAlgorithm.appendPath(result.route, access.getPathAsNodes(end.getId()),
+                    access.getPathAsRelationships(end.getId()), walk);
+            return result;
+        }
+        if (journey == null) {
+            throw new MobilITException("No public transport path found");
+        }
+        result.journey = journey;
+        for (Journey.Leg leg : journey.getLegs()) {
+            switch (leg.getType()) {
+                case ACCESS:
+                    long node = current.stopNodes[leg.getToStop()];
+                    ShortestPathAlgorithm.appendPath(result.route, access.getPathAsNodes(node),
+                            access.getPathAsRelationships(node), access.getCost(node));
+                    break;
+                case EGRESS:
+                    node = current.stopNodes[leg.getFromStop()];
+                    ShortestPathAlgorithm.appendPath(result.route, egress.getPathAsNodes(node),
+                            egress.getPathAsRelationships(node), egress.getCost(node));
+                    break;
+                case TRANSFER:
+                    addLeg(result.route, timetable, "walk", leg, leg.getFromStop(), leg.getToStop());
+                    break;
+                case RIDE:
+                    int[] stops = new int[leg.getAlightPosition() - leg.getBoardPosition() + 1];
+                    for (int position = leg.getBoardPosition(); position <= leg.getAlightPosition(); position++) {
+                        stops[position - leg.getBoardPosition()] = timetable.getPatternStop(leg.getPattern(), position);
+                    }
+                    addLeg(result.route, timetable, timetable.getPatternName(leg.getPattern()) + " > "
+                            + timetable.getTripHeadsign(leg.getTrip()), leg, stops);
+                    result.stops.add(toPOI(timetable, leg.getFromStop()));
+                    result.stops.add(toPOI(timetable, leg.getToStop()));
+                    break;
+            }
+        }
+        return result;
+    }
+
+    private static int[] toStops(List<Integer> stops) {
+        int[] array = new int[stops.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = stops.get(i);
+        }
+        return array;
+    }
+
+    private static int[] toTimes(List<Integer> stops, NetworkDijkstra search, Network network) {
+        int[] array = new int[stops.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = (int) Math.ceil(search.getCost(network.stopNodes[stops.get(i)]) * 3600);
+        }
+        return array;
+    }
+
+    /**
+     * Add a leg to a route, as straight lines between its stops.
+     */
+    private static void addLeg(Route route, Timetable timetable, String name, Journey.Leg leg, int... stops) {
+        double length = 0;
+        for (int i = 1; i < stops.length; i++) {
+            length += length(timetable, stops[i - 1], stops[i]);
+        }
+        route.addSegment(name, length, (leg.getArrival() - leg.getDeparture()) / 3600.0);
+        for (int stop : stops) {
+            route.addPoint(timetable.getStopLongitude(stop), timetable.getStopLatitude(stop));
+        }
+    }
+
+    private static POI toPOI(Timetable timetable, int stop) {
+        return new POI(timetable.getStopId(stop), timetable.getStopName(stop), timetable.getStopLongitude(stop),
+                timetable.getStopLatitude(stop), null);
+    }
+
+    /**
+     * @return length of the line in meters (equirectangular approximation, fine at city scale).
+     */
+    private static double length(Timetable timetable, int from, int to) {
+        double lon1 = timetable.getStopLongitude(from);
+        double lat1 = timetable.getStopLatitude(from);
+        double lon2 = timetable.getStopLongitude(to);
+        double lat2 = timetable.getStopLatitude(to);
+        double x = Math.toRadians(lon2 - lon1) * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        double y = Math.toRadians(lat2 - lat1);
+        return Math.sqrt(x * x + y * y) * 6371000;
     }
 
 }
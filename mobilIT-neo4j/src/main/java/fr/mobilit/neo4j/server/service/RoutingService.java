@@ -0,0 +1,647 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.neo4j.graphalgo.CostEvaluator;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.GraphDatabaseAPI;
+import org.neo4j.kernel.impl.nioneo.store.StoreId;
+import org.neo4j.server.logging.Logger;
+import org.neo4j.tooling.GlobalGraphOperations;
+
+import fr.mobilit.neo4j.server.exception.MobilITException;
+import fr.mobilit.neo4j.server.pojo.Route;
+import fr.mobilit.neo4j.server.routing.ArrayGraph;
+import fr.mobilit.neo4j.server.routing.Endpoints;
+import fr.mobilit.neo4j.server.routing.GpxReader;
+import fr.mobilit.neo4j.server.routing.GraphBuilder;
+import fr.mobilit.neo4j.server.routing.GraphSearch;
+import fr.mobilit.neo4j.server.routing.MapMatcher;
+import fr.mobilit.neo4j.server.routing.NodeGrid;
+import fr.mobilit.neo4j.server.routing.Profile;
+import fr.mobilit.neo4j.server.routing.Region;
+import fr.mobilit.neo4j.server.routing.RegionRegistry;
+import fr.mobilit.neo4j.server.routing.RoutingGraph;
+import fr.mobilit.neo4j.server.routing.RoutingShard;
+import fr.mobilit.neo4j.server.routing.RoutingVersion;
+import fr.mobilit.neo4j.server.routing.ShardLoader;
+import fr.mobilit.neo4j.server.routing.ShardSnapshot;
+import fr.mobilit.neo4j.server.routing.SnapBatch;
+import fr.mobilit.neo4j.server.routing.SnapCache;
+import fr.mobilit.neo4j.server.routing.TileWriter;
+import fr.mobilit.neo4j.server.routing.TiledGraph;
+import fr.mobilit.neo4j.server.routing.VersionedRouting;
+import fr.mobilit.neo4j.server.shortestpath.costEvaluator.CarCostEvaluation;
+import fr.mobilit.neo4j.server.shortestpath.costEvaluator.CycleCostEvaluation;
+import fr.mobilit.neo4j.server.shortestpath.costEvaluator.PedestrianCostEvaluation;
+import fr.mobilit.neo4j.server.utils.Constant;
+import fr.mobilit.neo4j.server.utils.RoutingConstant;
+import fr.mobilit.neo4j.server.utils.MobilITRelation;
+import fr.mobilit.neo4j.server.utils.SearchExecutor;
+
+/**
+ * Routing by region on in-memory shards built from the Neo4j graph (see <code>RegionRegistry</code>). Each shard
+ * holds the LINKED highway relationships of its region, with the costs of the usual cost evaluators.
+ * 
+ * Shards are versioned (see <code>VersionedRouting</code>) : an import builds the shards of a new version aside, then
+ * publishes it at once. Queries never see a half-imported graph, and the ones running at the swap end on the previous
+ * version.
+ * 
+ * Each built shard is saved as a snapshot (see <code>ShardSnapshot</code>) with the id of the dataset : after a
+ * restart, shards are mapped from their snapshot instead of being built again, as long as the graph hasn't changed.
+ * 
+ * @author bsimard
+ * 
+ */
+public class RoutingService implements ShardLoader {
+
+    private static final Logger            LOGGER             = Logger.getLogger(RoutingService.class);
+    private static final File              SNAPSHOT_DIRECTORY = new File(Constant.DATA_DIRECTORY, "snapshots");
+    private static final String            IMPORT_GENERATION  = "mobilit_import_generation";
+    private static volatile RoutingService uniqueInstance;
+
+    private final GraphDatabaseService db;
+    private final List<Region>         regions;
+    private final VersionedRouting     versions;
+    private final ReentrantLock        importLock = new ReentrantLock();
+    private volatile Thread            importer;
+    private volatile boolean           graphImport;
+
+    private RoutingService(GraphDatabaseService db) {
+        this.db = db;
+        this.regions = new ArrayList<Region>();
+        for (Map.Entry<String, double[]> entry : Constant.REGIONS.entrySet()) {
+            regions.add(new Region(entry.getKey(), entry.getValue()));
+        }
+        this.versions = new VersionedRouting(new RoutingVersion(1, new RegionRegistry(regions, this)));
+    }
+
+    /**
+     * @param db
+     * @return the routing service of the database.
+     */
+    public static synchronized RoutingService getInstance(GraphDatabaseService db) {
+        if (uniqueInstance == null || uniqueInstance.db != db) {
+            uniqueInstance = new RoutingService(db);
+        }
+        return uniqueInstance;
+    }
+
+    /**
+     * @param db
+     * @return the routing service of the database if it's already created, <code>null</code> otherwise.
+     */
+    public static RoutingService getLoadedInstance(GraphDatabaseService db) {
+        RoutingService instance = uniqueInstance;
+        return (instance == null || instance.db != db) ? null : instance;
+    }
+
+    /**
+     * Load in the background the shards having a snapshot, so that the first searches after a restart don't wait for
+     * them.
+     */
+    public void warmUp() {
+        Thread thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                RoutingVersion version = versions.acquire();
+                try {
+                    for (Region region : regions) {
+                        if (ShardSnapshot.exists(SNAPSHOT_DIRECTORY, region.getGeocode())) {
+                            try {
+                                version.getRegistry().getShard(region);
+                            } catch (Exception e) {
+                                LOGGER.warn("Routing shard " + region.getGeocode() + " can't be loaded : "
+                                        + e.getMessage());
+                            }
+                        }
+                    }
+                } finally {
+                    version.release();
+                }
+            }
+        }, "mobilit-routing-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Export the shards of all regions, for the standalone routing server.
+     * 
+     * @param directory
+     * @return the number of exported shards.
+     * @throws Exception
+     */
+    public int export(File directory) throws Exception {
+        RoutingVersion version = versions.acquire();
+        try {
+            String dataset = getDatasetId();
+            for (Region region : regions) {
+                ShardSnapshot.export(directory, version.getRegistry().getShard(region), String.valueOf(dataset));
+            }
+            LOGGER.info("Routing version " + version.getVersion() + " exported to " + directory);
+            return regions.size();
+        } finally {
+            version.release();
+        }
+    }
+
+    /**
+     * Id of the data of the graph : the store id, the number of imports that wrote into it, and the relationship ids
+     * in use. It changes with each import, even one that only updates properties.
+     * 
+     * @return the id, or <code>null</code> if the database doesn't give it.
+     */
+    private String getDatasetId() {
+        if (!(db instanceof GraphDatabaseAPI)) {
+            return null;
+        }
+        GraphDatabaseAPI api = (GraphDatabaseAPI) db;
+        StoreId store = api.getStoreId();
+        return store.getCreationTime() + "-" + store.getRandomId() + "/" + getImportGeneration() + "/"
+                + api.getNodeManager().getHighestPossibleIdInUse(Relationship.class) + "/"
+                + api.getNodeManager().getNumberOfIdsInUse(Relationship.class);
+    }
+
+    /**
+     * @return the number of imports that wrote into the graph, saved on its reference node.
+     */
+    private long getImportGeneration() {
+        return ((Number) db.getReferenceNode().getProperty(IMPORT_GENERATION, 0L)).longValue();
+    }
+
+    private void nextImportGeneration() {
+        Transaction tx = db.beginTx();
+        try {
+            db.getReferenceNode().setProperty(IMPORT_GENERATION, getImportGeneration() + 1);
+            tx.success();
+        } finally {
+            tx.finish();
+        }
+    }
+
+    /**
+     * @return the current version, to release at the end of the query.
+     */
+    public RoutingVersion acquire() {
+        return versions.acquire();
+    }
+
+    /**
+     * @return true if an import is writing into the OSM graph.
+     */
+    public boolean isImporting() {
+        return importer != null && graphImport;
+    }
+
+    /**
+     * Start an import. Imports that write into the OSM graph block the loading of the regions that are not loaded yet
+     * until they're published. The other ones (stations, timetables) leave the graph as is, so every search is still
+     * served meanwhile.
+     * An import into the graph changes the dataset id before its first write, so snapshots of the previous data are
+     * never used again, even if the import fails.
+     * 
+     * @param graph true if the import writes into the OSM graph.
+     * @throws MobilITException if an import is already running.
+     */
+    public void beginImport(boolean graph) throws MobilITException {
+        if (!importLock.tryLock()) {
+            throw new MobilITException("An import is already running");
+        }
+        if (graph) {
+            try {
+                nextImportGeneration();
+            } catch (RuntimeException e) {
+                importLock.unlock();
+                throw new MobilITException("Import can't start", e);
+            }
+        }
+        graphImport = graph;
+        importer = Thread.currentThread();
+    }
+
+    /**
+     * End an import : build the shards of the regions in use on the new graph, then publish them as a new version.
+     * 
+     * @return the new version number.
+     */
+    public long publishImport() {
+        try {
+            RoutingVersion current = versions.getCurrent();
+            RegionRegistry staging = new RegionRegistry(regions, this);
+            for (String geocode : current.getRegistry().getLoadedRegions()) {
+                try {
+                    staging.getShard(staging.getRegion(geocode));
+                } catch (Exception e) {
+                    // loaded again at its next request
+                    LOGGER.warn("Routing shard " + geocode + " can't be built : " + e.getMessage());
+                }
+            }
+            RoutingVersion version = new RoutingVersion(current.getVersion() + 1, staging);
+            versions.publish(version);
+            LOGGER.info("Routing version " + version.getVersion() + " published");
+            return version.getVersion();
+        } finally {
+            endImport();
+        }
+    }
+
+    /**
+     * End a failed import : the current version stays published.
+     */
+    public void abortImport() {
+        if (importLock.isHeldByCurrentThread()) {
+            endImport();
+        }
+    }
+
+    private void endImport() {
+        importer = null;
+        graphImport = false;
+        importLock.unlock();
+    }
+
+    /**
+     * Build the shard of a region from the Neo4j graph : relationships with at least one node in the region.
+     */
+    @Override
+    public RoutingShard load(Region region) throws IOException, MobilITException {
+        Thread current = importer;
+        if (current != null && current != Thread.currentThread() && graphImport) {
+            throw new MobilITException(HttpURLConnection.HTTP_UNAVAILABLE, "Import in progress, region "
+                    + region.getGeocode() + " is not available");
+        }
+        long begin = System.currentTimeMillis();
+        String dataset = getDatasetId();
+        if (dataset != null) {
+            try {
+                RoutingShard shard = ShardSnapshot.load(SNAPSHOT_DIRECTORY, region, dataset,
+                        RoutingConstant.ROUTING_ROUTE_CACHE_SIZE, RoutingConstant.ROUTING_TILE_CACHE);
+                if (shard != null) {
+                    LOGGER.info("Routing shard " + region.getGeocode() + " mapped from its snapshot in "
+                            + (System.currentTimeMillis() - begin) + "ms");
+                    return shard;
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Routing snapshot of " + region.getGeocode() + " ignored : " + e.getMessage());
+            }
+        }
+        List<CostEvaluator<Double>> evals = new ArrayList<CostEvaluator<Double>>();
+        evals.add(new CarCostEvaluation());
+        evals.add(new CycleCostEvaluation());
+        evals.add(new PedestrianCostEvaluation());
+
+        GraphBuilder builder = new GraphBuilder();
+        float[] forward = new float[Profile.values().length];
+        float[] backward = new float[Profile.values().length];
+        for (Relationship relation : GlobalGraphOperations.at(db).getAllRelationships()) {
+            if (!relation.isType(MobilITRelation.LINKED) || !relation.hasProperty("highway")) {
+                continue;
+            }
+            Node start = relation.getStartNode();
+            Node end = relation.getEndNode();
+            double startLon = (Double) start.getProperty("lon");
+            double startLat = (Double) start.getProperty("lat");
+            double endLon = (Double) end.getProperty("lon");
+            double endLat = (Double) end.getProperty("lat");
+            if (!region.contains(startLon, startLat) && !region.contains(endLon, endLat)) {
+                continue;
+            }
+            for (Profile profile : Profile.values()) {
+                forward[profile.ordinal()] = cost(evals.get(profile.ordinal()), relation, Direction.OUTGOING);
+                backward[profile.ordinal()] = cost(evals.get(profile.ordinal()), relation, Direction.INCOMING);
+            }
+            int from = builder.addNode(start.getId(), startLon, startLat);
+            int to = builder.addNode(end.getId(), endLon, endLat);
+            float length = ((Number) relation.getProperty("length", 0.0)).floatValue();
+            String name = (String) relation.getProperty("name", null);
+            builder.addEdge(from, to, length, name, forward);
+            builder.addEdge(to, from, length, name, backward);
+        }
+        RoutingShard shard;
+        ArrayGraph graph = builder.build();
+        if (graph.getEdgeCount() > RoutingConstant.ROUTING_TILE_THRESHOLD) {
+            // too large to stay on the heap : served from mapped tiles
+            File directory = new File(Constant.DATA_DIRECTORY, "tiles" + File.separator + region.getGeocode() + "-"
+                    + System.currentTimeMillis());
+            int count = TileWriter.write(graph, RoutingConstant.ROUTING_TILE_SIZE, directory);
+            TiledGraph tiled = new TiledGraph(directory, RoutingConstant.ROUTING_TILE_CACHE);
+            // the snapshot has its own copy : these tiles are deleted with the shard
+            TiledGraph.discard(directory);
+            LOGGER.info("Routing shard " + region.getGeocode() + " written in " + count + " tiles");
+            shard = new RoutingShard(region, tiled, tiled, RoutingConstant.ROUTING_ROUTE_CACHE_SIZE);
+        }
+        else {
+            shard = new RoutingShard(region, graph, new NodeGrid(graph, RoutingConstant.ROUTING_GRID_CELL),
+                    RoutingConstant.ROUTING_ROUTE_CACHE_SIZE);
+        }
+        LOGGER.info("Routing shard " + region.getGeocode() + " loaded in " + (System.currentTimeMillis() - begin)
+                + "ms : " + graph.getNodeCount() + " nodes, " + graph.getEdgeCount() + " edges");
+        if (dataset != null) {
+            try {
+                ShardSnapshot.save(SNAPSHOT_DIRECTORY, shard, dataset);
+            } catch (IOException e) {
+                LOGGER.warn("Routing snapshot of " + region.getGeocode() + " not saved : " + e.getMessage());
+            }
+        }
+        return shard;
+    }
+
+    private static float cost(CostEvaluator<Double> eval, Relationship relation, Direction direction) {
+        try {
+            Double cost = eval.getCost(relation, direction);
+            return cost >= Constant.INFINY ? Float.POSITIVE_INFINITY : cost.floatValue();
+        } catch (NumberFormatException e) {
+            // ie. maxspeed="50 mph" : not usable
+            return Float.POSITIVE_INFINITY;
+        }
+    }
+
+    /**
+     * Match a GPS trace on the shard of the region of its first point. Points out of the region are ignored.
+     * 
+     * @param gpx the trace, read as a stream
+     * @param profile
+     * @return the matched path.
+     * @throws MobilITException 400 if the trace isn't a GPX file or has no point, 404 if it's out of the routing
+     *             regions or if no point is matched, 503 if the shard of its region can't be loaded during an import
+     * @throws Exception
+     */
+    public Route match(InputStream gpx, Profile profile) throws Exception {
+        RoutingVersion version = versions.acquire();
+        try {
+            GpxReader reader = new GpxReader(gpx);
+            if (!reader.next()) {
+                throw new MobilITException(HttpURLConnection.HTTP_BAD_REQUEST, "The trace has no point");
+            }
+            Region region = version.getRegistry().findRegion(reader.getLongitude(), reader.getLatitude());
+            if (region == null) {
+                throw new MobilITException(HttpURLConnection.HTTP_NOT_FOUND, "The trace is out of the routing regions");
+            }
+            RoutingShard shard = version.getRegistry().getShard(region);
+            long begin = System.currentTimeMillis();
+            MapMatcher matcher = new MapMatcher(shard.getEdgeIndex(), profile, Constant.MATCH_CANDIDATES,
+                    Constant.MATCH_WINDOW);
+            matcher.setParameters(Constant.MATCH_RADIUS, Constant.MATCH_GPS_SIGMA, Constant.MATCH_BETA,
+                    Constant.MATCH_MAX_DETOUR);
+            do {
+                matcher.add(reader.getLongitude(), reader.getLatitude());
+            } while (reader.next());
+            reader.close();
+            int[] path = matcher.finish();
+            LOGGER.info("Trace of " + matcher.getPointCount() + " points matched in "
+                    + (System.currentTimeMillis() - begin) + "ms on " + shard.getRegion().getGeocode() + " : "
+                    + matcher.getMatchCount() + " points matched, " + matcher.getBreakCount() + " breaks");
+            if (matcher.getMatchCount() == 0) {
+                throw new MobilITException(HttpURLConnection.HTTP_NOT_FOUND, "No point of the trace is near a street");
+            }
+            return GraphSearch.toRoute(shard.getGraph(), path, shard.getCost(path, profile));
+        } catch (XMLStreamException e) {
+            throw new MobilITException(HttpURLConnection.HTTP_BAD_REQUEST, "The trace is not a GPX file : "
+                    + e.getMessage());
+        } finally {
+            version.release();
+        }
+    }
+
+    /**
+     * Snap a coordinate on the nearest street of the shard of its region. Only a shard already loaded is used : the
+     * snap doesn't wait for a shard build.
+     * 
+     * @param lat
+     * @param lon
+     * @return the Neo4j id of the nearest OSM way node, or <code>-1</code> if the point is out of the regions, if the
+     *         shard of its region isn't loaded yet, or if it's too far from a street.
+     * @throws Exception
+     */
+    public long findNearestNode(Double lat, Double lon) throws Exception {
+        RoutingVersion version = versions.acquire();
+        try {
+            RoutingShard shard = version.getRegistry().getLoadedShard(lon, lat);
+            if (shard == null) {
+                return -1;
+            }
+            int node = shard.findNearestNode(lon, lat, RoutingConstant.ROUTING_SNAP_DISTANCE);
+            return (node < 0) ? -1 : shard.getGraph().getNodeId(node);
+        } finally {
+            version.release();
+        }
+    }
+
+    /**
+     * Snap a batch of points on the shards of their regions. The points are split in chunks along their Hilbert order,
+     * and the chunks are snapped in parallel by the search executor. The version is released once every chunk is
+     * over, even on a timeout.
+     * 
+     * @param batch
+     * @param profile
+     * @throws TimeoutException if the chunks are not snapped in <code>Constant.SEARCH_TIMEOUT</code>
+     * @throws Exception
+     */
+    public void snap(final SnapBatch batch, final Profile profile) throws Exception {
+        final RoutingVersion version = versions.acquire();
+        try {
+            long begin = System.currentTimeMillis();
+            final int[] order = batch.getOrder();
+            int count = (order.length + Constant.SNAP_CHUNK_SIZE - 1) / Constant.SNAP_CHUNK_SIZE;
+            final CountDownLatch finished = new CountDownLatch(count);
+            final AtomicBoolean cancelled = new AtomicBoolean(false);
+            List<Future<Void>> chunks = new ArrayList<Future<Void>>();
+            for (int from = 0; from < order.length; from += Constant.SNAP_CHUNK_SIZE) {
+                final int start = from;
+                final int end = Math.min(order.length, from + Constant.SNAP_CHUNK_SIZE);
+                chunks.add(SearchExecutor.getInstance().submit(new Callable<Void>() {
+
+                    @Override
+                    public Void call() throws Exception {
+                        try {
+                            if (!cancelled.get()) {
+                                batch.snap(order, start, end, version.getRegistry(), profile,
+                                        RoutingConstant.ROUTING_SNAP_DISTANCE);
+                            }
+                            return null;
+                        } finally {
+                            finished.countDown();
+                        }
+                    }
+                }));
+            }
+            long deadline = begin + Constant.SEARCH_TIMEOUT;
+            try {
+                for (Future<Void> chunk : chunks) {
+                    chunk.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                }
+            } catch (ExecutionException e) {
+                throw (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+            } finally {
+                // the chunks not started yet are skipped (a cancelled future would never count down), and the version
+                // is released below once the running ones are over
+                cancelled.set(true);
+                finished.await();
+            }
+            LOGGER.info(batch.size() + " points snapped in " + chunks.size() + " chunks in "
+                    + (System.currentTimeMillis() - begin) + "ms");
+        } finally {
+            version.release();
+        }
+    }
+
+    /**
+     * Search a path on the shard of the region containing both points.
+     * 
+     * @param lat1
+     * @param long1
+     * @param lat2
+     * @param long2
+     * @param profile
+     * @return the itinerary, or <code>null</code> if the points are not in the same region.
+     * @throws Exception
+     */
+    public Route search(Double lat1, Double long1, Double lat2, Double long2, Profile profile)
+            throws Exception {
+        RoutingVersion version = versions.acquire();
+        try {
+            Endpoints endpoints = snap(version, lat1, long1, lat2, long2);
+            return (endpoints == null) ? null : search(endpoints, profile);
+        } finally {
+            version.release();
+        }
+    }
+
+    /**
+     * Snap both points one time on the shard of their region, for the searches of several profiles. The snapped points
+     * can be used until the version is released.
+     * 
+     * @param version an acquired version
+     * @param lat1
+     * @param long1
+     * @param lat2
+     * @param long2
+     * @return the snapped points, or <code>null</code> if the points are not in the same region or can't be snapped.
+     * @throws Exception if the shard can't be loaded
+     */
+    public Endpoints snap(RoutingVersion version, Double lat1, Double long1, Double lat2, Double long2)
+            throws Exception {
+        RegionRegistry registry = version.getRegistry();
+        Region region = registry.findRegion(long1, lat1);
+        if (region == null || !region.contains(long2, lat2)) {
+            return null;
+        }
+        return registry.getShard(region).snap(long1, lat1, long2, lat2, RoutingConstant.ROUTING_SNAP_DISTANCE);
+    }
+
+    /**
+     * Search the path of a profile between two snapped points.
+     * 
+     * @param endpoints points snapped by <code>snap</code>, their version must not be released yet
+     * @param profile
+     * @return the itinerary, or <code>null</code> if a point can't be snapped for the profile.
+     * @throws MobilITException if there is no path
+     */
+    public Route search(Endpoints endpoints, Profile profile) throws MobilITException {
+        RoutingShard shard = endpoints.getShard();
+        Region region = shard.getRegion();
+        RoutingGraph graph = shard.getGraph();
+        long faults = (graph instanceof TiledGraph) ? ((TiledGraph) graph).getThreadFaultCount() : 0;
+        Route path = shard.search(endpoints, profile);
+        if (graph instanceof TiledGraph) {
+            TiledGraph tiled = (TiledGraph) graph;
+            LOGGER.debug("Routing on " + region.getGeocode() + " : " + (tiled.getThreadFaultCount() - faults)
+                    + " tile faults (" + tiled.getLoadedTileCount() + " tiles loaded, " + tiled.getFaultCount()
+                    + " faults, " + tiled.getEvictionCount() + " evictions)");
+        }
+        else {
+            SnapCache snaps = shard.getSnapCache();
+            LOGGER.debug("Routing on " + region.getGeocode() + " : snap cache hit ratio "
+                    + Math.round(snaps.getHitRatio() * 100) + "% (" + snaps.getHitCount() + " hits, "
+                    + snaps.getMissCount() + " misses, " + snaps.getEvictionCount() + " evictions)");
+        }
+        return path;
+    }
+
+    /**
+     * Counters of the shards of the current version, as a JSON object : the snap cache of the shards on the heap, the
+     * tiles of the tiled shards. Only the shards already loaded are read.
+     * 
+     * @return the JSON.
+     * @throws Exception if a shard failed to load
+     */
+    public String getStats() throws Exception {
+        RoutingVersion version = versions.acquire();
+        try {
+            RegionRegistry registry = version.getRegistry();
+            StringBuilder json = new StringBuilder();
+            json.append("{\"version\":").append(version.getVersion()).append(",\"importing\":")
+                    .append(isImporting()).append(",\"regions\":{");
+            boolean first = true;
+            for (String geocode : registry.getLoadedRegions()) {
+                RoutingShard shard = registry.getLoadedShard(registry.getRegion(geocode));
+                if (shard == null) {
+                    continue;
+                }
+                RoutingGraph graph = shard.getGraph();
+                json.append(first ? "" : ",").append("\"").append(geocode).append("\":{\"nodes\":")
+                        .append(graph.getNodeCount()).append(",\"edges\":").append(graph.getEdgeCount());
+                first = false;
+                if (graph instanceof TiledGraph) {
+                    TiledGraph tiled = (TiledGraph) graph;
+                    json.append(",\"tiles\":{\"count\":").append(tiled.getTileCount()).append(",\"loaded\":")
+                            .append(tiled.getLoadedTileCount()).append(",\"loadedBytes\":")
+                            .append(tiled.getLoadedBytes()).append(",\"faults\":").append(tiled.getFaultCount())
+                            .append(",\"evictions\":").append(tiled.getEvictionCount()).append("}");
+                }
+                else {
+                    SnapCache snaps = shard.getSnapCache();
+                    json.append(",\"snapCache\":{\"size\":").append(snaps.size()).append(",\"hits\":")
+                            .append(snaps.getHitCount()).append(",\"misses\":").append(snaps.getMissCount())
+                            .append(",\"evictions\":").append(snaps.getEvictionCount()).append(",\"hitRatio\":")
+                            .append(snaps.getHitRatio()).append("}");
+                }
+                json.append("}");
+            }
+            return json.append("}}").toString();
+        } finally {
+            version.release();
+        }
+    }
+
+}
@@ -0,0 +1,229 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.service;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.neo4j.gis.spatial.SpatialDatabaseService;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.server.logging.Logger;
+
+import fr.mobilit.neo4j.server.pojo.POI;
+import fr.mobilit.neo4j.server.shortestpath.NetworkDijkstra;
+import fr.mobilit.neo4j.server.shortestpath.costEvaluator.PedestrianCostEvaluation;
+import fr.mobilit.neo4j.server.utils.Constant;
+import fr.mobilit.neo4j.server.utils.LongIntHashMap;
+
+/**
+ * Catchment area of the cycle stations : for each OSM way node, the nearest station on foot and the walking time to
+ * it. It's computed by one multi-source pedestrian search from all stations, and kept in primitive arrays so the
+ * nearest station of a snapped point is a lookup.
+ * 
+ * @author bsimard
+ * 
+ */
+public class StationCatchment {
+
+    private static final Logger           LOGGER         = Logger.getLogger(StationCatchment.class);
+    private static final StationCatchment uniqueInstance = new StationCatchment();
+
+    private final ExecutorService         jobs;
+    private volatile Catchment            catchment;
+
+    private StationCatchment() {
+        this.jobs = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "mobilit-station-catchment");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public static StationCatchment getInstance() {
+        return uniqueInstance;
+    }
+
+    /**
+     * @return the current catchment, or <code>null</code> if it is not computed yet.
+     */
+    public Catchment getCatchment() {
+        return catchment;
+    }
+
+    /**
+     * Schedule the computation of the catchment.
+     * 
+     * @param spatial
+     * @return the job
+     */
+    public Future<Catchment> refresh(final SpatialDatabaseService spatial) {
+        return jobs.submit(new Callable<Catchment>() {
+
+            @Override
+            public Catchment call() throws Exception {
+                try {
+                    long start = System.currentTimeMillis();
+                    Catchment computed = compute(spatial);
+                    catchment = computed;
+                    LOGGER.info("Station catchment of " + computed.size() + " nodes computed in "
+                            + (System.currentTimeMillis() - start) + "ms");
+                    return computed;
+                } catch (Exception e) {
+                    LOGGER.warn("Station catchment computation failed : " + e.getMessage());
+                    throw e;
+                }
+            }
+        });
+    }
+
+    private Catchment compute(SpatialDatabaseService spatial) throws Exception {
+        POINodeIndex index = POINodeIndex.getInstance(spatial, Constant.CYCLE_LAYER);
+        List<POI> stations = index.getAllPOIs();
+        LongIntHashMap stationByNode = new LongIntHashMap(stations.size());
+        NetworkDijkstra search = new NetworkDijkstra(new PedestrianCostEvaluation(), Direction.INCOMING);
+        for (int i = 0; i < stations.size(); i++) {
+            Node node = index.getNode(stations.get(i));
+            if (!stationByNode.containsKey(node.getId())) {
+                stationByNode.put(node.getId(), i);
+                search.addSource(node, 0.0);
+            }
+        }
+        search.setMaxCost(Constant.CYCLE_CATCHMENT_MAX_WALK);
+        search.calculate();
+
+        List<Long> settled = search.getSettledNodes();
+        Catchment computed = new Catchment(stations, settled.size());
+        for (Long nodeId : settled) {
+            Node node = spatial.getDatabase().getNodeById(nodeId);
+            computed.add(nodeId, stationByNode.get(search.getOrigin(nodeId)), search.getCost(nodeId).floatValue(),
+                    (Double) node.getProperty("lon", 0.0), (Double) node.getProperty("lat", 0.0));
+        }
+        return computed;
+    }
+
+    /**
+     * An immutable version of the catchment.
+     */
+    public static class Catchment {
+
+        private final List<POI>      stations;
+        private final LongIntHashMap slots;
+        private final int[]          station;
+        private final float[]        time;
+        private final float[]        lon;
+        private final float[]        lat;
+        private int                  size = 0;
+
+        private Catchment(List<POI> stations, int capacity) {
+            this.stations = stations;
+            this.slots = new LongIntHashMap(capacity);
+            this.station = new int[capacity];
+            this.time = new float[capacity];
+            this.lon = new float[capacity];
+            this.lat = new float[capacity];
+        }
+
+        private void add(long nodeId, int stationIndex, float walkTime, double longitude, double latitude) {
+            slots.put(nodeId, size);
+            station[size] = stationIndex;
+            time[size] = walkTime;
+            lon[size] = (float) longitude;
+            lat[size] = (float) latitude;
+            size++;
+        }
+
+        /**
+         * @param nodeId an OSM way node
+         * @return the nearest station on foot, or <code>null</code> if there is none in walking distance.
+         */
+        public POI getStation(long nodeId) {
+            int slot = slots.get(nodeId);
+            return (slot == LongIntHashMap.NO_VALUE) ? null : stations.get(station[slot]);
+        }
+
+        /**
+         * @param nodeId an OSM way node
+         * @return the walking time (in hour) to the nearest station, or <code>null</code>.
+         */
+        public Double getWalkingTime(long nodeId) {
+            int slot = slots.get(nodeId);
+            return (slot == LongIntHashMap.NO_VALUE) ? null : Double.valueOf(time[slot]);
+        }
+
+        /**
+         * @return number of nodes of the catchment.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Aggregate the catchment into a grid, as a GeoJSON FeatureCollection of cell centers with the mean and max
+         * walking time (in hour) of the cell nodes. That's the data of the coverage heatmap.
+         * 
+         * @param cell size of a cell, in degree
+         * @return
+         */
+        public String toCoverageGeoJSON(double cell) {
+            LongIntHashMap cells = new LongIntHashMap(size / 4);
+            int[] counts = new int[size];
+            float[] sums = new float[size];
+            float[] maxs = new float[size];
+            long[] keys = new long[size];
+            int cellCount = 0;
+            for (int i = 0; i < size; i++) {
+                long x = (long) Math.floor((lon[i] + 180) / cell);
+                long y = (long) Math.floor((lat[i] + 90) / cell);
+                long key = (x << 32) | y;
+                int c = cells.get(key);
+                if (c == LongIntHashMap.NO_VALUE) {
+                    c = cellCount++;
+                    cells.put(key, c);
+                    keys[c] = key;
+                }
+                counts[c]++;
+                sums[c] += time[i];
+                maxs[c] = Math.max(maxs[c], time[i]);
+            }
+            StringBuilder json = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+            for (int c = 0; c < cellCount; c++) {
+                double x = ((keys[c] >>> 32) + 0.5) * cell - 180;
+                double y = ((keys[c] & 0xFFFFFFFFL) + 0.5) * cell - 90;
+                if (c > 0) {
+                    json.append(',');
+                }
+                json.append("{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[").append(x)
+                        .append(',').append(y).append("]},\"properties\":{\"nodes\":").append(counts[c])
+                        .append(",\"time\":").append(sums[c] / counts[c]).append(",\"max\":").append(maxs[c])
+                        .append("}}");
+            }
+            return json.append("]}").toString();
+        }
+    }
+
+}
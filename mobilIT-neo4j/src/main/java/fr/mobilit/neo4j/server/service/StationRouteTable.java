@@ -0,0 +1,464 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.neo4j.gis.spatial.SpatialDatabaseService;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.server.logging.Logger;
+
+import fr.mobilit.neo4j.server.exception.MobilITException;
+import fr.mobilit.neo4j.server.pojo.POI;
+import fr.mobilit.neo4j.server.pojo.Route;
+import fr.mobilit.neo4j.server.shortestpath.NetworkDijkstra;
+import fr.mobilit.neo4j.server.shortestpath.costEvaluator.CycleCostEvaluation;
+import fr.mobilit.neo4j.server.utils.Constant;
+
+/**
+ * Precomputed cycle routes between all pairs of cycle stations.
+ * 
+ * Costs are kept in a dense matrix, and the geometry of each route is deflated into a file that is memory-mapped
+ * read-only, so the station to station leg of a cycle rent search is a lookup. The table is computed in background
+ * with one one-to-all search per station, a few in parallel on its own low priority threads (so a refresh doesn't hold
+ * the threads of the searches), and each row is written to the file as soon as it is searched. When only stations
+ * change, rows and columns of the stations that are still there are kept, and only the new stations are searched (one
+ * forward and one backward search each). Until the first table is ready, <code>getTable</code> returns
+ * <code>null</code>.
+ * 
+ * @author bsimard
+ * 
+ */
+public class StationRouteTable {
+
+    private static final Logger            LOGGER         = Logger.getLogger(StationRouteTable.class);
+    private static final StationRouteTable uniqueInstance = new StationRouteTable();
+
+    /**
+     * The route file is mapped by chunks of 1GB, so it can be larger than a buffer.
+     */
+    private static final long              MAP_CHUNK      = 1L << 30;
+
+    /**
+     * Refresh jobs are run one after the other.
+     */
+    private final ExecutorService          jobs;
+
+    /**
+     * Searches of a refresh.
+     */
+    private final ExecutorService          workers;
+    private volatile Table                 table;
+
+    private StationRouteTable() {
+        this.jobs = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "mobilit-station-routes");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.workers = Executors.newFixedThreadPool(Constant.STATION_ROUTES_POOL_SIZE, new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "mobilit-station-routes-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    public static StationRouteTable getInstance() {
+        return uniqueInstance;
+    }
+
+    /**
+     * @return the current table, or <code>null</code> if it is not computed yet.
+     */
+    public Table getTable() {
+        return table;
+    }
+
+    /**
+     * Schedule a refresh of the table.
+     * 
+     * @param spatial
+     * @param graphChanged if the OSM graph has changed, all routes are computed again. Otherwise only routes of new
+     *            stations are computed.
+     * @return the job
+     */
+    public Future<Table> refresh(final SpatialDatabaseService spatial, final boolean graphChanged) {
+        return jobs.submit(new Callable<Table>() {
+
+            @Override
+            public Table call() throws Exception {
+                try {
+                    long start = System.currentTimeMillis();
+                    Table replaced = table;
+                    Table computed = compute(spatial, graphChanged ? null : replaced);
+                    table = computed;
+                    if (replaced != null && replaced.file != null) {
+                        replaced.file.delete();
+                    }
+                    LOGGER.info("Station route table of " + computed.stations.size() + " stations computed in "
+                            + (System.currentTimeMillis() - start) + "ms");
+                    return computed;
+                } catch (Exception e) {
+                    LOGGER.warn("Station route table computation failed : " + e.getMessage());
+                    throw e;
+                }
+            }
+        });
+    }
+
+    /**
+     * Compute a new table, reusing the routes of <code>previous</code> if not null.
+     */
+    private Table compute(SpatialDatabaseService spatial, Table previous) throws Exception {
+        POINodeIndex index = POINodeIndex.getInstance(spatial, Constant.CYCLE_LAYER);
+        List<POI> stations = index.getAllPOIs();
+        int size = stations.size();
+        Node[] nodes = new Node[size];
+        List<Long> targets = new ArrayList<Long>(size);
+        for (int i = 0; i < size; i++) {
+            nodes[i] = index.getNode(stations.get(i));
+            targets.add(nodes[i].getId());
+        }
+
+        // old index of each station, if its route can be reused
+        int[] old = new int[size];
+        for (int i = 0; i < size; i++) {
+            old[i] = -1;
+            if (previous != null) {
+                Integer j = previous.indexes.get(stations.get(i));
+                if (j != null && previous.nodeIds[j] == nodes[i].getId()) {
+                    old[i] = j;
+                }
+            }
+        }
+
+        // one search by new station (forward for its row, backward for its column). Columns are only searched when
+        // stations change, for the few new stations
+        ExecutorService executor = workers;
+        List<Integer> searched = new ArrayList<Integer>();
+        Map<Integer, Future<Row>> columns = new HashMap<Integer, Future<Row>>();
+        for (int i = 0; i < size; i++) {
+            if (old[i] < 0) {
+                searched.add(i);
+                if (previous != null) {
+                    columns.put(i, executor.submit(new RowTask(nodes[i], nodes, targets, Direction.INCOMING)));
+                }
+            }
+        }
+
+        // rows are searched a window at a time, so only the rows being searched or waiting to be written are in memory
+        int window = 2 * Constant.STATION_ROUTES_POOL_SIZE;
+        Map<Integer, Future<Row>> rows = new HashMap<Integer, Future<Row>>();
+        int submitted = 0;
+        for (; submitted < searched.size() && submitted < window; submitted++) {
+            int i = searched.get(submitted);
+            rows.put(i, executor.submit(new RowTask(nodes[i], nodes, targets, Direction.OUTGOING)));
+        }
+
+        // write the routes, row by row
+        File directory = new File(Constant.DATA_DIRECTORY);
+        directory.mkdirs();
+        File file = new File(directory, "station-routes-" + System.currentTimeMillis() + ".bin");
+        float[] costs = new float[size * size];
+        long[] offsets = new long[size * size + 1];
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            long position = 0;
+            for (int i = 0; i < size; i++) {
+                Future<Row> search = rows.remove(i);
+                Row row = null;
+                if (search != null) {
+                    row = search.get();
+                    if (submitted < searched.size()) {
+                        int next = searched.get(submitted++);
+                        rows.put(next, executor.submit(new RowTask(nodes[next], nodes, targets, Direction.OUTGOING)));
+                    }
+                }
+                for (int j = 0; j < size; j++) {
+                    byte[] route;
+                    float cost;
+                    if (row != null) {
+                        route = row.routes[j];
+                        cost = row.costs[j];
+                    }
+                    else if (old[j] >= 0) {
+                        route = previous.getRouteBytes(old[i], old[j]);
+                        cost = previous.costs[old[i] * previous.size + old[j]];
+                    }
+                    else {
+                        Row column = columns.get(j).get();
+                        route = column.routes[i];
+                        cost = column.costs[i];
+                    }
+                    costs[i * size + j] = cost;
+                    offsets[i * size + j] = position;
+                    raf.write(route);
+                    position += route.length;
+                }
+            }
+            offsets[size * size] = position;
+        } catch (Exception e) {
+            raf.close();
+            for (Future<Row> search : rows.values()) {
+                search.cancel(true);
+            }
+            for (Future<Row> search : columns.values()) {
+                search.cancel(true);
+            }
+            file.delete();
+            throw e;
+        }
+        raf.close();
+        return new Table(stations, nodes, costs, offsets, file);
+    }
+
+    /**
+     * Encode the route of a path as a deflated block : number of relationships, coordinates of each node and name &
+     * length of each relationship.
+     */
+    private static byte[] encode(List<Node> nodes, List<Relationship> relations) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes));
+        out.writeInt(relations.size());
+        for (Node node : nodes) {
+            out.writeDouble((Double) node.getProperty("lon", 0.0));
+            out.writeDouble((Double) node.getProperty("lat", 0.0));
+        }
+        for (Relationship relation : relations) {
+            out.writeUTF((String) relation.getProperty("name", "undefined"));
+            out.writeDouble((Double) relation.getProperty("length", 0.0));
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Costs and routes from (or to) one station.
+     */
+    private static class Row {
+
+        private final float[]  costs;
+        private final byte[][] routes;
+
+        private Row(int size) {
+            this.costs = new float[size];
+            this.routes = new byte[size][];
+        }
+    }
+
+    /**
+     * One to all search from (or to) a station.
+     */
+    private static class RowTask implements Callable<Row> {
+
+        private final Node       source;
+        private final Node[]     nodes;
+        private final List<Long> targets;
+        private final Direction  direction;
+
+        private RowTask(Node source, Node[] nodes, List<Long> targets, Direction direction) {
+            this.source = source;
+            this.nodes = nodes;
+            this.targets = targets;
+            this.direction = direction;
+        }
+
+        @Override
+        public Row call() throws Exception {
+            NetworkDijkstra search = new NetworkDijkstra(new CycleCostEvaluation(), direction);
+            search.addSource(source, 0.0);
+            search.setTargets(targets);
+            search.calculate();
+            Row row = new Row(nodes.length);
+            List<Node> noNodes = new LinkedList<Node>();
+            List<Relationship> noRelations = new LinkedList<Relationship>();
+            for (int j = 0; j < nodes.length; j++) {
+                long target = nodes[j].getId();
+                if (search.isSettled(target)) {
+                    row.costs[j] = search.getCost(target).floatValue();
+                    row.routes[j] = encode(search.getPathAsNodes(target), search.getPathAsRelationships(target));
+                }
+                else {
+                    row.costs[j] = Float.POSITIVE_INFINITY;
+                    row.routes[j] = encode(noNodes, noRelations);
+                }
+            }
+            return row;
+        }
+    }
+
+    /**
+     * An immutable version of the table.
+     */
+    public static class Table {
+
+        private final List<POI>          stations;
+        private final Map<POI, Integer>  indexes;
+        private final long[]             nodeIds;
+        private final int                size;
+        private final float[]            costs;
+        private final long[]             offsets;
+        private final File               file;
+        private final MappedByteBuffer[] routes;
+
+        private Table(List<POI> stations, Node[] nodes, float[] costs, long[] offsets, File file) throws IOException {
+            this.stations = stations;
+            this.size = stations.size();
+            this.indexes = new HashMap<POI, Integer>();
+            this.nodeIds = new long[size];
+            for (int i = 0; i < size; i++) {
+                indexes.put(stations.get(i), i);
+                nodeIds[i] = nodes[i].getId();
+            }
+            this.costs = costs;
+            this.offsets = offsets;
+            this.file = file;
+            long length = offsets[size * size];
+            this.routes = new MappedByteBuffer[(int) ((length + MAP_CHUNK - 1) / MAP_CHUNK)];
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                for (int k = 0; k < routes.length; k++) {
+                    long start = k * MAP_CHUNK;
+                    routes[k] = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, start,
+                            Math.min(MAP_CHUNK, length - start));
+                }
+            } finally {
+                raf.close();
+            }
+        }
+
+        /**
+         * @return the stations of the table, in table order.
+         */
+        public List<POI> getStations() {
+            return stations;
+        }
+
+        /**
+         * @param station
+         * @return true if the station is in the table.
+         */
+        public boolean contains(POI station) {
+            return indexes.containsKey(station);
+        }
+
+        /**
+         * @param from
+         * @param to
+         * @return the cycle cost (in hour) between two stations, infinity if there is no route or a station is unknown.
+         */
+        public double getCost(POI from, POI to) {
+            Integer i = indexes.get(from);
+            Integer j = indexes.get(to);
+            if (i == null || j == null) {
+                return Double.POSITIVE_INFINITY;
+            }
+            return costs[i * size + j];
+        }
+
+        /**
+         * Decode the route between two stations, at the end of a route.
+         * 
+         * @param from
+         * @param to
+         * @param route
+         * @return <code>false</code> if there is no route or a station is unknown.
+         * @throws MobilITException
+         */
+        public boolean appendRoute(POI from, POI to, Route route) throws MobilITException {
+            Integer i = indexes.get(from);
+            Integer j = indexes.get(to);
+            if (i == null || j == null || Float.isInfinite(costs[i * size + j])) {
+                return false;
+            }
+            try {
+                DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(getRouteBytes(
+                        i, j))));
+                int count = in.readInt();
+                double[] points = new double[(count + 1) * 2];
+                for (int k = 0; k < count + 1 && count > 0; k++) {
+                    points[k * 2] = in.readDouble();
+                    points[k * 2 + 1] = in.readDouble();
+                }
+                for (int k = 0; k < count; k++) {
+                    String name = in.readUTF();
+                    route.addSegment(name, in.readDouble(), costs[i * size + j], points[k * 2], points[k * 2 + 1],
+                            points[k * 2 + 2], points[k * 2 + 3]);
+                }
+                return true;
+            } catch (IOException e) {
+                throw new MobilITException(e.getMessage(), e);
+            }
+        }
+
+        /**
+         * Read the block of a route, that may overlap two chunks of the file.
+         */
+        private byte[] getRouteBytes(int i, int j) {
+            long start = offsets[i * size + j];
+            byte[] bytes = new byte[(int) (offsets[i * size + j + 1] - start)];
+            int read = 0;
+            while (read < bytes.length) {
+                long position = start + read;
+                ByteBuffer buffer = routes[(int) (position / MAP_CHUNK)].duplicate();
+                buffer.position((int) (position % MAP_CHUNK));
+                int count = Math.min(bytes.length - read, buffer.remaining());
+                buffer.get(bytes, read, count);
+                read += count;
+            }
+            return bytes;
+        }
+    }
+
+}
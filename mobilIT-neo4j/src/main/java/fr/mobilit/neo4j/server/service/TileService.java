@@ -0,0 +1,274 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.neo4j.gis.spatial.SpatialDatabaseService;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.server.logging.Logger;
+
+import fr.mobilit.neo4j.server.pojo.POI;
+import fr.mobilit.neo4j.server.routing.EdgeGrid;
+import fr.mobilit.neo4j.server.routing.Profile;
+import fr.mobilit.neo4j.server.routing.Region;
+import fr.mobilit.neo4j.server.routing.RegionRegistry;
+import fr.mobilit.neo4j.server.routing.RoutingGraph;
+import fr.mobilit.neo4j.server.routing.RoutingShard;
+import fr.mobilit.neo4j.server.routing.RoutingVersion;
+import fr.mobilit.neo4j.server.shortestpath.RouteSimplifier;
+import fr.mobilit.neo4j.server.tiles.LineMerger;
+import fr.mobilit.neo4j.server.tiles.MvtEncoder;
+import fr.mobilit.neo4j.server.tiles.TileCache;
+import fr.mobilit.neo4j.server.utils.Constant;
+
+/**
+ * Vector tiles of the road network and of the cycle stations and car parks :
+ * <ul>
+ * <li>layer <code>roads</code> : the streets of the routing shards, with their name and class. The class comes from the
+ * car speed of the edges (<code>major</code>, <code>secondary</code>, <code>minor</code>, or <code>path</code> when
+ * it's closed to cars), and each class has its minimum zoom. The edges of a street are merged into lines (see
+ * <code>LineMerger</code>), simplified with a tolerance of <code>TILE_SIMPLIFY</code> tile units.</li>
+ * <li>layer <code>stations</code> : the POI of the cycle and parking layers, with their id, name and type.</li>
+ * </ul>
+ * Encoded tiles are cached by routing version, so an OSM import makes new tiles; the cache is cleared when the POI are
+ * imported again. Only the shards already loaded are drawn : a tile never builds a shard, and a tile with a region not
+ * loaded yet isn't cached.
+ * 
+ * @author bsimard
+ * 
+ */
+public class TileService {
+
+    private static final Logger      LOGGER         = Logger.getLogger(TileService.class);
+    private static final TileService uniqueInstance = new TileService();
+    private static final double      EQUATOR        = 40075016.686;
+
+    private final TileCache          cache;
+
+    private TileService() {
+        this.cache = new TileCache(Constant.TILE_CACHE_SIZE);
+    }
+
+    public static TileService getInstance() {
+        return uniqueInstance;
+    }
+
+    /**
+     * Drop all the cached tiles.
+     */
+    public void invalidate() {
+        cache.clear();
+    }
+
+    /**
+     * @return the counters of the tile cache, as a JSON object.
+     */
+    public String getStats() {
+        return "{\"size\":" + cache.size() + ",\"bytes\":" + cache.getBytes() + ",\"hits\":" + cache.getHits()
+                + ",\"misses\":" + cache.getMisses() + "}";
+    }
+
+    /**
+     * @param db
+     * @param z
+     * @param x
+     * @param y
+     * @return the encoded tile.
+     * @throws Exception
+     */
+    public byte[] getTile(GraphDatabaseService db, int z, int x, int y) throws Exception {
+        RoutingVersion version = RoutingService.getInstance(db).acquire();
+        try {
+            String key = version.getVersion() + "/" + z + "/" + x + "/" + y;
+            byte[] tile = cache.get(key);
+            if (tile == null) {
+                long begin = System.currentTimeMillis();
+                MvtEncoder encoder = new MvtEncoder(z, x, y);
+                double[] bounds = encoder.getBounds(Constant.TILE_BUFFER);
+                boolean complete = addRoads(encoder.layer("roads"), version.getRegistry(), z, bounds);
+                if (z >= Constant.TILE_STATION_MIN_ZOOM) {
+                    SpatialDatabaseService spatial = new SpatialDatabaseService(db);
+                    addStations(encoder.layer("stations"), spatial, Constant.CYCLE_LAYER, bounds);
+                    addStations(encoder.layer("stations"), spatial, Constant.PARKING_LAYER, bounds);
+                }
+                tile = encoder.encode();
+                if (complete) {
+                    cache.put(key, tile);
+                }
+                LOGGER.debug("Tile " + z + "/" + x + "/" + y + " built in " + (System.currentTimeMillis() - begin)
+                        + "ms : " + tile.length + " bytes (" + cache.size() + " tiles cached, " + cache.getBytes()
+                        + " bytes)");
+            }
+            return tile;
+        } finally {
+            version.release();
+        }
+    }
+
+    /**
+     * Add the streets of the loaded shards in the tile.
+     * 
+     * @return false if a region of the tile has no loaded shard yet.
+     */
+    private boolean addRoads(MvtEncoder.Layer layer, RegionRegistry registry, int z, double[] bounds)
+            throws Exception {
+        if (z < Constant.TILE_MAJOR_MIN_ZOOM) {
+            return true;
+        }
+        // size of a tile unit, in meters at the latitude of the tile
+        double unit = EQUATOR * Math.cos(Math.toRadians((bounds[1] + bounds[3]) / 2)) / MvtEncoder.EXTENT / (1 << z);
+        boolean complete = true;
+        for (Region region : registry.getRegions()) {
+            double[] box = region.getBounds();
+            if (box[0] > bounds[2] || box[2] < bounds[0] || box[1] > bounds[3] || box[3] < bounds[1]) {
+                continue;
+            }
+            RoutingShard shard = registry.getLoadedShard(region);
+            if (shard == null) {
+                complete = false;
+                continue;
+            }
+            EdgeGrid index = shard.getEdgeIndex();
+            RoutingGraph graph = index.getGraph();
+            // edges of each street, by class and name
+            Map<String, List<Integer>> streets = new LinkedHashMap<String, List<Integer>>();
+            for (int edge : index.findEdges(bounds[0], bounds[1], bounds[2], bounds[3])) {
+                int source = graph.getEdgeSource(edge);
+                int target = graph.getEdgeTarget(edge);
+                // one line for both directions
+                if (source > target && hasEdge(graph, target, source)) {
+                    continue;
+                }
+                String type = getClass(graph, edge);
+                if (z < getMinZoom(type)) {
+                    continue;
+                }
+                String key = type + ":" + graph.getEdgeName(edge);
+                List<Integer> street = streets.get(key);
+                if (street == null) {
+                    street = new ArrayList<Integer>();
+                    streets.put(key, street);
+                }
+                street.add(edge);
+            }
+            for (List<Integer> street : streets.values()) {
+                String name = graph.getEdgeName(street.get(0));
+                String type = getClass(graph, street.get(0));
+                for (int[] line : LineMerger.merge(graph, street)) {
+                    addLine(layer, graph, line, Constant.TILE_SIMPLIFY * unit, "name", name, "class", type);
+                }
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * Add a line of nodes, simplified with Douglas-Peucker.
+     */
+    private static void addLine(MvtEncoder.Layer layer, RoutingGraph graph, int[] nodes, double tolerance,
+            Object... properties) {
+        double[] lons = new double[nodes.length];
+        double[] lats = new double[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            lons[i] = graph.getLongitude(nodes[i]);
+            lats[i] = graph.getLatitude(nodes[i]);
+        }
+        boolean[] keep = new boolean[nodes.length];
+        RouteSimplifier.douglasPeucker(lons, lats, nodes.length, tolerance, keep, new int[2 * nodes.length]);
+        int size = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            if (keep[i]) {
+                lons[size] = lons[i];
+                lats[size] = lats[i];
+                size++;
+            }
+        }
+        if (size < nodes.length) {
+            lons = Arrays.copyOf(lons, size);
+            lats = Arrays.copyOf(lats, size);
+        }
+        layer.addLine(layer.getFeatureCount(), lons, lats, properties);
+    }
+
+    private static boolean hasEdge(RoutingGraph graph, int source, int target) {
+        for (int edge = graph.getFirstOutEdge(source); edge < graph.getLastOutEdge(source); edge++) {
+            if (graph.getEdgeTarget(edge) == target) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the class of an edge, from its car speed.
+     */
+    private static String getClass(RoutingGraph graph, int edge) {
+        float cost = graph.getEdgeCost(Profile.CAR, edge);
+        if (cost == Float.POSITIVE_INFINITY) {
+            return "path";
+        }
+        double speed = graph.getEdgeLength(edge) / 1000 / cost;
+        if (speed >= 70) {
+            return "major";
+        }
+        if (speed >= 40) {
+            return "secondary";
+        }
+        return "minor";
+    }
+
+    private static int getMinZoom(String type) {
+        if ("major".equals(type)) {
+            return Constant.TILE_MAJOR_MIN_ZOOM;
+        }
+        if ("secondary".equals(type)) {
+            return Constant.TILE_SECONDARY_MIN_ZOOM;
+        }
+        if ("minor".equals(type)) {
+            return Constant.TILE_MINOR_MIN_ZOOM;
+        }
+        return Constant.TILE_PATH_MIN_ZOOM;
+    }
+
+    private void addStations(MvtEncoder.Layer layer, SpatialDatabaseService spatial, String layerName,
+            double[] bounds) {
+        try {
+            POINodeIndex index = POINodeIndex.getInstance(spatial, layerName);
+            int i = 0;
+            for (POI poi : index.getAllPOIs()) {
+                double lon = poi.getGeoPoint().getLongitude();
+                double lat = poi.getGeoPoint().getLatitude();
+                if (lon >= bounds[0] && lon <= bounds[2] && lat >= bounds[1] && lat <= bounds[3]) {
+                    layer.addPoint(i, lon, lat, "id", poi.getId(), "name", poi.getName(),
+                            "type", layerName, "geocode", poi.getGeocode());
+                }
+                i++;
+            }
+        } catch (Exception e) {
+            // no such layer
+            LOGGER.debug("No " + layerName + " in tile : " + e.getMessage());
+        }
+    }
+
+}
@@ -176,4 +176,52 @@ public class JCDecauxCycleRentImpl extends AbstractCycleRent {
         }
         return result;
     }
-}
\ No newline at end of file
+
+    @Override
+    public Map<String, Map<String, Integer>> getAllStation() throws MobilITException {
+        Map<String, Map<String, Integer>> result = new HashMap<String, Map<String, Integer>>();
+        HttpClient client = new HttpClient();
+        GetMethod get = null;
+        try {
+            // the station list has the status of each station
+            get = new GetMethod(getImportUrl());
+            client.executeMethod(get);
+            JsonReader reader = new JsonReader(new InputStreamReader(get.getResponseBodyAsStream(), "UTF-8"));
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String id = null;
+                Map<String, Integer> places = new HashMap<String, Integer>();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if (name.equals("number")) {
+                        id = Integer.toString(reader.nextInt());
+                    }
+                    else if (name.equals("bike_stands")) {
+                        places.put(Constant.CYCLE_TOTAL, reader.nextInt());
+                    }
+                    else if (name.equals("available_bike_stands")) {
+                        places.put(Constant.CYCLE_FREE, reader.nextInt());
+                    }
+                    else if (name.equals("available_bikes")) {
+                        places.put(Constant.CYCLE_AVAIBLE, reader.nextInt());
+                    }
+                    else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                if (id != null) {
+                    result.put(id, places);
+                }
+            }
+            reader.endArray();
+            reader.close();
+        } catch (Exception e) {
+            throw new MobilITException(e.getMessage(), e.getCause());
+        } finally {
+            get.releaseConnection();
+        }
+        return result;
+    }
+}
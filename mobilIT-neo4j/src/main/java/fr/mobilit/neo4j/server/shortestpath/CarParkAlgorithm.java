@@ -0,0 +1,153 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.shortestpath;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.neo4j.gis.spatial.SpatialDatabaseService;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+
+import fr.mobilit.neo4j.server.exception.MobilITException;
+import fr.mobilit.neo4j.server.pojo.POI;
+import fr.mobilit.neo4j.server.pojo.Route;
+import fr.mobilit.neo4j.server.service.POINodeIndex;
+import fr.mobilit.neo4j.server.service.ParkingService;
+import fr.mobilit.neo4j.server.shortestpath.costEvaluator.CarCostEvaluation;
+import fr.mobilit.neo4j.server.shortestpath.costEvaluator.PedestrianCostEvaluation;
+import fr.mobilit.neo4j.server.utils.Constant;
+
+/**
+ * Drive to a car park with free places, then walk to the destination.
+ * 
+ * One backward pedestrian search from the destination finds the car parks in walking distance, their availability is
+ * read from the cached snapshot of their service, then one car search from the start reaches all the avaible ones.
+ * The car park with the best drive + walk time is chosen : the whole search costs about two searches.
+ * 
+ * @author bsimard
+ * 
+ */
+public class CarParkAlgorithm {
+
+    private final Node             start;
+    private final Node             end;
+    private final ParkingService   service;
+    private final POINodeIndex     parkings;
+    private NetworkDijkstra        drive;
+    private NetworkDijkstra        walk;
+    private POI                    parking;
+    private Node                   parkingNode;
+
+    /**
+     * Constructor.
+     * 
+     * @param spatial
+     * @param start snapped start node
+     * @param end snapped end node
+     * @throws MobilITException
+     */
+    public CarParkAlgorithm(SpatialDatabaseService spatial, Node start, Node end) throws MobilITException {
+        this.start = start;
+        this.end = end;
+        this.service = new ParkingService(spatial);
+        this.parkings = POINodeIndex.getInstance(spatial, Constant.PARKING_LAYER);
+    }
+
+    /**
+     * Run the search.
+     * 
+     * @throws MobilITException if there is no avaible car park in walking distance of the destination.
+     */
+    public void calculate() throws MobilITException {
+        // car parks in walking distance of the destination
+        Map<Long, POI> candidates = new HashMap<Long, POI>();
+        for (POI poi : parkings.getAllPOIs()) {
+            candidates.put(parkings.getNode(poi).getId(), poi);
+        }
+        walk = new NetworkDijkstra(new PedestrianCostEvaluation(), Direction.INCOMING);
+        walk.addSource(end, 0.0);
+        walk.setTargets(candidates.keySet());
+        walk.setMaxCost(Constant.PARKING_MAX_WALK);
+        walk.calculate();
+
+        // with free places
+        List<Long> reached = new ArrayList<Long>();
+        for (Map.Entry<Long, POI> candidate : candidates.entrySet()) {
+            if (walk.isSettled(candidate.getKey()) && service.isAvailable(candidate.getValue())) {
+                reached.add(candidate.getKey());
+            }
+        }
+        if (reached.isEmpty()) {
+            throw new MobilITException("No car park found near the destination");
+        }
+
+        // drive to all of them
+        drive = new NetworkDijkstra(new CarCostEvaluation(), Direction.OUTGOING);
+        drive.addSource(start, 0.0);
+        drive.setTargets(reached);
+        drive.calculate();
+
+        double best = Double.POSITIVE_INFINITY;
+        for (Long nodeId : reached) {
+            if (drive.isSettled(nodeId)) {
+                double cost = drive.getCost(nodeId) + walk.getCost(nodeId);
+                if (cost < best) {
+                    best = cost;
+                    parking = candidates.get(nodeId);
+                    parkingNode = parkings.getNode(parking);
+                }
+            }
+        }
+        if (parking == null) {
+            throw new MobilITException("No car park can be reached by car");
+        }
+    }
+
+    /**
+     * @return the chosen car park.
+     */
+    public POI getParking() {
+        return parking;
+    }
+
+    /**
+     * @return total cost (in hour) of the drive and the walk.
+     */
+    public Double getCost() {
+        return drive.getCost(parkingNode.getId()) + walk.getCost(parkingNode.getId());
+    }
+
+    /**
+     * @return the car segments then the pedestrian segments, each with the cost of its leg.
+     */
+    public Route getPathAsRoute() {
+        long nodeId = parkingNode.getId();
+        List<Relationship> driveRelations = drive.getPathAsRelationships(nodeId);
+        List<Relationship> walkRelations = walk.getPathAsRelationships(nodeId);
+        Route route = new Route(driveRelations.size() + walkRelations.size());
+        ShortestPathAlgorithm.appendPath(route, drive.getPathAsNodes(nodeId), driveRelations, drive.getCost(nodeId));
+        ShortestPathAlgorithm.appendPath(route, walk.getPathAsNodes(nodeId), walkRelations, walk.getCost(nodeId));
+        return route;
+    }
+
+}
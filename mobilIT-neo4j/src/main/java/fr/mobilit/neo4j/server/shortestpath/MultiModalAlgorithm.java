@@ -0,0 +1,311 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.shortestpath;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.neo4j.gis.spatial.SpatialDatabaseService;
+import org.neo4j.graphalgo.CostEvaluator;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+
+import fr.mobilit.neo4j.server.exception.MobilITException;
+import fr.mobilit.neo4j.server.pojo.POI;
+import fr.mobilit.neo4j.server.pojo.Route;
+import fr.mobilit.neo4j.server.service.CycleRentService;
+import fr.mobilit.neo4j.server.service.POINodeIndex;
+import fr.mobilit.neo4j.server.service.StationRouteTable;
+import fr.mobilit.neo4j.server.shortestpath.costEvaluator.CycleCostEvaluation;
+import fr.mobilit.neo4j.server.shortestpath.costEvaluator.PedestrianCostEvaluation;
+import fr.mobilit.neo4j.server.utils.Constant;
+import fr.mobilit.neo4j.server.utils.MobilITRelation;
+
+/**
+ * Walk - cycle - walk shortest path in one label-setting search.
+ * 
+ * The OSM graph is seen as three layers : walking to a station, cycling, and walking from a station. Each node of a
+ * cycle station is a transfer between two consecutive layers : renting a cycle (if the station has an avaible cycle)
+ * and returning it (if the station has a free slot), both with a time penalty. A single Dijkstra over (node, layer)
+ * finds the best pair of stations, instead of choosing the nearest ones and searching three times.
+ * 
+ * When the station route table is computed, its precomputed station to station routes are shortcuts in the cycling
+ * layer : renting a cycle also reaches the node of every station of the table directly, and the free slots of a
+ * station are checked only when its node is settled, as for the stations of the cycling layer. The cycling layer is
+ * still searched from the rent station, for the destinations that are reached by cycle without another station.
+ * 
+ * @author bsimard
+ * 
+ */
+public class MultiModalAlgorithm {
+
+    public static final int                WALK_TO_STATION   = 0;
+    public static final int                CYCLE             = 1;
+    public static final int                WALK_FROM_STATION = 2;
+    private static final int               LAYERS            = 3;
+
+    private final Node                     start;
+    private final Node                     end;
+    private final CycleRentService         service;
+    private final POINodeIndex             stations;
+    private final StationRouteTable.Table  table;
+    private final CostEvaluator<Double>    pedestrian        = new PedestrianCostEvaluation();
+    private final CostEvaluator<Double>    cycle             = new CycleCostEvaluation();
+
+    /**
+     * Best known label by (node, layer).
+     */
+    private final Map<Long, Label>         labels            = new HashMap<Long, Label>();
+
+    /**
+     * Status of the stations by geocode, taken once before the search.
+     */
+    private final Map<String, Map<String, Map<String, Integer>>> snapshots;
+    private Label                          result;
+
+    /**
+     * Constructor.
+     * 
+     * @param spatial
+     * @param start snapped start node
+     * @param end snapped end node
+     * @throws MobilITException
+     */
+    public MultiModalAlgorithm(SpatialDatabaseService spatial, Node start, Node end) throws MobilITException {
+        this.start = start;
+        this.end = end;
+        this.service = new CycleRentService(spatial);
+        this.stations = POINodeIndex.getInstance(spatial, Constant.CYCLE_LAYER);
+        this.table = StationRouteTable.getInstance().getTable();
+        this.snapshots = new HashMap<String, Map<String, Map<String, Integer>>>();
+    }
+
+    /**
+     * Run the search, up to <code>Constant.CYCLE_RENT_MAX_COST</code>. The status of the stations is taken before, with
+     * one bulk call by cycle service : the search itself doesn't wait for the network.
+     * 
+     * @throws MobilITException if there is no path using a cycle station, with the code 404.
+     */
+    public void calculate() throws MobilITException {
+        for (String geocode : Constant.CYCLE_SERVICE.keySet()) {
+            try {
+                snapshots.put(geocode, service.getSnapshot(geocode));
+            } catch (MobilITException e) {
+                // no status : the stations of this service are kept
+            }
+        }
+        PriorityQueue<Label> queue = new PriorityQueue<Label>(1024, new Comparator<Label>() {
+
+            @Override
+            public int compare(Label l1, Label l2) {
+                return Double.compare(l1.cost, l2.cost);
+            }
+        });
+        Label source = new Label(start, WALK_TO_STATION, 0.0, null, null, null, false);
+        labels.put(source.key(), source);
+        queue.add(source);
+
+        while (!queue.isEmpty()) {
+            Label current = queue.poll();
+            if (current.settled || labels.get(current.key()) != current) {
+                continue;
+            }
+            current.settled = true;
+            if (current.layer == WALK_FROM_STATION && current.node.equals(end)) {
+                result = current;
+                return;
+            }
+
+            // transfer edges
+            if (current.layer != WALK_FROM_STATION) {
+                for (POI station : stations.getPOIs(current.node.getId())) {
+                    if (!isAvailable(station, current.layer)) {
+                        continue;
+                    }
+                    double penalty = (current.layer == WALK_TO_STATION) ? Constant.CYCLE_RENT_PENALTY
+                            : Constant.CYCLE_RETURN_PENALTY;
+                    Label rent = new Label(current.node, current.layer + 1, current.cost + penalty, null, current,
+                            station, false);
+                    relax(queue, rent);
+                    if (current.layer == WALK_TO_STATION && table != null && table.contains(station)) {
+                        relaxFromTable(queue, rent);
+                    }
+                }
+            }
+
+            // road edges (a route of the table ends at a station, the road search from its rent station goes on)
+            if (current.fromTable) {
+                continue;
+            }
+            CostEvaluator<Double> eval = (current.layer == CYCLE) ? cycle : pedestrian;
+            for (Relationship relation : current.node.getRelationships(MobilITRelation.LINKED)) {
+                Direction direction = relation.getStartNode().equals(current.node) ? Direction.OUTGOING
+                        : Direction.INCOMING;
+                Double cost = eval.getCost(relation, direction);
+                if (cost >= Constant.INFINY) {
+                    continue;
+                }
+                relax(queue, new Label(relation.getOtherNode(current.node), current.layer, current.cost + cost,
+                        relation, current, null, false));
+            }
+        }
+        throw new MobilITException(HttpURLConnection.HTTP_NOT_FOUND, "No cycle rent path found");
+    }
+
+    private void relax(PriorityQueue<Label> queue, Label label) {
+        if (label.cost > Constant.CYCLE_RENT_MAX_COST) {
+            return;
+        }
+        Label known = labels.get(label.key());
+        if (known == null || (!known.settled && label.cost < known.cost)) {
+            labels.put(label.key(), label);
+            queue.add(label);
+        }
+    }
+
+    /**
+     * Rent a cycle at a station of the route table : the nodes of all the stations of the table are also reached in
+     * the cycling layer with their precomputed cost. A station that is no more in the POI index is skipped.
+     */
+    private void relaxFromTable(PriorityQueue<Label> queue, Label rent) {
+        for (POI station : table.getStations()) {
+            double cost = table.getCost(rent.station, station);
+            Node node = stations.getNode(station);
+            if (Double.isInfinite(cost) || node == null) {
+                continue;
+            }
+            relax(queue, new Label(node, CYCLE, rent.cost + cost, null, rent, station, true));
+        }
+    }
+
+    /**
+     * Check in the status snapshot that a station has an avaible cycle when we rent it, or a free slot when we return
+     * it. A station without status information is considered avaible.
+     */
+    private boolean isAvailable(POI station, int layer) {
+        Map<String, Map<String, Integer>> snapshot = snapshots.get(station.getGeocode());
+        Map<String, Integer> places = (snapshot == null) ? null : snapshot.get(station.getId());
+        if (places == null) {
+            return true;
+        }
+        Integer count = places.get(layer == WALK_TO_STATION ? Constant.CYCLE_AVAIBLE : Constant.CYCLE_FREE);
+        return count == null || count > 0;
+    }
+
+    /**
+     * @return the total cost of the path (in hour).
+     */
+    public Double getCost() {
+        return result.cost;
+    }
+
+    /**
+     * @return the rent station and the return station.
+     */
+    public List<POI> getStations() {
+        List<POI> pois = new ArrayList<POI>();
+        for (Label label = result; label != null; label = label.previous) {
+            if (label.station != null && !label.fromTable) {
+                pois.add(label.station);
+            }
+        }
+        Collections.reverse(pois);
+        return pois;
+    }
+
+    /**
+     * Build the route : one segment per relationship, each segment cost is the cost of its leg.
+     * 
+     * @return
+     * @throws MobilITException
+     */
+    public Route getPathAsRoute() throws MobilITException {
+        List<Label> path = new ArrayList<Label>();
+        for (Label label = result; label != null; label = label.previous) {
+            path.add(label);
+        }
+        Collections.reverse(path);
+
+        Route route = new Route(path.size());
+        int legSegment = 0;
+        double legStart = 0.0;
+        for (int i = 1; i < path.size(); i++) {
+            Label label = path.get(i);
+            if (label.relation == null) {
+                // transfer
+                route.setCost(legSegment, route.getSegmentCount(), path.get(i - 1).cost - legStart);
+                if (label.fromTable) {
+                    table.appendRoute(label.previous.station, label.station, route);
+                }
+                legSegment = route.getSegmentCount();
+                legStart = label.cost;
+                continue;
+            }
+            Relationship relation = label.relation;
+            Node from = label.previous.node;
+            route.addSegment((String) relation.getProperty("name", "undefined"),
+                    (Double) relation.getProperty("length", 0.0), Double.NaN, (Double) from.getProperty("lon", null),
+                    (Double) from.getProperty("lat", null), (Double) label.node.getProperty("lon", null),
+                    (Double) label.node.getProperty("lat", null));
+        }
+        route.setCost(legSegment, route.getSegmentCount(), result.cost - legStart);
+        return route;
+    }
+
+    /**
+     * Search label of a node in a layer.
+     */
+    private static class Label {
+
+        private final Node         node;
+        private final int          layer;
+        private final double       cost;
+        private final Relationship relation;
+        private final Label        previous;
+        private final POI          station;
+        private final boolean      fromTable;
+        private boolean            settled = false;
+
+        private Label(Node node, int layer, double cost, Relationship relation, Label previous, POI station,
+                boolean fromTable) {
+            this.node = node;
+            this.layer = layer;
+            this.cost = cost;
+            this.relation = relation;
+            this.previous = previous;
+            this.station = station;
+            this.fromTable = fromTable;
+        }
+
+        /**
+         * Routes of the table have their own key, so they don't hide the cycling layer at the station nodes.
+         */
+        private long key() {
+            return (node.getId() * LAYERS + layer) * 2 + (fromTable ? 1 : 0);
+        }
+    }
+
+}
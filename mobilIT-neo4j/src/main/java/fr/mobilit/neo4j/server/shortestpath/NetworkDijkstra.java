@@ -0,0 +1,290 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.shortestpath;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.neo4j.graphalgo.CostEvaluator;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+
+import fr.mobilit.neo4j.server.utils.Constant;
+import fr.mobilit.neo4j.server.utils.MobilITRelation;
+
+/**
+ * Bounded Dijkstra over the LINKED relationships, from one or many sources to many targets.
+ * 
+ * The search stops as soon as all targets are settled, when a goal node is settled, or when the cost limit is reached,
+ * so asking for the few nearest targets of a point costs less than one point to point search. A backward search (direction
+ * <code>INCOMING</code>) computes the cost from each settled node to the sources.
+ * 
+ * @author bsimard
+ * 
+ */
+public class NetworkDijkstra {
+
+    private final CostEvaluator<Double> eval;
+    private final boolean               backward;
+    private final Map<Long, Label>      labels   = new HashMap<Long, Label>();
+    private final PriorityQueue<Label>  queue;
+    private Set<Long>                   targets  = null;
+    private Goal                        goal     = null;
+    private Long                        reached  = null;
+    private double                      maxCost  = Constant.INFINY;
+    private int                         settled  = 0;
+
+    /**
+     * Constructor.
+     * 
+     * @param eval the cost evaluator of the profile
+     * @param direction <code>OUTGOING</code> to search from the sources, <code>INCOMING</code> to search to the
+     *            sources.
+     */
+    public NetworkDijkstra(CostEvaluator<Double> eval, Direction direction) {
+        this.eval = eval;
+        this.backward = Direction.INCOMING.equals(direction);
+        this.queue = new PriorityQueue<Label>(1024, new Comparator<Label>() {
+
+            @Override
+            public int compare(Label l1, Label l2) {
+                return Double.compare(l1.cost, l2.cost);
+            }
+        });
+    }
+
+    /**
+     * Add a source to the search. Each settled node remembers the source it has been reached from.
+     * 
+     * @param source
+     * @param cost initial cost of the source
+     */
+    public void addSource(Node source, double cost) {
+        Label label = new Label(source, cost, null, null, source.getId());
+        labels.put(source.getId(), label);
+        queue.add(label);
+    }
+
+    /**
+     * Stop the search when all these nodes are settled.
+     * 
+     * @param nodeIds
+     */
+    public void setTargets(Collection<Long> nodeIds) {
+        this.targets = new HashSet<Long>(nodeIds);
+    }
+
+    /**
+     * Stop the search on the first settled node accepted by the goal.
+     * 
+     * @param goal
+     */
+    public void setGoal(Goal goal) {
+        this.goal = goal;
+    }
+
+    /**
+     * Don't settle nodes with a greater cost.
+     * 
+     * @param maxCost
+     */
+    public void setMaxCost(double maxCost) {
+        this.maxCost = maxCost;
+    }
+
+    /**
+     * Run the search.
+     */
+    public void calculate() {
+        int remaining = (targets == null) ? -1 : targets.size();
+        while (!queue.isEmpty() && remaining != 0) {
+            Label current = queue.poll();
+            if (current.settled || labels.get(current.node.getId()) != current) {
+                continue;
+            }
+            if (current.cost > maxCost) {
+                break;
+            }
+            current.settled = true;
+            settled++;
+            if (targets != null && targets.contains(current.node.getId())) {
+                remaining--;
+            }
+            if (goal != null && goal.isReached(current.node.getId())) {
+                reached = current.node.getId();
+                return;
+            }
+            for (Relationship relation : current.node.getRelationships(MobilITRelation.LINKED)) {
+                boolean reversed = relation.getEndNode().equals(current.node) ^ backward;
+                Double cost = eval.getCost(relation, reversed ? Direction.INCOMING : Direction.OUTGOING);
+                if (cost >= Constant.INFINY) {
+                    continue;
+                }
+                Node other = relation.getOtherNode(current.node);
+                Label known = labels.get(other.getId());
+                double newCost = current.cost + cost;
+                if (known == null || (!known.settled && newCost < known.cost)) {
+                    Label label = new Label(other, newCost, relation, current, current.origin);
+                    labels.put(other.getId(), label);
+                    queue.add(label);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param nodeId
+     * @return true if the node has been settled.
+     */
+    public boolean isSettled(long nodeId) {
+        Label label = labels.get(nodeId);
+        return label != null && label.settled;
+    }
+
+    /**
+     * @param nodeId
+     * @return the cost of a settled node, or <code>null</code>.
+     */
+    public Double getCost(long nodeId) {
+        Label label = labels.get(nodeId);
+        return (label != null && label.settled) ? label.cost : null;
+    }
+
+    /**
+     * @param nodeId
+     * @return the id of the source a settled node has been reached from, or <code>null</code>.
+     */
+    public Long getOrigin(long nodeId) {
+        Label label = labels.get(nodeId);
+        return (label != null && label.settled) ? label.origin : null;
+    }
+
+    /**
+     * @return the id of the node that reached the goal, or <code>null</code>.
+     */
+    public Long getReached() {
+        return reached;
+    }
+
+    /**
+     * @return number of settled nodes.
+     */
+    public int getSettledCount() {
+        return settled;
+    }
+
+    /**
+     * @return ids of all settled nodes.
+     */
+    public List<Long> getSettledNodes() {
+        List<Long> nodes = new ArrayList<Long>(settled);
+        for (Label label : labels.values()) {
+            if (label.settled) {
+                nodes.add(label.node.getId());
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Get the relationships of the path of a settled node, in travel order (from the source for a forward search, to
+     * the source for a backward search).
+     * 
+     * @param nodeId
+     * @return the relationships, or <code>null</code> if the node is not settled.
+     */
+    public List<Relationship> getPathAsRelationships(long nodeId) {
+        Label label = labels.get(nodeId);
+        if (label == null || !label.settled) {
+            return null;
+        }
+        List<Relationship> path = new ArrayList<Relationship>();
+        for (; label.relation != null; label = label.previous) {
+            path.add(label.relation);
+        }
+        if (!backward) {
+            Collections.reverse(path);
+        }
+        return path;
+    }
+
+    /**
+     * Get the nodes of the path of a settled node, in travel order.
+     * 
+     * @param nodeId
+     * @return the nodes, or <code>null</code> if the node is not settled.
+     */
+    public List<Node> getPathAsNodes(long nodeId) {
+        Label label = labels.get(nodeId);
+        if (label == null || !label.settled) {
+            return null;
+        }
+        List<Node> path = new ArrayList<Node>();
+        for (; label != null; label = label.previous) {
+            path.add(label.node);
+        }
+        if (!backward) {
+            Collections.reverse(path);
+        }
+        return path;
+    }
+
+    /**
+     * Stop condition of a search, checked on each settled node (in cost order).
+     */
+    public interface Goal {
+
+        /**
+         * @param nodeId a settled node
+         * @return true to stop the search on this node.
+         */
+        boolean isReached(long nodeId);
+    }
+
+    /**
+     * Search label of a node.
+     */
+    private static class Label {
+
+        private final Node         node;
+        private final double       cost;
+        private final Relationship relation;
+        private final Label        previous;
+        private final long         origin;
+        private boolean            settled = false;
+
+        private Label(Node node, double cost, Relationship relation, Label previous, long origin) {
+            this.node = node;
+            this.cost = cost;
+            this.relation = relation;
+            this.previous = previous;
+            this.origin = origin;
+        }
+    }
+
+}
@@ -0,0 +1,195 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.shortestpath;
+
+import fr.mobilit.neo4j.server.pojo.Route;
+import fr.mobilit.neo4j.server.utils.RoutingConstant;
+
+/**
+ * Simplification of a route for the responses : consecutive segments of the same street (and of the same leg, ie. with
+ * the same cost) are merged into one polyline, the polyline is simplified with Douglas-Peucker and its coordinates are
+ * rounded. So the size of a response depends on the number of streets and turns of the path, not on the number of OSM
+ * nodes.
+ * 
+ * @author bsimard
+ * 
+ */
+public class RouteSimplifier {
+
+    private static final double METERS_BY_DEGREE = 111320;
+
+    /**
+     * Simplify a route if a tolerance is given, with the query parameters of the searches.
+     * 
+     * @param route
+     * @param tolerance in meters, <code>null</code> to keep the route as it is
+     * @param precision number of decimals of the coordinates, <code>null</code> for the default one
+     * @return
+     */
+    public static Route simplify(Route route, Double tolerance, Integer precision) {
+        if (tolerance == null || route == null) {
+            return route;
+        }
+        return simplify(route, tolerance.doubleValue(),
+                precision == null ? RoutingConstant.ROUTING_COORDINATE_PRECISION : precision.intValue());
+    }
+
+    /**
+     * Simplify a route.
+     * 
+     * @param route
+     * @param tolerance maximum distance (in meters) between the simplified line and the original one, 0 to only merge
+     *            and round.
+     * @param precision number of decimals of the coordinates
+     * @return a new route
+     */
+    public static Route simplify(Route route, double tolerance, int precision) {
+        double scale = Math.pow(10, precision);
+        int segments = route.getSegmentCount();
+        Route simplified = new Route(Math.max(1, segments / 4));
+        double[] lons = new double[Math.max(2, route.getPointCount())];
+        double[] lats = new double[lons.length];
+        boolean[] keep = new boolean[lons.length];
+        int[] stack = new int[lons.length * 2];
+        int s = 0;
+        while (s < segments) {
+            // merge the street
+            int size = 0;
+            double distance = 0;
+            int last = s;
+            for (int e = s; e < segments; e++) {
+                if (e > s && !isSameStreet(route, e - 1, e)) {
+                    break;
+                }
+                for (int p = (e > s) ? 1 : 0; p < route.getPointCount(e); p++) {
+                    lons[size] = route.getLongitude(e, p);
+                    lats[size] = route.getLatitude(e, p);
+                    size++;
+                }
+                distance += route.getDistance(e);
+                last = e;
+            }
+
+            // simplify & round it
+            douglasPeucker(lons, lats, size, tolerance, keep, stack);
+            simplified.addSegment(route.getName(s), distance, route.getCost(s));
+            int added = 0;
+            double previousLon = Double.NaN;
+            double previousLat = Double.NaN;
+            for (int i = 0; i < size; i++) {
+                if (!keep[i]) {
+                    continue;
+                }
+                double lon = Math.round(lons[i] * scale) / scale;
+                double lat = Math.round(lats[i] * scale) / scale;
+                // a point that becomes the same as the previous one is removed, the line keeps at least two points
+                boolean same = lon == previousLon && lat == previousLat;
+                if (same && (i < size - 1 || added > 1)) {
+                    continue;
+                }
+                simplified.addPoint(lon, lat);
+                added++;
+                previousLon = lon;
+                previousLat = lat;
+            }
+            s = last + 1;
+        }
+        return simplified;
+    }
+
+    /**
+     * The next segment continues the street if it has the same name, the same cost and starts where the previous one
+     * ends.
+     */
+    private static boolean isSameStreet(Route route, int previous, int next) {
+        int points = route.getPointCount(previous);
+        if (points == 0 || route.getPointCount(next) == 0) {
+            return false;
+        }
+        String name = route.getName(previous);
+        double cost = route.getCost(previous);
+        return (name == null ? route.getName(next) == null : name.equals(route.getName(next)))
+                && Double.compare(cost, route.getCost(next)) == 0
+                && route.getLongitude(previous, points - 1) == route.getLongitude(next, 0)
+                && route.getLatitude(previous, points - 1) == route.getLatitude(next, 0);
+    }
+
+    /**
+     * Douglas-Peucker on an equirectangular projection of a line, without recursion.
+     * 
+     * @param lons
+     * @param lats
+     * @param size number of points of the line
+     * @param tolerance in meters
+     * @param keep set to the kept points
+     * @param stack working array of at least <code>2 * size</code>
+     */
+    public static void douglasPeucker(double[] lons, double[] lats, int size, double tolerance, boolean[] keep,
+            int[] stack) {
+        boolean all = size <= 2 || tolerance <= 0;
+        for (int i = 0; i < size; i++) {
+            keep[i] = all;
+        }
+        if (all) {
+            return;
+        }
+        double cos = Math.cos(Math.toRadians(lats[0]));
+        keep[0] = true;
+        keep[size - 1] = true;
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = size - 1;
+        double squaredTolerance = tolerance * tolerance;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            double max = squaredTolerance;
+            int farthest = -1;
+            for (int i = first + 1; i < last; i++) {
+                double distance = squaredDistance(lons[i] * cos, lats[i], lons[first] * cos, lats[first], lons[last]
+                        * cos, lats[last]);
+                if (distance > max) {
+                    max = distance;
+                    farthest = i;
+                }
+            }
+            if (farthest >= 0) {
+                keep[farthest] = true;
+                stack[top++] = first;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = last;
+            }
+        }
+    }
+
+    /**
+     * Squared distance (in meters) of a point to a segment, with projected coordinates in degrees.
+     */
+    private static double squaredDistance(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double length = dx * dx + dy * dy;
+        double t = length == 0 ? 0 : Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / length));
+        double ex = (ax + t * dx - px) * METERS_BY_DEGREE;
+        double ey = (ay + t * dy - py) * METERS_BY_DEGREE;
+        return ex * ex + ey * ey;
+    }
+
+}
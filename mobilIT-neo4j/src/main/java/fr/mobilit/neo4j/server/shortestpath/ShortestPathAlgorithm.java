@@ -18,20 +18,9 @@
  */
 package fr.mobilit.neo4j.server.shortestpath;
 
-import java.io.StringWriter;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Properties;
 
 import fr.mobilit.neo4j.server.pojo.POI;
-import org.apache.velocity.Template;
-import org.apache.velocity.VelocityContext;
-import org.apache.velocity.app.Velocity;
-import org.apache.velocity.app.VelocityEngine;
-import org.apache.velocity.runtime.RuntimeConstants;
-import org.apache.velocity.runtime.resource.loader.ClasspathResourceLoader;
 import org.neo4j.gis.spatial.SpatialDatabaseService;
 import org.neo4j.graphalgo.CostEvaluator;
 import org.neo4j.graphalgo.impl.shortestpath.Dijkstra;
@@ -42,8 +31,8 @@ import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
 
 import fr.mobilit.neo4j.server.exception.MobilITException;
-import fr.mobilit.neo4j.server.pojo.GeoPoint;
-import fr.mobilit.neo4j.server.pojo.Itinerary;
+import fr.mobilit.neo4j.server.format.GeoJsonWriter;
+import fr.mobilit.neo4j.server.pojo.Route;
 import fr.mobilit.neo4j.server.utils.MobilITRelation;
 import fr.mobilit.neo4j.server.utils.SpatialUtils;
 
@@ -61,92 +50,85 @@ public class ShortestPathAlgorithm {
      * @return
      * @throws MobilITException
      */
-    public static List<Itinerary> search(SpatialDatabaseService spatial, Double lat1, Double long1, Double lat2,
+    public static Route search(SpatialDatabaseService spatial, Double lat1, Double long1, Double lat2,
             Double long2, CostEvaluator<Double> eval) throws MobilITException {
+        SpatialUtils service = new SpatialUtils(spatial);
+        Node start = service.findNearestWay(lat1, long1);
+        Node end = service.findNearestWay(lat2, long2);
+        return search(start, end, eval);
+    }
+
+    /**
+     * Algorithm to find the shorestpath between two already snapped OSM way nodes.
+     * 
+     * @param start
+     * @param end
+     * @param eval
+     * @return
+     * @throws MobilITException
+     */
+    public static Route search(Node start, Node end, CostEvaluator<Double> eval) throws MobilITException {
         try {
-            SpatialUtils service = new SpatialUtils(spatial);
-            Node start = service.findNearestWay(lat1, long1);
-            Node end = service.findNearestWay(lat2, long2);
             Dijkstra<Double> sp = new Dijkstra<Double>(0.0, start, end, eval, new DoubleAdder(),
                     new DoubleComparator(), Direction.BOTH, MobilITRelation.LINKED);
             sp.calculate();
 
-            // generate the itinerary
-            List<Itinerary> itinerary = new ArrayList<Itinerary>();
-            Map<String, Integer> alreadyIn = new HashMap<String, Integer>();
-            for (Relationship relation : sp.getPathAsRelationships()) {
-                Itinerary path = new Itinerary();
-                path.setName((String) relation.getProperty("name", "undefined"));
-                Double lng_1 = (Double) relation.getStartNode().getProperty("lon", null);
-                Double lat_1 = (Double) relation.getStartNode().getProperty("lat", null);
-                path.getLine().add(new GeoPoint(lng_1, lat_1));
-                Double lng_2 = (Double) relation.getEndNode().getProperty("lon", null);
-                Double lat_2 = (Double) relation.getEndNode().getProperty("lat", null);
-                path.getLine().add(new GeoPoint(lng_2, lat_2));
-                Double distance = (Double) relation.getProperty("length", 0.0);
-                path.setDistance(distance);
-                itinerary.add(path);
-                path.setCost(sp.getCost());
+            // generate the route
+            List<Relationship> relations = sp.getPathAsRelationships();
+            Route route = new Route(relations.size());
+            for (Relationship relation : relations) {
+                Node from = relation.getStartNode();
+                Node to = relation.getEndNode();
+                route.addSegment((String) relation.getProperty("name", "undefined"),
+                        (Double) relation.getProperty("length", 0.0), sp.getCost(), (Double) from.getProperty("lon",
+                                null), (Double) from.getProperty("lat", null), (Double) to.getProperty("lon", null),
+                        (Double) to.getProperty("lat", null));
             }
-            return itinerary;
-        } catch (MobilITException e) {
-            throw e;
+            return route;
+        } catch (Exception e) {
+            throw new MobilITException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Append a path given in travel order to a route : one segment per relationship.
+     * 
+     * @param route
+     * @param nodes the nodes of the path
+     * @param relations the relationships of the path
+     * @param cost the cost of the path, set on each segment
+     */
+    public static void appendPath(Route route, List<Node> nodes, List<Relationship> relations, double cost) {
+        for (int i = 0; i < relations.size(); i++) {
+            Relationship relation = relations.get(i);
+            Node from = nodes.get(i);
+            Node to = nodes.get(i + 1);
+            route.addSegment((String) relation.getProperty("name", "undefined"),
+                    (Double) relation.getProperty("length", 0.0), cost, (Double) from.getProperty("lon", null),
+                    (Double) from.getProperty("lat", null), (Double) to.getProperty("lon", null),
+                    (Double) to.getProperty("lat", null));
         }
     }
 
     /**
-     * Generate the http response compatible openLS with velocity template.
+     * Generate the GeoJSON response of a path.
      * 
-     * @param path
+     * @param route
      * @return
      */
-    public static String generateResponse(List<Itinerary> path) {
-        // initialize velocity
-        Properties props = new Properties();
-        props.setProperty(VelocityEngine.RESOURCE_LOADER, "classpath");
-        props.setProperty(RuntimeConstants.RUNTIME_LOG_LOGSYSTEM_CLASS, "org.apache.velocity.runtime.log.Log4JLogChute");
-        props.setProperty("runtime.log.logsystem.log4j.logger", "VELOCITY");
-        props.setProperty("classpath." + VelocityEngine.RESOURCE_LOADER + ".class",
-                ClasspathResourceLoader.class.getName());
-        Velocity.init(props);
-        VelocityContext context = new VelocityContext();
-        // put parameter for template
-        context.put("path", path);
-        // get the template
-        Template template = null;
-        template = Velocity.getTemplate("templates/result.vm");
-        // render template
-        StringWriter sw = new StringWriter();
-        template.merge(context, sw);
-        return sw.toString();
+    public static String generateResponse(Route route) {
+        return GeoJsonWriter.toString(route, null);
     }
 
     /**
-     * Generate the http response compatible openLS with velocity template.
+     * Generate the GeoJSON response of a path, with its points of interest.
      *
-     * @param path
+     * @param route
+     * @param pois
      * @return
      */
-    public static String generateResponse(List<Itinerary> path, List<POI> pois) {
-        // initialize velocity
-        Properties props = new Properties();
-        props.setProperty(VelocityEngine.RESOURCE_LOADER, "classpath");
-        props.setProperty(RuntimeConstants.RUNTIME_LOG_LOGSYSTEM_CLASS, "org.apache.velocity.runtime.log.Log4JLogChute");
-        props.setProperty("runtime.log.logsystem.log4j.logger", "VELOCITY");
-        props.setProperty("classpath." + VelocityEngine.RESOURCE_LOADER + ".class",
-                ClasspathResourceLoader.class.getName());
-        Velocity.init(props);
-        VelocityContext context = new VelocityContext();
-        // put parameter for template
-        context.put("path", path);
-        context.put("pois", pois);
-        // get the template
-        Template template = null;
-        template = Velocity.getTemplate("templates/result_with_poi.vm");
-        // render template
-        StringWriter sw = new StringWriter();
-        template.merge(context, sw);
-        return sw.toString();
+    public static String generateResponse(Route route, List<POI> pois) {
+        return GeoJsonWriter.toString(route, pois);
     }
 
 }
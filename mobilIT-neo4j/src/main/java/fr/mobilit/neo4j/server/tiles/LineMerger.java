@@ -0,0 +1,119 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.tiles;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.mobilit.neo4j.server.routing.RoutingGraph;
+
+/**
+ * Merge the edges of a street into lines, so a street is one feature of a few vertices instead of one feature by OSM
+ * segment. A line goes on through the nodes where exactly two of the edges meet, and stops at the ends of the street
+ * and at its junctions. Edges are taken in both directions.
+ * 
+ * @author bsimard
+ * 
+ */
+public class LineMerger {
+
+    private LineMerger() {
+    }
+
+    /**
+     * @param graph
+     * @param edges edges of the street
+     * @return the nodes of each line, in order.
+     */
+    public static List<int[]> merge(RoutingGraph graph, List<Integer> edges) {
+        Map<Integer, List<Integer>> byNode = new HashMap<Integer, List<Integer>>();
+        for (int i = 0; i < edges.size(); i++) {
+            add(byNode, graph.getEdgeSource(edges.get(i)), i);
+            add(byNode, graph.getEdgeTarget(edges.get(i)), i);
+        }
+        boolean[] used = new boolean[edges.size()];
+        int[] nodes = new int[edges.size() + 1];
+        List<int[]> lines = new ArrayList<int[]>();
+        // lines from the ends and the junctions first, then the loops
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < edges.size(); i++) {
+                if (used[i]) {
+                    continue;
+                }
+                int source = graph.getEdgeSource(edges.get(i));
+                int target = graph.getEdgeTarget(edges.get(i));
+                int start;
+                if (pass == 1 || byNode.get(source).size() != 2) {
+                    start = source;
+                }
+                else if (byNode.get(target).size() != 2) {
+                    start = target;
+                }
+                else {
+                    continue;
+                }
+                int size = walk(graph, edges, byNode, used, i, start, nodes);
+                lines.add(Arrays.copyOf(nodes, size));
+            }
+        }
+        return lines;
+    }
+
+    private static void add(Map<Integer, List<Integer>> byNode, int node, int edge) {
+        List<Integer> edges = byNode.get(node);
+        if (edges == null) {
+            edges = new ArrayList<Integer>(2);
+            byNode.put(node, edges);
+        }
+        edges.add(edge);
+    }
+
+    /**
+     * Follow a line from one of its ends.
+     * 
+     * @return the number of nodes of the line.
+     */
+    private static int walk(RoutingGraph graph, List<Integer> edges, Map<Integer, List<Integer>> byNode,
+            boolean[] used, int first, int start, int[] nodes) {
+        int size = 0;
+        int node = start;
+        nodes[size++] = node;
+        int current = first;
+        while (current >= 0) {
+            used[current] = true;
+            int edge = edges.get(current);
+            node = (graph.getEdgeSource(edge) == node) ? graph.getEdgeTarget(edge) : graph.getEdgeSource(edge);
+            nodes[size++] = node;
+            current = -1;
+            List<Integer> next = byNode.get(node);
+            if (next.size() == 2) {
+                for (int i : next) {
+                    if (!used[i]) {
+                        current = i;
+                    }
+                }
+            }
+        }
+        return size;
+    }
+
+}
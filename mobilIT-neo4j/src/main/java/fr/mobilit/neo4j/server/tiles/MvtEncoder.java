@@ -0,0 +1,280 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.tiles;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encoder of a Mapbox vector tile (version 2 of the specification) : layers of point and line features, with
+ * coordinates in Web Mercator quantized on the tile extent. The protobuf messages are written by hand, there is no
+ * generated code.
+ * 
+ * <pre>
+ * MvtEncoder tile = new MvtEncoder(z, x, y);
+ * tile.layer("roads").addLine(id, lons, lats, "name", "Rue de la Paix");
+ * byte[] bytes = tile.encode();
+ * </pre>
+ * 
+ * @author bsimard
+ * 
+ */
+public class MvtEncoder {
+
+    public static final int   EXTENT = 4096;
+
+    private final int         z;
+    private final int         x;
+    private final int         y;
+    private final List<Layer> layers = new ArrayList<Layer>();
+
+    /**
+     * Constructor.
+     * 
+     * @param z zoom
+     * @param x column
+     * @param y row, from the north
+     */
+    public MvtEncoder(int z, int x, int y) {
+        this.z = z;
+        this.x = x;
+        this.y = y;
+    }
+
+    /**
+     * @param buffer margin around the tile, as a fraction of the tile
+     * @return bounds of the tile as minLon, minLat, maxLon, maxLat.
+     */
+    public double[] getBounds(double buffer) {
+        return new double[] { lon(x - buffer, z), lat(y + 1 + buffer, z), lon(x + 1 + buffer, z), lat(y - buffer, z) };
+    }
+
+    private static double lon(double x, int z) {
+        return x / (1 << z) * 360 - 180;
+    }
+
+    private static double lat(double y, int z) {
+        double n = Math.PI - 2 * Math.PI * y / (1 << z);
+        return Math.toDegrees(Math.atan(Math.sinh(n)));
+    }
+
+    /**
+     * @return the tile coordinate of a longitude.
+     */
+    int projectX(double lon) {
+        return (int) Math.round(((lon + 180) / 360 * (1 << z) - x) * EXTENT);
+    }
+
+    /**
+     * @return the tile coordinate of a latitude.
+     */
+    int projectY(double lat) {
+        double sin = Math.sin(Math.toRadians(lat));
+        double mercator = 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+        return (int) Math.round((mercator * (1 << z) - y) * EXTENT);
+    }
+
+    /**
+     * @param name
+     * @return the layer, created if needed.
+     */
+    public Layer layer(String name) {
+        for (Layer layer : layers) {
+            if (layer.name.equals(name)) {
+                return layer;
+            }
+        }
+        Layer layer = new Layer(name);
+        layers.add(layer);
+        return layer;
+    }
+
+    /**
+     * @return the encoded tile. Empty layers are skipped.
+     */
+    public byte[] encode() {
+        ProtoWriter tile = new ProtoWriter();
+        for (Layer layer : layers) {
+            if (layer.count > 0) {
+                tile.writeMessage(3, layer.encode());
+            }
+        }
+        return tile.toByteArray();
+    }
+
+    /**
+     * A layer of the tile. Keys and values of the properties are shared by its features.
+     */
+    public class Layer {
+
+        private final String               name;
+        private final ProtoWriter          features  = new ProtoWriter();
+        private final Map<String, Integer> keys      = new HashMap<String, Integer>();
+        private final List<String>         keyList   = new ArrayList<String>();
+        private final Map<Object, Integer> values    = new HashMap<Object, Integer>();
+        private final List<Object>         valueList = new ArrayList<Object>();
+        private int                        count     = 0;
+
+        private Layer(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return number of features of the layer.
+         */
+        public int getFeatureCount() {
+            return count;
+        }
+
+        /**
+         * Add a point.
+         * 
+         * @param id
+         * @param lon
+         * @param lat
+         * @param properties key, value, key, value ... (<code>null</code> values are skipped)
+         */
+        public void addPoint(long id, double lon, double lat, Object... properties) {
+            int[] geometry = new int[] { command(1, 1), zigzag(projectX(lon)), zigzag(projectY(lat)) };
+            addFeature(id, 1, geometry, geometry.length, properties);
+        }
+
+        /**
+         * Add a line. Successive vertices on the same tile coordinate are merged : that's the generalization of the
+         * lines at low zoom.
+         * 
+         * @param id
+         * @param lons
+         * @param lats
+         * @param properties key, value, key, value ... (<code>null</code> values are skipped)
+         * @return false if the line is shorter than a tile unit, and so not added.
+         */
+        public boolean addLine(long id, double[] lons, double[] lats, Object... properties) {
+            int[] geometry = new int[2 * lons.length + 2];
+            int size = 3;
+            int vertices = 1;
+            int lastX = projectX(lons[0]);
+            int lastY = projectY(lats[0]);
+            geometry[1] = zigzag(lastX);
+            geometry[2] = zigzag(lastY);
+            for (int i = 1; i < lons.length; i++) {
+                int px = projectX(lons[i]);
+                int py = projectY(lats[i]);
+                if (px != lastX || py != lastY) {
+                    geometry[++size] = zigzag(px - lastX);
+                    geometry[++size] = zigzag(py - lastY);
+                    lastX = px;
+                    lastY = py;
+                    vertices++;
+                }
+            }
+            if (vertices < 2) {
+                return false;
+            }
+            geometry[0] = command(1, 1);
+            geometry[3] = command(2, vertices - 1);
+            addFeature(id, 2, geometry, size + 1, properties);
+            return true;
+        }
+
+        private void addFeature(long id, int type, int[] geometry, int length, Object[] properties) {
+            int[] tags = new int[properties.length];
+            int tagCount = 0;
+            for (int i = 0; i + 1 < properties.length; i += 2) {
+                if (properties[i + 1] != null) {
+                    tags[tagCount++] = key((String) properties[i]);
+                    tags[tagCount++] = value(properties[i + 1]);
+                }
+            }
+            ProtoWriter feature = new ProtoWriter();
+            feature.writeVarint(1, id);
+            feature.writePacked(2, tags, tagCount);
+            feature.writeVarint(3, type);
+            feature.writePacked(4, geometry, length);
+            features.writeMessage(2, feature);
+            count++;
+        }
+
+        private int key(String key) {
+            Integer index = keys.get(key);
+            if (index == null) {
+                index = keyList.size();
+                keys.put(key, index);
+                keyList.add(key);
+            }
+            return index;
+        }
+
+        private int value(Object value) {
+            Integer index = values.get(value);
+            if (index == null) {
+                index = valueList.size();
+                values.put(value, index);
+                valueList.add(value);
+            }
+            return index;
+        }
+
+        private ProtoWriter encode() {
+            ProtoWriter layer = new ProtoWriter();
+            layer.writeVarint(15, 2);
+            layer.writeString(1, name);
+            layer.append(features);
+            for (String key : keyList) {
+                layer.writeString(3, key);
+            }
+            for (Object value : valueList) {
+                ProtoWriter encoded = new ProtoWriter();
+                if (value instanceof String) {
+                    encoded.writeString(1, (String) value);
+                }
+                else if (value instanceof Float || value instanceof Double) {
+                    encoded.writeDouble(3, ((Number) value).doubleValue());
+                }
+                else if (value instanceof Number) {
+                    encoded.writeVarint(6, zigzag(((Number) value).longValue()));
+                }
+                else if (value instanceof Boolean) {
+                    encoded.writeVarint(7, ((Boolean) value) ? 1 : 0);
+                }
+                else {
+                    encoded.writeString(1, value.toString());
+                }
+                layer.writeMessage(4, encoded);
+            }
+            layer.writeVarint(5, EXTENT);
+            return layer;
+        }
+    }
+
+    private static int command(int id, int count) {
+        return (id & 0x7) | (count << 3);
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+}
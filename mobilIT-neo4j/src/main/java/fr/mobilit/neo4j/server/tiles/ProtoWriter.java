@@ -0,0 +1,123 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.tiles;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+/**
+ * Minimal protocol buffers writer : varints, doubles, strings, packed varints and embedded messages, in a growing
+ * byte array.
+ * 
+ * @author bsimard
+ * 
+ */
+class ProtoWriter {
+
+    private static final int VARINT  = 0;
+    private static final int FIXED64 = 1;
+    private static final int BYTES   = 2;
+
+    private byte[]           bytes   = new byte[256];
+    private int              size    = 0;
+
+    private void ensure(int more) {
+        if (size + more > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + more));
+        }
+    }
+
+    private void write(int b) {
+        ensure(1);
+        bytes[size++] = (byte) b;
+    }
+
+    private void writeRawVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        write((int) value);
+    }
+
+    private void writeTag(int field, int type) {
+        writeRawVarint((field << 3) | type);
+    }
+
+    void writeVarint(int field, long value) {
+        writeTag(field, VARINT);
+        writeRawVarint(value);
+    }
+
+    void writeDouble(int field, double value) {
+        writeTag(field, FIXED64);
+        long bits = Double.doubleToLongBits(value);
+        for (int i = 0; i < 8; i++) {
+            write((int) (bits >>> (8 * i)));
+        }
+    }
+
+    void writeString(int field, String value) {
+        try {
+            byte[] utf8 = value.getBytes("UTF-8");
+            writeTag(field, BYTES);
+            writeRawVarint(utf8.length);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, bytes, size, utf8.length);
+            size += utf8.length;
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Write values as unsigned varints, packed.
+     */
+    void writePacked(int field, int[] values, int count) {
+        ProtoWriter packed = new ProtoWriter();
+        for (int i = 0; i < count; i++) {
+            packed.writeRawVarint(values[i] & 0xFFFFFFFFL);
+        }
+        writeMessage(field, packed);
+    }
+
+    void writeMessage(int field, ProtoWriter message) {
+        writeTag(field, BYTES);
+        writeRawVarint(message.size);
+        append(message);
+    }
+
+    /**
+     * Append the bytes of another writer, ie. fields already written.
+     */
+    void append(ProtoWriter other) {
+        ensure(other.size);
+        System.arraycopy(other.bytes, 0, bytes, size, other.size);
+        size += other.size;
+    }
+
+    int size() {
+        return size;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(bytes, size);
+    }
+
+}
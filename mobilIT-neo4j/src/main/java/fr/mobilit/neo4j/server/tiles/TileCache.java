@@ -0,0 +1,111 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.tiles;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of encoded tiles, bounded by the total size of the tiles rather than by their number :
+ * tiles of a dense city center are far bigger than tiles of the countryside.
+ * 
+ * @author bsimard
+ * 
+ */
+public class TileCache {
+
+    private final long                          maxBytes;
+    private final LinkedHashMap<String, byte[]> tiles  = new LinkedHashMap<String, byte[]>(256, 0.75f, true);
+    private long                                bytes  = 0;
+    private long                                hits   = 0;
+    private long                                misses = 0;
+
+    /**
+     * Constructor.
+     * 
+     * @param maxBytes maximum total size of the tiles
+     */
+    public TileCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param key
+     * @return the tile, or <code>null</code>.
+     */
+    public synchronized byte[] get(String key) {
+        byte[] tile = tiles.get(key);
+        if (tile == null) {
+            misses++;
+        }
+        else {
+            hits++;
+        }
+        return tile;
+    }
+
+    /**
+     * Put a tile, evicting the least recently used ones if needed.
+     * 
+     * @param key
+     * @param tile
+     */
+    public synchronized void put(String key, byte[] tile) {
+        if (tile.length > maxBytes) {
+            return;
+        }
+        byte[] previous = tiles.put(key, tile);
+        bytes += tile.length - (previous == null ? 0 : previous.length);
+        Iterator<Map.Entry<String, byte[]>> eldest = tiles.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, byte[]> entry = eldest.next();
+            bytes -= entry.getValue().length;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Remove all the tiles, ie. after an import.
+     */
+    public synchronized void clear() {
+        tiles.clear();
+        bytes = 0;
+    }
+
+    /**
+     * @return total size of the cached tiles.
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int size() {
+        return tiles.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+}
@@ -0,0 +1,518 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.transit;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Read GTFS zip files into a <code>Timetable</code>. Only stops, routes, trips, stop times and calendars are read.
+ * Several feeds can be merged : their identifiers are prefixed by the index of the file.
+ * 
+ * @author bsimard
+ * 
+ */
+public class GtfsReader {
+
+    private final Map<String, Integer> stops          = new HashMap<String, Integer>();
+    private final List<String>         stopIds        = new ArrayList<String>();
+    private final List<String>         stopNames      = new ArrayList<String>();
+    private final DoubleList           stopLon        = new DoubleList();
+    private final DoubleList           stopLat        = new DoubleList();
+
+    private final Map<String, String>  routeNames     = new HashMap<String, String>();
+
+    private final Map<String, Integer> trips          = new HashMap<String, Integer>();
+    private final List<String>         tripRoutes     = new ArrayList<String>();
+    private final List<String>         tripHeadsigns  = new ArrayList<String>();
+    private final IntList              tripService    = new IntList();
+
+    private final Map<String, Integer> services       = new HashMap<String, Integer>();
+    private final IntList              serviceDays    = new IntList();
+    private final IntList              serviceStart   = new IntList();
+    private final IntList              serviceEnd     = new IntList();
+    private final IntList              exceptionService = new IntList();
+    private final IntList              exceptionDate  = new IntList();
+    private final IntList              exceptionType  = new IntList();
+
+    private final IntList              stTrip         = new IntList();
+    private final IntList              stSequence     = new IntList();
+    private final IntList              stStop         = new IntList();
+    private final IntList              stArrival      = new IntList();
+    private final IntList              stDeparture    = new IntList();
+
+    private TimeZone                   timeZone;
+
+    /**
+     * Read the GTFS files.
+     * 
+     * @param files paths of the GTFS zip files.
+     * @return the timetable
+     * @throws IOException
+     */
+    public Timetable read(String[] files) throws IOException {
+        for (int i = 0; i < files.length; i++) {
+            ZipFile zip = new ZipFile(files[i]);
+            try {
+                readFeed(zip, i + ":");
+            } finally {
+                zip.close();
+            }
+        }
+        if (timeZone == null) {
+            timeZone = TimeZone.getDefault();
+        }
+        return build();
+    }
+
+    private void readFeed(ZipFile zip, String prefix) throws IOException {
+        CsvReader csv = open(zip, "agency.txt", false);
+        if (csv != null) {
+            String[] row = csv.next();
+            if (row != null && timeZone == null && csv.get(row, "agency_timezone").length() > 0) {
+                timeZone = TimeZone.getTimeZone(csv.get(row, "agency_timezone"));
+            }
+            csv.close();
+        }
+
+        csv = open(zip, "stops.txt", true);
+        for (String[] row = csv.next(); row != null; row = csv.next()) {
+            String type = csv.get(row, "location_type");
+            if (type.length() == 0 || "0".equals(type)) {
+                stops.put(prefix + csv.get(row, "stop_id"), stopIds.size());
+                stopIds.add(prefix + csv.get(row, "stop_id"));
+                stopNames.add(csv.get(row, "stop_name"));
+                stopLon.add(Double.parseDouble(csv.get(row, "stop_lon")));
+                stopLat.add(Double.parseDouble(csv.get(row, "stop_lat")));
+            }
+        }
+        csv.close();
+
+        csv = open(zip, "routes.txt", true);
+        for (String[] row = csv.next(); row != null; row = csv.next()) {
+            String name = csv.get(row, "route_short_name");
+            if (name.length() == 0) {
+                name = csv.get(row, "route_long_name");
+            }
+            routeNames.put(prefix + csv.get(row, "route_id"), name);
+        }
+        csv.close();
+
+        csv = open(zip, "calendar.txt", false);
+        if (csv != null) {
+            String[] days = { "monday", "tuesday", "wednesday", "thursday", "friday", "saturday", "sunday" };
+            for (String[] row = csv.next(); row != null; row = csv.next()) {
+                int service = getService(prefix + csv.get(row, "service_id"));
+                int mask = 0;
+                for (int d = 0; d < days.length; d++) {
+                    if ("1".equals(csv.get(row, days[d]))) {
+                        mask |= 1 << d;
+                    }
+                }
+                serviceDays.set(service, mask);
+                serviceStart.set(service, Integer.parseInt(csv.get(row, "start_date")));
+                serviceEnd.set(service, Integer.parseInt(csv.get(row, "end_date")));
+            }
+            csv.close();
+        }
+
+        csv = open(zip, "calendar_dates.txt", false);
+        if (csv != null) {
+            for (String[] row = csv.next(); row != null; row = csv.next()) {
+                exceptionService.add(getService(prefix + csv.get(row, "service_id")));
+                exceptionDate.add(Integer.parseInt(csv.get(row, "date")));
+                exceptionType.add(Integer.parseInt(csv.get(row, "exception_type")));
+            }
+            csv.close();
+        }
+
+        csv = open(zip, "trips.txt", true);
+        for (String[] row = csv.next(); row != null; row = csv.next()) {
+            String route = prefix + csv.get(row, "route_id");
+            if (routeNames.containsKey(route)) {
+                trips.put(prefix + csv.get(row, "trip_id"), tripRoutes.size());
+                tripRoutes.add(route);
+                tripHeadsigns.add(csv.get(row, "trip_headsign"));
+                tripService.add(getService(prefix + csv.get(row, "service_id")));
+            }
+        }
+        csv.close();
+
+        csv = open(zip, "stop_times.txt", true);
+        for (String[] row = csv.next(); row != null; row = csv.next()) {
+            Integer trip = trips.get(prefix + csv.get(row, "trip_id"));
+            Integer stop = stops.get(prefix + csv.get(row, "stop_id"));
+            if (trip != null && stop != null) {
+                int arrival = parseTime(csv.get(row, "arrival_time"));
+                int departure = parseTime(csv.get(row, "departure_time"));
+                stTrip.add(trip);
+                stSequence.add(Integer.parseInt(csv.get(row, "stop_sequence")));
+                stStop.add(stop);
+                stArrival.add(arrival < 0 ? departure : arrival);
+                stDeparture.add(departure < 0 ? arrival : departure);
+            }
+        }
+        csv.close();
+    }
+
+    private int getService(String id) {
+        Integer service = services.get(id);
+        if (service == null) {
+            service = services.size();
+            services.put(id, service);
+            // without calendar.txt row, the service only runs on its added dates
+            serviceDays.add(0);
+            serviceStart.add(0);
+            serviceEnd.add(0);
+        }
+        return service;
+    }
+
+    /**
+     * Group stop times by trip, then trips by pattern.
+     */
+    private Timetable build() {
+        int nbTrips = tripRoutes.size();
+        int nbStopTimes = stTrip.size();
+
+        // stop times by trip, sorted by sequence
+        int[] tripOffset = new int[nbTrips + 1];
+        for (int i = 0; i < nbStopTimes; i++) {
+            tripOffset[stTrip.get(i) + 1]++;
+        }
+        for (int i = 0; i < nbTrips; i++) {
+            tripOffset[i + 1] += tripOffset[i];
+        }
+        int[] order = new int[nbStopTimes];
+        int[] fill = new int[nbTrips];
+        for (int i = 0; i < nbStopTimes; i++) {
+            order[tripOffset[stTrip.get(i)] + fill[stTrip.get(i)]++] = i;
+        }
+        for (int t = 0; t < nbTrips; t++) {
+            // insertion sort : trips are short and usually already sorted
+            for (int i = tripOffset[t] + 1; i < tripOffset[t + 1]; i++) {
+                int current = order[i];
+                int j = i - 1;
+                while (j >= tripOffset[t] && stSequence.get(order[j]) > stSequence.get(current)) {
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                order[j + 1] = current;
+            }
+            interpolate(order, tripOffset[t], tripOffset[t + 1]);
+        }
+
+        // trips by route and stop sequence
+        Map<String, List<Integer>> byKey = new LinkedHashMap<String, List<Integer>>();
+        for (int t = 0; t < nbTrips; t++) {
+            if (tripOffset[t + 1] - tripOffset[t] < 2) {
+                continue;
+            }
+            StringBuilder key = new StringBuilder(tripRoutes.get(t));
+            for (int i = tripOffset[t]; i < tripOffset[t + 1]; i++) {
+                key.append(',').append(stStop.get(order[i]));
+            }
+            List<Integer> list = byKey.get(key.toString());
+            if (list == null) {
+                list = new ArrayList<Integer>();
+                byKey.put(key.toString(), list);
+            }
+            list.add(t);
+        }
+
+        // split into patterns without overtaking, so that trips are sorted at every stop
+        final int[] firstDeparture = new int[nbTrips];
+        for (int t = 0; t < nbTrips; t++) {
+            firstDeparture[t] = tripOffset[t + 1] > tripOffset[t] ? stDeparture.get(order[tripOffset[t]]) : 0;
+        }
+        List<List<Integer>> patterns = new ArrayList<List<Integer>>();
+        for (List<Integer> list : byKey.values()) {
+            Collections.sort(list, new Comparator<Integer>() {
+
+                @Override
+                public int compare(Integer t1, Integer t2) {
+                    return firstDeparture[t1] < firstDeparture[t2] ? -1 : (firstDeparture[t1] == firstDeparture[t2] ? 0 : 1);
+                }
+            });
+            List<List<Integer>> split = new ArrayList<List<Integer>>();
+            for (Integer trip : list) {
+                List<Integer> target = null;
+                for (List<Integer> pattern : split) {
+                    if (follows(order, tripOffset, pattern.get(pattern.size() - 1), trip)) {
+                        target = pattern;
+                        break;
+                    }
+                }
+                if (target == null) {
+                    target = new ArrayList<Integer>();
+                    split.add(target);
+                }
+                target.add(trip);
+            }
+            patterns.addAll(split);
+        }
+
+        // flatten
+        int nbPatterns = patterns.size();
+        String[] patternNames = new String[nbPatterns];
+        int[] patternStopOffset = new int[nbPatterns + 1];
+        int[] patternTripOffset = new int[nbPatterns + 1];
+        int[] patternTimeOffset = new int[nbPatterns + 1];
+        IntList patternStops = new IntList();
+        int nbKeptTrips = 0;
+        for (int p = 0; p < nbPatterns; p++) {
+            List<Integer> pattern = patterns.get(p);
+            int first = pattern.get(0);
+            int length = tripOffset[first + 1] - tripOffset[first];
+            patternNames[p] = routeNames.get(tripRoutes.get(first));
+            for (int i = tripOffset[first]; i < tripOffset[first + 1]; i++) {
+                patternStops.add(stStop.get(order[i]));
+            }
+            patternStopOffset[p + 1] = patternStopOffset[p] + length;
+            patternTripOffset[p + 1] = patternTripOffset[p] + pattern.size();
+            patternTimeOffset[p + 1] = patternTimeOffset[p] + length * pattern.size();
+            nbKeptTrips += pattern.size();
+        }
+        int[] arrivals = new int[patternTimeOffset[nbPatterns]];
+        int[] departures = new int[patternTimeOffset[nbPatterns]];
+        int[] services = new int[nbKeptTrips];
+        String[] headsigns = new String[nbKeptTrips];
+        int index = 0;
+        int trip = 0;
+        for (List<Integer> pattern : patterns) {
+            for (Integer t : pattern) {
+                for (int i = tripOffset[t]; i < tripOffset[t + 1]; i++) {
+                    arrivals[index] = stArrival.get(order[i]);
+                    departures[index] = stDeparture.get(order[i]);
+                    index++;
+                }
+                services[trip] = tripService.get(t);
+                headsigns[trip] = tripHeadsigns.get(t);
+                trip++;
+            }
+        }
+
+        boolean[] added = new boolean[exceptionType.size()];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = exceptionType.get(i) == 1;
+        }
+        return new Timetable(stopIds.toArray(new String[stopIds.size()]), stopNames.toArray(new String[stopNames
+                .size()]), stopLon.toArray(), stopLat.toArray(), patternNames, patternStopOffset,
+                patternStops.toArray(), patternTripOffset, patternTimeOffset, arrivals, departures, services,
+                headsigns, serviceDays.toArray(), serviceStart.toArray(), serviceEnd.toArray(),
+                exceptionService.toArray(), exceptionDate.toArray(), added, timeZone);
+    }
+
+    /**
+     * @return <code>true</code> if the trip never runs before the previous one of the pattern.
+     */
+    private boolean follows(int[] order, int[] tripOffset, int previous, int trip) {
+        for (int i = 0; i < tripOffset[trip + 1] - tripOffset[trip]; i++) {
+            int p = order[tripOffset[previous] + i];
+            int t = order[tripOffset[trip] + i];
+            if (stArrival.get(t) < stArrival.get(p) || stDeparture.get(t) < stDeparture.get(p)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stop times without time (not a timepoint) are interpolated between the surrounding timepoints.
+     */
+    private void interpolate(int[] order, int from, int to) {
+        int last = -1;
+        for (int i = from; i < to; i++) {
+            if (stDeparture.get(order[i]) < 0) {
+                continue;
+            }
+            if (last >= 0 && i - last > 1) {
+                int start = stDeparture.get(order[last]);
+                int end = stArrival.get(order[i]);
+                for (int j = last + 1; j < i; j++) {
+                    int time = start + (end - start) * (j - last) / (i - last);
+                    stArrival.set(order[j], time);
+                    stDeparture.set(order[j], time);
+                }
+            }
+            last = i;
+        }
+    }
+
+    /**
+     * @param time as HH:MM:SS, hours can be greater than 24
+     * @return seconds since midnight, or -1 if the time is empty.
+     */
+    static int parseTime(String time) {
+        if (time.length() == 0) {
+            return -1;
+        }
+        String[] parts = time.split(":");
+        return Integer.parseInt(parts[0].trim()) * 3600 + Integer.parseInt(parts[1]) * 60
+                + Integer.parseInt(parts[2]);
+    }
+
+    private static CsvReader open(ZipFile zip, String name, boolean mandatory) throws IOException {
+        ZipEntry entry = zip.getEntry(name);
+        if (entry == null) {
+            if (mandatory) {
+                throw new IOException("GTFS file " + zip.getName() + " has no " + name);
+            }
+            return null;
+        }
+        return new CsvReader(new BufferedReader(new InputStreamReader(zip.getInputStream(entry), "UTF-8")));
+    }
+
+    /**
+     * Minimal CSV reader (RFC 4180 quoting, no multi-line fields).
+     */
+    private static class CsvReader {
+
+        private final BufferedReader       reader;
+        private final Map<String, Integer> columns = new HashMap<String, Integer>();
+
+        CsvReader(BufferedReader reader) throws IOException {
+            this.reader = reader;
+            String[] header = next();
+            if (header != null) {
+                for (int i = 0; i < header.length; i++) {
+                    // skip the UTF-8 BOM
+                    columns.put(header[i].replace("\uFEFF", "").trim(), i);
+                }
+            }
+        }
+
+        String[] next() throws IOException {
+            String line = reader.readLine();
+            while (line != null && line.trim().length() == 0) {
+                line = reader.readLine();
+            }
+            if (line == null) {
+                return null;
+            }
+            List<String> fields = new ArrayList<String>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quoted) {
+                    if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    }
+                    else if (c == '"') {
+                        quoted = false;
+                    }
+                    else {
+                        field.append(c);
+                    }
+                }
+                else if (c == '"') {
+                    quoted = true;
+                }
+                else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                }
+                else {
+                    field.append(c);
+                }
+            }
+            fields.add(field.toString());
+            return fields.toArray(new String[fields.size()]);
+        }
+
+        String get(String[] row, String column) {
+            Integer index = columns.get(column);
+            if (index == null || index >= row.length) {
+                return "";
+            }
+            return row[index].trim();
+        }
+
+        void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /**
+     * Growable <code>int</code> array.
+     */
+    private static class IntList {
+
+        private int[] values = new int[16];
+        private int   size   = 0;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        void set(int index, int value) {
+            values[index] = value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * Growable <code>double</code> array.
+     */
+    private static class DoubleList {
+
+        private double[] values = new double[16];
+        private int      size   = 0;
+
+        void add(double value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        double[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+}
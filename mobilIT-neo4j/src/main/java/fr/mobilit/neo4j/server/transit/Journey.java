@@ -0,0 +1,146 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.transit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A public transport journey found by <code>Raptor</code> : a list of legs, times in seconds since midnight.
+ * 
+ * @author bsimard
+ * 
+ */
+public class Journey {
+
+    /**
+     * Kind of leg.
+     */
+    public static enum Type {
+        ACCESS, RIDE, TRANSFER, EGRESS
+    }
+
+    /**
+     * One leg of the journey. Access leg has no start stop, egress leg has no end stop (<code>-1</code>).
+     */
+    public static class Leg {
+
+        private final Type type;
+        private final int  fromStop;
+        private final int  toStop;
+        private final int  departure;
+        private final int  arrival;
+        private final int  pattern;
+        private final int  trip;
+        private final int  boardPosition;
+        private final int  alightPosition;
+
+        Leg(Type type, int fromStop, int toStop, int departure, int arrival, int pattern, int trip,
+                int boardPosition, int alightPosition) {
+            this.type = type;
+            this.fromStop = fromStop;
+            this.toStop = toStop;
+            this.departure = departure;
+            this.arrival = arrival;
+            this.pattern = pattern;
+            this.trip = trip;
+            this.boardPosition = boardPosition;
+            this.alightPosition = alightPosition;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public int getFromStop() {
+            return fromStop;
+        }
+
+        public int getToStop() {
+            return toStop;
+        }
+
+        public int getDeparture() {
+            return departure;
+        }
+
+        public int getArrival() {
+            return arrival;
+        }
+
+        /**
+         * @return the pattern of a ride, <code>-1</code> otherwise.
+         */
+        public int getPattern() {
+            return pattern;
+        }
+
+        /**
+         * @return the trip of a ride, <code>-1</code> otherwise.
+         */
+        public int getTrip() {
+            return trip;
+        }
+
+        public int getBoardPosition() {
+            return boardPosition;
+        }
+
+        public int getAlightPosition() {
+            return alightPosition;
+        }
+    }
+
+    private final List<Leg> legs = new ArrayList<Leg>();
+
+    /**
+     * @return the legs, in travel order.
+     */
+    public List<Leg> getLegs() {
+        return legs;
+    }
+
+    /**
+     * @return the departure time of the first leg.
+     */
+    public int getDeparture() {
+        return legs.get(0).getDeparture();
+    }
+
+    /**
+     * @return the arrival time of the last leg.
+     */
+    public int getArrival() {
+        return legs.get(legs.size() - 1).getArrival();
+    }
+
+    /**
+     * @return the number of rides.
+     */
+    public int getRideCount() {
+        int count = 0;
+        for (Leg leg : legs) {
+            if (leg.getType() == Type.RIDE) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+}
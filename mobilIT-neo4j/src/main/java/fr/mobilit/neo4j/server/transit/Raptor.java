@@ -0,0 +1,299 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.transit;
+
+import java.util.Arrays;
+
+/**
+ * Earliest arrival journey planner on a <code>Timetable</code> (RAPTOR, Delling et al. 2012).
+ * 
+ * Each round <code>k</code> computes the earliest arrival at every stop with at most <code>k</code> rides : the
+ * patterns serving the stops improved by the previous round are scanned once, in stop order, then walking transfers
+ * are relaxed from the stops improved by the scan. No priority queue and no graph : the query only reads the flat
+ * arrays of the timetable.
+ * 
+ * This class is not thread safe, but it is cheap to create one by query.
+ * 
+ * @author bsimard
+ * 
+ */
+public class Raptor {
+
+    public static final int  UNREACHED = Integer.MAX_VALUE;
+
+    private static final int NONE      = 0;
+    private static final int ACCESS    = 1;
+    private static final int RIDE      = 2;
+    private static final int TRANSFER  = 3;
+
+    private final Timetable  timetable;
+    private final int        maxRides;
+
+    // by round, by stop
+    private int[][]          arrival;
+    private int[][]          kind;
+    private int[][]          pattern;
+    private int[][]          trip;
+    private int[][]          from;
+    private int[]            best;
+
+    /**
+     * Constructor.
+     * 
+     * @param timetable
+     * @param maxRides maximum number of rides of a journey.
+     */
+    public Raptor(Timetable timetable, int maxRides) {
+        this.timetable = timetable;
+        this.maxRides = maxRides;
+    }
+
+    /**
+     * Search the earliest arrival journey.
+     * 
+     * @param accessStops stops reachable on foot from the origin
+     * @param accessTimes walking time to each of them, in seconds
+     * @param egressStops stops from which the destination is reachable on foot
+     * @param egressTimes walking time from each of them, in seconds
+     * @param departure departure time from the origin, in seconds since midnight
+     * @param date service date, as yyyyMMdd
+     * @return the journey, or <code>null</code> if the destination can't be reached.
+     */
+    public Journey search(int[] accessStops, int[] accessTimes, int[] egressStops, int[] egressTimes, int departure,
+            int date) {
+        int nbStops = timetable.getStopCount();
+        boolean[] services = timetable.getActiveServices(date);
+        arrival = new int[maxRides + 1][];
+        kind = new int[maxRides + 1][nbStops];
+        pattern = new int[maxRides + 1][nbStops];
+        trip = new int[maxRides + 1][nbStops];
+        from = new int[maxRides + 1][nbStops];
+        best = new int[nbStops];
+        Arrays.fill(best, UNREACHED);
+
+        boolean[] marked = new boolean[nbStops];
+        arrival[0] = new int[nbStops];
+        Arrays.fill(arrival[0], UNREACHED);
+        for (int i = 0; i < accessStops.length; i++) {
+            int stop = accessStops[i];
+            int time = departure + accessTimes[i];
+            if (time < arrival[0][stop]) {
+                arrival[0][stop] = time;
+                best[stop] = time;
+                kind[0][stop] = ACCESS;
+                marked[stop] = true;
+            }
+        }
+
+        int bestTarget = UNREACHED;
+        int bestRound = -1;
+        int bestEgress = -1;
+        int[] queue = new int[timetable.getPatternCount()];
+        int[] queued = new int[timetable.getPatternCount()];
+        int[] transferOffset = timetable.getTransferOffset();
+        int[] transferTargets = timetable.getTransferTargets();
+        int[] transferTimes = timetable.getTransferTimes();
+
+        for (int k = 1; k <= maxRides; k++) {
+            arrival[k] = arrival[k - 1].clone();
+            int[] previous = arrival[k - 1];
+            int[] current = arrival[k];
+
+            // patterns to scan, from the first improved stop
+            int nbQueued = 0;
+            Arrays.fill(queue, -1);
+            for (int stop = 0; stop < nbStops; stop++) {
+                if (marked[stop]) {
+                    marked[stop] = false;
+                    for (int i = timetable.stopPatternOffset[stop]; i < timetable.stopPatternOffset[stop + 1]; i++) {
+                        int p = timetable.stopPatterns[i];
+                        int position = timetable.stopPatternPositions[i];
+                        if (queue[p] < 0) {
+                            queued[nbQueued++] = p;
+                            queue[p] = position;
+                        }
+                        else if (position < queue[p]) {
+                            queue[p] = position;
+                        }
+                    }
+                }
+            }
+            if (nbQueued == 0) {
+                break;
+            }
+
+            // scan patterns
+            for (int q = 0; q < nbQueued; q++) {
+                int p = queued[q];
+                int nbPatternStops = timetable.patternStopOffset[p + 1] - timetable.patternStopOffset[p];
+                int currentTrip = -1;
+                int boardStop = -1;
+                for (int position = queue[p]; position < nbPatternStops; position++) {
+                    int stop = timetable.getPatternStop(p, position);
+                    if (currentTrip >= 0) {
+                        int time = timetable.getArrival(p, currentTrip, position);
+                        if (time < best[stop] && time < bestTarget) {
+                            current[stop] = time;
+                            best[stop] = time;
+                            kind[k][stop] = RIDE;
+                            pattern[k][stop] = p;
+                            trip[k][stop] = currentTrip;
+                            from[k][stop] = boardStop;
+                            marked[stop] = true;
+                        }
+                    }
+                    if (previous[stop] != UNREACHED
+                            && (currentTrip < 0 || previous[stop] <= timetable.getDeparture(p, currentTrip, position))) {
+                        int earliest = earliestTrip(p, position, previous[stop], services);
+                        if (earliest >= 0 && earliest != currentTrip) {
+                            currentTrip = earliest;
+                            boardStop = stop;
+                        }
+                    }
+                }
+            }
+
+            // walking transfers from the stops improved by a ride
+            for (int stop = 0; stop < nbStops; stop++) {
+                if (marked[stop] && kind[k][stop] == RIDE) {
+                    for (int i = transferOffset[stop]; i < transferOffset[stop + 1]; i++) {
+                        int target = transferTargets[i];
+                        int time = current[stop] + transferTimes[i];
+                        if (time < best[target] && time < bestTarget) {
+                            current[target] = time;
+                            best[target] = time;
+                            kind[k][target] = TRANSFER;
+                            from[k][target] = stop;
+                            marked[target] = true;
+                        }
+                    }
+                }
+            }
+
+            // destination
+            for (int i = 0; i < egressStops.length; i++) {
+                int stop = egressStops[i];
+                if (kind[k][stop] != NONE && current[stop] != UNREACHED && current[stop] + egressTimes[i] < bestTarget) {
+                    bestTarget = current[stop] + egressTimes[i];
+                    bestRound = k;
+                    bestEgress = i;
+                }
+            }
+        }
+
+        if (bestRound < 0) {
+            return null;
+        }
+        return buildJourney(bestRound, egressStops[bestEgress], egressTimes[bestEgress], accessStops, accessTimes);
+    }
+
+    /**
+     * @return the first trip of the pattern running at the date and leaving the position after the time, or
+     *         <code>-1</code>.
+     */
+    private int earliestTrip(int p, int position, int time, boolean[] services) {
+        int low = timetable.patternTripOffset[p];
+        int high = timetable.patternTripOffset[p + 1];
+        // trips of a pattern never overtake : departures are sorted at every position
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (timetable.getDeparture(p, middle, position) < time) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        for (int t = low; t < timetable.patternTripOffset[p + 1]; t++) {
+            if (services[timetable.tripService[t]]) {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    private Journey buildJourney(int round, int stop, int egressTime, int[] accessStops, int[] accessTimes) {
+        Journey journey = new Journey();
+        int arrivalTime = arrival[round][stop];
+        journey.getLegs().add(
+                new Journey.Leg(Journey.Type.EGRESS, stop, -1, arrivalTime, arrivalTime + egressTime, -1, -1, -1, -1));
+        int k = round;
+        while (true) {
+            // arrival copied from a previous round
+            while (k > 0 && kind[k][stop] == NONE) {
+                k--;
+            }
+            if (kind[k][stop] == ACCESS) {
+                int walk = 0;
+                for (int i = 0; i < accessStops.length; i++) {
+                    if (accessStops[i] == stop) {
+                        walk = accessTimes[i];
+                        break;
+                    }
+                }
+                // leave as late as possible
+                int time = journey.getLegs().get(0).getDeparture();
+                journey.getLegs().add(0,
+                        new Journey.Leg(Journey.Type.ACCESS, -1, stop, time - walk, time, -1, -1, -1, -1));
+                return journey;
+            }
+            else if (kind[k][stop] == TRANSFER) {
+                int origin = from[k][stop];
+                int time = arrival[k][origin];
+                journey.getLegs().add(0,
+                        new Journey.Leg(Journey.Type.TRANSFER, origin, stop, time, arrival[k][stop], -1, -1, -1, -1));
+                stop = origin;
+            }
+            else {
+                int p = pattern[k][stop];
+                int t = trip[k][stop];
+                int board = from[k][stop];
+                int boardPosition = position(p, board, t, arrival[k - 1][board], false);
+                int alightPosition = position(p, stop, t, arrival[k][stop], true);
+                journey.getLegs().add(
+                        0,
+                        new Journey.Leg(Journey.Type.RIDE, board, stop, timetable.getDeparture(p, t, boardPosition),
+                                arrival[k][stop], p, t, boardPosition, alightPosition));
+                stop = board;
+                k--;
+            }
+        }
+    }
+
+    /**
+     * Find the position of a stop in a pattern (a stop can be served twice by a loop) from the time of the trip.
+     */
+    private int position(int p, int stop, int t, int time, boolean alight) {
+        int nbPatternStops = timetable.patternStopOffset[p + 1] - timetable.patternStopOffset[p];
+        int found = -1;
+        for (int position = 0; position < nbPatternStops; position++) {
+            if (timetable.getPatternStop(p, position) == stop) {
+                if (alight && timetable.getArrival(p, t, position) == time) {
+                    return position;
+                }
+                if (!alight && timetable.getDeparture(p, t, position) >= time) {
+                    return position;
+                }
+                found = position;
+            }
+        }
+        return found;
+    }
+
+}
@@ -0,0 +1,272 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.transit;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Compact public transport timetable, built from GTFS feeds by <code>GtfsReader</code>.
+ * 
+ * Trips are grouped by pattern (same route, same stop sequence, no overtaking) and all times are stored in flat
+ * <code>int</code> arrays, in seconds since midnight of the service day. For a pattern <code>p</code> with
+ * <code>n</code> stops, the time of its <code>i</code>-th trip at the stop position <code>pos</code> is at index
+ * <code>patternTimeOffset[p] + i * n + pos</code>.
+ * 
+ * @author bsimard
+ * 
+ */
+public class Timetable {
+
+    // stops
+    final String[]   stopIds;
+    final String[]   stopNames;
+    final double[]   stopLon;
+    final double[]   stopLat;
+
+    // patterns
+    final String[]   patternNames;
+    final int[]      patternStopOffset;
+    final int[]      patternStops;
+    final int[]      patternTripOffset;
+    final int[]      patternTimeOffset;
+    final int[]      arrivals;
+    final int[]      departures;
+
+    // trips, in pattern order
+    final int[]      tripService;
+    final String[]   tripHeadsigns;
+
+    // patterns serving each stop, with the position of the stop in the pattern
+    final int[]      stopPatternOffset;
+    final int[]      stopPatterns;
+    final int[]      stopPatternPositions;
+
+    // services : days bitmask (monday is bit 0), validity and exceptions (yyyyMMdd)
+    final int[]      serviceDays;
+    final int[]      serviceStart;
+    final int[]      serviceEnd;
+    final int[]      exceptionService;
+    final int[]      exceptionDate;
+    final boolean[]  exceptionAdded;
+
+    final TimeZone   timeZone;
+
+    // walking transfers between stops, in seconds
+    private int[]    transferOffset;
+    private int[]    transferTargets;
+    private int[]    transferTimes;
+
+    Timetable(String[] stopIds, String[] stopNames, double[] stopLon, double[] stopLat, String[] patternNames,
+            int[] patternStopOffset, int[] patternStops, int[] patternTripOffset, int[] patternTimeOffset,
+            int[] arrivals, int[] departures, int[] tripService, String[] tripHeadsigns, int[] serviceDays,
+            int[] serviceStart, int[] serviceEnd, int[] exceptionService, int[] exceptionDate,
+            boolean[] exceptionAdded, TimeZone timeZone) {
+        this.stopIds = stopIds;
+        this.stopNames = stopNames;
+        this.stopLon = stopLon;
+        this.stopLat = stopLat;
+        this.patternNames = patternNames;
+        this.patternStopOffset = patternStopOffset;
+        this.patternStops = patternStops;
+        this.patternTripOffset = patternTripOffset;
+        this.patternTimeOffset = patternTimeOffset;
+        this.arrivals = arrivals;
+        this.departures = departures;
+        this.tripService = tripService;
+        this.tripHeadsigns = tripHeadsigns;
+        this.serviceDays = serviceDays;
+        this.serviceStart = serviceStart;
+        this.serviceEnd = serviceEnd;
+        this.exceptionService = exceptionService;
+        this.exceptionDate = exceptionDate;
+        this.exceptionAdded = exceptionAdded;
+        this.timeZone = timeZone;
+
+        // index patterns by stop
+        int nbStops = stopIds.length;
+        stopPatternOffset = new int[nbStops + 1];
+        for (int i = 0; i < patternStops.length; i++) {
+            stopPatternOffset[patternStops[i] + 1]++;
+        }
+        for (int i = 0; i < nbStops; i++) {
+            stopPatternOffset[i + 1] += stopPatternOffset[i];
+        }
+        stopPatterns = new int[patternStops.length];
+        stopPatternPositions = new int[patternStops.length];
+        int[] fill = new int[nbStops];
+        for (int p = 0; p < getPatternCount(); p++) {
+            for (int pos = patternStopOffset[p]; pos < patternStopOffset[p + 1]; pos++) {
+                int stop = patternStops[pos];
+                int index = stopPatternOffset[stop] + fill[stop]++;
+                stopPatterns[index] = p;
+                stopPatternPositions[index] = pos - patternStopOffset[p];
+            }
+        }
+        setTransfers(new int[nbStops + 1], new int[0], new int[0]);
+    }
+
+    /**
+     * Set the walking transfers between stops, as an adjacency array : transfers of the stop <code>s</code> are at
+     * index <code>offset[s]</code> (inclusive) to <code>offset[s + 1]</code> (exclusive).
+     * 
+     * @param offset
+     * @param targets
+     * @param times walking time in seconds
+     */
+    public void setTransfers(int[] offset, int[] targets, int[] times) {
+        this.transferOffset = offset;
+        this.transferTargets = targets;
+        this.transferTimes = times;
+    }
+
+    int[] getTransferOffset() {
+        return transferOffset;
+    }
+
+    int[] getTransferTargets() {
+        return transferTargets;
+    }
+
+    int[] getTransferTimes() {
+        return transferTimes;
+    }
+
+    /**
+     * @return the number of transfers.
+     */
+    public int getTransferCount() {
+        return transferTargets.length;
+    }
+
+    /**
+     * @return the number of stops.
+     */
+    public int getStopCount() {
+        return stopIds.length;
+    }
+
+    /**
+     * @return the number of patterns.
+     */
+    public int getPatternCount() {
+        return patternNames.length;
+    }
+
+    /**
+     * @return the number of trips.
+     */
+    public int getTripCount() {
+        return tripService.length;
+    }
+
+    public String getStopId(int stop) {
+        return stopIds[stop];
+    }
+
+    public String getStopName(int stop) {
+        return stopNames[stop];
+    }
+
+    public double getStopLongitude(int stop) {
+        return stopLon[stop];
+    }
+
+    public double getStopLatitude(int stop) {
+        return stopLat[stop];
+    }
+
+    /**
+     * @param pattern
+     * @return the name of the route of the pattern.
+     */
+    public String getPatternName(int pattern) {
+        return patternNames[pattern];
+    }
+
+    /**
+     * @param pattern
+     * @param position
+     * @return the stop at the position in the pattern.
+     */
+    public int getPatternStop(int pattern, int position) {
+        return patternStops[patternStopOffset[pattern] + position];
+    }
+
+    public String getTripHeadsign(int trip) {
+        return tripHeadsigns[trip];
+    }
+
+    /**
+     * @param pattern
+     * @param trip a trip of the pattern
+     * @param position
+     * @return arrival time of the trip at the position, in seconds since midnight.
+     */
+    public int getArrival(int pattern, int trip, int position) {
+        return arrivals[timeIndex(pattern, trip, position)];
+    }
+
+    /**
+     * @param pattern
+     * @param trip a trip of the pattern
+     * @param position
+     * @return departure time of the trip at the position, in seconds since midnight.
+     */
+    public int getDeparture(int pattern, int trip, int position) {
+        return departures[timeIndex(pattern, trip, position)];
+    }
+
+    int timeIndex(int pattern, int trip, int position) {
+        int nbStops = patternStopOffset[pattern + 1] - patternStopOffset[pattern];
+        return patternTimeOffset[pattern] + (trip - patternTripOffset[pattern]) * nbStops + position;
+    }
+
+    /**
+     * @return the time zone of the feed.
+     */
+    public TimeZone getTimeZone() {
+        return timeZone;
+    }
+
+    /**
+     * Compute the services running at a date.
+     * 
+     * @param date as yyyyMMdd
+     * @return running flag by service.
+     */
+    public boolean[] getActiveServices(int date) {
+        Calendar calendar = Calendar.getInstance(timeZone);
+        calendar.clear();
+        calendar.set(date / 10000, (date / 100) % 100 - 1, date % 100);
+        int day = (calendar.get(Calendar.DAY_OF_WEEK) + 5) % 7;
+
+        boolean[] active = new boolean[serviceDays.length];
+        for (int i = 0; i < active.length; i++) {
+            active[i] = (serviceDays[i] & (1 << day)) != 0 && serviceStart[i] <= date && date <= serviceEnd[i];
+        }
+        for (int i = 0; i < exceptionDate.length; i++) {
+            if (exceptionDate[i] == date) {
+                active[exceptionService[i]] = exceptionAdded[i];
+            }
+        }
+        return active;
+    }
+
+}
@@ -19,6 +19,7 @@
 package fr.mobilit.neo4j.server.utils;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 
 /**
  * Constant class for MobilIT project.
@@ -32,6 +33,10 @@ public class Constant {
     public static final String                 LATITUDE                 = "lat";
     public static final String                 LONGITUDE                = "lon";
     public static final String                 LAYER_OSM                = "OSM";
+    public static final String                 DATA_DIRECTORY           = System.getProperty("mobilit.data.dir",
+                                                                                System.getProperty("java.io.tmpdir")
+                                                                                        + java.io.File.separator
+                                                                                        + "mobilit");
 
     // default value for cost comparator
     public static final Integer                DEFAULT_SPEED            = 50;
@@ -39,6 +44,12 @@ public class Constant {
     public static final Integer                DEFAULT_PEDESTRIAN_SPEED = 5;
     public static final Double                 INFINY                   = new Double(9999999999999999999999999999999999999999999999999999999999999999999999.9);
 
+    // search executor sizing
+    public static final Integer                SEARCH_POOL_SIZE         = Runtime.getRuntime().availableProcessors();
+    public static final Integer                SEARCH_QUEUE_SIZE        = 100;
+    public static final Long                   SEARCH_TIMEOUT           = 60000L;
+    public static final Integer                STATION_ROUTES_POOL_SIZE = Math.max(1, SEARCH_POOL_SIZE / 2);
+
     // constante for geo zone
     public static final String                 NANTES_GEO_CODE          = "FR_NTS";
     public static final String                 NAMUR_GEO_CODE           = "BE_NAM";
@@ -51,6 +62,12 @@ public class Constant {
     public static final String                 CYCLE_FREE               = "free";
     public static final String                 CYCLE_AVAIBLE            = "avaible";
     public static final String                 CYCLE_TOTAL              = "total";
+    public static final Integer                CYCLE_STATUS_TTL         = 60;
+    public static final Double                 CYCLE_RENT_PENALTY       = 2.0 / 60;
+    public static final Double                 CYCLE_RETURN_PENALTY     = 1.0 / 60;
+    public static final Double                 CYCLE_STATION_MAX_WALK   = 0.5;
+    public static final Double                 CYCLE_CATCHMENT_MAX_WALK = 1.0;
+    public static final Double                 CYCLE_RENT_MAX_COST      = 3.0;
     public static final HashMap<String, Class> CYCLE_SERVICE            = new HashMap<String, Class>();
     static {
         CYCLE_SERVICE.put(NANTES_GEO_CODE, fr.mobilit.neo4j.server.service.nantes.CycleRentImpl.class);
@@ -62,6 +79,51 @@ public class Constant {
     public static final String                 PARKING_FREE             = "free";
     public static final String                 PARKING_TOTAL            = "total";
     public static final String                 PARKING_CYCLE            = "cycle";
+    public static final Integer                PARKING_STATUS_TTL       = 60;
+    public static final Double                 PARKING_MAX_WALK         = 0.25;
     public static final HashMap<String, Class> PARKING_SERVICE          = new HashMap<String, Class>();
 
+    // constant for public transport
+    public static final Integer                TRANSIT_MAX_RIDES        = 5;
+    public static final Double                 TRANSIT_ACCESS_MAX_WALK  = 0.25;
+    public static final Double                 TRANSIT_TRANSFER_WALK    = 5.0 / 60;
+
+    // regions of the routing shards (see RoutingConstant for the other routing constants)
+    public static final LinkedHashMap<String, double[]> REGIONS         = new LinkedHashMap<String, double[]>();
+    static {
+        REGIONS.put(NANTES_GEO_CODE, new double[] { -1.80, 47.08, -1.35, 47.08, -1.35, 47.33, -1.80, 47.33 });
+        REGIONS.put(NAMUR_GEO_CODE, new double[] { 4.70, 50.38, 5.05, 50.38, 5.05, 50.56, 4.70, 50.56 });
+    }
+
+    // constant for batch snapping
+    public static final Integer                SNAP_CHUNK_SIZE          = 1024;
+    public static final Integer                SNAP_MAX_POINTS          = 100000;
+
+    // constant for geocoding (distances in meters)
+    public static final Double                 GEOCODING_MAX_DISTANCE   = 500.0;
+    public static final Double                 GEOCODING_HOUSE_DISTANCE = 50.0;
+    public static final Double                 GEOCODING_STREET_GAP     = 200.0;
+    public static final Integer                GEOCODING_MAX_RESULTS    = 10;
+    public static final Integer                GEOCODING_CHUNK_SIZE     = 64;
+    public static final Integer                GEOCODING_MAX_QUERIES    = 10000;
+
+    // constant for map matching (distances in meters)
+    public static final Double                 MATCH_RADIUS             = 50.0;
+    public static final Double                 MATCH_GPS_SIGMA          = 10.0;
+    public static final Double                 MATCH_BETA               = 10.0;
+    public static final Double                 MATCH_MAX_DETOUR         = 3.0;
+    public static final Integer                MATCH_CANDIDATES         = 8;
+    public static final Integer                MATCH_WINDOW             = 32;
+
+    // constant for vector tiles (min zoom of each road class, from the car speed, simplification in tile units)
+    public static final Long                   TILE_CACHE_SIZE          = 64L * 1024 * 1024;
+    public static final Double                 TILE_BUFFER              = 1.0 / 64;
+    public static final Integer                TILE_MAJOR_MIN_ZOOM      = 9;
+    public static final Integer                TILE_SECONDARY_MIN_ZOOM  = 12;
+    public static final Integer                TILE_MINOR_MIN_ZOOM      = 14;
+    public static final Integer                TILE_PATH_MIN_ZOOM       = 15;
+    public static final Integer                TILE_STATION_MIN_ZOOM    = 13;
+    public static final Integer                TILE_MAX_AGE             = 300;
+    public static final Double                 TILE_SIMPLIFY            = 8.0;
+
 }
@@ -0,0 +1,104 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.utils;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+
+import net.opengis.xls.v_1_2_0.ObjectFactory;
+
+import fr.mobilit.neo4j.server.exception.MobilITException;
+
+/**
+ * The JAXB context of the OpenLS schema, shared by all requests : building it loads and introspects every class of
+ * the schema, while JAX-RS builds a resource per request. Marshallers and unmarshallers aren't thread safe, they are
+ * pooled : a request borrows one and releases it when done.
+ * 
+ * @author bsimard
+ * 
+ */
+public class JaxbPool {
+
+    private static JaxbPool           uniqueInstance;
+
+    private final JAXBContext         context;
+    private final Queue<Marshaller>   marshallers   = new ConcurrentLinkedQueue<Marshaller>();
+    private final Queue<Unmarshaller> unmarshallers = new ConcurrentLinkedQueue<Unmarshaller>();
+
+    private JaxbPool() throws JAXBException {
+        this.context = JAXBContext.newInstance(ObjectFactory.class);
+    }
+
+    /**
+     * Get the shared pool, creating the JAXB context at first use.
+     * 
+     * @return
+     * @throws MobilITException
+     */
+    public static synchronized JaxbPool getInstance() throws MobilITException {
+        if (uniqueInstance == null) {
+            try {
+                uniqueInstance = new JaxbPool();
+            } catch (JAXBException e) {
+                throw new MobilITException("OpenLS JAXB context can't be created", e);
+            }
+        }
+        return uniqueInstance;
+    }
+
+    public JAXBContext getContext() {
+        return context;
+    }
+
+    /**
+     * @return a marshaller, to release after use.
+     * @throws JAXBException
+     */
+    public Marshaller borrowMarshaller() throws JAXBException {
+        Marshaller marshaller = marshallers.poll();
+        if (marshaller == null) {
+            marshaller = context.createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
+        }
+        return marshaller;
+    }
+
+    public void release(Marshaller marshaller) {
+        marshallers.offer(marshaller);
+    }
+
+    /**
+     * @return an unmarshaller, to release after use.
+     * @throws JAXBException
+     */
+    public Unmarshaller borrowUnmarshaller() throws JAXBException {
+        Unmarshaller unmarshaller = unmarshallers.poll();
+        return (unmarshaller == null) ? context.createUnmarshaller() : unmarshaller;
+    }
+
+    public void release(Unmarshaller unmarshaller) {
+        unmarshallers.offer(unmarshaller);
+    }
+
+}
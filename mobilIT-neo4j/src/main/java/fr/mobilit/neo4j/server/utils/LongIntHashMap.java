@@ -0,0 +1,163 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from <code>long</code> keys (ie. node ids) to <code>int</code> values, without boxing.
+ * Keys must be positive or zero.
+ * 
+ * @author bsimard
+ * 
+ */
+public class LongIntHashMap {
+
+    public static final int  NO_VALUE  = -1;
+    private static final long EMPTY    = -1L;
+
+    private long[]           keys;
+    private int[]            values;
+    private int              size      = 0;
+    private int              threshold;
+
+    /**
+     * Constructor.
+     * 
+     * @param expectedSize
+     */
+    public LongIntHashMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity * 3 / 4 < expectedSize) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        threshold = capacity * 3 / 4;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * @param key
+     * @return the value of the key, or <code>NO_VALUE</code>.
+     */
+    public int get(long key) {
+        int mask = keys.length - 1;
+        for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+            if (keys[i] == EMPTY) {
+                return NO_VALUE;
+            }
+        }
+    }
+
+    /**
+     * @param key
+     * @return true if the map contains the key.
+     */
+    public boolean containsKey(long key) {
+        return get(key) != NO_VALUE;
+    }
+
+    /**
+     * Put a value (not <code>NO_VALUE</code>) for a key.
+     * 
+     * @param key
+     * @param value
+     */
+    public void put(long key, int value) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Negative key " + key);
+        }
+        if (size >= threshold) {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            allocate(keys.length << 1);
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+        int mask = keys.length - 1;
+        for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+            if (keys[i] == EMPTY) {
+                keys[i] = key;
+                values[i] = value;
+                size++;
+                return;
+            }
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Remove a key. The next keys of its cluster are shifted back, so there is no tombstone.
+     * 
+     * @param key
+     * @return the value of the key, or <code>NO_VALUE</code>.
+     */
+    public int remove(long key) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != key) {
+            if (keys[i] == EMPTY) {
+                return NO_VALUE;
+            }
+            i = (i + 1) & mask;
+        }
+        int value = values[i];
+        for (int j = (i + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+            int home = hash(keys[j]) & mask;
+            // the key can move to the hole only if its home is not between the hole and itself
+            boolean between = (i <= j) ? (i < home && home <= j) : (i < home || home <= j);
+            if (!between) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        keys[i] = EMPTY;
+        size--;
+        return value;
+    }
+
+    /**
+     * @return number of keys.
+     */
+    public int size() {
+        return size;
+    }
+
+}
@@ -0,0 +1,43 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.utils;
+
+/**
+ * Constant class of the routing shards and of the route formats. It doesn't depend on the services of the plugin, so
+ * the standalone routing server can use it without Neo4j.
+ * 
+ * @author bsimard
+ * 
+ */
+public class RoutingConstant {
+
+    // media types of the search responses
+    public static final String  SEARCH_POLYLINE_TYPE         = "application/vnd.mobilit.polyline+json";
+    public static final String  SEARCH_BINARY_TYPE           = "application/vnd.mobilit.route";
+
+    // constant for routing shards
+    public static final Double  ROUTING_SNAP_DISTANCE        = 0.2;
+    public static final Double  ROUTING_GRID_CELL            = 0.005;
+    public static final Integer ROUTING_ROUTE_CACHE_SIZE     = 1000;
+    public static final Integer ROUTING_TILE_THRESHOLD       = 2000000;
+    public static final Double  ROUTING_TILE_SIZE            = 0.25;
+    public static final Long    ROUTING_TILE_CACHE           = 512L * 1024 * 1024;
+    public static final Integer ROUTING_COORDINATE_PRECISION = 6;
+
+}
@@ -0,0 +1,84 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.utils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded thread pool shared by all REST resources to run searches concurrently. When the queue is full, the search is
+ * run by the calling thread, so a burst of requests slows down instead of piling up threads.
+ * 
+ * @author bsimard
+ * 
+ */
+public class SearchExecutor {
+
+    private static SearchExecutor uniqueInstance;
+    private final ExecutorService executor;
+
+    private SearchExecutor() {
+        ThreadFactory factory = new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "mobilit-search-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        this.executor = new ThreadPoolExecutor(Constant.SEARCH_POOL_SIZE, Constant.SEARCH_POOL_SIZE, 60L,
+                TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(Constant.SEARCH_QUEUE_SIZE), factory,
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Get the shared executor, creating it if the plugin lifecycle has not done it yet (ie. in tests).
+     * 
+     * @return
+     */
+    public static synchronized SearchExecutor getInstance() {
+        if (uniqueInstance == null) {
+            uniqueInstance = new SearchExecutor();
+        }
+        return uniqueInstance;
+    }
+
+    public static synchronized SearchExecutor newInstance() {
+        uniqueInstance = new SearchExecutor();
+        return uniqueInstance;
+    }
+
+    public <T> Future<T> submit(Callable<T> task) {
+        return executor.submit(task);
+    }
+
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+}
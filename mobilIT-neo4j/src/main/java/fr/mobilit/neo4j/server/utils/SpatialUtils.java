@@ -3,6 +3,7 @@ package fr.mobilit.neo4j.server.utils;
 import com.vividsolutions.jts.geom.Coordinate;
 import fr.mobilit.neo4j.server.exception.MobilITException;
 import fr.mobilit.neo4j.server.pojo.POI;
+import fr.mobilit.neo4j.server.service.RoutingService;
 import org.neo4j.gis.spatial.EditableLayer;
 import org.neo4j.gis.spatial.EditableLayerImpl;
 import org.neo4j.gis.spatial.SpatialDatabaseRecord;
@@ -12,11 +13,14 @@ import org.neo4j.gis.spatial.osm.OSMLayer;
 import org.neo4j.gis.spatial.pipes.GeoPipeFlow;
 import org.neo4j.gis.spatial.pipes.GeoPipeline;
 import org.neo4j.graphdb.*;
+import org.neo4j.server.logging.Logger;
 
 import java.util.List;
 
 public class SpatialUtils {
 
+    private static final Logger    LOGGER = Logger.getLogger(SpatialUtils.class);
+
     private SpatialDatabaseService spatial;
     private OSMLayer osm;
 
@@ -29,7 +33,9 @@ public class SpatialUtils {
     }
 
     /**
-     * Find the nearest OSM way node from a coordinate (lng, lat).
+     * Find the nearest OSM way node from a coordinate (lng, lat) : the nearest end of the nearest street in the routing
+     * shard of the region (see <code>RoutingShard.findNearestNode</code>), if it's already loaded. Out of the routing
+     * regions, or before their shard is loaded, it's a nearest neighbor search on the OSM layer.
      *
      * @param lat
      * @param lon
@@ -37,6 +43,19 @@ public class SpatialUtils {
      * @throws MobilITException
      */
     public Node findNearestWay(Double lat, Double lon) throws MobilITException {
+        RoutingService routing = RoutingService.getLoadedInstance(spatial.getDatabase());
+        if (routing != null) {
+            try {
+                long nodeId = routing.findNearestNode(lat, lon);
+                if (nodeId >= 0) {
+                    return spatial.getDatabase().getNodeById(nodeId);
+                }
+            } catch (Exception e) {
+                // shard failed to load or out of date (ie. during an import) : search on the OSM layer
+                LOGGER.warn("Routing shard can't snap (" + lat + ", " + lon + "), search on the OSM layer : "
+                        + e.getMessage());
+            }
+        }
         Coordinate coord = new Coordinate(lon, lat);
         //@formatter:off
         List<GeoPipeFlow> results = GeoPipeline.startNearestNeighborSearch(osm, coord, 0.2).sort("Distance").toList();
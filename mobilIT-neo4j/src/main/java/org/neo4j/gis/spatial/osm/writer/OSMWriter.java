@@ -41,6 +41,8 @@ public abstract class OSMWriter<T> {
     protected OSMImporter                 osmImporter;
     protected T                           osm_dataset;
 
+    protected static final String[]       ADDRESS_TAGS     = { "addr:housenumber", "addr:street", "addr:interpolation" };
+
     public OSMWriter(StatsManager statsManager, OSMImporter osmImporter) {
         this.statsManager = statsManager;
         this.osmImporter = osmImporter;
@@ -265,6 +267,7 @@ public abstract class OSMWriter<T> {
         }
         String way_osm_id = (String) wayProperties.get("way_osm_id");
         T changesetNode = getChangesetNode(wayProperties);
+        addAddressProperties(wayProperties, wayNodes, wayTags, changesetNode);
         T way = addNode(osmImporter.INDEX_NAME_WAY, wayProperties, "way_osm_id");
 
 
@@ -347,6 +350,38 @@ public abstract class OSMWriter<T> {
         this.wayCount++;
     }
 
+    /**
+     * Copy the address tags of a way (a building with its house number, or an interpolation way) to the way node, for
+     * the address index of the geocoder. The coordinates of an interpolation way are copied too, as
+     * <code>addr:coordinates</code> (lon and lat of each node), so the numbers can be placed along it.
+     * 
+     * @param wayProperties
+     * @param wayNodes
+     * @param wayTags
+     * @param changesetNode
+     */
+    protected void addAddressProperties(Map<String, Object> wayProperties, ArrayList<Long> wayNodes,
+            LinkedHashMap<String, Object> wayTags, T changesetNode) {
+        for (String key : ADDRESS_TAGS) {
+            if (wayTags.containsKey(key)) {
+                wayProperties.put(key, wayTags.get(key));
+            }
+        }
+        if (wayTags.containsKey("addr:interpolation")) {
+            double[] coordinates = new double[wayNodes.size() * 2];
+            int size = 0;
+            for (long nd_ref : wayNodes) {
+                T pointNode = getOSMNode(nd_ref, changesetNode);
+                if (pointNode != null) {
+                    Map<String, Object> nodeProps = getNodeProperties(pointNode);
+                    coordinates[size++] = (Double) nodeProps.get("lon");
+                    coordinates[size++] = (Double) nodeProps.get("lat");
+                }
+            }
+            wayProperties.put("addr:coordinates", Arrays.copyOf(coordinates, size));
+        }
+    }
+
     public void createOSMWayOriginal(Map<String, Object> wayProperties, ArrayList<Long> wayNodes,
             LinkedHashMap<String, Object> wayTags) {
         RoadDirection direction = osmImporter.isOneway(wayTags);
@@ -59,10 +59,17 @@ public class LocationUtilityTest extends Neo4jTestCase {
         assertTrue(entity instanceof GeocodeResponseType);
         GeocodeResponseType response = (GeocodeResponseType) entity;
         assertEquals("The response must have one result only", 1, response.getGeocodeResponseList().size());
-        assertEquals("Two ways should match the given street name", 2, response.getGeocodeResponseList().get(0).getNumberOfGeocodedAddresses().intValue());
+        assertEquals("The two ways of the street should be grouped", 1, response.getGeocodeResponseList().get(0).getNumberOfGeocodedAddresses().intValue());
         AddressType address = response.getGeocodeResponseList().get(0).getGeocodedAddress().get(0).getAddress();
         assertEquals("Too many streets for the requested address", 1, address.getStreetAddress().getStreet().size());
         assertEquals("oops street doesn't match ?", "Rue Saint Stanislas", address.getStreetAddress().getStreet().get(0).getValue());
     }
 
+    @Test
+    public void testAutocompleteLimit() {
+        assertEquals(400, locationUtility.autocomplete("Rue", 0).getStatus());
+        assertEquals(400, locationUtility.autocomplete("Rue", -1).getStatus());
+        assertEquals(200, locationUtility.autocomplete("Rue", 1).getStatus());
+    }
+
 }
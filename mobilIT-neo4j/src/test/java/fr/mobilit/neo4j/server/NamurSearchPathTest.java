@@ -90,7 +90,7 @@ public class NamurSearchPathTest extends Neo4jTestCase {
         Double lat2 = new Double(50.4646013);
         Double lon2 = new Double(4.874691600000006);
         Long time = System.currentTimeMillis();
-        Response response = searchPlugin.car(lat1, lon1, lat2, lon2);
+        Response response = searchPlugin.car(lat1, lon1, lat2, lon2, null, null);
         assertEquals(200, response.getStatus());
     }
 
@@ -101,7 +101,7 @@ public class NamurSearchPathTest extends Neo4jTestCase {
         Double lat2 = new Double(50.467381);
         Double lon2 = new Double(4.863633499999992);
         Long time = System.currentTimeMillis();
-        Response response = searchPlugin.cycle(lat1, lon1, lat2, lon2);
+        Response response = searchPlugin.cycle(lat1, lon1, lat2, lon2, null, null);
         assertEquals(200, response.getStatus());
     }
 
@@ -112,7 +112,7 @@ public class NamurSearchPathTest extends Neo4jTestCase {
         Double lat2 = new Double(50.4646013);
         Double lon2 = new Double(4.874691600000006);
         Long time = System.currentTimeMillis();
-        Response response = searchPlugin.pedestrian(lat1, lon1, lat2, lon2);
+        Response response = searchPlugin.pedestrian(lat1, lon1, lat2, lon2, null, null);
         assertEquals(200, response.getStatus());
     }
 
@@ -124,7 +124,7 @@ public class NamurSearchPathTest extends Neo4jTestCase {
         Double lon2 = new Double(4.874691600000006);
 
         Long time = System.currentTimeMillis();
-        Response response = searchPlugin.cycleRent(lat1, lon1, lat2, lon2);
+        Response response = searchPlugin.cycleRent(lat1, lon1, lat2, lon2, null, null);
         assertEquals(200, response.getStatus());
     }
 
@@ -18,7 +18,10 @@
  */
 package fr.mobilit.neo4j.server;
 
+import java.io.ByteArrayOutputStream;
+
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.junit.After;
 import org.junit.Before;
@@ -45,7 +48,7 @@ public class SearchPathTest extends Neo4jTestCase {
         Double lat2 = new Double(-1.5539807081222534);
         Double lon2 = new Double(47.21921469525527);
         Long time = System.currentTimeMillis();
-        Response response = searchPlugin.car(lat1, lon1, lat2, lon2);
+        Response response = searchPlugin.car(lat1, lon1, lat2, lon2, null, null);
         assertEquals(200, response.getStatus());
     }
 
@@ -56,7 +59,7 @@ public class SearchPathTest extends Neo4jTestCase {
         Double lat2 = new Double(-1.5539807081222534);
         Double lon2 = new Double(47.21921469525527);
         Long time = System.currentTimeMillis();
-        Response response = searchPlugin.cycle(lat1, lon1, lat2, lon2);
+        Response response = searchPlugin.cycle(lat1, lon1, lat2, lon2, null, null);
         assertEquals(200, response.getStatus());
     }
 
@@ -67,8 +70,23 @@ public class SearchPathTest extends Neo4jTestCase {
         Double lat2 = new Double(-1.5539807081222534);
         Double lon2 = new Double(47.21921469525527);
         Long time = System.currentTimeMillis();
-        Response response = searchPlugin.pedestrian(lat1, lon1, lat2, lon2);
+        Response response = searchPlugin.pedestrian(lat1, lon1, lat2, lon2, null, null);
+        assertEquals(200, response.getStatus());
+    }
+
+    @Test
+    public void testAllPath() throws Exception {
+        Double lat1 = new Double(-1.5569311380386353);
+        Double lon1 = new Double(47.22245365625265);
+        Double lat2 = new Double(-1.5539807081222534);
+        Double lon2 = new Double(47.21921469525527);
+        Response response = searchPlugin.all(lat1, lon1, lat2, lon2, null, null);
         assertEquals(200, response.getStatus());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(out);
+        String json = out.toString("UTF-8");
+        assertTrue(json.startsWith("{\"car\":"));
+        assertTrue(json.contains("\"pedestrian\":"));
     }
 
     @After
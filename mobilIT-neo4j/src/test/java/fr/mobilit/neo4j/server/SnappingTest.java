@@ -0,0 +1,62 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import fr.mobilit.neo4j.server.routing.SnapBatch;
+
+public class SnappingTest extends TestCase {
+
+    private static InputStream body(String json) throws Exception {
+        return new ByteArrayInputStream(json.getBytes("UTF-8"));
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        SnapBatch batch = Snapping.read(body("[[-1.55, 47.2], [-1.54, 47.21, 12.5], [2, 48]]"), 3);
+        assertEquals(3, batch.size());
+        assertEquals(-1.54, batch.getLongitude(1));
+        assertEquals(47.21, batch.getLatitude(1));
+        assertEquals(48.0, batch.getLatitude(2));
+        assertEquals(0, Snapping.read(body("[]"), 3).size());
+
+        // the reading stops at the first point over the limit, the rest of the body isn't parsed
+        try {
+            Snapping.read(body("[[-1.55, 47.2], [-1.54, 47.21], [-1.53, 47.22], not json"), 2);
+            fail("too many points read");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("too many points"));
+        }
+        for (String invalid : new String[] { "{}", "[[-1.55]]", "[[\"-1.55\", 47.2]]", "[-1.55, 47.2]" }) {
+            try {
+                Snapping.read(body(invalid), 3);
+                fail(invalid + " read");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.format;
+
+import fr.mobilit.neo4j.server.pojo.Route;
+
+/**
+ * Payload size and encoding time of the response formats, for a short, a medium and a long route (one fragment by
+ * edge, as the search engines return them). It's not a unit test, so the build doesn't run it : launch its main with
+ * the test classpath.
+ * 
+ * @author bsimard
+ * 
+ */
+public class RouteFormatBenchmark {
+
+    private static final int WARMUP = 50;
+    private static final int RUNS   = 20;
+
+    private static abstract class Encoder {
+
+        abstract int encode(Route path) throws Exception;
+    }
+
+    /**
+     * @return size of the payload, then the best encoding time in microseconds.
+     */
+    private static long[] measure(Encoder encoder, Route path) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            encoder.encode(path);
+        }
+        long best = Long.MAX_VALUE;
+        int size = 0;
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            size = encoder.encode(path);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return new long[] { size, best / 1000 };
+    }
+
+    public static void main(String[] args) throws Exception {
+        Encoder geojson = new Encoder() {
+
+            @Override
+            int encode(Route path) throws Exception {
+                return GeoJsonWriter.toString(path, null).getBytes("UTF-8").length;
+            }
+        };
+        Encoder polyline = new Encoder() {
+
+            @Override
+            int encode(Route path) throws Exception {
+                return PolylineEncoder.encode(path, null, 5).getBytes("UTF-8").length;
+            }
+        };
+        Encoder binary = new Encoder() {
+
+            @Override
+            int encode(Route path) throws Exception {
+                return BinaryRouteEncoder.encode(path, null, 6).length;
+            }
+        };
+        System.out.println("edges\tgeojson (bytes/us)\tpolyline (bytes/us)\tbinary (bytes/us)");
+        for (int edges : new int[] { 50, 500, 5000 }) {
+            Route path = RouteFormatTest.edges(edges);
+            long[] g = measure(geojson, path);
+            long[] p = measure(polyline, path);
+            long[] b = measure(binary, path);
+            System.out.println(edges + "\t" + g[0] + " / " + g[1] + "\t" + p[0] + " / " + p[1] + "\t" + b[0] + " / "
+                    + b[1]);
+        }
+    }
+
+}
@@ -0,0 +1,191 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.format;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.Test;
+
+import fr.mobilit.neo4j.server.pojo.POI;
+import fr.mobilit.neo4j.server.pojo.Route;
+
+public class RouteFormatTest extends TestCase {
+
+    private static Route path(double[]... lines) {
+        Route path = new Route();
+        for (double[] line : lines) {
+            path.addSegment("Rue \"" + path.getSegmentCount() + "\"", 0.5, 0.25);
+            for (int i = 0; i < line.length; i += 2) {
+                path.addPoint(line[i], line[i + 1]);
+            }
+        }
+        return path;
+    }
+
+    @Test
+    public void testPolyline() {
+        // the example of the polyline algorithm documentation
+        Route path = path(new double[] { -120.2, 38.5, -120.95, 40.7, -126.453, 43.252 });
+        String json = PolylineEncoder.encode(path, null, 5);
+        assertEquals("{\"precision\":5,\"legs\":[{\"name\":\"Rue \\\"0\\\"\",\"length\":0.5,\"time\":0.25,"
+                + "\"polyline\":\"_p~iF~ps|U_ulLnnqC_mqNvxq`@\"}]}", json);
+
+        List<POI> pois = new ArrayList<POI>();
+        pois.add(new POI("1", "Commerce", -1.556, 47.213, "FR_NTS"));
+        json = PolylineEncoder.encode(path, pois, 5);
+        assertTrue(json.endsWith(",\"pois\":[{\"name\":\"Commerce\",\"coordinates\":[-1.556,47.213]}]}"));
+    }
+
+    @Test
+    public void testGeoJson() throws Exception {
+        Route path = path(new double[] { -1.55, 47.2, -1.549, 47.2 }, new double[] { -1.549, 47.2, -1.549,
+                47.201 });
+        path.setCost(1, 2, Double.NaN);
+        List<POI> pois = new ArrayList<POI>();
+        pois.add(new POI("1", "Commerce", -1.556, 47.213, "FR_NTS"));
+        pois.add(new POI("2", "Place du Cirque", -1.558, 47.216, "FR_NTS"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RouteFormat.GEOJSON.write(path, pois, null, out);
+        JSONObject json = (JSONObject) new JSONParser().parse(out.toString("UTF-8"));
+        assertEquals("FeatureCollection", json.get("type"));
+        JSONArray features = (JSONArray) json.get("features");
+        assertEquals(4, features.size());
+        JSONObject poi = (JSONObject) features.get(1);
+        assertEquals("Place du Cirque", ((JSONObject) poi.get("properties")).get("name"));
+        JSONObject leg = (JSONObject) features.get(3);
+        JSONObject properties = (JSONObject) leg.get("properties");
+        assertEquals("Rue \"1\"", properties.get("name"));
+        assertEquals(0.5, properties.get("length"));
+        assertTrue(properties.containsKey("time"));
+        assertNull(properties.get("time"));
+        JSONArray coordinates = (JSONArray) ((JSONObject) leg.get("geometry")).get("coordinates");
+        assertEquals(47.201, ((JSONArray) coordinates.get(1)).get(1));
+
+        // without poi
+        assertEquals("{\"type\":\"FeatureCollection\",\"features\":[]}",
+                GeoJsonWriter.toString(new Route(), null));
+    }
+
+    @Test
+    public void testBinary() {
+        Route path = new Route();
+        path.addSegment("Rue \"0\"", 0.5, 0.25, -1.55, 47.2, -1.549, 47.2);
+        path.addSegment("Rue \"0\"", 0.5, 0.25, -1.549, 47.2, -1.549, 47.201);
+        byte[] bytes = BinaryRouteEncoder.encode(path, null, 6);
+        int[] position = new int[] { 0 };
+        assertEquals('M', bytes[position[0]++]);
+        assertEquals('R', bytes[position[0]++]);
+        assertEquals(BinaryRouteEncoder.VERSION, bytes[position[0]++]);
+        assertEquals(6, varint(bytes, position));
+        // one name for both legs
+        assertEquals(1, varint(bytes, position));
+        position[0] += 1 + varint(bytes, new int[] { position[0] });
+        assertEquals(2, varint(bytes, position));
+        assertEquals(1, varint(bytes, position));
+        assertEquals(0.5f, Float.intBitsToFloat(int32(bytes, position)));
+        assertEquals(0.25f, Float.intBitsToFloat(int32(bytes, position)));
+        assertEquals(2, varint(bytes, position));
+        assertEquals(-1550000, zigzag(varint(bytes, position)));
+        assertEquals(47200000, zigzag(varint(bytes, position)));
+        assertEquals(1000, zigzag(varint(bytes, position)));
+        assertEquals(0, zigzag(varint(bytes, position)));
+        // second leg : deltas from the end of the first one
+        assertEquals(1, varint(bytes, position));
+        position[0] += 8;
+        assertEquals(2, varint(bytes, position));
+        assertEquals(0, zigzag(varint(bytes, position)));
+        assertEquals(0, zigzag(varint(bytes, position)));
+        assertEquals(0, zigzag(varint(bytes, position)));
+        assertEquals(1000, zigzag(varint(bytes, position)));
+        assertEquals(0, varint(bytes, position));
+        assertEquals(bytes.length, position[0]);
+    }
+
+    @Test
+    public void testNegotiate() {
+        assertEquals(RouteFormat.GEOJSON, RouteFormat.negotiate(null, RouteFormat.values()));
+        assertEquals(RouteFormat.GEOJSON, RouteFormat.negotiate("*/*", RouteFormat.values()));
+        assertEquals(RouteFormat.BINARY, RouteFormat.negotiate("application/vnd.mobilit.route", RouteFormat.values()));
+        assertEquals(RouteFormat.POLYLINE, RouteFormat.negotiate(
+                "application/json;q=0.5, application/vnd.mobilit.polyline+json", RouteFormat.values()));
+        assertEquals(RouteFormat.GEOJSON, RouteFormat.negotiate("application/vnd.mobilit.route;q=0.9, text/html",
+                RouteFormat.GEOJSON, RouteFormat.POLYLINE));
+    }
+
+    /**
+     * A route with one fragment by edge, as the search engines return them.
+     */
+    static Route edges(int count) {
+        Route path = new Route(count);
+        double lon = -1.55;
+        double lat = 47.2;
+        for (int i = 0; i < count; i++) {
+            path.addSegment("Street " + (i / 8), 0.035 + (i % 7) * 0.001, 0.25);
+            path.addPoint(lon, lat);
+            lon += 0.0004 + (i % 3) * 0.00013;
+            lat += (i % 5 - 2) * 0.00017;
+            path.addPoint(lon, lat);
+        }
+        return path;
+    }
+
+    @Test
+    public void testPayloadSize() throws Exception {
+        for (int count : new int[] { 50, 500, 5000 }) {
+            Route path = edges(count);
+            int geojson = GeoJsonWriter.toString(path, null).getBytes("UTF-8").length;
+            int polyline = PolylineEncoder.encode(path, null, 5).getBytes("UTF-8").length;
+            int binary = BinaryRouteEncoder.encode(path, null, 6).length;
+            assertTrue(polyline < geojson);
+            assertTrue(binary < polyline);
+        }
+    }
+
+    private static long varint(byte[] bytes, int[] position) {
+        long value = 0;
+        for (int shift = 0;; shift += 7) {
+            byte b = bytes[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int int32(byte[] bytes, int[] position) {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | (bytes[position[0]++] & 0xFF);
+        }
+        return value;
+    }
+
+}
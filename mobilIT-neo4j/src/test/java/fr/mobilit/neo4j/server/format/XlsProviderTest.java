@@ -0,0 +1,51 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.format;
+
+import java.lang.reflect.Type;
+
+import javax.xml.bind.JAXBElement;
+
+import junit.framework.TestCase;
+import net.opengis.xls.v_1_2_0.GeocodeRequestType;
+
+import org.junit.Test;
+
+public class XlsProviderTest extends TestCase {
+
+    private JAXBElement<GeocodeRequestType> request;
+    private JAXBElement<String>             other;
+
+    private static Type field(String name) throws Exception {
+        return XlsProviderTest.class.getDeclaredField(name).getGenericType();
+    }
+
+    @Test
+    public void testIsXls() throws Exception {
+        XlsProvider provider = new XlsProvider();
+        assertTrue(provider.isReadable(GeocodeRequestType.class, GeocodeRequestType.class, null, null));
+        assertTrue(provider.isReadable(JAXBElement.class, field("request"), null, null));
+        assertFalse(provider.isReadable(JAXBElement.class, field("other"), null, null));
+        // a raw element is left to the default provider
+        assertFalse(provider.isReadable(JAXBElement.class, JAXBElement.class, null, null));
+        assertFalse(provider.isWriteable(JAXBElement.class, JAXBElement.class, null, null));
+        assertFalse(provider.isWriteable(String.class, String.class, null, null));
+    }
+
+}
@@ -0,0 +1,228 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.geocoding;
+
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import fr.mobilit.neo4j.server.routing.EdgeGrid;
+
+public class AddressIndexTest extends TestCase {
+
+    private static final double LON = -1.55;
+    private static final double LAT = 47.2;
+
+    /**
+     * Two parallel streets 100 m apart, with numbers every 10 m on the first one.
+     */
+    private static AddressIndex index() {
+        AddressBuilder builder = new AddressBuilder(200);
+        double dy = 100 / EdgeGrid.METERS_BY_DEGREE;
+        for (int i = 0; i < 10; i++) {
+            builder.addSegment("Rue Racine", LON + i * 0.001, LAT, LON + (i + 1) * 0.001, LAT);
+            builder.addSegment("Rue Crébillon", LON + i * 0.001, LAT + dy, LON + (i + 1) * 0.001, LAT + dy);
+        }
+        double dx = 10 / (Math.cos(Math.toRadians(LAT)) * EdgeGrid.METERS_BY_DEGREE);
+        for (int i = 0; i < 20; i++) {
+            builder.addAddress(Integer.toString(2 * i + 1), "Rue Racine", LON + i * dx, LAT);
+        }
+        // an address without street, on the second street
+        builder.addAddress("4bis", null, LON + 0.005, LAT + dy);
+        return builder.build();
+    }
+
+    @Test
+    public void testReverse() {
+        AddressIndex index = index();
+        assertEquals(2, index.getStreetCount());
+        assertEquals(20, index.getSegmentCount());
+        assertEquals(21, index.getAddressCount());
+
+        // 5 m north of the number 7
+        double dx = 10 / (Math.cos(Math.toRadians(LAT)) * EdgeGrid.METERS_BY_DEGREE);
+        Address address = index.reverse(LON + 3 * dx, LAT + 5 / EdgeGrid.METERS_BY_DEGREE, 500, 50);
+        assertEquals("Rue Racine", address.getStreet());
+        assertEquals("7", address.getNumber());
+        assertEquals(5.0, address.getDistance(), 0.01);
+
+        // on the second street : its number without street
+        address = index.reverse(LON + 0.005, LAT + 90 / EdgeGrid.METERS_BY_DEGREE, 500, 50);
+        assertEquals("Rue Crébillon", address.getStreet());
+        assertEquals("4bis", address.getNumber());
+
+        // far from the numbers : the projection on the street
+        address = index.reverse(LON + 0.009, LAT + 20 / EdgeGrid.METERS_BY_DEGREE, 500, 50);
+        assertEquals("Rue Racine", address.getStreet());
+        assertNull(address.getNumber());
+        assertEquals(20.0, address.getDistance(), 0.01);
+        assertEquals(LON + 0.009, address.getLongitude(), 1e-9);
+        assertEquals(LAT, address.getLatitude(), 1e-9);
+
+        // nothing in the distance
+        assertNull(index.reverse(LON - 0.1, LAT, 500, 50));
+    }
+
+    @Test
+    public void testSameAsBruteForce() {
+        Random random = new Random(11);
+        AddressBuilder builder = new AddressBuilder(200);
+        double[] segments = new double[4000];
+        for (int i = 0; i < 1000; i++) {
+            double lon = LON + random.nextDouble() * 0.1;
+            double lat = LAT + random.nextDouble() * 0.1;
+            segments[i * 4] = lon;
+            segments[i * 4 + 1] = lat;
+            segments[i * 4 + 2] = lon + random.nextDouble() * 0.002;
+            segments[i * 4 + 3] = lat + random.nextDouble() * 0.002;
+            builder.addSegment("street " + i, segments[i * 4], segments[i * 4 + 1], segments[i * 4 + 2],
+                    segments[i * 4 + 3]);
+        }
+        AddressIndex index = builder.build();
+        for (int i = 0; i < 200; i++) {
+            double lon = LON + random.nextDouble() * 0.1;
+            double lat = LAT + random.nextDouble() * 0.1;
+            double best = Double.POSITIVE_INFINITY;
+            for (int j = 0; j < 1000; j++) {
+                best = Math.min(best, PackedTree.distance(lon, lat, segments[j * 4], segments[j * 4 + 1],
+                        segments[j * 4 + 2], segments[j * 4 + 3]));
+            }
+            assertEquals(best, index.reverse(lon, lat, 5000, 50).getDistance(), 1e-6);
+        }
+    }
+
+    @Test
+    public void testSearch() {
+        AddressBuilder builder = new AddressBuilder(200);
+        // two connected ways, and a third one 100 m after a square
+        builder.addSegment("Rue Saint-Stanislas", LON, LAT, LON + 0.001, LAT);
+        builder.addSegment("Rue Saint-Stanislas", LON + 0.001, LAT, LON + 0.002, LAT);
+        builder.addSegment("Rue Saint-Stanislas", LON + 0.0033, LAT, LON + 0.004, LAT);
+        // the same name in another town
+        builder.addSegment("Rue Saint-Stanislas", LON + 0.5, LAT, LON + 0.501, LAT);
+        builder.addSegment("Rue Sainte-Anne", LON, LAT + 0.01, LON + 0.01, LAT + 0.01);
+        builder.addSegment("Boulevard de Stalingrad", LON, LAT + 0.02, LON + 0.0005, LAT + 0.02);
+        AddressIndex index = builder.build();
+        assertEquals(3, index.getStreetCount());
+        assertEquals(4, index.getGroupCount());
+
+        // one result by street, the longest first
+        List<Address> streets = index.search("rue saint stanislas", 10);
+        assertEquals(2, streets.size());
+        assertEquals("Rue Saint-Stanislas", streets.get(0).getStreet());
+        assertEquals(LON + 0.0015, streets.get(0).getLongitude(), 1e-9);
+        assertEquals(LON + 0.5005, streets.get(1).getLongitude(), 1e-9);
+
+        // prefix of a word of the name, folded : then the ones at an edit
+        streets = index.search("SAINTE", 10);
+        assertEquals(3, streets.size());
+        assertEquals("Rue Sainte-Anne", streets.get(0).getStreet());
+        assertEquals("Rue Saint-Stanislas", streets.get(1).getStreet());
+        streets = index.search("sta", 10);
+        assertEquals(3, streets.size());
+        assertEquals("Rue Saint-Stanislas", streets.get(0).getStreet());
+        assertEquals("Boulevard de Stalingrad", streets.get(2).getStreet());
+
+        // with a typo : the exact matches first
+        streets = index.search("Stalingard", 10);
+        assertEquals(1, streets.size());
+        assertEquals("Boulevard de Stalingrad", streets.get(0).getStreet());
+        streets = index.search("rue sainte", 10);
+        assertEquals("Rue Sainte-Anne", streets.get(0).getStreet());
+        assertEquals(3, streets.size());
+
+        assertTrue(index.search("gare", 10).isEmpty());
+        assertEquals(1, index.search("rue", 1).size());
+    }
+
+    @Test
+    public void testHouseNumbers() {
+        AddressBuilder builder = new AddressBuilder(200);
+        builder.addSegment("Rue Racine", LON, LAT, LON + 0.002, LAT);
+        builder.addSegment("Rue Racine", LON + 0.5, LAT, LON + 0.502, LAT);
+        builder.addAddress("1", "Rue Racine", LON, LAT);
+        builder.addAddress("2", "Rue Racine", LON, LAT + 0.0001);
+        builder.addAddress("12", "Rue Racine", LON + 0.001, LAT + 0.0001);
+        builder.addAddress("12 bis", "Rue Racine", LON + 0.0011, LAT + 0.0001);
+        builder.addAddress("21", "Rue Racine", LON + 0.002, LAT);
+        // without street, on the nearest one
+        builder.addAddress("9", null, LON + 0.0008, LAT);
+        // the same number in the other town
+        builder.addAddress("12", "Rue Racine", LON + 0.501, LAT + 0.0001);
+        AddressIndex index = builder.build();
+
+        // the number and its suffix
+        Address door = index.search("12 rue racine", 10).get(0);
+        assertEquals("12", door.getNumber());
+        assertEquals(LON + 0.001, door.getLongitude(), 1e-9);
+        door = index.search("12 bis, Rue Racine", 10).get(0);
+        assertEquals("12 bis", door.getNumber());
+        assertEquals(LON + 0.0011, door.getLongitude(), 1e-9);
+        door = index.search("rue racine 9", 10).get(0);
+        assertEquals("Rue Racine", door.getStreet());
+        assertEquals(LON + 0.0008, door.getLongitude(), 1e-9);
+
+        // between the numbers of the same side
+        door = index.search("7 rue racine", 10).get(0);
+        assertEquals("7", door.getNumber());
+        assertEquals(LON + 0.0008 * 6 / 8, door.getLongitude(), 1e-9);
+        assertEquals(LAT, door.getLatitude(), 1e-9);
+
+        // both streets with the number, a street without it after
+        List<Address> doors = index.search("12 rue racine", 10);
+        assertEquals(2, doors.size());
+        assertEquals(LON + 0.501, doors.get(1).getLongitude(), 1e-9);
+        doors = index.search("1 rue racine", 10);
+        assertEquals("1", doors.get(0).getNumber());
+        assertNull(doors.get(1).getNumber());
+        assertNull(index.search("30 rue racine", 10).get(0).getNumber());
+    }
+
+    @Test
+    public void testInterpolation() {
+        AddressBuilder builder = new AddressBuilder(200);
+        double[] way = { LON, LAT, LON + 0.001, LAT, LON + 0.002, LAT };
+        assertEquals(4, builder.addInterpolation("2", "12", "Rue Racine", "even", way));
+        assertEquals(0, builder.addInterpolation("A", "12", "Rue Racine", "even", way));
+        assertEquals(0, builder.addInterpolation("2", "12", "Rue Racine", "alphabetic", way));
+        assertEquals(0, builder.addInterpolation("1", "99999", "Rue Racine", "odd", way));
+        assertEquals(9, builder.addInterpolation("11", "1", "Rue Racine", "all", way));
+        builder.addSegment("Rue Racine", LON, LAT, LON + 0.001, LAT);
+        AddressIndex index = builder.build();
+        assertEquals(13, index.getAddressCount());
+
+        // 6 is at the 4 / 10 of the way from 2 to 12
+        Address door = index.search("6 rue racine", 1).get(0);
+        assertEquals("6", door.getNumber());
+        assertEquals(LON + 0.0008, door.getLongitude(), 1e-6);
+        assertEquals(LAT, door.getLatitude(), 1e-6);
+    }
+
+    @Test
+    public void testNumberValue() {
+        assertEquals(12, AddressIndex.numberValue("12 bis"));
+        assertEquals(-1, AddressIndex.numberValue("A"));
+        assertEquals(-1, AddressIndex.numberValue(null));
+        assertEquals("12bis", AddressIndex.foldNumber("12 Bis"));
+    }
+
+}
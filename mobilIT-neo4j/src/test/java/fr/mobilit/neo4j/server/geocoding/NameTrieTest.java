@@ -0,0 +1,72 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.geocoding;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class NameTrieTest extends TestCase {
+
+    @Test
+    public void testFold() {
+        assertEquals("rue saint stanislas", NameTrie.fold(" Rue  Saint-Stanislas "));
+        assertEquals("place de l eglise", NameTrie.fold("Place de l'Église"));
+        assertEquals("rue des soeurs", NameTrie.fold("Rue des Sœurs"));
+        assertEquals(Arrays.asList("allee du 8 mai", "du 8 mai", "8 mai", "mai"),
+                Arrays.asList(NameTrie.suffixes("allee du 8 mai")));
+        assertEquals(0, NameTrie.maxEdits(3));
+        assertEquals(2, NameTrie.maxEdits(12));
+    }
+
+    @Test
+    public void testSearch() {
+        String[] keys = { "rue racine", "racine", "rue crebillon", "crebillon", "rue", "rue de racan", "racan" };
+        int[] streets = { 0, 0, 1, 1, 2, 3, 3 };
+        NameTrie trie = new NameTrie(keys, streets, new float[] { 10, 20, 1, 5 });
+        int[] distances = new int[4];
+        int[] found = new int[4];
+
+        // exact prefix
+        Arrays.fill(distances, Integer.MAX_VALUE);
+        assertEquals(2, trie.search("rac", 0, distances, found));
+        assertEquals(0, distances[0]);
+        assertEquals(0, distances[3]);
+
+        // one substitution
+        Arrays.fill(distances, Integer.MAX_VALUE);
+        assertEquals(1, trie.search("racone", 1, distances, found));
+        assertEquals(0, found[0]);
+        assertEquals(1, distances[0]);
+
+        // one deletion, one transposition is two edits
+        Arrays.fill(distances, Integer.MAX_VALUE);
+        assertEquals(1, trie.search("crbillon", 1, distances, found));
+        assertEquals(1, found[0]);
+        Arrays.fill(distances, Integer.MAX_VALUE);
+        assertEquals(0, trie.search("crbeillon", 1, distances, found));
+
+        // all the streets of a short prefix
+        Arrays.fill(distances, Integer.MAX_VALUE);
+        assertEquals(4, trie.search("r", 0, distances, found));
+    }
+
+}
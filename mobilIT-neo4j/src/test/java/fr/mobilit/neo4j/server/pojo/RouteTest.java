@@ -0,0 +1,81 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.pojo;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class RouteTest extends TestCase {
+
+    @Test
+    public void testGrowAndAppend() {
+        Route route = new Route(1);
+        assertTrue(route.isEmpty());
+        for (int i = 0; i < 50; i++) {
+            route.addSegment("Rue " + i, 0.1, 0.01, -1.55 + i * 0.001, 47.2, -1.55 + (i + 1) * 0.001, 47.2);
+        }
+        assertEquals(50, route.getSegmentCount());
+        assertEquals(100, route.getPointCount());
+        assertEquals("Rue 49", route.getName(49));
+        assertEquals(-1.5, route.getLongitude(49, 1), 1e-9);
+
+        Route leg = new Route();
+        leg.addSegment("Quai de la Fosse", 0.2, Double.NaN);
+        leg.addPoint(-1.5, 47.2);
+        leg.addPoint(-1.5, 47.21);
+        leg.addPoint(-1.49, 47.21);
+        int from = route.getSegmentCount();
+        route.append(leg);
+        route.setCost(from, route.getSegmentCount(), 0.3);
+        assertEquals(51, route.getSegmentCount());
+        assertEquals(3, route.getPointCount(50));
+        assertEquals(0.3, route.getCost(50));
+        assertEquals(0.01, route.getCost(49));
+    }
+
+    @Test
+    public void testItineraries() {
+        Route route = new Route();
+        route.addSegment("Rue Racine", 0.12, Double.NaN, -1.56, 47.21, -1.559, 47.211);
+        List<Itinerary> itineraries = route.toItineraries();
+        assertEquals(1, itineraries.size());
+        assertNull(itineraries.get(0).getCost());
+        assertEquals(47.211, itineraries.get(0).getLine().get(1).getLatitude());
+
+        Route back = Route.fromItineraries(itineraries);
+        assertEquals("Rue Racine", back.getName(0));
+        assertEquals(0.12, back.getDistance(0));
+        assertTrue(Double.isNaN(back.getCost(0)));
+        assertEquals(2, back.getPointCount(0));
+    }
+
+    @Test
+    public void testPointWithoutSegment() {
+        try {
+            new Route().addPoint(-1.55, 47.2);
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+}
@@ -0,0 +1,116 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.routing;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class MapMatcherTest extends TestCase {
+
+    private static final double LON = -1.55;
+    private static final double LAT = 47.2;
+
+    /**
+     * Drive along the row 0 from the column 0 to 9, then along the column 9 to the row 9, with a point every 30 m and
+     * a GPS error up to 8 m.
+     */
+    private static int[] match(ArrayGraph graph, int window) {
+        MapMatcher matcher = new MapMatcher(new EdgeGrid(graph, 0.002), Profile.CAR, 8, window);
+        Random random = new Random(42);
+        double step = 30 / EdgeGrid.METERS_BY_DEGREE;
+        double noise = 8 / EdgeGrid.METERS_BY_DEGREE;
+        for (double x = 0; x <= 0.009; x += step / Math.cos(Math.toRadians(LAT))) {
+            matcher.add(LON + x + (random.nextDouble() - 0.5) * noise, LAT + (random.nextDouble() - 0.5) * noise);
+        }
+        for (double y = 0; y <= 0.009; y += step) {
+            matcher.add(LON + 0.009 + (random.nextDouble() - 0.5) * noise, LAT + y + (random.nextDouble() - 0.5)
+                    * noise);
+        }
+        int[] path = matcher.finish();
+        assertEquals(0, matcher.getBreakCount());
+        return path;
+    }
+
+    private static void assertOnRoute(ArrayGraph graph, int[] path) {
+        for (int i = 0; i < path.length; i++) {
+            int source = graph.getEdgeSource(path[i]);
+            int target = graph.getEdgeTarget(path[i]);
+            // row 0 eastward, then column 9 northward
+            assertTrue((source / 20 == 0 && target == source + 1) || (source % 20 == 9 && target == source + 20));
+            if (i > 0) {
+                assertEquals(graph.getEdgeTarget(path[i - 1]), source);
+            }
+        }
+        assertEquals(0, graph.getEdgeSource(path[0]));
+        assertEquals(9 * 20 + 9, graph.getEdgeTarget(path[path.length - 1]));
+    }
+
+    @Test
+    public void testMatch() {
+        ArrayGraph graph = RegionRegistryTest.grid(LON, LAT, 20);
+        int[] path = match(graph, 32);
+        assertEquals(18, path.length);
+        assertOnRoute(graph, path);
+        // a short window commits points while the trace goes on
+        path = match(graph, 3);
+        assertEquals(18, path.length);
+        assertOnRoute(graph, path);
+    }
+
+    @Test
+    public void testEdgeGrid() {
+        ArrayGraph graph = RegionRegistryTest.grid(LON, LAT, 10);
+        EdgeGrid grid = new EdgeGrid(graph, 0.002);
+        int[] edges = new int[4];
+        double[] fractions = new double[4];
+        double[] distances = new double[4];
+        // 10 m north of the middle of the edge 0 -> 1
+        int count = grid.findEdges(LON + 0.0005, LAT + 10 / EdgeGrid.METERS_BY_DEGREE, 50, null, edges, fractions,
+                distances);
+        assertEquals(4, count);
+        for (int i = 0; i < 2; i++) {
+            assertEquals(0, Math.min(graph.getEdgeSource(edges[i]), graph.getEdgeTarget(edges[i])));
+            assertEquals(1, Math.max(graph.getEdgeSource(edges[i]), graph.getEdgeTarget(edges[i])));
+            assertEquals(10.0, distances[i], 0.01);
+            assertEquals(0.5, fractions[i], 0.01);
+        }
+        assertTrue(distances[2] > 10);
+        assertEquals(0, grid.findEdges(LON + 0.1, LAT, 50, null, edges, fractions, distances));
+    }
+
+    @Test
+    public void testGpxReader() throws Exception {
+        String gpx = "<?xml version=\"1.0\"?><gpx version=\"1.1\" xmlns=\"http://www.topografix.com/GPX/1/1\">"
+                + "<trk><trkseg><trkpt lat=\"47.2\" lon=\"-1.55\"><ele>10</ele></trkpt>"
+                + "<trkpt lat=\"47.201\" lon=\"-1.549\"/></trkseg></trk></gpx>";
+        GpxReader reader = new GpxReader(new ByteArrayInputStream(gpx.getBytes("UTF-8")));
+        assertTrue(reader.next());
+        assertEquals(-1.55, reader.getLongitude());
+        assertEquals(47.2, reader.getLatitude());
+        assertTrue(reader.next());
+        assertEquals(47.201, reader.getLatitude());
+        assertFalse(reader.next());
+        reader.close();
+    }
+
+}
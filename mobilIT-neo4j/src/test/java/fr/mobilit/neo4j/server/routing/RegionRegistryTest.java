@@ -0,0 +1,166 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.routing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class RegionRegistryTest extends TestCase {
+
+    private static final float[] COSTS = new float[] { 1f, 1f, 1f };
+
+    /**
+     * Grid of size x size nodes, spaced by 0.001 degree from (lon, lat), with edges in both directions.
+     */
+    static ArrayGraph grid(double lon, double lat, int size) {
+        GraphBuilder builder = new GraphBuilder();
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                builder.addNode(i * size + j, lon + j * 0.001, lat + i * 0.001);
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                int node = i * size + j;
+                if (j + 1 < size) {
+                    builder.addEdge(node, node + 1, 75f, "row " + i, COSTS);
+                    builder.addEdge(node + 1, node, 75f, "row " + i, COSTS);
+                }
+                if (i + 1 < size) {
+                    builder.addEdge(node, node + size, 110f, null, COSTS);
+                    builder.addEdge(node + size, node, 110f, null, COSTS);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void testSearch() {
+        ArrayGraph graph = grid(-1.55, 47.2, 10);
+        assertEquals(100, graph.getNodeCount());
+        assertEquals(360, graph.getEdgeCount());
+        assertEquals(42, graph.findNode(42L));
+
+        GraphSearch search = new GraphSearch(graph, Profile.CAR, false);
+        search.addSource(0, 0);
+        search.setTargets(new int[] { 99 });
+        search.calculate();
+        assertTrue(search.isSettled(99));
+        assertEquals(18.0, search.getCost(99));
+        int[] path = search.getPathAsEdges(99);
+        assertEquals(18, path.length);
+        assertEquals(0, graph.getEdgeSource(path[0]));
+        assertEquals(99, graph.getEdgeTarget(path[17]));
+        for (int i = 1; i < path.length; i++) {
+            assertEquals(graph.getEdgeTarget(path[i - 1]), graph.getEdgeSource(path[i]));
+        }
+
+        // backward, bounded
+        search = new GraphSearch(graph, Profile.PEDESTRIAN, true);
+        search.addSource(99, 0);
+        search.setMaxCost(2);
+        search.calculate();
+        assertEquals(6, search.getSettledCount());
+        assertTrue(search.isSettled(88));
+        assertFalse(search.isSettled(0));
+        path = search.getPathAsEdges(88);
+        assertEquals(88, graph.getEdgeSource(path[0]));
+        assertEquals(99, graph.getEdgeTarget(path[1]));
+    }
+
+    @Test
+    public void testForbiddenEdge() {
+        GraphBuilder builder = new GraphBuilder();
+        int a = builder.addNode(10L, 0, 0);
+        int b = builder.addNode(20L, 0.001, 0);
+        builder.addEdge(a, b, 100f, "oneway", new float[] { 1f, 1f, 1f });
+        builder.addEdge(b, a, 100f, "oneway", new float[] { Float.POSITIVE_INFINITY, 1f, 1f });
+        ArrayGraph graph = builder.build();
+        GraphSearch search = new GraphSearch(graph, Profile.CAR, false);
+        search.addSource(b, 0);
+        search.calculate();
+        assertFalse(search.isSettled(a));
+        search = new GraphSearch(graph, Profile.CYCLE, false);
+        search.addSource(b, 0);
+        search.calculate();
+        assertTrue(search.isSettled(a));
+    }
+
+    @Test
+    public void testNodeGrid() {
+        ArrayGraph graph = grid(-1.55, 47.2, 10);
+        NodeGrid grid = new NodeGrid(graph, 0.0025);
+        assertEquals(0, grid.findNearest(-1.5501, 47.1999, 0.01));
+        assertEquals(55, grid.findNearest(-1.5449, 47.2051, 0.01));
+        assertEquals(99, grid.findNearest(-1.53, 47.22, 0.1));
+        assertEquals(-1, grid.findNearest(-1.0, 47.0, 0.01));
+    }
+
+    @Test
+    public void testRegions() throws Exception {
+        final AtomicInteger loads = new AtomicInteger();
+        List<Region> regions = new ArrayList<Region>();
+        // triangle
+        regions.add(new Region("A", new double[] { 0, 0, 1, 0, 0, 1 }));
+        regions.add(new Region("B", new double[] { 10, 10, 11, 10, 11, 11, 10, 11 }));
+        RegionRegistry registry = new RegionRegistry(regions, new ShardLoader() {
+
+            @Override
+            public RoutingShard load(Region region) {
+                loads.incrementAndGet();
+                double[] bounds = region.getBounds();
+                ArrayGraph graph = grid(bounds[0], bounds[1], 3);
+                return new RoutingShard(region, graph, new NodeGrid(graph, 0.001), 10);
+            }
+        });
+        assertEquals("A", registry.findRegion(0.2, 0.2).getGeocode());
+        assertNull(registry.findRegion(0.8, 0.8));
+        assertNull(registry.getShard(5, 5));
+        assertTrue(registry.getLoadedRegions().isEmpty());
+        // not loaded : no build
+        assertNull(registry.getLoadedShard(10.5, 10.5));
+        assertEquals(0, loads.get());
+
+        RoutingShard shard = registry.getShard(10.5, 10.5);
+        assertEquals("B", shard.getRegion().getGeocode());
+        assertSame(shard, registry.getLoadedShard(10.5, 10.5));
+        assertSame(shard, registry.getShard(10.2, 10.7));
+        assertEquals(1, loads.get());
+        assertEquals(1, registry.getLoadedRegions().size());
+
+        int[] path = shard.route(Profile.CAR, 0, 8);
+        assertEquals(4, path.length);
+        assertSame(path, shard.route(Profile.CAR, 0, 8));
+        assertEquals(4.0, shard.getCost(path, Profile.CAR));
+
+        registry.reload("B");
+        assertEquals(2, loads.get());
+        assertNotSame(shard, registry.getShard(10.5, 10.5));
+        // not loaded : nothing to do
+        registry.reload("A");
+        assertEquals(2, loads.get());
+    }
+
+}
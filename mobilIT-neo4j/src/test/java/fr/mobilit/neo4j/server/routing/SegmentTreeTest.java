@@ -0,0 +1,163 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.routing;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import fr.mobilit.neo4j.server.pojo.Route;
+
+public class SegmentTreeTest extends TestCase {
+
+    private static final double LON = -1.55;
+    private static final double LAT = 47.2;
+
+    @Test
+    public void testSnap() {
+        ArrayGraph graph = RegionRegistryTest.grid(LON, LAT, 10);
+        SegmentTree tree = new SegmentTree(graph);
+        assertEquals(180, tree.getSegmentCount());
+
+        // 10 m north of the middle of the segment 55-56
+        Snap snap = tree.snap(LON + 0.0055, LAT + 0.005 + 10 / EdgeGrid.METERS_BY_DEGREE, null, 1000);
+        assertEquals(10.0, snap.getDistance(), 0.01);
+        assertEquals(LON + 0.0055, snap.getLongitude(), 1e-9);
+        assertEquals(LAT + 0.005, snap.getLatitude(), 1e-9);
+        int source = graph.getEdgeSource(snap.getEdge());
+        int target = graph.getEdgeTarget(snap.getEdge());
+        assertEquals(55 + 56, source + target);
+        assertEquals(source, graph.getEdgeTarget(snap.getReverse()));
+        assertEquals(0.5, snap.getFraction(), 1e-6);
+
+        // far from the grid : found by expanding the radius, up to the maximum distance
+        snap = tree.snap(LON - 0.01, LAT, null, 5000);
+        assertEquals(0, snap.getNearestNode(graph));
+        assertEquals(0.0, snap.getFraction());
+        assertNull(tree.snap(LON - 0.01, LAT, null, 500));
+    }
+
+    @Test
+    public void testSameAsBruteForce() {
+        ArrayGraph graph = RegionRegistryTest.grid(LON, LAT, 30);
+        SegmentTree tree = new SegmentTree(graph);
+        EdgeGrid grid = new EdgeGrid(graph, 0.002);
+        Random random = new Random(7);
+        int[] edges = new int[1];
+        double[] fractions = new double[1];
+        double[] distances = new double[1];
+        for (int i = 0; i < 200; i++) {
+            double lon = LON + random.nextDouble() * 0.03;
+            double lat = LAT + random.nextDouble() * 0.03;
+            Snap snap = tree.snap(lon, lat, null, 1000);
+            assertEquals(1, grid.findEdges(lon, lat, 1000, null, edges, fractions, distances));
+            assertEquals(distances[0], snap.getDistance(), 1e-6);
+        }
+    }
+
+    @Test
+    public void testSearchBetweenSnaps() throws Exception {
+        ArrayGraph graph = RegionRegistryTest.grid(LON, LAT, 10);
+        RoutingShard shard = new RoutingShard(new Region("A", new double[] { -2, 47, -1, 47, -1, 48 }), graph,
+                new NodeGrid(graph, 0.001), 10);
+
+        // from the middle of 0-1 to the middle of 33-34 : half an edge, 5 edges, half an edge
+        Route route = shard.search(LON + 0.0005, LAT, LON + 0.0035, LAT + 0.003, Profile.CAR, 0.01);
+        assertEquals(7, route.getSegmentCount());
+        assertEquals(6.0, route.getCost(0), 1e-9);
+        assertEquals("row 0", route.getName(0));
+        assertEquals(37.5, route.getDistance(0), 1e-4);
+        assertEquals(LON + 0.0005, route.getLongitude(0, 0), 1e-9);
+        assertEquals("row 3", route.getName(6));
+        assertEquals(37.5, route.getDistance(6), 1e-4);
+        assertEquals(LON + 0.0035, route.getLongitude(6, 1), 1e-9);
+
+        // on the same street
+        route = shard.search(LON + 0.0008, LAT, LON + 0.0002, LAT, Profile.CAR, 0.01);
+        assertEquals(1, route.getSegmentCount());
+        assertEquals(0.6, route.getCost(0), 1e-9);
+        assertEquals(45.0, route.getDistance(0), 1e-4);
+
+        // the nearest node, for the Neo4j searches
+        assertEquals(1, shard.findNearestNode(LON + 0.0009, LAT + 0.0001, 0.01));
+        assertNull(shard.search(LON + 0.0005, LAT, LON + 1, LAT, Profile.CAR, 0.01));
+    }
+
+    @Test
+    public void testOneWay() throws Exception {
+        GraphBuilder builder = new GraphBuilder();
+        int a = builder.addNode(10L, LON, LAT);
+        int b = builder.addNode(20L, LON + 0.001, LAT);
+        int c = builder.addNode(30L, LON + 0.001, LAT + 0.001);
+        builder.addEdge(a, b, 75f, "oneway", new float[] { 1f, 1f, 1f });
+        builder.addEdge(b, a, 75f, "oneway", new float[] { Float.POSITIVE_INFINITY, 1f, 1f });
+        builder.addEdge(b, c, 110f, "loop", new float[] { 1f, 1f, 1f });
+        builder.addEdge(c, b, 110f, "loop", new float[] { 1f, 1f, 1f });
+        builder.addEdge(c, a, 150f, "back", new float[] { 1f, 1f, 1f });
+        builder.addEdge(a, c, 150f, "back", new float[] { 1f, 1f, 1f });
+        ArrayGraph graph = builder.build();
+        RoutingShard shard = new RoutingShard(new Region("A", new double[] { -2, 47, -1, 47, -1, 48 }), graph,
+                new NodeGrid(graph, 0.001), 10);
+
+        // backward on a one way street : around the block for a car, straight by cycle
+        Route route = shard.search(LON + 0.0008, LAT, LON + 0.0002, LAT, Profile.CAR, 0.01);
+        assertEquals(2.4, route.getCost(0), 1e-6);
+        assertEquals(4, route.getSegmentCount());
+        route = shard.search(LON + 0.0008, LAT, LON + 0.0002, LAT, Profile.CYCLE, 0.01);
+        assertEquals(0.6, route.getCost(0), 1e-6);
+    }
+
+    @Test
+    public void testSnapOnce() throws Exception {
+        GraphBuilder builder = new GraphBuilder();
+        int a = builder.addNode(10L, LON, LAT);
+        int b = builder.addNode(20L, LON + 0.001, LAT);
+        int c = builder.addNode(30L, LON, LAT + 0.001);
+        int d = builder.addNode(40L, LON + 0.001, LAT + 0.001);
+        float[] footway = new float[] { Float.POSITIVE_INFINITY, 1f, 1f };
+        float[] street = new float[] { 1f, 1f, 1f };
+        builder.addEdge(a, b, 75f, "footway", footway);
+        builder.addEdge(b, a, 75f, "footway", footway);
+        builder.addEdge(c, d, 75f, "street", street);
+        builder.addEdge(d, c, 75f, "street", street);
+        builder.addEdge(a, c, 110f, "west", street);
+        builder.addEdge(c, a, 110f, "west", street);
+        builder.addEdge(b, d, 110f, "east", street);
+        builder.addEdge(d, b, 110f, "east", street);
+        ArrayGraph graph = builder.build();
+        RoutingShard shard = new RoutingShard(new Region("A", new double[] { -2, 47, -1, 47, -1, 48 }), graph,
+                new NodeGrid(graph, 0.001), 10);
+
+        // both points on the footway, the nearest street
+        Endpoints endpoints = shard.snap(LON + 0.0002, LAT + 0.0001, LON + 0.0008, LAT + 0.0001, 0.01);
+        assertEquals(10L, endpoints.getStartId());
+        assertEquals(20L, endpoints.getEndId());
+        Route route = shard.search(endpoints, Profile.PEDESTRIAN);
+        assertEquals(1, route.getSegmentCount());
+        assertEquals(0.6, route.getCost(0), 1e-6);
+        // closed to cars : snapped again on the streets around
+        route = shard.search(endpoints, Profile.CAR);
+        assertEquals("west", route.getName(0));
+        assertEquals("east", route.getName(route.getSegmentCount() - 1));
+        assertNull(shard.snap(LON + 0.0002, LAT, LON + 1, LAT, 0.01));
+    }
+
+}
@@ -0,0 +1,109 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.routing;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class ShardSnapshotTest extends TestCase {
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        File directory = new File(System.getProperty("java.io.tmpdir"), "mobilit-snapshot-" + System.nanoTime());
+        Region region = new Region("A", new double[] { -1.6, 47.1, -1.5, 47.1, -1.5, 47.3, -1.6, 47.3 });
+        ArrayGraph graph = RegionRegistryTest.grid(-1.55, 47.2, 10);
+        RoutingShard shard = new RoutingShard(region, graph, new NodeGrid(graph, 0.0025), 10);
+
+        assertFalse(ShardSnapshot.exists(directory, "A"));
+        assertNull(ShardSnapshot.load(directory, region, "1", 10, 0));
+        ShardSnapshot.save(directory, shard, "1");
+        assertTrue(ShardSnapshot.exists(directory, "A"));
+
+        RoutingShard loaded = ShardSnapshot.load(directory, region, "1", 10, 0);
+        assertEquals(graph.getNodeCount(), loaded.getGraph().getNodeCount());
+        assertEquals(graph.getEdgeCount(), loaded.getGraph().getEdgeCount());
+        assertEquals(55, loaded.getLocator().findNearest(-1.5449, 47.2051, 0.01));
+        int[] path = loaded.route(Profile.CAR, 0, 99);
+        assertEquals(18, path.length);
+        assertEquals(18.0, loaded.getCost(path, Profile.CAR));
+        for (int edge : path) {
+            assertEquals(graph.getEdgeName(edge), loaded.getGraph().getEdgeName(edge));
+        }
+
+        // another dataset
+        assertNull(ShardSnapshot.load(directory, region, "2", 10, 0));
+
+        // corrupted graph
+        RandomAccessFile raf = new RandomAccessFile(new File(directory, "A.graph"), "rw");
+        raf.seek(raf.length() - 1);
+        int last = raf.read();
+        raf.seek(raf.length() - 1);
+        raf.write(last ^ 1);
+        raf.close();
+        try {
+            ShardSnapshot.load(directory, region, "1", 10, 0);
+            fail("corrupted snapshot loaded");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("corrupted"));
+        }
+    }
+
+    @Test
+    public void testTiledSnapshot() throws Exception {
+        File directory = new File(System.getProperty("java.io.tmpdir"), "mobilit-snapshot-" + System.nanoTime());
+        File built = new File(directory, "built");
+        Region region = new Region("A", new double[] { -1.6, 47.1, -1.5, 47.1, -1.5, 47.3, -1.6, 47.3 });
+        TileWriter.write(RegionRegistryTest.grid(-1.5499, 47.2001, 20), 0.005, built);
+        TiledGraph graph = new TiledGraph(built, 1 << 20);
+        TiledGraph.discard(built);
+        ShardSnapshot.save(directory, new RoutingShard(region, graph, graph, 10), "1");
+
+        // the built tiles go with their shard, the snapshot keeps its copy
+        graph.close();
+        assertFalse(built.exists());
+        RoutingShard first = ShardSnapshot.load(directory, region, "1", 10, 1 << 20);
+        RoutingShard second = ShardSnapshot.load(directory, region, "1", 10, 1 << 20);
+        ((TiledGraph) first.getGraph()).close();
+        File tiles = ((TiledGraph) second.getGraph()).getDirectory();
+        assertTrue(tiles.isDirectory());
+        assertEquals(38, route(second).length);
+
+        // a new snapshot : the previous tiles are deleted once their last shard is freed
+        ShardSnapshot.save(directory, second, "2");
+        assertTrue(tiles.isDirectory());
+        assertEquals(38, route(second).length);
+        ((TiledGraph) second.getGraph()).close();
+        assertFalse(tiles.exists());
+        RoutingShard third = ShardSnapshot.load(directory, region, "2", 10, 1 << 20);
+        assertEquals(38, route(third).length);
+        ((TiledGraph) third.getGraph()).close();
+    }
+
+    private static int[] route(RoutingShard shard) {
+        int start = shard.getLocator().findNearest(-1.5499, 47.2001, 0.001);
+        int end = shard.getLocator().findNearest(-1.5309, 47.2191, 0.001);
+        return shard.route(Profile.CAR, start, end);
+    }
+
+}
@@ -0,0 +1,98 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.routing;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.Test;
+
+import fr.mobilit.neo4j.server.format.SnapWriter;
+
+public class SnapBatchTest extends TestCase {
+
+    private static final double LON = -1.55;
+    private static final double LAT = 47.2;
+
+    @Test
+    public void testHilbert() {
+        assertEquals(0, SnapBatch.hilbert(0, 0, 1));
+        assertEquals(1, SnapBatch.hilbert(0, 1, 1));
+        assertEquals(2, SnapBatch.hilbert(1, 1, 1));
+        assertEquals(3, SnapBatch.hilbert(1, 0, 1));
+        // each step of the curve moves to a neighbor cell
+        long[] cells = new long[16 * 16];
+        for (int x = 0; x < 16; x++) {
+            for (int y = 0; y < 16; y++) {
+                cells[(int) SnapBatch.hilbert(x, y, 4)] = x * 16 + y;
+            }
+        }
+        for (int d = 1; d < cells.length; d++) {
+            long dx = Math.abs(cells[d] / 16 - cells[d - 1] / 16);
+            long dy = Math.abs(cells[d] % 16 - cells[d - 1] % 16);
+            assertEquals(1, dx + dy);
+        }
+    }
+
+    @Test
+    public void testSnap() throws Exception {
+        List<Region> regions = new ArrayList<Region>();
+        regions.add(new Region("A", new double[] { -2, 47, -1, 47, -1, 48, -2, 48 }));
+        RegionRegistry registry = new RegionRegistry(regions, new ShardLoader() {
+
+            @Override
+            public RoutingShard load(Region region) {
+                ArrayGraph graph = RegionRegistryTest.grid(LON, LAT, 10);
+                return new RoutingShard(region, graph, new NodeGrid(graph, 0.001), 10);
+            }
+        });
+        // the middle of 0-1, near the node 12, out of the regions
+        SnapBatch batch = new SnapBatch(new double[] { LON + 0.0004, LON + 0.0021, 5 }, new double[] { LAT + 0.00005,
+                LAT + 0.0011, 5 });
+        int[] order = batch.getOrder();
+        assertEquals(3, order.length);
+        batch.snap(order, 0, 2, registry, Profile.CAR, 0.01);
+        batch.snap(order, 2, 3, registry, Profile.CAR, 0.01);
+
+        assertTrue(batch.isSnapped(0));
+        assertEquals(0, batch.getNodeId(0));
+        assertEquals("row 0", batch.getName(0));
+        assertEquals(LON + 0.0004, batch.getSnappedLongitude(0), 1e-9);
+        assertEquals(LAT, batch.getSnappedLatitude(0), 1e-9);
+        assertEquals(30.0, batch.getOffset(0), 1e-3);
+        assertEquals(5.566, batch.getDistance(0), 1e-3);
+        assertEquals(12, batch.getNodeId(1));
+        assertFalse(batch.isSnapped(2));
+
+        StringWriter out = new StringWriter();
+        SnapWriter.write(batch, out);
+        JSONArray json = (JSONArray) new JSONParser().parse(out.toString());
+        assertEquals(3, json.size());
+        assertEquals(0L, ((JSONObject) json.get(0)).get("node"));
+        assertEquals("row 0", ((JSONObject) json.get(0)).get("name"));
+        assertNull(json.get(2));
+    }
+
+}
@@ -0,0 +1,74 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.routing;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class SnapCacheTest extends TestCase {
+
+    private static final double LON = -1.55;
+    private static final double LAT = 47.2;
+
+    @Test
+    public void testKey() {
+        SnapCache cache = new SnapCache(16, SnapCache.DEFAULT_CELL);
+        long key = cache.key(Profile.CAR, LON + 0.00001, LAT + 0.00001);
+        assertEquals(key, cache.key(Profile.CAR, LON + 0.00002, LAT + 0.00002));
+        assertFalse(key == cache.key(Profile.CAR, LON + 0.0002, LAT));
+        assertFalse(key == cache.key(Profile.CYCLE, LON + 0.00001, LAT + 0.00001));
+        assertFalse(key == cache.key(null, LON + 0.00001, LAT + 0.00001));
+        assertTrue(cache.key(null, 180, 90) > 0);
+    }
+
+    @Test
+    public void testClockEviction() {
+        SnapCache cache = new SnapCache(2, SnapCache.DEFAULT_CELL);
+        Snap a = new Snap(1, -1, 0, 0, LON, LAT);
+        Snap b = new Snap(2, -1, 0, 0, LON, LAT);
+        Snap c = new Snap(3, -1, 0, 0, LON, LAT);
+        cache.put(1L, a);
+        cache.put(2L, b);
+        assertSame(a, cache.get(1L));
+        // b is not used since it's cached : evicted first
+        cache.put(3L, c);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get(2L));
+        assertSame(a, cache.get(1L));
+        assertSame(c, cache.get(3L));
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.75, cache.getHitRatio());
+    }
+
+    @Test
+    public void testShardSnaps() {
+        ArrayGraph graph = RegionRegistryTest.grid(LON, LAT, 10);
+        RoutingShard shard = new RoutingShard(new Region("A", new double[] { -2, 47, -1, 47, -1, 48 }), graph,
+                new NodeGrid(graph, 0.001), 10);
+        Snap snap = shard.snap(LON + 0.00051, LAT + 0.00001, Profile.CAR, 0.01);
+        assertSame(snap, shard.snap(LON + 0.00052, LAT + 0.00002, Profile.CAR, 0.01));
+        assertNotSame(snap, shard.snap(LON + 0.00051, LAT + 0.00001, Profile.PEDESTRIAN, 0.01));
+        assertEquals(1, shard.getSnapCache().getHitCount());
+        assertEquals(2, shard.getSnapCache().size());
+    }
+
+}
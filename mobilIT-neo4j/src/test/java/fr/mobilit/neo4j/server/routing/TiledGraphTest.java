@@ -0,0 +1,112 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.routing;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class TiledGraphTest extends TestCase {
+
+    private File directory;
+
+    protected void setUp() throws Exception {
+        directory = File.createTempFile("tiles", "");
+        directory.delete();
+    }
+
+    protected void tearDown() throws Exception {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testGraphFile() throws Exception {
+        ArrayGraph graph = RegionRegistryTest.grid(-1.55, 47.2, 5);
+        directory.mkdirs();
+        File file = new File(directory, "graph.bin");
+        GraphFile.write(graph, file);
+        ArrayGraph mapped = GraphFile.map(file);
+        assertEquals(graph.getNodeCount(), mapped.getNodeCount());
+        assertEquals(graph.getEdgeCount(), mapped.getEdgeCount());
+        for (int node = 0; node < graph.getNodeCount(); node++) {
+            assertEquals(graph.getNodeId(node), mapped.getNodeId(node));
+            assertEquals(graph.getLatitude(node), mapped.getLatitude(node));
+            assertEquals(graph.getLastInEdge(node), mapped.getLastInEdge(node));
+        }
+        for (int edge = 0; edge < graph.getEdgeCount(); edge++) {
+            assertEquals(graph.getEdgeTarget(edge), mapped.getEdgeTarget(edge));
+            assertEquals(graph.getEdgeName(edge), mapped.getEdgeName(edge));
+            assertEquals(graph.getEdgeCost(Profile.CYCLE, edge), mapped.getEdgeCost(Profile.CYCLE, edge));
+        }
+        assertEquals(12, mapped.findNode(12L));
+    }
+
+    @Test
+    public void testTiles() throws Exception {
+        ArrayGraph graph = RegionRegistryTest.grid(-1.5499, 47.2001, 20);
+        int count = TileWriter.write(graph, 0.005, directory);
+        assertEquals(16, count);
+
+        // room for about two tiles
+        long tileBytes = new File(directory, "tile-0.bin").length();
+        TiledGraph tiled = new TiledGraph(directory, 2 * tileBytes + 1);
+        assertEquals(16, tiled.getTileCount());
+        assertEquals(graph.getNodeCount(), tiled.getNodeCount());
+        assertEquals(graph.getEdgeCount(), tiled.getEdgeCount());
+        assertEquals(0, tiled.getFaultCount());
+
+        int start = tiled.findNearest(-1.5499, 47.2001, 0.001);
+        int end = tiled.findNearest(-1.5309, 47.2191, 0.001);
+        assertEquals(0L, tiled.getNodeId(start));
+        assertEquals(399L, tiled.getNodeId(end));
+
+        long faults = tiled.getThreadFaultCount();
+        GraphSearch search = new GraphSearch(tiled, Profile.CAR, false);
+        search.addSource(start, 0);
+        search.setTargets(new int[] { end });
+        search.calculate();
+        assertEquals(38.0, search.getCost(end));
+        int[] path = search.getPathAsEdges(end);
+        assertEquals(38, path.length);
+        assertEquals(start, tiled.getEdgeSource(path[0]));
+        assertEquals(end, tiled.getEdgeTarget(path[37]));
+        for (int i = 1; i < path.length; i++) {
+            assertEquals(tiled.getEdgeTarget(path[i - 1]), tiled.getEdgeSource(path[i]));
+        }
+        assertTrue(tiled.getThreadFaultCount() - faults >= 7);
+        assertTrue(tiled.getEvictionCount() > 0);
+        assertTrue(tiled.getLoadedTileCount() <= 2);
+
+        // backward search crossing tiles gives the same cost
+        search = new GraphSearch(tiled, Profile.CAR, true);
+        search.addSource(end, 0);
+        search.setTargets(new int[] { start });
+        search.calculate();
+        assertEquals(38.0, search.getCost(start));
+        path = search.getPathAsEdges(start);
+        assertEquals(start, tiled.getEdgeSource(path[0]));
+        assertEquals(end, tiled.getEdgeTarget(path[37]));
+    }
+
+}
@@ -0,0 +1,77 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.routing;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class VersionedRoutingTest extends TestCase {
+
+    private static RegionRegistry registry(final File directory) {
+        List<Region> regions = new ArrayList<Region>();
+        regions.add(new Region("A", new double[] { -1.6, 47.1, -1.5, 47.1, -1.5, 47.3, -1.6, 47.3 }));
+        return new RegionRegistry(regions, new ShardLoader() {
+
+            @Override
+            public RoutingShard load(Region region) throws Exception {
+                ArrayGraph graph = RegionRegistryTest.grid(-1.5499, 47.2001, 5);
+                TileWriter.write(graph, 0.005, directory);
+                TiledGraph tiled = new TiledGraph(directory, 1024 * 1024);
+                TiledGraph.discard(directory);
+                return new RoutingShard(region, tiled, tiled, 10);
+            }
+        });
+    }
+
+    @Test
+    public void testPublish() throws Exception {
+        File base = new File(System.getProperty("java.io.tmpdir"), "mobilit-version-" + System.nanoTime());
+        File first = new File(base, "1");
+        VersionedRouting routing = new VersionedRouting(new RoutingVersion(1, registry(first)));
+
+        RoutingVersion running = routing.acquire();
+        assertEquals(1, running.getVersion());
+        assertNotNull(running.getRegistry().getShard(-1.548, 47.201));
+        assertTrue(first.exists());
+
+        // swap while a query is running on the first version
+        RoutingVersion previous = routing.publish(new RoutingVersion(2, registry(new File(base, "2"))));
+        assertSame(running, previous);
+        assertFalse(previous.isFreed());
+        assertTrue(first.exists());
+
+        RoutingVersion next = routing.acquire();
+        assertEquals(2, next.getVersion());
+        next.release();
+        assertFalse(next.isFreed());
+
+        // the last query of the first version ends
+        running.release();
+        assertTrue(previous.isFreed());
+        assertEquals(0, previous.getUserCount());
+        assertFalse(first.exists());
+        assertTrue(previous.getRegistry().getLoadedRegions().isEmpty());
+    }
+
+}
@@ -0,0 +1,61 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import fr.mobilit.neo4j.server.geocoding.Address;
+import fr.mobilit.neo4j.server.geocoding.AddressBuilder;
+import fr.mobilit.neo4j.server.geocoding.AddressIndex;
+import fr.mobilit.neo4j.server.utils.Constant;
+
+public class GeocodingServiceTest extends TestCase {
+
+    @Test
+    public void testBatchSearch() throws Exception {
+        AddressBuilder builder = new AddressBuilder(200);
+        for (int i = 0; i < 100; i++) {
+            builder.addSegment("Rue " + i, -1.55 + i * 0.01, 47.2, -1.55 + i * 0.01, 47.201);
+        }
+        AddressIndex index = builder.build();
+
+        // more queries than a chunk, in the order of the request
+        List<String> queries = new ArrayList<String>();
+        for (int i = 0; i < 5 * Constant.GEOCODING_CHUNK_SIZE; i++) {
+            queries.add(i % 7 == 0 ? null : "rue " + (i % 100));
+        }
+        List<List<Address>> results = GeocodingService.getInstance().search(index, queries, 1);
+        assertEquals(queries.size(), results.size());
+        for (int i = 0; i < queries.size(); i++) {
+            if (queries.get(i) == null) {
+                assertTrue(results.get(i).isEmpty());
+            }
+            else {
+                assertEquals(index.search(queries.get(i), 1).get(0).getStreet(), results.get(i).get(0).getStreet());
+                assertEquals("Rue " + (i % 100), results.get(i).get(0).getStreet());
+            }
+        }
+    }
+
+}
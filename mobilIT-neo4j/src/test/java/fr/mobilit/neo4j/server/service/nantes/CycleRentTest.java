@@ -28,6 +28,7 @@ import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import fr.mobilit.neo4j.server.Import;
 import fr.mobilit.neo4j.server.exception.MobilITException;
 import fr.mobilit.neo4j.server.pojo.POI;
 import fr.mobilit.neo4j.server.service.CycleRentService;
@@ -114,6 +115,24 @@ public class CycleRentTest extends Neo4jTestCase {
         assertNotNull(station);
     }
 
+    @Test
+    public void testNearestStationByWalk() throws MobilITException {
+        String files = Thread.currentThread().getContextClassLoader().getResource("osm/nantes.osm").getFile();
+        new Import(this.graphDb()).osm(files);
+        CycleRentImpl nantes = new CycleRentImpl(this.spatial());
+        nantes.importStation();
+
+        // place royale
+        Double lat = new Double(47.2130);
+        Double lon = new Double(-1.5590);
+        CycleRentService service = new CycleRentService(this.spatial());
+        POI station = service.getNearestByWalk(lon, lat, null);
+        assertNotNull(station);
+        assertEquals(Constant.NANTES_GEO_CODE, station.getGeocode());
+        station = service.getNearestByWalk(lon, lat, 0);
+        assertNotNull(station);
+    }
+
     @AfterClass
     public void tearDown() throws Exception {
         super.tearDown();
@@ -0,0 +1,72 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.shortestpath;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import fr.mobilit.neo4j.server.pojo.Route;
+
+public class RouteSimplifierTest extends TestCase {
+
+    @Test
+    public void testSimplify() {
+        Route path = new Route();
+        // a straight street of 10 segments, with a 1 meter zigzag
+        for (int i = 0; i < 10; i++) {
+            double shift = (i % 2 == 0) ? 0 : 0.00001;
+            double next = (i % 2 == 0) ? 0.00001 : 0;
+            path.addSegment("Rue Crébillon", 1.0, 0.5, -1.56 + i * 0.0001, 47.21 + shift, -1.56 + (i + 1) * 0.0001,
+                    47.21 + next);
+        }
+        // a turn
+        path.addSegment("Rue Racine", 1.0, 0.5, -1.559, 47.21, -1.559, 47.211);
+        // same name, but on another leg
+        path.addSegment("Rue Racine", 1.0, 0.2, -1.559, 47.211, -1.559, 47.212);
+
+        Route simplified = RouteSimplifier.simplify(path, 5.0, 5);
+        assertEquals(3, simplified.getSegmentCount());
+        assertEquals("Rue Crébillon", simplified.getName(0));
+        assertEquals(10.0, simplified.getDistance(0));
+        assertEquals(0.5, simplified.getCost(0));
+        assertEquals(2, simplified.getPointCount(0));
+        assertEquals(-1.56, simplified.getLongitude(0, 0));
+        assertEquals(-1.559, simplified.getLongitude(0, 1));
+        assertEquals(47.21, simplified.getLatitude(0, 1));
+        assertEquals(0.2, simplified.getCost(2));
+        // the original route is not changed
+        assertEquals(12, path.getSegmentCount());
+        assertEquals(2, path.getPointCount(0));
+
+        // no tolerance : merged and rounded only
+        simplified = RouteSimplifier.simplify(path, 0.0, 4);
+        assertEquals(11, simplified.getPointCount(0));
+        assertEquals(47.21, simplified.getLatitude(0, 1));
+        assertSame(path, RouteSimplifier.simplify(path, null, null));
+    }
+
+    @Test
+    public void testRoundKeepsTwoPoints() {
+        Route path = new Route();
+        path.addSegment("Quai de la Fosse", 1.0, 0.1, -1.5600001, 47.21, -1.5600002, 47.21);
+        assertEquals(2, RouteSimplifier.simplify(path, 0.0, 5).getPointCount(0));
+    }
+
+}
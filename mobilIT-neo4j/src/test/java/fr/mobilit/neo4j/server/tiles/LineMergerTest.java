@@ -0,0 +1,83 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.tiles;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import fr.mobilit.neo4j.server.routing.ArrayGraph;
+import fr.mobilit.neo4j.server.routing.GraphBuilder;
+
+public class LineMergerTest extends TestCase {
+
+    private static final float[] COSTS = new float[] { 1f, 1f, 1f };
+
+    @Test
+    public void testMerge() {
+        GraphBuilder builder = new GraphBuilder();
+        for (int i = 0; i < 8; i++) {
+            builder.addNode(i, -1.55 + i * 0.001, 47.2);
+        }
+        // a street 0-1-2-3 given out of order and in both directions, a branch 1-4, and a loop 5-6-7
+        builder.addEdge(2, 1, 10f, "A", COSTS);
+        builder.addEdge(0, 1, 10f, "A", COSTS);
+        builder.addEdge(3, 2, 10f, "A", COSTS);
+        builder.addEdge(1, 4, 10f, "A", COSTS);
+        builder.addEdge(5, 6, 10f, "B", COSTS);
+        builder.addEdge(6, 7, 10f, "B", COSTS);
+        builder.addEdge(7, 5, 10f, "B", COSTS);
+        ArrayGraph graph = builder.build();
+        List<Integer> edges = new ArrayList<Integer>();
+        for (int edge = 0; edge < graph.getEdgeCount(); edge++) {
+            edges.add(edge);
+        }
+
+        List<int[]> lines = LineMerger.merge(graph, edges);
+        assertEquals(4, lines.size());
+        List<String> merged = new ArrayList<String>();
+        for (int[] line : lines) {
+            long[] ids = new long[line.length];
+            for (int i = 0; i < line.length; i++) {
+                ids[i] = graph.getNodeId(line[i]);
+            }
+            // same direction for the test
+            if (ids[0] > ids[ids.length - 1]) {
+                for (int i = 0; i < ids.length / 2; i++) {
+                    long id = ids[i];
+                    ids[i] = ids[ids.length - 1 - i];
+                    ids[ids.length - 1 - i] = id;
+                }
+            }
+            merged.add(Arrays.toString(ids));
+        }
+        assertTrue(merged.contains("[0, 1]"));
+        assertTrue(merged.contains("[1, 2, 3]"));
+        assertTrue(merged.contains("[1, 4]"));
+        // the loop is one closed line
+        int[] loop = lines.get(3);
+        assertEquals(4, loop.length);
+        assertEquals(loop[0], loop[3]);
+    }
+
+}
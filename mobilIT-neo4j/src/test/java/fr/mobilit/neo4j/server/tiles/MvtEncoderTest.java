@@ -0,0 +1,153 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.tiles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class MvtEncoderTest extends TestCase {
+
+    /**
+     * Protobuf reader of the test : fields of a message as (field, value) with value a Long or a byte[].
+     */
+    private static List<Object[]> read(byte[] bytes) {
+        List<Object[]> fields = new ArrayList<Object[]>();
+        int[] position = new int[] { 0 };
+        while (position[0] < bytes.length) {
+            long tag = varint(bytes, position);
+            int field = (int) (tag >>> 3);
+            int type = (int) (tag & 7);
+            if (type == 0) {
+                fields.add(new Object[] { field, varint(bytes, position) });
+            }
+            else if (type == 2) {
+                int length = (int) varint(bytes, position);
+                byte[] value = new byte[length];
+                System.arraycopy(bytes, position[0], value, 0, length);
+                position[0] += length;
+                fields.add(new Object[] { field, value });
+            }
+            else {
+                fail("unexpected wire type " + type);
+            }
+        }
+        return fields;
+    }
+
+    private static long varint(byte[] bytes, int[] position) {
+        long value = 0;
+        for (int shift = 0;; shift += 7) {
+            byte b = bytes[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    private static List<Long> packed(byte[] bytes) {
+        List<Long> values = new ArrayList<Long>();
+        int[] position = new int[] { 0 };
+        while (position[0] < bytes.length) {
+            values.add(varint(bytes, position));
+        }
+        return values;
+    }
+
+    @Test
+    public void testEncode() throws Exception {
+        // tile of Nantes at zoom 14
+        int z = 14;
+        int x = (int) Math.floor((-1.55 + 180) / 360 * (1 << z));
+        double sin = Math.sin(Math.toRadians(47.2));
+        int y = (int) Math.floor((0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI)) * (1 << z));
+        MvtEncoder encoder = new MvtEncoder(z, x, y);
+        double[] bounds = encoder.getBounds(0);
+        assertTrue(bounds[0] <= -1.55 && -1.55 <= bounds[2]);
+        assertTrue(bounds[1] <= 47.2 && 47.2 <= bounds[3]);
+        assertEquals(0, encoder.projectX(bounds[0]));
+        assertEquals(MvtEncoder.EXTENT, encoder.projectY(bounds[1]));
+
+        MvtEncoder.Layer roads = encoder.layer("roads");
+        assertTrue(roads.addLine(7, new double[] { -1.55, -1.55, -1.549 }, new double[] { 47.2, 47.2, 47.2 }, "name",
+                "Rue de Strasbourg", "class", "minor"));
+        // shorter than a tile unit
+        assertFalse(roads.addLine(8, new double[] { -1.55, -1.5500001 }, new double[] { 47.2, 47.2 }));
+        encoder.layer("stations").addPoint(1, -1.55, 47.2, "name", "Commerce", "id", null);
+        encoder.layer("empty");
+        assertSame(roads, encoder.layer("roads"));
+
+        List<Object[]> tile = read(encoder.encode());
+        assertEquals(2, tile.size());
+        List<Object[]> layer = read((byte[]) tile.get(0)[1]);
+        assertEquals(15, layer.get(0)[0]);
+        assertEquals(2L, layer.get(0)[1]);
+        assertEquals("roads", new String((byte[]) layer.get(1)[1], "UTF-8"));
+        assertEquals(2, layer.get(2)[0]);
+        assertEquals("name", new String((byte[]) layer.get(3)[1], "UTF-8"));
+        assertEquals("class", new String((byte[]) layer.get(4)[1], "UTF-8"));
+        assertEquals(4, layer.get(5)[0]);
+        assertEquals(4, layer.get(6)[0]);
+        assertEquals(5, layer.get(7)[0]);
+        assertEquals((long) MvtEncoder.EXTENT, layer.get(7)[1]);
+
+        List<Object[]> feature = read((byte[]) layer.get(2)[1]);
+        assertEquals(7L, feature.get(0)[1]);
+        assertEquals(4, packed((byte[]) feature.get(1)[1]).size());
+        assertEquals(2L, feature.get(2)[1]);
+        List<Long> geometry = packed((byte[]) feature.get(3)[1]);
+        // MoveTo(1), x, y, LineTo(1), dx, dy : the duplicate vertex is merged
+        assertEquals(6, geometry.size());
+        assertEquals(9L, (long) geometry.get(0));
+        assertEquals(10L, (long) geometry.get(3));
+        assertTrue(geometry.get(4) > 0);
+        assertEquals(0L, (long) geometry.get(5));
+
+        // the null property is skipped
+        List<Object[]> stations = read((byte[]) tile.get(1)[1]);
+        List<Object[]> point = read((byte[]) stations.get(2)[1]);
+        assertEquals(2, packed((byte[]) point.get(1)[1]).size());
+        assertEquals(1L, point.get(2)[1]);
+    }
+
+    @Test
+    public void testCache() {
+        TileCache cache = new TileCache(100);
+        cache.put("a", new byte[40]);
+        cache.put("b", new byte[40]);
+        assertNotNull(cache.get("a"));
+        // b is the least recently used
+        cache.put("c", new byte[40]);
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertEquals(80, cache.getBytes());
+        // too big
+        cache.put("d", new byte[101]);
+        assertNull(cache.get("d"));
+        assertEquals(2, cache.size());
+        cache.clear();
+        assertEquals(0, cache.getBytes());
+        assertNull(cache.get("a"));
+    }
+
+}
@@ -0,0 +1,138 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.transit;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+public class RaptorTest extends TestCase {
+
+    private Timetable timetable;
+    private int       a, b, d, e;
+
+    protected void setUp() throws Exception {
+        File file = File.createTempFile("gtfs", ".zip");
+        file.deleteOnExit();
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file));
+        add(zip, "agency.txt", "agency_id,agency_name,agency_url,agency_timezone\n"
+                + "TAN,Tan,http://www.tan.fr,Europe/Paris\n");
+        add(zip, "stops.txt", "stop_id,stop_name,stop_lat,stop_lon,location_type\n" + "A,Commerce,47.21,-1.56,0\n"
+                + "B,\"Bouffay, Nantes\",47.22,-1.55,0\n" + "C,Duchesse Anne,47.23,-1.54,0\n"
+                + "D,Gare Nord,47.22,-1.54,0\n" + "E,Haluchère,47.24,-1.52,0\n" + "S,Gare,47.22,-1.54,1\n");
+        add(zip, "routes.txt", "route_id,route_short_name,route_long_name,route_type\n" + "1,1,Ligne 1,0\n"
+                + "2,2,Ligne 2,0\n");
+        add(zip, "calendar.txt",
+                "service_id,monday,tuesday,wednesday,thursday,friday,saturday,sunday,start_date,end_date\n"
+                        + "WEEK,1,1,1,1,1,0,0,20240101,20241231\n");
+        add(zip, "calendar_dates.txt", "service_id,date,exception_type\n" + "WEEK,20240609,1\n");
+        add(zip, "trips.txt", "route_id,service_id,trip_id,trip_headsign\n" + "1,WEEK,T1,Duchesse Anne\n"
+                + "1,WEEK,T2,Duchesse Anne\n" + "2,WEEK,T3,Haluchère\n" + "2,WEEK,T4,Haluchère\n");
+        add(zip, "stop_times.txt", "trip_id,arrival_time,departure_time,stop_id,stop_sequence\n"
+                + "T2,08:30:00,08:30:00,A,1\n" + "T2,08:40:00,08:40:00,B,2\n" + "T2,08:50:00,08:50:00,C,3\n"
+                + "T1,08:00:00,08:00:00,A,1\n" + "T1,,,B,2\n" + "T1,08:20:00,08:20:00,C,3\n"
+                + "T3,08:15:00,08:15:00,D,1\n" + "T3,08:30:00,08:30:00,E,2\n" + "T4,08:45:00,08:45:00,D,1\n"
+                + "T4,09:00:00,09:00:00,E,2\n");
+        zip.close();
+
+        timetable = new GtfsReader().read(new String[] { file.getAbsolutePath() });
+        a = stop("A");
+        b = stop("B");
+        d = stop("D");
+        e = stop("E");
+        // walk from B to D in two minutes
+        int[] offset = new int[timetable.getStopCount() + 1];
+        for (int i = b + 1; i < offset.length; i++) {
+            offset[i] = 1;
+        }
+        timetable.setTransfers(offset, new int[] { d }, new int[] { 120 });
+    }
+
+    private static void add(ZipOutputStream zip, String name, String content) throws Exception {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content.getBytes("UTF-8"));
+        zip.closeEntry();
+    }
+
+    private int stop(String id) {
+        for (int i = 0; i < timetable.getStopCount(); i++) {
+            if (timetable.getStopId(i).equals("0:" + id)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void testRead() {
+        // the station (location_type 1) is not a stop
+        assertEquals(5, timetable.getStopCount());
+        assertEquals(2, timetable.getPatternCount());
+        assertEquals(4, timetable.getTripCount());
+        assertEquals("Bouffay, Nantes", timetable.getStopName(b));
+        assertEquals("Europe/Paris", timetable.getTimeZone().getID());
+        // trips sorted by departure, times interpolated
+        assertEquals(8 * 3600 + 10 * 60, timetable.getDeparture(0, 0, 1));
+        assertEquals(8 * 3600 + 40 * 60, timetable.getDeparture(0, 1, 1));
+        assertEquals(8 * 3600 + 10 * 60, GtfsReader.parseTime("08:10:00"));
+        assertEquals(25 * 3600, GtfsReader.parseTime("25:00:00"));
+    }
+
+    @Test
+    public void testEarliestArrival() {
+        Raptor raptor = new Raptor(timetable, 5);
+        Journey journey = raptor.search(new int[] { a }, new int[] { 60 }, new int[] { e }, new int[] { 30 },
+                7 * 3600 + 55 * 60, 20240603);
+        assertNotNull(journey);
+        assertEquals(8 * 3600 + 30 * 60 + 30, journey.getArrival());
+        assertEquals(8 * 3600 - 60, journey.getDeparture());
+        assertEquals(2, journey.getRideCount());
+        assertEquals(5, journey.getLegs().size());
+        assertEquals(Journey.Type.ACCESS, journey.getLegs().get(0).getType());
+        assertEquals(Journey.Type.RIDE, journey.getLegs().get(1).getType());
+        assertEquals(b, journey.getLegs().get(1).getToStop());
+        assertEquals(Journey.Type.TRANSFER, journey.getLegs().get(2).getType());
+        assertEquals(d, journey.getLegs().get(2).getToStop());
+        assertEquals(Journey.Type.RIDE, journey.getLegs().get(3).getType());
+        assertEquals(8 * 3600 + 15 * 60, journey.getLegs().get(3).getDeparture());
+        assertEquals(Journey.Type.EGRESS, journey.getLegs().get(4).getType());
+
+        // first trip missed : next ones
+        journey = raptor.search(new int[] { a }, new int[] { 60 }, new int[] { e }, new int[] { 30 },
+                8 * 3600 + 5 * 60, 20240603);
+        assertEquals(9 * 3600 + 30, journey.getArrival());
+    }
+
+    @Test
+    public void testCalendar() {
+        Raptor raptor = new Raptor(timetable, 5);
+        // sunday
+        assertNull(raptor.search(new int[] { a }, new int[] { 60 }, new int[] { e }, new int[] { 30 }, 7 * 3600,
+                20240602));
+        // sunday added by calendar_dates
+        assertNotNull(raptor.search(new int[] { a }, new int[] { 60 }, new int[] { e }, new int[] { 30 }, 7 * 3600,
+                20240609));
+    }
+
+}
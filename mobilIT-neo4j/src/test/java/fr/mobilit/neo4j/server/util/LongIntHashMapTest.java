@@ -0,0 +1,68 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.neo4j.server.util;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import fr.mobilit.neo4j.server.utils.LongIntHashMap;
+
+public class LongIntHashMapTest extends TestCase {
+
+    @Test
+    public void testPutAndGet() {
+        LongIntHashMap map = new LongIntHashMap(4);
+        for (int i = 0; i < 10000; i++) {
+            map.put(i * 7919L, i);
+        }
+        assertEquals(10000, map.size());
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(i, map.get(i * 7919L));
+        }
+        assertEquals(LongIntHashMap.NO_VALUE, map.get(1L));
+        assertFalse(map.containsKey(1L));
+    }
+
+    @Test
+    public void testReplace() {
+        LongIntHashMap map = new LongIntHashMap(16);
+        map.put(0L, 1);
+        map.put(0L, 2);
+        assertEquals(1, map.size());
+        assertEquals(2, map.get(0L));
+    }
+
+    @Test
+    public void testRemove() {
+        LongIntHashMap map = new LongIntHashMap(16);
+        for (int i = 0; i < 1000; i++) {
+            map.put(i, i);
+        }
+        for (int i = 0; i < 1000; i += 3) {
+            assertEquals(i, map.remove(i));
+        }
+        assertEquals(LongIntHashMap.NO_VALUE, map.remove(3L));
+        assertEquals(666, map.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals((i % 3 == 0) ? LongIntHashMap.NO_VALUE : i, map.get(i));
+        }
+    }
+
+}
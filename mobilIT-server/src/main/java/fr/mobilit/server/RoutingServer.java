@@ -0,0 +1,142 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+import com.sun.net.httpserver.HttpServer;
+
+import fr.mobilit.neo4j.server.routing.Region;
+import fr.mobilit.neo4j.server.routing.RegionRegistry;
+import fr.mobilit.neo4j.server.routing.RoutingShard;
+import fr.mobilit.neo4j.server.routing.ShardLoader;
+import fr.mobilit.neo4j.server.routing.ShardSnapshot;
+import fr.mobilit.neo4j.server.utils.RoutingConstant;
+
+/**
+ * Standalone read-only routing server. It maps the routing snapshots exported by the Neo4j plugin (POST
+ * <code>/import/export</code>) and serves the car, cycle and pedestrian searches of <code>/search/*</code> with the
+ * same parameters and GeoJSON output, without Neo4j.
+ * 
+ * <pre>
+ * java -Dmobilit.server.port=8080 -jar mobilIT-server.jar /path/to/exported/snapshots
+ * </pre>
+ * 
+ * @author bsimard
+ * 
+ */
+public class RoutingServer {
+
+    private static final Logger   LOGGER = Logger.getLogger(RoutingServer.class.getName());
+
+    private final RegionRegistry  registry;
+    private final HttpServer      server;
+    private final ExecutorService executor;
+
+    /**
+     * Constructor : map all the snapshots of the directory.
+     * 
+     * @param directory directory of the exported snapshots
+     * @param port port of the HTTP server, 0 for any free port
+     * @param threads number of threads serving the requests
+     * @throws Exception if a snapshot can't be loaded
+     */
+    public RoutingServer(final File directory, int port, int threads) throws Exception {
+        List<Region> regions = new ArrayList<Region>();
+        for (String geocode : ShardSnapshot.list(directory)) {
+            regions.add(ShardSnapshot.readRegion(directory, geocode));
+        }
+        if (regions.isEmpty()) {
+            throw new IOException("No routing snapshot in " + directory);
+        }
+        this.registry = new RegionRegistry(regions, new ShardLoader() {
+
+            @Override
+            public RoutingShard load(Region region) throws Exception {
+                RoutingShard shard = ShardSnapshot.load(directory, region, null, RoutingConstant.ROUTING_ROUTE_CACHE_SIZE,
+                        RoutingConstant.ROUTING_TILE_CACHE);
+                if (shard == null) {
+                    throw new IOException("Snapshot of " + region.getGeocode() + " has an unknown format");
+                }
+                return shard;
+            }
+        });
+        for (Region region : regions) {
+            long begin = System.currentTimeMillis();
+            RoutingShard shard = registry.getShard(region);
+            LOGGER.info("Routing shard " + region.getGeocode() + " mapped in " + (System.currentTimeMillis() - begin)
+                    + "ms : " + shard.getGraph().getNodeCount() + " nodes, " + shard.getGraph().getEdgeCount()
+                    + " edges");
+        }
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.server.createContext("/search/", new SearchHandler(registry));
+        this.server.setExecutor(executor);
+    }
+
+    public RegionRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * @return the port the server listens on.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void start() {
+        server.start();
+        LOGGER.info("Routing server listening on port " + getPort());
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    /**
+     * @param args directory of the exported snapshots
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            System.err.println("Usage : RoutingServer <snapshot directory>");
+            System.exit(1);
+        }
+        int port = Integer.getInteger("mobilit.server.port", 8080);
+        int threads = Integer.getInteger("mobilit.server.threads", Runtime.getRuntime().availableProcessors() * 2);
+        final RoutingServer server = new RoutingServer(new File(args[0]), port, threads);
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+
+            @Override
+            public void run() {
+                server.stop();
+            }
+        });
+        server.start();
+    }
+
+}
@@ -0,0 +1,229 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.server;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import fr.mobilit.neo4j.server.format.RouteFormat;
+import fr.mobilit.neo4j.server.pojo.Route;
+import fr.mobilit.neo4j.server.routing.Endpoints;
+import fr.mobilit.neo4j.server.routing.Profile;
+import fr.mobilit.neo4j.server.routing.Region;
+import fr.mobilit.neo4j.server.routing.RegionRegistry;
+import fr.mobilit.neo4j.server.shortestpath.RouteSimplifier;
+import fr.mobilit.neo4j.server.utils.RoutingConstant;
+
+/**
+ * Handler of <code>/search/*</code>, with the parameters and the response of the Neo4j <code>SearchPath</code>
+ * resource. Searches that need the live Neo4j data (cycle rent, car park, public transport) are not available, and
+ * both points must be in the same region since there is no whole graph to fall back on.
+ * 
+ * @author bsimard
+ * 
+ */
+public class SearchHandler implements HttpHandler {
+
+    private static final String  PREFIX = "/search/";
+
+    private final RegionRegistry registry;
+
+    /**
+     * Constructor.
+     * 
+     * @param registry
+     */
+    public SearchHandler(RegionRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        int status = HttpURLConnection.HTTP_OK;
+        String accept = exchange.getRequestHeaders().getFirst("Accept");
+        RouteFormat format = RouteFormat.GEOJSON;
+        Integer precision = null;
+        String error = null;
+        Route path = null;
+        Map<String, Route> paths = null;
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                status = HttpURLConnection.HTTP_BAD_METHOD;
+                error = "Only GET is allowed";
+            }
+            else {
+                String mode = exchange.getRequestURI().getPath().substring(PREFIX.length());
+                Map<String, String> params = parse(exchange.getRequestURI().getRawQuery());
+                Double lat1 = getDouble(params, "lat1");
+                Double long1 = getDouble(params, "long1");
+                Double lat2 = getDouble(params, "lat2");
+                Double long2 = getDouble(params, "long2");
+                Double simplify = params.containsKey("simplify") ? getDouble(params, "simplify") : null;
+                precision = params.containsKey("precision") ? Integer.valueOf(params.get("precision")) : null;
+                if ("all".equals(mode)) {
+                    format = RouteFormat.negotiate(accept, RouteFormat.GEOJSON, RouteFormat.POLYLINE);
+                    paths = all(lat1, long1, lat2, long2, simplify, precision);
+                }
+                else if ("cyclerent".equals(mode) || "carpark".equals(mode) || "transit".equals(mode)) {
+                    status = HttpURLConnection.HTTP_NOT_IMPLEMENTED;
+                    error = "Search " + mode + " is not available on the routing server";
+                }
+                else {
+                    Profile profile = Profile.fromName(mode);
+                    if (profile == null) {
+                        status = HttpURLConnection.HTTP_NOT_FOUND;
+                        error = "Unknown search " + mode;
+                    }
+                    else {
+                        path = search(lat1, long1, lat2, long2, profile);
+                        if (path == null) {
+                            status = HttpURLConnection.HTTP_NOT_FOUND;
+                            error = "No routing data for these points";
+                        }
+                        else {
+                            format = RouteFormat.negotiate(accept, RouteFormat.values());
+                            path = RouteSimplifier.simplify(path, simplify, precision);
+                        }
+                    }
+                }
+            }
+        } catch (Exception e) {
+            status = HttpURLConnection.HTTP_INTERNAL_ERROR;
+            error = e.getMessage() + " :" + e.getCause();
+        }
+
+        if (error != null) {
+            byte[] body = error.getBytes("UTF-8");
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+            exchange.sendResponseHeaders(status, body.length);
+            OutputStream out = exchange.getResponseBody();
+            try {
+                out.write(body);
+            } finally {
+                out.close();
+            }
+            return;
+        }
+
+        // the result is written straight to the response, with a chunked encoding
+        exchange.getResponseHeaders().set("Content-Type",
+                format == RouteFormat.BINARY ? format.getMediaType() : format.getMediaType() + "; charset=UTF-8");
+        exchange.sendResponseHeaders(status, 0);
+        OutputStream out = new BufferedOutputStream(exchange.getResponseBody(), 8192);
+        try {
+            if (paths == null) {
+                format.write(path, null, precision, out);
+            }
+            else {
+                out.write('{');
+                for (Map.Entry<String, Route> result : paths.entrySet()) {
+                    out.write(('"' + result.getKey() + "\":").getBytes("UTF-8"));
+                    if (result.getValue() == null) {
+                        out.write("null".getBytes("UTF-8"));
+                    }
+                    else {
+                        format.write(result.getValue(), null, precision, out);
+                    }
+                    out.write(',');
+                }
+                out.write("\"cyclerent\":null}".getBytes("UTF-8"));
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Same convention as <code>RoutingService</code> : <code>lat1</code> is tested as the latitude of the region.
+     */
+    private Route search(Double lat1, Double long1, Double lat2, Double long2, Profile profile)
+            throws Exception {
+        Endpoints endpoints = snap(lat1, long1, lat2, long2);
+        return (endpoints == null) ? null : endpoints.getShard().search(endpoints, profile);
+    }
+
+    /**
+     * Snap both points one time on the shard of their region.
+     * 
+     * @return the snapped points, or <code>null</code> if the points are not in the same region or can't be snapped.
+     */
+    private Endpoints snap(Double lat1, Double long1, Double lat2, Double long2) throws Exception {
+        Region region = registry.findRegion(long1, lat1);
+        if (region == null || !region.contains(long2, lat2)) {
+            return null;
+        }
+        return registry.getShard(region).snap(long1, lat1, long2, lat2, RoutingConstant.ROUTING_SNAP_DISTANCE);
+    }
+
+    /**
+     * The path of each mode, <code>null</code> if the mode has no result. Both points are snapped one time for all
+     * modes.
+     */
+    private Map<String, Route> all(Double lat1, Double long1, Double lat2, Double long2, Double simplify,
+            Integer precision) throws Exception {
+        Map<String, Route> paths = new LinkedHashMap<String, Route>();
+        Endpoints endpoints = snap(lat1, long1, lat2, long2);
+        for (Profile profile : Profile.values()) {
+            Route path = null;
+            if (endpoints != null) {
+                try {
+                    path = RouteSimplifier.simplify(endpoints.getShard().search(endpoints, profile), simplify,
+                            precision);
+                } catch (Exception e) {
+                    // no result for this mode
+                }
+            }
+            paths.put(profile.name().toLowerCase(), path);
+        }
+        return paths;
+    }
+
+    private static Double getDouble(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Parameter " + name + " is missing");
+        }
+        return Double.valueOf(value);
+    }
+
+    private static Map<String, String> parse(String query) throws UnsupportedEncodingException {
+        Map<String, String> params = new HashMap<String, String>();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int equal = pair.indexOf('=');
+                if (equal > 0) {
+                    params.put(URLDecoder.decode(pair.substring(0, equal), "UTF-8"),
+                            URLDecoder.decode(pair.substring(equal + 1), "UTF-8"));
+                }
+            }
+        }
+        return params;
+    }
+
+}
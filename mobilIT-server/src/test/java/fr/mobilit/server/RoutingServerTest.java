@@ -0,0 +1,175 @@
+/**
+ * This file is part of MobilIT.
+ *
+ * MobilIT is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * MobilIT is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with MobilIT. If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * @See https://github.com/sim51/mobilIT
+ */
+package fr.mobilit.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import fr.mobilit.neo4j.server.routing.ArrayGraph;
+import fr.mobilit.neo4j.server.routing.GraphBuilder;
+import fr.mobilit.neo4j.server.routing.NodeGrid;
+import fr.mobilit.neo4j.server.routing.Region;
+import fr.mobilit.neo4j.server.routing.RoutingShard;
+import fr.mobilit.neo4j.server.routing.ShardSnapshot;
+
+public class RoutingServerTest extends TestCase {
+
+    private static final float[] COSTS = new float[] { 1f, 1f, 1f };
+
+    /**
+     * Export a 10 x 10 grid around (-1.55, 47.2).
+     */
+    private static File export() throws IOException {
+        GraphBuilder builder = new GraphBuilder();
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 10; j++) {
+                builder.addNode(i * 10 + j, -1.55 + j * 0.001, 47.2 + i * 0.001);
+            }
+        }
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 10; j++) {
+                int node = i * 10 + j;
+                if (j < 9) {
+                    builder.addEdge(node, node + 1, 75f, "row " + i, COSTS);
+                    builder.addEdge(node + 1, node, 75f, "row " + i, COSTS);
+                }
+                if (i < 9) {
+                    builder.addEdge(node, node + 10, 110f, null, COSTS);
+                    builder.addEdge(node + 10, node, 110f, null, COSTS);
+                }
+            }
+        }
+        ArrayGraph graph = builder.build();
+        Region region = new Region("A", new double[] { -1.6, 47.1, -1.5, 47.1, -1.5, 47.3, -1.6, 47.3 });
+        File directory = new File(System.getProperty("java.io.tmpdir"), "mobilit-server-" + System.nanoTime());
+        ShardSnapshot.export(directory, new RoutingShard(region, graph, new NodeGrid(graph, 0.0025), 10), "1");
+        return directory;
+    }
+
+    private static String get(RoutingServer server, String path, int status) throws IOException {
+        return get(server, path, null, status);
+    }
+
+    private static String get(RoutingServer server, String path, String accept, int status) throws IOException {
+        URL url = new URL("http://localhost:" + server.getPort() + path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        if (accept != null) {
+            connection.setRequestProperty("Accept", accept);
+        }
+        assertEquals(status, connection.getResponseCode());
+        InputStream in = status == 200 ? connection.getInputStream() : connection.getErrorStream();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        in.close();
+        return out.toString("UTF-8");
+    }
+
+    /**
+     * Class loader of the classpath of this module only (and of the JDK), that tells which classes it has loaded.
+     */
+    private static class ModuleClassLoader extends URLClassLoader {
+
+        private ModuleClassLoader() throws IOException {
+            super(classpath(), ClassLoader.getSystemClassLoader().getParent());
+        }
+
+        private static URL[] classpath() throws IOException {
+            String[] paths = System.getProperty("java.class.path").split(File.pathSeparator);
+            URL[] urls = new URL[paths.length];
+            for (int i = 0; i < paths.length; i++) {
+                urls[i] = new File(paths[i]).toURI().toURL();
+            }
+            return urls;
+        }
+
+        private boolean isLoaded(String name) {
+            return findLoadedClass(name) != null;
+        }
+    }
+
+    @Test
+    public void testStandaloneClasspath() throws Exception {
+        File directory = export();
+        ModuleClassLoader loader = new ModuleClassLoader();
+        try {
+            loader.loadClass("org.neo4j.graphdb.GraphDatabaseService");
+            fail("Neo4j must not be on the classpath of the routing server");
+        } catch (ClassNotFoundException e) {
+            // expected
+        }
+
+        // start the server and search, with the classes of the module class loader
+        Class<?> serverClass = loader.loadClass(RoutingServer.class.getName());
+        Object server = serverClass.getConstructor(File.class, int.class, int.class).newInstance(directory, 0, 1);
+        serverClass.getMethod("start").invoke(server);
+        try {
+            int port = (Integer) serverClass.getMethod("getPort").invoke(server);
+            String query = "?lat1=47.2&long1=-1.55&lat2=47.209&long2=-1.541";
+            URL url = new URL("http://localhost:" + port + "/search/all" + query);
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            assertEquals(200, connection.getResponseCode());
+            connection.getInputStream().close();
+        } finally {
+            serverClass.getMethod("stop").invoke(server);
+        }
+
+        // the constants and the services of the plugin need Neo4j
+        assertFalse(loader.isLoaded("fr.mobilit.neo4j.server.utils.Constant"));
+        assertFalse(loader.isLoaded("fr.mobilit.neo4j.server.service.AbstractCycleRent"));
+    }
+
+    @Test
+    public void testSearch() throws Exception {
+        RoutingServer server = new RoutingServer(export(), 0, 2);
+        server.start();
+        try {
+            String query = "?lat1=47.2&long1=-1.55&lat2=47.209&long2=-1.541";
+            String car = get(server, "/search/car" + query, 200);
+            assertTrue(car.contains("FeatureCollection"));
+            assertTrue(car.contains("\"time\":18.0"));
+            assertTrue(get(server, "/search/all" + query, 200).contains("\"cyclerent\":null"));
+            String polyline = get(server, "/search/car" + query + "&simplify=1", "application/vnd.mobilit.polyline+json",
+                    200);
+            assertTrue(polyline.startsWith("{\"precision\":5,\"legs\":[{\"name\":"));
+            assertTrue(polyline.contains("\"time\":18.0"));
+            String binary = get(server, "/search/car" + query, "application/vnd.mobilit.route, application/json;q=0.5",
+                    200);
+            assertTrue(binary.startsWith("MR"));
+            get(server, "/search/transit" + query, 501);
+            get(server, "/search/car?lat1=48.0&long1=2.0&lat2=48.1&long2=2.1", 404);
+            get(server, "/search/car?lat1=47.2", 500);
+        } finally {
+            server.stop();
+        }
+    }
+
+}